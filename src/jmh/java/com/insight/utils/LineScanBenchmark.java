@@ -0,0 +1,106 @@
+package com.insight.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the scalar and Vector API line scanning (see ByteScanner), and the timestamp parse of continuation lines
+ * with and without the shape precheck (see Utils.couldStartWithTimeStamp). The vector benchmarks need Java 17+.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@State(Scope.Benchmark)
+public class LineScanBenchmark {
+    private static final String[] CONTINUATION_LINES = {
+            "\tat com.insight.utils.Utils.run(Utils.java:1042)",
+            "Caused by: java.lang.IllegalStateException: no connection",
+            "    ... 12 more",
+    };
+
+    @Param({ "40", "120", "1000" })
+    public int lineLength;
+
+    private byte[] buffer;
+    private ByteScanner scalar;
+    private ByteScanner vector;
+    private SimpleDateFormat sdf;
+    private String pattern;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random   = new Random(44);
+        buffer          = new byte[1024 * 1024];
+
+        for(int i = 0 ; i < buffer.length ; i++) {
+            buffer[i] = (0 == random.nextInt(lineLength)) ? (byte) '\n' : (byte) ('a' + random.nextInt(26));
+        }
+
+        scalar  = new ByteScanner();
+        vector  = ByteScanner.get();
+        sdf     = new SimpleDateFormat(Options.DEFAULT_TIMESTAMP_FORMAT);
+        sdf.setLenient(false);
+        pattern = sdf.toPattern();
+
+        if(!vector.isVectorized()) {
+            throw new IllegalStateException("The Vector API isn't available, run on Java 17+");
+        }
+    }
+
+    @Benchmark
+    public int scalarLineEnds() {
+        return countLineEnds(scalar);
+    }
+
+    @Benchmark
+    public int vectorLineEnds() {
+        return countLineEnds(vector);
+    }
+
+    @Benchmark
+    public void parseContinuationLines(final Blackhole blackhole) {
+        for(String line : CONTINUATION_LINES) {
+            try {
+                blackhole.consume(sdf.parse(line.substring(0, Math.min(line.length(), pattern.length()))));
+            } catch (java.text.ParseException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    @Benchmark
+    public void precheckContinuationLines(final Blackhole blackhole) {
+        for(String line : CONTINUATION_LINES) {
+            blackhole.consume(Utils.mSecTimeStampFromStartOfLine(line, sdf));
+        }
+    }
+
+    private int countLineEnds(final ByteScanner scanner) {
+        int count   = 0;
+        int from    = 0;
+        int end;
+
+        while((end = scanner.indexOfLineEnd(buffer, from, buffer.length)) >= 0) {
+            count++;
+            from = end + 1;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,66 @@
+package com.insight.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the single threaded time sort of parsed log files with the partitioned parallel merge (see ParallelMerge).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MergeBenchmark {
+    @Param({ "8" })
+    public int sources;
+
+    @Param({ "250000" })
+    public int entriesPerSource;
+
+    private List<List<LogEntry>> logs;
+    private ParallelMerge parallel;
+
+    @Setup
+    public void setUp() {
+        Random random   = new Random(48);
+        logs            = new ArrayList<>();
+        parallel        = new ParallelMerge(Runtime.getRuntime().availableProcessors(), 1);
+
+        for(int s = 0 ; s < sources ; s++) {
+            List<LogEntry> log  = new ArrayList<>(entriesPerSource);
+            long ts             = random.nextInt(1000);
+
+            for(int i = 0 ; i < entriesPerSource ; i++) {
+                ts += random.nextInt(3);
+                log.add(new LogEntry("s" + s, ts, "", ""));
+            }
+            logs.add(log);
+        }
+    }
+
+    @Benchmark
+    public List<LogEntry> sequential() {
+        return ParallelMerge.sequential(logs);
+    }
+
+    @Benchmark
+    public List<LogEntry> parallel() {
+        return parallel.timeSortLists(logs);
+    }
+}
@@ -0,0 +1,424 @@
+package com.insight.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A sidecar index of a log file, that lets reads skip the blocks of the log file that can't contain a match.
+ *
+ * The log file is split into blocks of about BLOCK_SIZE bytes, each starting at the start of a log entry. For each
+ * block the index holds its byte range, its minimum and maximum (unadjusted) timestamps, and a Bloom filter of the
+ * character trigrams of its log entries. As the text filters match substrings, a block can only contain a match for a
+ * text if it contains all the trigrams of the text, so texts shorter than 3 characters never rule a block out.
+ *
+ * The index is saved next to the log file (with INDEX_SUFFIX added), and rebuilt whenever the log file's size or last
+ * modified time, the timestamp format or the false positive rate change.
+ */
+public class BlockIndex {
+    public static final String INDEX_SUFFIX                 = ".lvidx";
+    public static final int BLOCK_SIZE                      = 64 * 1024;
+    public static final double DEFAULT_FALSE_POSITIVE_RATE  = 0.01;
+
+    private static final int MAGIC                          = 0x4c564958;   // LVIX
+    private static final int VERSION                        = 1;
+
+    private final String logFilePath;
+    private final long length;
+    private final long lastModified;
+    private final String timestampDateFormat;
+    private final int blockSize;
+    private final double falsePositiveRate;
+    private final List<Block> blocks                = new ArrayList<>();
+    private long blocksChecked                      = 0;
+    private long blocksSelected                     = 0;
+
+    private BlockIndex(
+            final String logFilePath,
+            final long length,
+            final long lastModified,
+            final String timestampDateFormat,
+            final int blockSize,
+            final double falsePositiveRate) {
+        this.logFilePath            = logFilePath;
+        this.length                 = length;
+        this.lastModified           = lastModified;
+        this.timestampDateFormat    = timestampDateFormat;
+        this.blockSize              = blockSize;
+        this.falsePositiveRate      = falsePositiveRate;
+    }
+
+    /**
+     * Load the index of a log file, building (and saving) it if there isn't an up to date one.
+     *
+     * @param logFilePath The file containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param falsePositiveRate The rate at which a block without a trigram is wrongly thought to contain it.
+     * @return The index.
+     * @throws IOException
+     */
+    public static BlockIndex load(
+            final String logFilePath,
+            final String timestampDateFormat,
+            final double falsePositiveRate) throws IOException {
+        return load(logFilePath, timestampDateFormat, BLOCK_SIZE, falsePositiveRate);
+    }
+
+    /**
+     * Load the index of a log file, building (and saving) it if there isn't an up to date one.
+     *
+     * @param logFilePath The file containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param blockSize The (approximate) size in bytes of each block.
+     * @param falsePositiveRate The rate at which a block without a trigram is wrongly thought to contain it.
+     * @return The index.
+     * @throws IOException
+     */
+    public static BlockIndex load(
+            final String logFilePath,
+            final String timestampDateFormat,
+            final int blockSize,
+            final double falsePositiveRate) throws IOException {
+        File logFile    = new File(logFilePath);
+        File indexFile  = new File(logFilePath + INDEX_SUFFIX);
+
+        if(!logFile.isFile()) {
+            throw new IOException("No such log file [" + logFilePath + "]");
+        }
+
+        BlockIndex index =
+                new BlockIndex(
+                        logFilePath,
+                        logFile.length(),
+                        logFile.lastModified(),
+                        timestampDateFormat,
+                        blockSize,
+                        falsePositiveRate);
+
+        if(indexFile.isFile() && index.read(indexFile)) {
+            return index;
+        }
+
+        index.build();
+
+        try {
+            index.write(indexFile);
+        } catch (IOException e) {
+            ////////////////////////////////////////////////////////
+            // e.g. a read only directory, the index is still usable
+            indexFile.delete();
+        }
+
+        return index;
+    }
+
+    /**
+     * Find the byte ranges of the log file that could contain log entries that pass the filters.
+     *
+     * @param startTs mS timestamp the (adjusted) log entries start at.
+     * @param endTs mS timestamp the (adjusted) log entries end at.
+     * @param timestampAdjustment A mS adjustment to the log entries timestamp.
+     * @param searchText A list of text string to match a lig entry against, null or empty matches everything.
+     * @return The byte ranges ({from, to} with to exclusive) in file order, adjacent blocks are combined.
+     */
+    public List<long[]> candidateRanges(
+            final long startTs,
+            final long endTs,
+            final int timestampAdjustment,
+            final List<String> searchText) {
+        List<long[]> ranges     = new ArrayList<>();
+        List<int[]> textGrams   = new ArrayList<>();
+        boolean allText         = (null == searchText || searchText.isEmpty());
+
+        if(!allText) {
+            for(String text : searchText) {
+                if(text.length() < 3) {
+                    allText = true;
+                    break;
+                }
+                textGrams.add(trigrams(text));
+            }
+        }
+
+        for(Block block : blocks) {
+            blocksChecked++;
+
+            if(block.maxTs + timestampAdjustment < startTs || block.minTs + timestampAdjustment > endTs) {
+                continue;
+            }
+
+            if(!allText && !block.mightContainAny(textGrams)) {
+                continue;
+            }
+
+            blocksSelected++;
+
+            long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if(null != last && last[1] == block.from) {
+                last[1] = block.to;
+            } else {
+                ranges.add(new long[] { block.from, block.to });
+            }
+        }
+
+        return ranges;
+    }
+
+    /**
+     * @return The number of blocks in the log file.
+     */
+    public int size() {
+        return blocks.size();
+    }
+
+    /**
+     * @return The number of blocks checked by candidateRanges.
+     */
+    public long getBlocksChecked() {
+        return blocksChecked;
+    }
+
+    /**
+     * @return The number of blocks checked by candidateRanges that have to be read.
+     */
+    public long getBlocksSelected() {
+        return blocksSelected;
+    }
+
+    private void build() throws IOException {
+        SimpleDateFormat sdf    = new SimpleDateFormat(timestampDateFormat);
+        sdf.setLenient(false);
+
+        EntryGrouper grouper    = new EntryGrouper(new LineReader(new FileInputStream(logFilePath)), sdf);
+        Set<Integer> grams      = new HashSet<>();
+        long from               = -1;
+        long minTs              = Long.MAX_VALUE;
+        long maxTs              = Long.MIN_VALUE;
+        String data;
+
+        try {
+            while(null != (data = grouper.next())) {
+                long offset = grouper.getOffset();
+
+                if(from >= 0 && offset - from >= blockSize) {
+                    blocks.add(new Block(from, offset, minTs, maxTs, grams, falsePositiveRate));
+
+                    grams.clear();
+                    minTs   = Long.MAX_VALUE;
+                    maxTs   = Long.MIN_VALUE;
+                    from    = -1;
+                }
+
+                if(from < 0) {
+                    from = offset;
+                }
+
+                minTs = Math.min(minTs, grouper.getTimeStamp());
+                maxTs = Math.max(maxTs, grouper.getTimeStamp());
+
+                for(int i = 0 ; i + 2 < data.length() ; i++) {
+                    grams.add(trigram(data, i));
+                }
+            }
+
+            if(from >= 0) {
+                blocks.add(new Block(from, grouper.getReadOffset(), minTs, maxTs, grams, falsePositiveRate));
+            }
+        } finally {
+            grouper.close();
+        }
+    }
+
+    private boolean read(final File indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if(MAGIC != in.readInt()
+                    || VERSION != in.readInt()
+                    || length != in.readLong()
+                    || lastModified != in.readLong()
+                    || !timestampDateFormat.equals(in.readUTF())
+                    || blockSize != in.readInt()
+                    || falsePositiveRate != in.readDouble()) {
+                return false;
+            }
+
+            int count = in.readInt();
+
+            for(int i = 0 ; i < count ; i++) {
+                long from       = in.readLong();
+                long to         = in.readLong();
+                long minTs      = in.readLong();
+                long maxTs      = in.readLong();
+                int hashes      = in.readInt();
+                long[] bits     = new long[in.readInt()];
+
+                for(int w = 0 ; w < bits.length ; w++) {
+                    bits[w] = in.readLong();
+                }
+
+                blocks.add(new Block(from, to, minTs, maxTs, hashes, bits));
+            }
+
+            return true;
+        } catch (IOException e) {
+            /////////////////////////////////////
+            // Truncated or corrupt, rebuild it
+            blocks.clear();
+            return false;
+        }
+    }
+
+    private void write(final File indexFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+            out.writeUTF(timestampDateFormat);
+            out.writeInt(blockSize);
+            out.writeDouble(falsePositiveRate);
+            out.writeInt(blocks.size());
+
+            for(Block block : blocks) {
+                out.writeLong(block.from);
+                out.writeLong(block.to);
+                out.writeLong(block.minTs);
+                out.writeLong(block.maxTs);
+                out.writeInt(block.hashes);
+                out.writeInt(block.bits.length);
+
+                for(long word : block.bits) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    private static int[] trigrams(final String text) {
+        int[] grams = new int[text.length() - 2];
+
+        for(int i = 0 ; i < grams.length ; i++) {
+            grams[i] = trigram(text, i);
+        }
+
+        return grams;
+    }
+
+    private static int trigram(final String text, final int i) {
+        return (text.charAt(i) * 31 + text.charAt(i + 1)) * 31 + text.charAt(i + 2);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+
+        return h;
+    }
+
+    /**
+     * A block of the log file and the Bloom filter of its trigrams.
+     */
+    private static class Block {
+        private final long from;
+        private final long to;
+        private final long minTs;
+        private final long maxTs;
+        private final int hashes;
+        private final long[] bits;
+
+        Block(final long from, final long to, final long minTs, final long maxTs, final int hashes, final long[] bits) {
+            this.from   = from;
+            this.to     = to;
+            this.minTs  = minTs;
+            this.maxTs  = maxTs;
+            this.hashes = hashes;
+            this.bits   = bits;
+        }
+
+        Block(
+                final long from,
+                final long to,
+                final long minTs,
+                final long maxTs,
+                final Set<Integer> grams,
+                final double falsePositiveRate) {
+            ////////////////////////////////////////////////////////////////
+            // The usual Bloom filter sizing for the number of trigrams
+            int n       = Math.max(1, grams.size());
+            long m      = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int words   = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 64, (m + 63) / 64));
+
+            this.from   = from;
+            this.to     = to;
+            this.minTs  = minTs;
+            this.maxTs  = maxTs;
+            this.bits   = new long[words];
+            this.hashes = Math.max(1, (int) Math.round((double) words * 64 / n * Math.log(2)));
+
+            for(int gram : grams) {
+                add(gram);
+            }
+        }
+
+        private void add(final int gram) {
+            int h1      = mix(gram);
+            int h2      = mix(h1 ^ 0x9e3779b9) | 1;
+            long m      = (long) bits.length * 64;
+
+            for(int i = 0 ; i < hashes ; i++) {
+                long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % m;
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        private boolean mightContain(final int gram) {
+            int h1      = mix(gram);
+            int h2      = mix(h1 ^ 0x9e3779b9) | 1;
+            long m      = (long) bits.length * 64;
+
+            for(int i = 0 ; i < hashes ; i++) {
+                long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % m;
+
+                if(0 == (bits[(int) (bit >>> 6)] & (1L << bit))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * @return true if the block might contain all the trigrams of any of the texts.
+         */
+        private boolean mightContainAny(final List<int[]> textGrams) {
+            for(int[] grams : textGrams) {
+                boolean all = true;
+
+                for(int gram : grams) {
+                    if(!mightContain(gram)) {
+                        all = false;
+                        break;
+                    }
+                }
+
+                if(all) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
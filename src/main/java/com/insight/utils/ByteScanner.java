@@ -0,0 +1,63 @@
+package com.insight.utils;
+
+/**
+ * Find the line terminators ('\n' or '\r') in a buffer of bytes, one byte at a time.
+ *
+ * On Java 17+ the jar holds a (multi-release) subclass, VectorByteScanner, that looks at many bytes at a time with the
+ * incubating Vector API. It is used when the jdk.incubator.vector module has been added to the JVM e.g.
+ *
+ *      java --add-modules jdk.incubator.vector -cp logviewer-1.0-SNAPSHOT.jar com.insight.utils.Utils ...
+ *
+ * else (and on Java 8) this scalar scanner is used, both find the same terminators.
+ */
+class ByteScanner {
+    private static final ByteScanner BEST = best();
+
+    /**
+     * @return The fastest scanner available on this JVM.
+     */
+    static ByteScanner get() {
+        return BEST;
+    }
+
+    /**
+     * @param buffer The bytes to look in.
+     * @param from The index to start looking at.
+     * @param to The index to stop looking at (exclusive).
+     * @return The index of the first '\n' or '\r'; else -1 if there isn't one.
+     */
+    int indexOfLineEnd(final byte[] buffer, final int from, final int to) {
+        for(int i = from ; i < to ; i++) {
+            byte b = buffer[i];
+
+            if('\n' == b || '\r' == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return true if many bytes are looked at a time.
+     */
+    boolean isVectorized() {
+        return false;
+    }
+
+    private static ByteScanner best() {
+        try {
+            ByteScanner scanner =
+                    (ByteScanner) Class.forName("com.insight.utils.VectorByteScanner").getDeclaredConstructor().newInstance();
+
+            if(0 == scanner.indexOfLineEnd(new byte[] { '\n' }, 0, 1)) {
+                return scanner;
+            }
+        } catch (Exception | LinkageError e) {
+            ////////////////////////////////////////////////////////////////
+            // Java 8, or the jdk.incubator.vector module hasn't been added
+        }
+
+        return new ByteScanner();
+    }
+}
@@ -0,0 +1,341 @@
+package com.insight.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Checkpoints of how far each log file has been read, so a run repeated over growing log files (e.g. from cron) only
+ * reads what was appended since the last run.
+ *
+ * The checkpoint of a log file holds the byte offset of the start of the last log entry (its timestamp line), the last
+ * timestamp read, a checksum of the bytes before the offset, and the file's identity (its inode, where the file system
+ * has one) and size. The next run carries on from the offset if the log file is still the same file, i.e. it has the
+ * same identity, isn't shorter than it was and the bytes before the offset are unchanged; otherwise the log file was
+ * rotated, truncated or rewritten and is read from the start.
+ *
+ * The checkpoints are only saved when a run succeeds, replacing the checkpoint file in one move, so a failed run is
+ * repeated in full by the next one. The last log entry of a log file may still be being written (e.g. a stack trace),
+ * so it's held back, and read whole by the first run after the next log entry has started. The last log entry of a
+ * log file that is then rotated, truncated or rewritten is never read, the notes say so.
+ */
+public class Checkpoints {
+    public static final int TAIL_SIZE           = 4 * 1024;
+
+    private static final int MAGIC              = 0x4c56434b;   // LVCK
+    private static final int VERSION            = 1;
+    private static final int PROBE_SIZE         = 64 * 1024;
+
+    private final File checkpointFile;
+    private final Map<String, Checkpoint> checkpoints   = new LinkedHashMap<>();
+    private final List<String> notes                    = new ArrayList<>();
+
+    private Checkpoints(final File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Load the checkpoints, an unreadable checkpoint file is treated as having none.
+     *
+     * @param checkpointFilePath The file holding the checkpoints, it doesn't have to exist.
+     * @return The checkpoints.
+     */
+    public static Checkpoints load(final String checkpointFilePath) {
+        Checkpoints loaded = new Checkpoints(new File(checkpointFilePath));
+
+        if(loaded.checkpointFile.isFile() && !loaded.read()) {
+            loaded.notes.add(
+                    "# Checkpoint: [" + checkpointFilePath + "] unreadable, reading every log file from the start");
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Find the byte range of a log file not yet read, up to the last log entry, and move its checkpoint to the end of
+     * the range (saved by save()).
+     *
+     * @param logFilePath The file containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @return The byte range {from, to} (to exclusive), from is the start of a line and to the start of the last
+     *         timestamp line (else just past the last complete line if there's no timestamp line).
+     * @throws IOException
+     */
+    public long[] range(final String logFilePath, final String timestampDateFormat) throws IOException {
+        File logFile            = new File(logFilePath);
+        String key              = logFile.getCanonicalPath();
+        String identity         = identity(logFile);
+        long size               = logFile.length();
+        Checkpoint previous     = checkpoints.get(key);
+        SimpleDateFormat sdf    = new SimpleDateFormat(timestampDateFormat);
+        long from               = 0;
+        String state;
+
+        sdf.setLenient(false);
+
+        if(null == previous) {
+            state = "new";
+        } else if(!identity.equals(previous.identity)) {
+            state = "rotated";
+        } else if(size < previous.size) {
+            state = "truncated";
+        } else if(previous.tailChecksum != checksum(logFile, previous.offset - previous.tailLength, previous.offset)) {
+            state = "rewritten";
+        } else {
+            state = "resumed";
+            from  = previous.offset;
+        }
+
+        ////////////////////////////////////////////////////////////////////
+        // Hold back the last log entry, lines may still be added to it, the
+        // next run carries on from the start of its timestamp line
+        long end        = lastLineEnd(logFile, from, size);
+        long[] last     = lastTimeStampLine(logFile, from, end, sdf);
+        long to         = (null == last) ? end : last[0];
+        long[] read     = lastTimeStampLine(logFile, from, to, sdf);
+        int tailLength  = (int) Math.min(TAIL_SIZE, to);
+        long lastTs     = (null == read) ? Long.MIN_VALUE : read[1];
+
+        if(Long.MIN_VALUE == lastTs && "resumed".equals(state)) {
+            lastTs = previous.lastTs;
+        }
+
+        if(null != previous && !"resumed".equals(state) && previous.offset < previous.size) {
+            notes.add(String.format("# Checkpoint: %s %s, the held back %d bytes of its last log entry were never read",
+                    logFilePath, state, previous.size - previous.offset));
+        }
+
+        checkpoints.put(key,
+                new Checkpoint(identity, size, to, lastTs, tailLength, checksum(logFile, to - tailLength, to)));
+
+        notes.add(String.format("# Checkpoint: %s %s, reading %d to %d%s",
+                logFilePath, state, from, to,
+                (Long.MIN_VALUE == lastTs) ? "" : ", last log entry at " + sdf.format(new Date(lastTs))));
+
+        return new long[] { from, to };
+    }
+
+    /**
+     * Save the checkpoints, replacing the checkpoint file.
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        File directory  = checkpointFile.getAbsoluteFile().getParentFile();
+        File temp       = File.createTempFile(checkpointFile.getName(), ".tmp", directory);
+
+        try {
+            try (DataOutputStream out =
+                         new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(checkpoints.size());
+
+                for(Map.Entry<String, Checkpoint> entry : checkpoints.entrySet()) {
+                    Checkpoint checkpoint = entry.getValue();
+
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(checkpoint.identity);
+                    out.writeLong(checkpoint.size);
+                    out.writeLong(checkpoint.offset);
+                    out.writeLong(checkpoint.lastTs);
+                    out.writeInt(checkpoint.tailLength);
+                    out.writeLong(checkpoint.tailChecksum);
+                }
+            }
+
+            try {
+                Files.move(temp.toPath(), checkpointFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * @param out Where to write what was done with each log file, e.g. stderr.
+     */
+    public void emitNotes(final PrintStream out) {
+        for(String note : notes) {
+            out.println(note);
+        }
+    }
+
+    private boolean read() {
+        try (DataInputStream in =
+                     new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+            if(MAGIC != in.readInt() || VERSION != in.readInt()) {
+                return false;
+            }
+
+            int count = in.readInt();
+
+            for(int i = 0 ; i < count ; i++) {
+                String key          = in.readUTF();
+                String identity     = in.readUTF();
+                long size           = in.readLong();
+                long offset         = in.readLong();
+                long lastTs         = in.readLong();
+                int tailLength      = in.readInt();
+                long tailChecksum   = in.readLong();
+
+                checkpoints.put(key, new Checkpoint(identity, size, offset, lastTs, tailLength, tailChecksum));
+            }
+
+            return true;
+        } catch (IOException e) {
+            checkpoints.clear();
+            return false;
+        }
+    }
+
+    /**
+     * @return The inode (or whatever else identifies the file) of a file; else empty if the file system has none.
+     */
+    static String identity(final File file) throws IOException {
+        Object key = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+
+        return (null == key) ? "" : key.toString();
+    }
+
+    /**
+     * @return The CRC32 of the bytes of a file from (including) from to (but not including) to.
+     */
+    static long checksum(final File file, final long from, final long to) throws IOException {
+        CRC32 crc       = new CRC32();
+        byte[] bytes    = new byte[(int) (to - from)];
+
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(from);
+            in.readFully(bytes);
+        }
+
+        crc.update(bytes);
+
+        return crc.getValue();
+    }
+
+    /**
+     * Find the end of the last complete line, a line still being written is left for the next run.
+     *
+     * @return The byte offset just past the last line terminator in the range; else from if there isn't one.
+     */
+    private static long lastLineEnd(final File file, final long from, final long to) throws IOException {
+        byte[] buffer = new byte[PROBE_SIZE];
+
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long end = to;
+
+            while(end > from) {
+                int length = (int) Math.min(buffer.length, end - from);
+
+                in.seek(end - length);
+                in.readFully(buffer, 0, length);
+
+                for(int i = length - 1 ; i >= 0 ; i--) {
+                    if('\n' == buffer[i] || '\r' == buffer[i]) {
+                        return end - length + i + 1;
+                    }
+                }
+
+                end -= length;
+            }
+        }
+
+        return from;
+    }
+
+    /**
+     * Find the last timestamp line (the start of the last log entry) in a byte range of a log file, reading back from
+     * the end.
+     *
+     * @return The byte offset and (unadjusted) mS timestamp of the line; else null if there isn't one.
+     */
+    private static long[] lastTimeStampLine(
+            final File file,
+            final long from,
+            final long to,
+            final SimpleDateFormat sdf) throws IOException {
+        long offset = Math.max(from, to - PROBE_SIZE);
+
+        while(offset < to) {
+            long[] last = null;
+
+            try (FileInputStream in = new FileInputStream(file)) {
+                long start = (offset > from) ? offset - 1 : offset;
+
+                in.getChannel().position(start);
+
+                LineReader lineReader =
+                        new LineReader(new RangeInputStream(in, to - start), Charset.defaultCharset(), start);
+                String line;
+
+                if(offset > from) {
+                    // Skip the rest of the line the offset is part of
+                    lineReader.readLine();
+                }
+
+                while(null != (line = lineReader.readLine())) {
+                    long ts = Utils.mSecTimeStampFromStartOfLine(line, sdf);
+
+                    if(ts > 0) {
+                        last = new long[] { lineReader.getLineOffset(), ts };
+                    }
+                }
+            }
+
+            if(null != last || offset == from) {
+                return last;
+            }
+
+            offset = Math.max(from, offset - 2 * (to - offset));
+        }
+
+        return null;
+    }
+
+    private static class Checkpoint {
+        private final String identity;
+        private final long size;
+        private final long offset;
+        private final long lastTs;
+        private final int tailLength;
+        private final long tailChecksum;
+
+        Checkpoint(
+                final String identity,
+                final long size,
+                final long offset,
+                final long lastTs,
+                final int tailLength,
+                final long tailChecksum) {
+            this.identity       = identity;
+            this.size           = size;
+            this.offset         = offset;
+            this.lastTs         = lastTs;
+            this.tailLength     = tailLength;
+            this.tailChecksum   = tailChecksum;
+        }
+    }
+}
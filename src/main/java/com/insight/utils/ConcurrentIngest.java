@@ -0,0 +1,613 @@
+package com.insight.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Build the log entries of many log files at once, for log files on slow (e.g. network mounted) storage where the
+ * time is spent waiting for reads rather than parsing.
+ *
+ * Every log file is read on its own thread into a small bounded queue of chunks (read ahead), so the waits for all the
+ * log files overlap, while the chunks are parsed on a fixed number of threads shared by all the log files. A parse
+ * thread only ever takes a chunk that has been read, one chunk at a time (each log file's chunks in order), so it
+ * never waits for a read and any number of log files can be waiting for reads at once. When running on a JVM with
+ * virtual threads (Java 21+) the reads are done on virtual threads, else on (daemon) platform threads.
+ */
+public class ConcurrentIngest {
+    public static final int DEFAULT_CHUNK_SIZE  = 256 * 1024;
+    public static final int READ_AHEAD_CHUNKS   = 4;
+
+    private static final Chunk END              = new Chunk(new byte[0], 0, null);
+    // The most bytes of a character, in the charsets log files are written in
+    private static final int MAX_CHAR_BYTES     = 4;
+
+    private final int parseThreads;
+    private final int chunkSize;
+    private LineStore lineStore                 = null;
+    private FieldFilter fieldFilter             = null;
+    private EntryLimits entryLimits             = null;
+    private int mostHeld                        = 0;
+
+    /**
+     * @param parseThreads The number of threads to parse the log files on.
+     */
+    public ConcurrentIngest(final int parseThreads) {
+        this(parseThreads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param parseThreads The number of threads to parse the log files on.
+     * @param chunkSize The size of each read.
+     */
+    public ConcurrentIngest(final int parseThreads, final int chunkSize) {
+        this.parseThreads   = parseThreads;
+        this.chunkSize      = chunkSize;
+    }
+
+    /**
+     * @param lineStore Where to share the continuation lines of the log entries; else null to not share them.
+     */
+    public void setLineStore(final LineStore lineStore) {
+        this.lineStore = lineStore;
+    }
+
+    /**
+     * @param fieldFilter The field conditions a log entry has to pass; else null to not filter by field.
+     */
+    public void setFieldFilter(final FieldFilter fieldFilter) {
+        this.fieldFilter = fieldFilter;
+    }
+
+    /**
+     * @param entryLimits The most of a log entry to keep in memory; else null for no limit.
+     */
+    public void setEntryLimits(final EntryLimits entryLimits) {
+        this.entryLimits = entryLimits;
+    }
+
+    /**
+     * Build a representation of the set of log entries from each log file.
+     *
+     * @param logFilePaths The files containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+     *                null or empty implies no filtering
+     * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+     *              null or empty implies no filtering.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param timestampAdjustments A mS adjustment to the log entries timestamp, for each log file.
+     *
+     * @return The log entries of each log file, in the same order as the log files.
+     * @throws IOException
+     * @throws ParseException
+     */
+    public List<List<LogEntry>> createLogEntries(
+            final List<String> logFilePaths,
+            final String timestampDateFormat,
+            final String startAt,
+            final String endAt,
+            final List<String> searchText,
+            final List<Integer> timestampAdjustments) throws IOException, ParseException {
+        ExecutorService readers     = readerExecutor();
+        ExecutorService parsers     = Executors.newFixedThreadPool(parseThreads, daemonThreads("parse"));
+        List<Source> sources        = new ArrayList<>();
+        List<List<LogEntry>> logs   = new ArrayList<>();
+
+        try {
+            for(int i = 0 ; i < logFilePaths.size() ; i++) {
+                final Source source =
+                        new Source(
+                                logFilePaths.get(i),
+                                timestampDateFormat,
+                                startAt,
+                                endAt,
+                                searchText,
+                                timestampAdjustments.get(i),
+                                parsers);
+
+                sources.add(source);
+
+                readers.execute(new Runnable() {
+                    public void run() {
+                        read(source);
+                    }
+                });
+            }
+
+            for(Source source : sources) {
+                logs.add(source.done.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the log files");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if(cause instanceof UncheckedIOException) {
+                cause = cause.getCause();
+            }
+
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if(cause instanceof ParseException) {
+                throw (ParseException) cause;
+            } else if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new RuntimeException(cause);
+        } finally {
+            parsers.shutdownNow();
+            readers.shutdownNow();
+        }
+
+        return logs;
+    }
+
+    /**
+     * @return The most data held back for a log file at once (between chunks), so far.
+     */
+    synchronized int getMostHeld() {
+        return mostHeld;
+    }
+
+    private synchronized void holding(final int length) {
+        mostHeld = Math.max(mostHeld, length);
+    }
+
+    /**
+     * @return The stream to read a log file from.
+     * @throws IOException
+     */
+    InputStream open(final String logFilePath) throws IOException {
+        return new FileInputStream(logFilePath);
+    }
+
+    /**
+     * Read a log file into chunks for its source to parse, blocking when the reads get too far ahead of the parsing.
+     */
+    private void read(final Source source) {
+        Chunk last = END;
+
+        try (InputStream in = open(source.logFilePath)) {
+            while(true) {
+                byte[] data = new byte[chunkSize];
+                int length  = 0;
+                int read    = 0;
+
+                while(length < data.length && (read = in.read(data, length, data.length - length)) >= 0) {
+                    length += read;
+                }
+
+                if(length > 0) {
+                    source.put(new Chunk(data, length, null));
+                }
+
+                if(read < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            last = new Chunk(null, 0, e);
+        } catch (InterruptedException e) {
+            // The parsing has been abandoned
+            return;
+        }
+
+        try {
+            source.put(last);
+        } catch (InterruptedException e) {}
+    }
+
+    /**
+     * @return virtual threads when available, else (daemon) platform threads
+     */
+    static ExecutorService readerExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads("read"));
+        }
+    }
+
+    /**
+     * @return true if the reads will be done on virtual threads.
+     */
+    public static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ConcurrentIngest-" + name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static class Chunk {
+        private final byte[] data;
+        private final int length;
+        private final IOException failure;
+
+        Chunk(final byte[] data, final int length, final IOException failure) {
+            this.data       = data;
+            this.length     = length;
+            this.failure    = failure;
+        }
+    }
+
+    /**
+     * A log file being parsed, one chunk at a time on the shared parse threads, in the order the chunks were read.
+     *
+     * Only the whole log entries of the chunks read so far are parsed, the data from the start of the last timestamp
+     * line on (the log entry that may carry on in the next chunk) is held back and parsed with the next chunk. With
+     * entry limits, what the limits leave out of the held log entry is only counted, not held.
+     */
+    private class Source implements Runnable {
+        private final String logFilePath;
+        private final String timestampDateFormat;
+        private final String startAt;
+        private final String endAt;
+        private final List<String> searchText;
+        private final int timestampAdjustment;
+        private final ExecutorService parsers;
+        private final SimpleDateFormat sdf;
+        private final int patternBytes;
+        private final Queue<Chunk> chunks                   = new ConcurrentLinkedQueue<>();
+        private final Semaphore readAhead                   = new Semaphore(READ_AHEAD_CHUNKS);
+        private final AtomicBoolean scheduled               = new AtomicBoolean(false);
+        private final CompletableFuture<List<LogEntry>> done    = new CompletableFuture<>();
+        private final List<LogEntry> logEntries             = new ArrayList<>();
+        private byte[] held                                 = new byte[0];
+        private int heldLength                              = 0;
+        private long heldOffset                             = 0;
+        private boolean started                             = false;
+        private int counted                                 = 0;
+        private int entryLines                              = 0;
+        private long entryChars                             = 0;
+        private boolean dropping                            = false;
+        private long pastLines                              = 0;
+        private long pastBytes                              = 0;
+        private long tailPastBytes                          = 0;
+
+        Source(
+                final String logFilePath,
+                final String timestampDateFormat,
+                final String startAt,
+                final String endAt,
+                final List<String> searchText,
+                final int timestampAdjustment,
+                final ExecutorService parsers) {
+            this.logFilePath            = logFilePath;
+            this.timestampDateFormat    = timestampDateFormat;
+            this.startAt                = startAt;
+            this.endAt                  = endAt;
+            this.searchText             = searchText;
+            this.timestampAdjustment    = timestampAdjustment;
+            this.parsers                = parsers;
+            this.sdf                    = new SimpleDateFormat(timestampDateFormat);
+            this.sdf.setLenient(false);
+            this.patternBytes           = MAX_CHAR_BYTES * timestampDateFormat.length();
+        }
+
+        /**
+         * Queue a chunk to be parsed, blocking while READ_AHEAD_CHUNKS of this log file are waiting.
+         */
+        void put(final Chunk chunk) throws InterruptedException {
+            readAhead.acquire();
+            chunks.add(chunk);
+            schedule();
+        }
+
+        /**
+         * Parse the next chunk on a parse thread, unless one is already parsing (or queued to parse) this log file.
+         */
+        private void schedule() {
+            if(scheduled.compareAndSet(false, true)) {
+                try {
+                    parsers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // The parsing has been abandoned
+                }
+            }
+        }
+
+        /**
+         * Parse one chunk, then queue behind the other log files for the next, so every log file with data read gets
+         * a share of the parse threads and none of them waits for a read.
+         */
+        public void run() {
+            Chunk chunk = chunks.poll();
+
+            if(null != chunk && !done.isDone()) {
+                try {
+                    parse(chunk);
+                } catch (Exception e) {
+                    done.completeExceptionally(e);
+                }
+            }
+
+            readAhead.release();
+            scheduled.set(false);
+
+            if(!chunks.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void parse(final Chunk chunk) throws IOException, ParseException {
+            if(null != chunk.failure) {
+                throw chunk.failure;
+            }
+
+            ////////////////////////////////////////////////////////////////
+            // Only the lines from the last line end of the held data on are
+            // new, the earlier ones were checked for a timestamp already
+            int checked = lastLineEnd(heldLength) + 1;
+
+            if(END == chunk) {
+                readPastTail(checked, true);
+                parse(heldLength);
+                done.complete(logEntries);
+                return;
+            }
+
+            if(heldLength + chunk.length > held.length) {
+                held = Arrays.copyOf(held, Math.max(2 * held.length, heldLength + chunk.length));
+            }
+
+            System.arraycopy(chunk.data, 0, held, heldLength, chunk.length);
+            heldLength += chunk.length;
+
+            if(readPastTail(checked, false)) {
+                checked = 0;
+            }
+
+            int cut = lastTimeStampLine(checked);
+
+            if(cut >= 0) {
+                started = true;
+                parse(cut);
+            } else if(!started) {
+                ////////////////////////////////////////////////////////////
+                // No timestamp yet, the whole lines are skipped in any case
+                parse(lastLineEnd(heldLength) + 1);
+            }
+
+            limit();
+            holding(heldLength);
+        }
+
+        /**
+         * Parse the log entries of the held data up to (but not including) length, holding back the rest.
+         */
+        private void parse(final int length) throws IOException, ParseException {
+            if(length > 0) {
+                try (LogEntryReader reader =
+                             new LogEntryReader(
+                                     logFilePath,
+                                     new LineReader(
+                                             new ByteArrayInputStream(held, 0, length),
+                                             Charset.defaultCharset(),
+                                             heldOffset),
+                                     timestampDateFormat,
+                                     startAt,
+                                     endAt,
+                                     searchText,
+                                     timestampAdjustment)) {
+                    reader.setLineStore(lineStore);
+                    reader.setFieldFilter(fieldFilter);
+                    reader.setEntryLimits(entryLimits);
+                    reader.readPast(pastLines, pastBytes);
+
+                    while(reader.hasNext()) {
+                        logEntries.add(reader.next());
+                    }
+                }
+
+                System.arraycopy(held, length, held, 0, heldLength - length);
+                heldLength  -= length;
+                heldOffset  += length + pastBytes;
+
+                ////////////////////////////////////////
+                // The held data starts a new log entry
+                counted     = 0;
+                entryLines  = 0;
+                entryChars  = 0;
+                dropping    = false;
+                pastLines   = 0;
+                pastBytes   = 0;
+            }
+        }
+
+        /**
+         * Read past the lines of the held log entry that the entry limits are sure to leave out, only counting them,
+         * so a runaway log entry is never held whole. Once the lines counted so far can't all be kept, even with every
+         * character taking MAX_CHAR_BYTES bytes, the grouper leaves out the last of them at the latest and so all the
+         * lines after it, which are read past here. The grouper then adds them to the marker line of the log entry.
+         */
+        private void limit() {
+            if(null == entryLimits) {
+                return;
+            }
+
+            int maxBytes = entryLimits.getMaxBytes();
+            int maxLines = entryLimits.getMaxLines();
+            int next;
+
+            while(started && (next = nextLineStart(counted)) >= 0) {
+                if(dropping) {
+                    remove(counted, next);
+                    pastLines++;
+                    pastBytes += next - counted;
+                    continue;
+                }
+
+                int lineBytes = lineEnd(counted) - counted;
+
+                entryLines++;
+                entryChars += (0 == maxBytes ? lineBytes : Math.min(lineBytes, maxBytes)) / MAX_CHAR_BYTES
+                                + Utils.LINE_SEP.length();
+                counted     = next;
+                dropping    = (0 != maxLines && entryLines > maxLines) || (0 != maxBytes && entryChars > maxBytes);
+            }
+
+            ////////////////////////////////////////////////////////////////
+            // Of a line with no end yet (log entry or not) only as much is
+            // held as the grouper keeps of it, or needs to spot a timestamp
+            int tailStart   = lastLineEnd(heldLength) + 1;
+            int keep        = Math.max(maxBytes, patternBytes) + 1;
+
+            if(0 != maxBytes && heldLength - tailStart > keep) {
+                tailPastBytes += heldLength - tailStart - keep;
+                remove(tailStart + keep, heldLength);
+            }
+        }
+
+        /**
+         * Count the bytes read past of the line that had no end, once it has one (or the log file ended), for the
+         * log entry it starts, else for the held log entry.
+         *
+         * @param tailStart The start of the line.
+         * @param end true if the log file has ended.
+         * @return true if the line starts a log entry, it's at the start of the held data now.
+         */
+        private boolean readPastTail(final int tailStart, final boolean end) throws IOException, ParseException {
+            int tailEnd = lineEnd(tailStart);
+
+            if(0 == tailPastBytes || (tailEnd < 0 && !end)) {
+                return false;
+            }
+
+            boolean entryStart = timeStampLine(tailStart, (tailEnd < 0) ? heldLength : tailEnd);
+
+            if(entryStart) {
+                started = true;
+                parse(tailStart);
+            }
+
+            if(started) {
+                pastBytes += tailPastBytes;
+            } else {
+                heldOffset += tailPastBytes;
+            }
+
+            tailPastBytes = 0;
+
+            return entryStart;
+        }
+
+        /**
+         * Drop the held data from (including) from to (but not including) to.
+         */
+        private void remove(final int from, final int to) {
+            System.arraycopy(held, to, held, from, heldLength - to);
+            heldLength -= to - from;
+        }
+
+        /**
+         * @param from The start of the lines to check, the lines before it were checked already.
+         * @return The start of the last whole line of the held data, at or after from, that starts with a timestamp;
+         *         else -1.
+         */
+        private int lastTimeStampLine(final int from) {
+            int lineEnd = lastLineEnd(heldLength);
+
+            while(lineEnd >= 0) {
+                int lineStart = lastLineEnd(lineEnd) + 1;
+
+                if(lineStart < from) {
+                    break;
+                }
+
+                if(timeStampLine(lineStart, lineEnd)) {
+                    return lineStart;
+                }
+
+                lineEnd = lineStart - 1;
+            }
+
+            return -1;
+        }
+
+        /**
+         * @return true if the line of the held data from lineStart to (but not including) lineEnd starts with a
+         *         timestamp.
+         */
+        private boolean timeStampLine(final int lineStart, final int lineEnd) {
+            String line = new String(
+                                held, lineStart, Math.min(lineEnd - lineStart, patternBytes),
+                                Charset.defaultCharset());
+
+            return Utils.mSecTimeStampFromStartOfLine(line, sdf) > 0;
+        }
+
+        /**
+         * @return The index of the last line end ('\n' or '\r') in the held data before the index before; else -1.
+         */
+        private int lastLineEnd(final int before) {
+            for(int i = before - 1 ; i >= 0 ; i--) {
+                if('\n' == held[i] || '\r' == held[i]) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * @return The index of the first line end ('\n' or '\r') in the held data at or after from; else -1.
+         */
+        private int lineEnd(final int from) {
+            for(int i = from ; i < heldLength ; i++) {
+                if('\n' == held[i] || '\r' == held[i]) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * @return The start of the line after the one at from, past its "\n", "\r" or "\r\n"; else -1 if the line
+         *         has no end yet (or ends with the last byte held, a '\r' that may be followed by a '\n').
+         */
+        private int nextLineStart(final int from) {
+            int end = lineEnd(from);
+
+            if(end < 0 || ('\r' == held[end] && end + 1 == heldLength)) {
+                return -1;
+            }
+
+            return ('\r' == held[end] && '\n' == held[end + 1]) ? end + 2 : end + 1;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.insight.utils;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Select the log entries that match the text filters, together with the log entries (from any source) around them,
+ * from time sorted log entries, like grep -C over the merged log files.
+ *
+ * The context is either a time window, a number of log entries or both (a log entry is context if it is within either).
+ * Only the log entries that could still precede a match are held, and overlapping contexts are output once.
+ */
+public class ContextFilter implements Iterator<LogEntry> {
+    private final Iterator<LogEntry> logEntries;
+    private final List<String> searchText;
+    private final long contextMillis;
+    private final int contextEntries;
+    private final ArrayDeque<LogEntry> before       = new ArrayDeque<>();
+    private final ArrayDeque<LogEntry> selected     = new ArrayDeque<>();
+    private long afterUntilTs                       = Long.MIN_VALUE;
+    private int afterEntries                        = 0;
+
+    /**
+     * @param logEntries The time sorted log entries, not filtered by text.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param contextMillis The mS either side of a match to select log entries from; else 0.
+     * @param contextEntries The number of log entries either side of a match to select; else 0.
+     */
+    public ContextFilter(
+            final Iterator<LogEntry> logEntries,
+            final List<String> searchText,
+            final long contextMillis,
+            final int contextEntries) {
+        this.logEntries     = logEntries;
+        this.searchText     = searchText;
+        this.contextMillis  = contextMillis;
+        this.contextEntries = contextEntries;
+    }
+
+    public boolean hasNext() {
+        while(selected.isEmpty() && logEntries.hasNext()) {
+            select(logEntries.next());
+        }
+
+        return !selected.isEmpty();
+    }
+
+    public LogEntry next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return selected.pollFirst();
+    }
+
+    private void select(final LogEntry logEntry) {
+        long ts = logEntry.getRawTimeStamp();
+
+        if(Utils.matchesSearchText(logEntry.getPayload(), searchText)) {
+            ////////////////////////////////////////////////////////
+            // Everything still held is the context of this match
+            trim(ts);
+            selected.addAll(before);
+            before.clear();
+            selected.addLast(logEntry);
+
+            afterUntilTs    = (contextMillis > 0) ? ts + contextMillis : Long.MIN_VALUE;
+            afterEntries    = contextEntries;
+
+            return;
+        }
+
+        if(ts <= afterUntilTs || afterEntries > 0) {
+            selected.addLast(logEntry);
+
+            if(afterEntries > 0) {
+                afterEntries--;
+            }
+
+            return;
+        }
+
+        //////////////////////////////////////////////////////////////
+        // Only hold what a later match could still need as context
+        before.addLast(logEntry);
+        trim(ts);
+    }
+
+    private void trim(final long ts) {
+        while(!before.isEmpty()
+                && before.size() > contextEntries
+                && (contextMillis < 1 || before.peekFirst().getRawTimeStamp() < ts - contextMillis)) {
+            before.pollFirst();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.insight.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Write time sorted log entries as CSV (RFC 4180), a header row and then a row per log entry e.g.
+ *
+ * <pre>
+ * source,path,timestamp,time,delta,payload
+ * 1,server.log,1463367600000,"2016-05-16 03:00:00,000",0," INFO started"
+ * </pre>
+ *
+ * Fields containing a comma, quote or line break are quoted, a multi line payload stays in a single (quoted) field.
+ */
+public class CsvEntryWriter extends FieldEntryWriter {
+    private static final String ROW_END = "\r\n";
+
+    /**
+     * @param sources A list of the sources that make up the time sorted log entries.
+     * @param out The stream to write to.
+     */
+    public CsvEntryWriter(final List<String> sources, final OutputStream out) {
+        super(sources, out);
+    }
+
+    @Override
+    protected void writeHeader() throws IOException {
+        out.write("source,path,timestamp,time,delta,payload");
+        out.write(ROW_END);
+    }
+
+    @Override
+    protected void writeEntry(final int sourceIndex, final LogEntry logEntry, final long diffTs) throws IOException {
+        String payload = logEntry.getPayload();
+
+        writeLong(sourceIndex);
+        out.write(',');
+        writeField(logEntry.getSource(), logEntry.getSource().length());
+        out.write(',');
+        writeLong(logEntry.getRawTimeStamp());
+        out.write(',');
+        writeField(logEntry.getDisplayTimeStamp(), logEntry.getDisplayTimeStamp().length());
+        out.write(',');
+        writeLong(diffTs);
+        out.write(',');
+        writeField(payload, payloadLength(payload));
+        out.write(ROW_END);
+    }
+
+    private void writeField(final String value, final int length) throws IOException {
+        boolean quote = false;
+
+        for(int i = 0 ; i < length && !quote ; i++) {
+            char c  = value.charAt(i);
+            quote   = (',' == c || '"' == c || '\n' == c || '\r' == c);
+        }
+
+        if(!quote) {
+            out.write(value, 0, length);
+            return;
+        }
+
+        out.write('"');
+
+        int start = 0;
+        for(int i = 0 ; i < length ; i++) {
+            if('"' == value.charAt(i)) {
+                /////////////////////////////
+                // Quotes are doubled up
+                out.write(value, start, i + 1 - start);
+                start = i;
+            }
+        }
+
+        out.write(value, start, length - start);
+        out.write('"');
+    }
+}
@@ -0,0 +1,166 @@
+package com.insight.utils;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+
+/**
+ * Group the lines of a log into the (unfiltered) data of each log entry.
+ *
+ * Lines before the first timestamp are skipped, and each entry is made up of a timestamp line plus all the following
+ * lines up to (but not including) the next timestamp line, each line followed by Utils.LINE_SEP. When limits are set
+ * (see EntryLimits) only the prefix of an entry within them is kept, followed by a marker line.
+ */
+class EntryGrouper {
+    private final LineReader lineReader;
+    private final SimpleDateFormat sdf;
+    private final StringBuilder currentEntry    = new StringBuilder();
+    private String pendingLine                  = null;
+    private long pendingTs                      = 0;
+    private long pendingOffset                  = -1;
+    private boolean pendingTruncated            = false;
+    private EntryLimits limits                  = null;
+    private long pastLines                      = 0;
+    private long pastBytes                      = 0;
+    private long timeStamp                      = 0;
+    private long offset                         = -1;
+
+    /**
+     * @param lineReader Where to read the lines of the log data from.
+     * @param sdf A (non lenient) date formatter for the log entry's timestamp, only used by this grouper.
+     */
+    EntryGrouper(final LineReader lineReader, final SimpleDateFormat sdf) {
+        this.lineReader = lineReader;
+        this.sdf        = sdf;
+    }
+
+    /**
+     * @param limits The most of a log entry to keep; else null for no limit.
+     */
+    void setLimits(final EntryLimits limits) {
+        this.limits = limits;
+        lineReader.setMaxLineLength((null == limits) ? 0 : limits.getMaxBytes());
+    }
+
+    /**
+     * Count lines and bytes of the next log entry that were read past before they got to this grouper (see
+     * ConcurrentIngest), so its marker line still says how much was left out.
+     *
+     * @param lines The number of whole lines left out.
+     * @param bytes The number of bytes left out.
+     */
+    void readPast(final long lines, final long bytes) {
+        pastLines = lines;
+        pastBytes = bytes;
+    }
+
+    /**
+     * Read the lines of the next log entry.
+     *
+     * @return The data of the log entry; else null when there are no more.
+     * @throws IOException
+     */
+    String next() throws IOException {
+        /////////////////////////////////////////////////////
+        // Initially skip all lines until we find a timestamp
+        while(null == pendingLine) {
+            String line = lineReader.readLine();
+
+            if(null == line) {
+                return null;
+            }
+
+            long ts = Utils.mSecTimeStampFromStartOfLine(line, sdf);
+
+            if(ts > 0) {
+                pendingLine         = line;
+                pendingTs           = ts;
+                pendingOffset       = lineReader.getLineOffset();
+                pendingTruncated    = lineReader.isTruncated();
+            }
+        }
+
+        ////////////////////////////////////////////////////////////////////////
+        // Extract all the lines up to but not including the next timestamp line
+        timeStamp   = pendingTs;
+        offset      = pendingOffset;
+
+        currentEntry.setLength(0);
+        currentEntry.append(pendingLine).append(Utils.LINE_SEP);
+        pendingLine = null;
+
+        int lines           = 1;
+        long droppedLines   = 0;
+        boolean truncated   = pendingTruncated;
+
+        String line;
+        while(null != (line = lineReader.readLine())) {
+            long ts = Utils.mSecTimeStampFromStartOfLine(line, sdf);
+
+            if(ts > 0) {
+                // Found the next log entry timestamp
+                pendingLine         = line;
+                pendingTs           = ts;
+                pendingOffset       = lineReader.getLineOffset();
+                pendingTruncated    = lineReader.isTruncated();
+                break;
+            }
+
+            if(null != limits
+                    && (droppedLines > 0
+                        || !limits.admits(lines, currentEntry.length(), line.length() + Utils.LINE_SEP.length()))) {
+                // Read past the rest of the entry, only counting it
+                droppedLines++;
+                continue;
+            }
+
+            currentEntry.append(line).append(Utils.LINE_SEP);
+            lines++;
+        }
+
+        if(truncated || droppedLines > 0 || pastLines > 0) {
+            long end = (null == pendingLine) ? lineReader.getOffset() : pendingOffset;
+
+            currentEntry.append(EntryLimits.marker(droppedLines + pastLines, end - offset + pastBytes))
+                        .append(Utils.LINE_SEP);
+        }
+
+        pastLines = 0;
+        pastBytes = 0;
+
+        return currentEntry.toString();
+    }
+
+    /**
+     * @return The (unadjusted) mS timestamp of the log entry last returned by next().
+     */
+    long getTimeStamp() {
+        return timeStamp;
+    }
+
+    /**
+     * @return The byte offset of the start of the log entry last returned by next().
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The byte offset just past the data read so far.
+     */
+    long getReadOffset() {
+        return lineReader.getOffset();
+    }
+
+    /**
+     * @return The formatter used for the log entry's timestamp.
+     */
+    SimpleDateFormat getDateFormat() {
+        return sdf;
+    }
+
+    void close() {
+        try {
+            lineReader.close();
+        } catch (IOException e) {}
+    }
+}
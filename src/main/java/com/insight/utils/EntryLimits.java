@@ -0,0 +1,80 @@
+package com.insight.utils;
+
+/**
+ * The most of a log entry to keep in memory, so a runaway log entry (e.g. megabytes of continuation lines, or a binary
+ * section with no timestamps) can't exhaust the memory.
+ *
+ * A log entry over a limit keeps its timestamp line and as many of the following lines as fit, then a marker line
+ * saying how much was left out. The lines left out are read past, never held, and a single line is never held beyond
+ * the byte limit either. As only the kept prefix exists in memory, the search text and field conditions only see it.
+ */
+public class EntryLimits {
+    public static final String MARKER   = "... [truncated ";
+    public static final int MIN_BYTES   = 128;
+
+    private final int maxBytes;
+    private final int maxLines;
+
+    /**
+     * @param maxBytes The most bytes (characters) of a log entry to keep; else 0 for no limit.
+     * @param maxLines The most lines of a log entry to keep; else 0 for no limit.
+     * @throws RuntimeException if a limit is invalid.
+     */
+    public EntryLimits(final long maxBytes, final int maxLines) {
+        if(0 != maxBytes && (maxBytes < MIN_BYTES || maxBytes > Integer.MAX_VALUE - 1024)) {
+            throw new RuntimeException("Invalid entry bytes [" + maxBytes + "], it has to be 0, or >= " + MIN_BYTES
+                    + " (to keep the timestamp) and < 2G");
+        }
+
+        if(maxLines < 0) {
+            throw new RuntimeException("Invalid entry lines [" + maxLines + "], it has to be >= 0");
+        }
+
+        this.maxBytes   = (int) maxBytes;
+        this.maxLines   = maxLines;
+    }
+
+    /**
+     * @param maxBytes The most bytes (characters) of a log entry to keep; else 0 for no limit.
+     * @param maxLines The most lines of a log entry to keep; else 0 for no limit.
+     * @return The limits; else null if there are none.
+     */
+    public static EntryLimits of(final long maxBytes, final int maxLines) {
+        return (0 == maxBytes && 0 == maxLines) ? null : new EntryLimits(maxBytes, maxLines);
+    }
+
+    /**
+     * @return The most bytes of a log entry to keep; else 0 for no limit.
+     */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return The most lines of a log entry to keep; else 0 for no limit.
+     */
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    /**
+     * Determine if another line fits in a log entry.
+     *
+     * @param lines The number of lines kept so far.
+     * @param length The length of the lines kept so far.
+     * @param lineLength The length of the line (with its separator).
+     * @return true if the line can be kept.
+     */
+    boolean admits(final int lines, final int length, final int lineLength) {
+        return (0 == maxLines || lines < maxLines) && (0 == maxBytes || (long) length + lineLength <= maxBytes);
+    }
+
+    /**
+     * @param droppedLines The number of lines left out.
+     * @param entryBytes The size of the whole log entry, as read.
+     * @return The line marking a truncated log entry.
+     */
+    static String marker(final long droppedLines, final long entryBytes) {
+        return MARKER + droppedLines + " lines, " + entryBytes + " bytes in all]";
+    }
+}
@@ -0,0 +1,38 @@
+package com.insight.utils;
+
+import java.util.List;
+
+/**
+ * Write time sorted log entries, one at a time, in one of the output formats.
+ */
+public interface EntryWriter {
+    /**
+     * Write whatever precedes the log entries.
+     *
+     * @param label Text to display at the top of the output
+     */
+    void begin(String label);
+
+    /**
+     * Write the next time sorted log entry.
+     *
+     * @param logEntry The log entry.
+     */
+    void write(LogEntry logEntry);
+
+    /**
+     * Write the next time sorted log entries, the same as writing them one at a time.
+     *
+     * @param logEntries The log entries.
+     */
+    default void writeAll(final List<LogEntry> logEntries) {
+        for(LogEntry logEntry : logEntries) {
+            write(logEntry);
+        }
+    }
+
+    /**
+     * Finish writing, flushing anything buffered.
+     */
+    void end();
+}
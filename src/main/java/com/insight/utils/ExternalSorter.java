@@ -0,0 +1,509 @@
+package com.insight.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Time sort the log entries of log files that are not (or not entirely) in time order, using a bounded amount of
+ * memory.
+ *
+ * The log entries of a log file are collected into runs of up to half the memory budget. A run that is already in
+ * time order is only remembered as a byte range of the log file and read again when needed, an out of order run is
+ * (stable) sorted and spilled to a temporary file as a compact binary record per log entry (timestamp, payload
+ * length, UTF-8 payload). The last run of a log file is kept in memory while the kept runs fit in the other half of
+ * the budget. The runs of a log file are then merged back lazily, giving the same order as a stable sort of the
+ * whole log file.
+ *
+ * Each run read from a file holds an open file and a 64K read buffer while it is merged, and these buffers are charged
+ * against the half of the budget the kept runs are held in. When a log file has more runs than the rest of that half
+ * has buffers for (or more than MAX_FAN_IN) the runs are first merged into fewer, longer spilled runs, a group of
+ * consecutive runs at a time, in as many passes as it takes. At least two runs of each log file are left to merge.
+ */
+public class ExternalSorter implements AutoCloseable {
+    static final int RUN_BUFFER_BYTES               = 64 * 1024;
+    static final int MAX_FAN_IN                     = 64;
+    private static final int MIN_FAN_IN             = 2;
+    private final long maxBytes;
+    private final File tempDirectory;
+    private final List<File> tempFiles              = new ArrayList<>();
+    private final List<AutoCloseable> openStreams   = new ArrayList<>();
+    private long memoryRunBytes                     = 0;
+    private long runBufferBytes                     = 0;
+    private int unsortedSources                     = 0;
+    private int spilledRuns                         = 0;
+    private int mergePasses                         = 0;
+    private long spilledBytes                       = 0;
+    private FieldFilter fieldFilter                 = null;
+    private EntryLimits entryLimits                 = null;
+
+    /**
+     * @param maxBytes The (estimated) maximum amount of memory to hold log entries in.
+     */
+    public ExternalSorter(final long maxBytes) {
+        this(maxBytes, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * @param maxBytes The (estimated) maximum amount of memory to hold log entries in.
+     * @param tempDirectory Where to write the spilled runs.
+     */
+    public ExternalSorter(final long maxBytes, final File tempDirectory) {
+        this.maxBytes       = maxBytes;
+        this.tempDirectory  = tempDirectory;
+    }
+
+    /**
+     * @param fieldFilter The field conditions a log entry has to pass; else null to not filter by field.
+     */
+    public void setFieldFilter(final FieldFilter fieldFilter) {
+        this.fieldFilter = fieldFilter;
+    }
+
+    /**
+     * @param entryLimits The most of a log entry to keep in memory; else null for no limit.
+     */
+    public void setEntryLimits(final EntryLimits entryLimits) {
+        this.entryLimits = entryLimits;
+    }
+
+    /**
+     * Read all the log entries of a log file, returning them time sorted.
+     *
+     * @param logFilePath The file containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+     *                null or empty implies no filtering
+     * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+     *              null or empty implies no filtering.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param timestampAdjustment A mS adjustment to the log entries timestamp.
+     *
+     * @return The log entries in the same order as Utils.timeSortLists would put them, read lazily.
+     * @throws IOException
+     * @throws ParseException
+     */
+    public Iterator<LogEntry> sort(
+            final String logFilePath,
+            final String timestampDateFormat,
+            final String startAt,
+            final String endAt,
+            final List<String> searchText,
+            final int timestampAdjustment) throws IOException, ParseException {
+        final RangeReader rangeReader = new RangeReader() {
+            public LogEntryReader open(final long from, final long to) throws IOException, ParseException {
+                LogEntryReader reader = LogEntryReader.open(logFilePath,
+                        Collections.singletonList(new long[] { from, to }),
+                        timestampDateFormat, startAt, endAt, searchText, timestampAdjustment);
+
+                reader.setFieldFilter(fieldFilter);
+                reader.setEntryLimits(entryLimits);
+
+                return reader;
+            }
+        };
+        List<Run> runs          = new ArrayList<>();
+        List<LogEntry> buffer   = new ArrayList<>();
+        long bufferBytes        = 0;
+        long bufferOffset       = 0;
+        boolean bufferSorted    = true;
+        boolean sourceSorted    = true;
+
+        try (LogEntryReader reader = rangeReader.open(0, Long.MAX_VALUE)) {
+            while(reader.hasNext()) {
+                LogEntry logEntry = reader.next();
+
+                if(bufferBytes >= maxBytes / 2) {
+                    /////////////////////////////////////////////////////////////////
+                    // The run ends just before the log entry that doesn't fit in it
+                    runs.add(spill(buffer, bufferSorted, bufferOffset, reader.getEntryOffset(), rangeReader,
+                            timestampDateFormat));
+
+                    buffer          = new ArrayList<>();
+                    bufferBytes     = 0;
+                    bufferSorted    = true;
+                }
+
+                if(buffer.isEmpty()) {
+                    bufferOffset = reader.getEntryOffset();
+                } else if(logEntry.getRawTimeStamp() < buffer.get(buffer.size() - 1).getRawTimeStamp()) {
+                    bufferSorted = false;
+                    sourceSorted = false;
+                }
+
+                buffer.add(logEntry);
+                bufferBytes += logEntry.getEstimatedSize();
+            }
+        }
+
+        if(!sourceSorted) {
+            unsortedSources++;
+        }
+
+        if(!buffer.isEmpty()) {
+            if(memoryRunBytes + runBufferBytes + bufferBytes <= maxBytes / 2) {
+                if(!bufferSorted) {
+                    Collections.sort(buffer);
+                }
+
+                memoryRunBytes += bufferBytes;
+                runs.add(new MemoryRun(buffer));
+            } else {
+                runs.add(spill(buffer, bufferSorted, bufferOffset, Long.MAX_VALUE, rangeReader, timestampDateFormat));
+            }
+        }
+
+        if(sourceSorted && runs.size() > 1 && runs.get(0) instanceof RangeRun) {
+            ////////////////////////////////////////////////////////////////
+            // The runs of a log file in time order just follow each other,
+            // so the ones read from the log file are read as a single run
+            List<Run> ranges    = new ArrayList<>();
+            long to             = -1;
+
+            for(Run run : runs) {
+                if(run instanceof RangeRun) {
+                    to = ((RangeRun) run).to;
+                }
+            }
+
+            ranges.add(rangeRun(rangeReader, ((RangeRun) runs.get(0)).from, to));
+            if(runs.get(runs.size() - 1) instanceof MemoryRun) {
+                ranges.add(runs.get(runs.size() - 1));
+            }
+            runs = ranges;
+        }
+
+        runs = reduce(runs, logFilePath, timestampDateFormat);
+
+        for(Run run : runs) {
+            if(!(run instanceof MemoryRun)) {
+                runBufferBytes += RUN_BUFFER_BYTES;
+            }
+        }
+
+        return open(runs);
+    }
+
+    /**
+     * @return The number of log files that were not in time order.
+     */
+    public int getUnsortedSources() {
+        return unsortedSources;
+    }
+
+    /**
+     * @return The number of runs written to temporary files.
+     */
+    public int getSpilledRuns() {
+        return spilledRuns;
+    }
+
+    /**
+     * @return The number of passes that merged runs into fewer runs, before they were merged back.
+     */
+    public int getMergePasses() {
+        return mergePasses;
+    }
+
+    /**
+     * @return The bytes charged for the read buffers of the runs being merged back.
+     */
+    public long getRunBufferBytes() {
+        return runBufferBytes;
+    }
+
+    /**
+     * @return The number of bytes written to temporary files.
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Close anything still being read, and delete the temporary files.
+     */
+    public void close() {
+        for(AutoCloseable stream : openStreams) {
+            try {
+                stream.close();
+            } catch (Exception e) {}
+        }
+        openStreams.clear();
+
+        for(File file : tempFiles) {
+            file.delete();
+        }
+        tempFiles.clear();
+    }
+
+    private Run spill(
+            final List<LogEntry> buffer,
+            final boolean sorted,
+            final long from,
+            final long to,
+            final RangeReader rangeReader,
+            final String timestampDateFormat) throws IOException {
+        if(sorted) {
+            ///////////////////////////////////////////////////////
+            // Already in order, read it again from the log file
+            return rangeRun(rangeReader, from, to);
+        }
+
+        Collections.sort(buffer);
+
+        return write(buffer.get(0).getSource(), buffer.iterator(), timestampDateFormat);
+    }
+
+    private Run rangeRun(final RangeReader rangeReader, final long from, final long to) {
+        return new RangeRun(from, to) {
+            public Iterator<LogEntry> open() throws IOException {
+                try {
+                    LogEntryReader reader = rangeReader.open(from, to);
+                    openStreams.add(reader);
+                    return reader;
+                } catch (ParseException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Merge groups of consecutive runs into single spilled runs until there are few enough runs to read back at once.
+     * Merging consecutive runs keeps the order of log entries with the same timestamp.
+     */
+    private List<Run> reduce(List<Run> runs, final String source, final String timestampDateFormat)
+            throws IOException {
+        long available  = maxBytes / 2 - memoryRunBytes - runBufferBytes;
+        int fanIn       = (int) Math.max(MIN_FAN_IN, Math.min(MAX_FAN_IN, available / RUN_BUFFER_BYTES));
+
+        while(fileRuns(runs) > fanIn) {
+            List<Run> merged = new ArrayList<>();
+
+            for(int i = 0 ; i < runs.size() ; i += fanIn) {
+                List<Run> group = runs.subList(i, Math.min(runs.size(), i + fanIn));
+
+                if(1 == group.size() || group.get(group.size() - 1) instanceof MemoryRun) {
+                    /////////////////////////////////////////////////////////////
+                    // The memory run (always the last) costs no buffer, keep it
+                    merged.addAll(group);
+                } else {
+                    merged.add(write(source, open(group), timestampDateFormat));
+                    delete(group);
+                }
+            }
+
+            runs = merged;
+            mergePasses++;
+        }
+
+        return runs;
+    }
+
+    private Iterator<LogEntry> open(final List<Run> runs) throws IOException {
+        if(1 == runs.size()) {
+            return runs.get(0).open();
+        }
+
+        List<Iterator<LogEntry>> opened = new ArrayList<>();
+        for(Run run : runs) {
+            opened.add(run.open());
+        }
+
+        return new LogEntryMerger(opened);
+    }
+
+    private Run write(final String source, final Iterator<LogEntry> logEntries, final String timestampDateFormat)
+            throws IOException {
+        final File file = File.createTempFile("logviewer", ".run", tempDirectory);
+
+        file.deleteOnExit();
+        tempFiles.add(file);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            while(logEntries.hasNext()) {
+                LogEntry logEntry   = logEntries.next();
+                byte[] payload      = logEntry.getPayload().getBytes(StandardCharsets.UTF_8);
+
+                ////////////////////////////////////////////////
+                // The payload length plus one, zero ends the run
+                writeVarInt(out, payload.length + 1);
+                out.writeLong(logEntry.getRawTimeStamp());
+                out.write(payload);
+            }
+            writeVarInt(out, 0);
+        }
+
+        ////////////////////////////////////////////////////////////////
+        // Not out.size(), it's an int that stops counting at 2GB a run
+        spilledBytes += file.length();
+        spilledRuns++;
+
+        return new FileRun(file) {
+            public Iterator<LogEntry> open() throws IOException {
+                DataInputStream in =
+                        new DataInputStream(new BufferedInputStream(new FileInputStream(file), RUN_BUFFER_BYTES));
+                openStreams.add(in);
+                return new FileRunIterator(source, in, timestampDateFormat);
+            }
+        };
+    }
+
+    /**
+     * Delete the temporary files of runs that have been merged into another run.
+     */
+    private void delete(final List<Run> runs) {
+        for(Run run : runs) {
+            if(run instanceof FileRun) {
+                File file = ((FileRun) run).file;
+
+                file.delete();
+                tempFiles.remove(file);
+            }
+        }
+    }
+
+    private static int fileRuns(final List<Run> runs) {
+        int count = 0;
+
+        for(Run run : runs) {
+            if(!(run instanceof MemoryRun)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static void writeVarInt(final DataOutputStream out, int value) throws IOException {
+        while((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(final DataInputStream in) throws IOException {
+        int value   = 0;
+        int shift   = 0;
+        int b;
+
+        do {
+            b       = in.readUnsignedByte();
+            value   |= (b & 0x7f) << shift;
+            shift   += 7;
+        } while((b & 0x80) != 0);
+
+        return value;
+    }
+
+    private interface Run {
+        Iterator<LogEntry> open() throws IOException;
+    }
+
+    private abstract static class FileRun implements Run {
+        final File file;
+
+        FileRun(final File file) {
+            this.file = file;
+        }
+    }
+
+    private abstract static class RangeRun implements Run {
+        final long from;
+        final long to;
+
+        RangeRun(final long from, final long to) {
+            this.from   = from;
+            this.to     = to;
+        }
+    }
+
+    private interface RangeReader {
+        LogEntryReader open(long from, long to) throws IOException, ParseException;
+    }
+
+    private static class MemoryRun implements Run {
+        private final List<LogEntry> logEntries;
+
+        MemoryRun(final List<LogEntry> logEntries) {
+            this.logEntries = logEntries;
+        }
+
+        public Iterator<LogEntry> open() {
+            return logEntries.iterator();
+        }
+    }
+
+    /**
+     * Read back the log entries of a spilled run.
+     */
+    private static class FileRunIterator implements Iterator<LogEntry> {
+        private final String source;
+        private final DataInputStream in;
+        private final SimpleDateFormat sdf;
+        private int nextLength;
+
+        FileRunIterator(final String source, final DataInputStream in, final String timestampDateFormat)
+                throws IOException {
+            this.source     = source;
+            this.in         = in;
+            this.sdf        = new SimpleDateFormat(timestampDateFormat);
+            this.nextLength = readLength();
+        }
+
+        public boolean hasNext() {
+            return nextLength >= 0;
+        }
+
+        public LogEntry next() {
+            if(nextLength < 0) {
+                throw new NoSuchElementException();
+            }
+
+            try {
+                long rawTimeStamp   = in.readLong();
+                byte[] payload      = new byte[nextLength];
+
+                in.readFully(payload);
+                nextLength = readLength();
+
+                return new LogEntry(
+                        source,
+                        rawTimeStamp,
+                        sdf.format(new Date(rawTimeStamp)),
+                        new String(payload, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Problems reading a sorted run of [" + source + "]", e);
+            }
+        }
+
+        /**
+         * @return The payload length of the next log entry; else -1, having closed the run, when there are no more.
+         */
+        private int readLength() throws IOException {
+            int length = readVarInt(in) - 1;
+
+            if(length < 0) {
+                in.close();
+            }
+
+            return length;
+        }
+    }
+}
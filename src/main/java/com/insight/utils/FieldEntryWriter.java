@@ -0,0 +1,118 @@
+package com.insight.utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The common part of the machine readable output formats, each log entry is written as the fields: source index,
+ * source path, raw timestamp, display timestamp, mS since the previous log entry and payload.
+ *
+ * The fields are written straight into a buffered UTF-8 writer, escaping as they go, so no per entry Strings are
+ * built. The payload is written without the line separator that ends its last line.
+ */
+abstract class FieldEntryWriter implements EntryWriter {
+    private static final int BUFFER_SIZE    = 64 * 1024;
+
+    protected final Writer out;
+    private final List<String> sources;
+    private final Map<String, Integer> sourceIndexes    = new HashMap<>();
+    private final char[] digits                         = new char[20];
+    private long lastTs                                 = -1;
+
+    /**
+     * @param sources A list of the sources that make up the time sorted log entries.
+     * @param out The stream to write to.
+     */
+    FieldEntryWriter(final List<String> sources, final OutputStream out) {
+        this.sources    = sources;
+        this.out        = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        for(int i = 0 ; i < sources.size() ; i++) {
+            if(!sourceIndexes.containsKey(sources.get(i))) {
+                sourceIndexes.put(sources.get(i), i);
+            }
+        }
+    }
+
+    public void begin(final String label) {
+        try {
+            writeHeader();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write(final LogEntry logEntry) {
+        Integer found   = sourceIndexes.get(logEntry.getSource());
+        long rawTs      = logEntry.getRawTimeStamp();
+        long diffTs     = (-1 == lastTs) ? 0 : rawTs - lastTs;
+
+        lastTs = rawTs;
+
+        try {
+            writeEntry((null == found) ? 0 : found + 1, logEntry, diffTs);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void end() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write anything that precedes the log entries.
+     */
+    protected abstract void writeHeader() throws IOException;
+
+    /**
+     * Write a log entry.
+     *
+     * @param sourceIndex The (1 based) index of the log entry's source.
+     * @param logEntry The log entry.
+     * @param diffTs The mS since the previous log entry.
+     */
+    protected abstract void writeEntry(int sourceIndex, LogEntry logEntry, long diffTs) throws IOException;
+
+    /**
+     * Write a number without building a String.
+     */
+    protected void writeLong(long value) throws IOException {
+        if(Long.MIN_VALUE == value) {
+            out.write(Long.toString(value));
+            return;
+        }
+
+        if(value < 0) {
+            out.write('-');
+            value = -value;
+        }
+
+        int position = digits.length;
+        do {
+            digits[--position]  = (char) ('0' + value % 10);
+            value               /= 10;
+        } while(value > 0);
+
+        out.write(digits, position, digits.length - position);
+    }
+
+    /**
+     * @return The length of the payload without the line separator that ends it.
+     */
+    protected static int payloadLength(final String payload) {
+        return payload.endsWith(Utils.LINE_SEP) ? payload.length() - Utils.LINE_SEP.length() : payload.length();
+    }
+}
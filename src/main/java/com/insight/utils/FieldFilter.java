@@ -0,0 +1,239 @@
+package com.insight.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+/**
+ * Filter log entries by the value of fields (e.g. level, thread, logger) in the first line of their payload, the text
+ * after the timestamp.
+ *
+ * A field is defined by a rule, either positional (name:N, the Nth whitespace separated word) or delimited (name:[],
+ * the text between the first [ and the following ]). A field is only extracted when a condition asks for it, by
+ * scanning the start of the first line for its bounds, and its value is compared in place, so the cost of a condition
+ * doesn't depend on the size of the log entry and text elsewhere in the log entry can't match.
+ *
+ * A log entry passes when, for every condition, its field is one of the condition's values.
+ */
+public class FieldFilter {
+    public static final String DEFAULT_FIELDS   = "level:1,thread:[],logger:3";
+
+    private final Field[] fields;
+    private final String[][] values;
+
+    private FieldFilter(final Field[] fields, final String[][] values) {
+        this.fields = fields;
+        this.values = values;
+    }
+
+    /**
+     * Build a filter from the command line field definitions and conditions.
+     *
+     * @param fieldDefinitions The field rules e.g. "level:1,thread:[],logger:3"; else null or empty for DEFAULT_FIELDS.
+     * @param conditions The conditions e.g. "level=ERROR,WARN", each a field name and the values it can have.
+     * @return The filter; else null if there are no conditions.
+     * @throws RuntimeException if a field definition or condition is invalid.
+     */
+    public static FieldFilter parse(final String fieldDefinitions, final List<String> conditions) {
+        Map<String, Field> defined = parseFields(
+                (null == fieldDefinitions || fieldDefinitions.trim().isEmpty()) ? DEFAULT_FIELDS : fieldDefinitions);
+
+        if(null == conditions || conditions.isEmpty()) {
+            return null;
+        }
+
+        List<Field> fields      = new ArrayList<>();
+        List<String[]> values   = new ArrayList<>();
+
+        for(String condition : conditions) {
+            int equals = condition.indexOf('=');
+
+            if(equals < 1 || equals == condition.length() - 1) {
+                throw new RuntimeException("Invalid field condition [" + condition + "], it has to be name=value,value...");
+            }
+
+            String name     = condition.substring(0, equals).trim();
+            Field field     = defined.get(name);
+
+            if(null == field) {
+                throw new RuntimeException("Unknown field [" + name + "] in [" + condition + "], the fields are "
+                        + defined.keySet());
+            }
+
+            List<String> accepted   = new ArrayList<>();
+            StringTokenizer st      = new StringTokenizer(condition.substring(equals + 1), ",");
+
+            while(st.hasMoreTokens()) {
+                accepted.add(st.nextToken());
+            }
+
+            fields.add(field);
+            values.add(accepted.toArray(new String[0]));
+        }
+
+        return new FieldFilter(fields.toArray(new Field[0]), values.toArray(new String[0][]));
+    }
+
+    /**
+     * Determine if a log entry's data passes the conditions.
+     *
+     * @param data The log entry's data (or payload).
+     * @param from Where the payload starts in the data, i.e. just after the timestamp.
+     * @return true if every condition's field has one of its values.
+     */
+    public boolean matches(final String data, final int from) {
+        int[] bounds = new int[2];
+
+        for(int i = 0 ; i < fields.length ; i++) {
+            if(!fields[i].find(data, from, bounds) || !isOneOf(data, bounds[0], bounds[1] - bounds[0], values[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param logEntry The log entry.
+     * @return true if every condition's field has one of its values.
+     */
+    public boolean matches(final LogEntry logEntry) {
+        return matches(logEntry.getLeadingText(), 0);
+    }
+
+    private static boolean isOneOf(final String data, final int start, final int length, final String[] accepted) {
+        for(String value : accepted) {
+            if(value.length() == length && data.regionMatches(start, value, 0, length)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static Map<String, Field> parseFields(final String fieldDefinitions) {
+        Map<String, Field> fields   = new LinkedHashMap<>();
+        StringTokenizer st          = new StringTokenizer(fieldDefinitions, ",");
+
+        while(st.hasMoreTokens()) {
+            String definition   = st.nextToken().trim();
+            int colon           = definition.indexOf(':');
+
+            if(colon < 1 || colon == definition.length() - 1) {
+                throw new RuntimeException("Invalid field definition [" + definition + "], it has to be name:N or name:<open><close>");
+            }
+
+            String name = definition.substring(0, colon);
+            String rule = definition.substring(colon + 1);
+
+            if(Character.isDigit(rule.charAt(0))) {
+                int position;
+
+                try {
+                    position = Integer.parseInt(rule);
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("Invalid field position [" + definition + "]", e);
+                }
+
+                if(position < 1) {
+                    throw new RuntimeException("Invalid field position [" + definition + "], it has to be > 0");
+                }
+
+                fields.put(name, new Field(position, '\0', '\0'));
+            } else if(2 == rule.length()) {
+                fields.put(name, new Field(0, rule.charAt(0), rule.charAt(1)));
+            } else {
+                throw new RuntimeException("Invalid field definition [" + definition + "], it has to be name:N or name:<open><close>");
+            }
+        }
+
+        return fields;
+    }
+
+    /**
+     * The rule to find a field in the first line of a payload.
+     */
+    private static class Field {
+        private final int position;
+        private final char open;
+        private final char close;
+
+        Field(final int position, final char open, final char close) {
+            this.position   = position;
+            this.open       = open;
+            this.close      = close;
+        }
+
+        /**
+         * @param data The text to look in.
+         * @param from Where the payload starts.
+         * @param bounds Set to the start and end (exclusive) of the field.
+         * @return true if the field was found in the first line.
+         */
+        boolean find(final String data, final int from, final int[] bounds) {
+            int length  = data.length();
+            int i       = from;
+
+            if(position > 0) {
+                for(int word = 1 ; ; word++) {
+                    while(i < length && isBlank(data.charAt(i))) {
+                        i++;
+                    }
+
+                    if(i >= length || isLineEnd(data.charAt(i))) {
+                        return false;
+                    }
+
+                    int start = i;
+
+                    while(i < length && !isBlank(data.charAt(i)) && !isLineEnd(data.charAt(i))) {
+                        i++;
+                    }
+
+                    if(word == position) {
+                        bounds[0] = start;
+                        bounds[1] = i;
+                        return true;
+                    }
+                }
+            }
+
+            while(i < length && open != data.charAt(i)) {
+                if(isLineEnd(data.charAt(i++))) {
+                    return false;
+                }
+            }
+
+            if(i >= length) {
+                return false;
+            }
+
+            int start = ++i;
+
+            while(i < length && close != data.charAt(i)) {
+                if(isLineEnd(data.charAt(i++))) {
+                    return false;
+                }
+            }
+
+            if(i >= length) {
+                return false;
+            }
+
+            bounds[0] = start;
+            bounds[1] = i;
+
+            return true;
+        }
+
+        private static boolean isBlank(final char c) {
+            return ' ' == c || '\t' == c;
+        }
+
+        private static boolean isLineEnd(final char c) {
+            return '\n' == c || '\r' == c;
+        }
+    }
+}
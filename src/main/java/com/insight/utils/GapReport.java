@@ -0,0 +1,259 @@
+package com.insight.utils;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Report the largest gaps between time sorted log entries, instead of writing the log entries.
+ *
+ * The log entries are read once, as they are merged, and only the K largest gaps (with the log entries either side of
+ * them) are kept, in a min heap, both across all the sources and within each source. The distribution of the deltas
+ * between consecutive log entries is summarised by a histogram of log scaled buckets, so its percentiles are accurate
+ * to within 2% whatever the number of log entries.
+ */
+public class GapReport implements EntryWriter {
+    private final int topK;
+    private final List<String> sources;
+    private final PrintStream out;
+    private final Map<String, Integer> sourceIndexes    = new HashMap<>();
+    private final Gaps all;
+    private final Gaps[] perSource;
+    private final LogEntry[] lastOfSource;
+    private String label                                = null;
+    private LogEntry last                               = null;
+    private long sequence                               = 0;
+
+    /**
+     * @param topK The number of gaps to report, across all the sources and within each one.
+     * @param sources A list of the sources that make up the time sorted log entries.
+     * @param out The stream to write the report to.
+     */
+    public GapReport(final int topK, final List<String> sources, final PrintStream out) {
+        this.topK           = topK;
+        this.sources        = sources;
+        this.out            = out;
+        this.all            = new Gaps(topK);
+        this.perSource      = new Gaps[sources.size()];
+        this.lastOfSource   = new LogEntry[sources.size()];
+
+        for(int i = 0 ; i < sources.size() ; i++) {
+            if(!sourceIndexes.containsKey(sources.get(i))) {
+                sourceIndexes.put(sources.get(i), i);
+            }
+            perSource[i] = new Gaps(topK);
+        }
+    }
+
+    public void begin(final String label) {
+        this.label = label;
+    }
+
+    public void write(final LogEntry logEntry) {
+        Integer index = sourceIndexes.get(logEntry.getSource());
+
+        if(null != last) {
+            all.add(last, logEntry, sequence);
+        }
+        last = logEntry;
+
+        if(null != index) {
+            if(null != lastOfSource[index]) {
+                perSource[index].add(lastOfSource[index], logEntry, sequence);
+            }
+            lastOfSource[index] = logEntry;
+        }
+
+        sequence++;
+    }
+
+    public void end() {
+        if(null != label && label.trim().length() > 0) {
+            out.println("# Label: " + label);
+        }
+
+        out.println("# Sources:");
+        for(int i = 0 ; i < sources.size() ; i++) {
+            out.println(String.format("# %2d %s", i + 1, sources.get(i)));
+        }
+        out.println("#");
+
+        out.println("# Deltas (mS) between consecutive log entries:");
+        out.println(String.format("# %-6s %10s %10s %10s %10s %10s %10s %10s",
+                "", "deltas", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        out.println(all.histogram.summary("all"));
+        for(int i = 0 ; i < perSource.length ; i++) {
+            out.println(perSource[i].histogram.summary(String.format("%2d", i + 1)));
+        }
+        out.println("#");
+
+        emitGaps("# Top " + topK + " gaps:", all);
+
+        for(int i = 0 ; i < perSource.length ; i++) {
+            emitGaps(String.format("# Top %d gaps in %2d %s:", topK, i + 1, sources.get(i)), perSource[i]);
+        }
+
+        out.flush();
+    }
+
+    private void emitGaps(final String title, final Gaps gaps) {
+        out.println(title);
+
+        int rank = 1;
+        for(Gap gap : gaps.largest()) {
+            TextEntryWriter writer = new TextEntryWriter(sources, out);
+
+            out.println("#");
+            out.println(String.format("# %d: %d mS", rank++, gap.delta));
+            writer.write(gap.before);
+            writer.write(gap.after);
+        }
+
+        out.println("#");
+    }
+
+    /**
+     * The K largest gaps, and the histogram of all the deltas, of a sequence of log entries.
+     */
+    private static class Gaps {
+        private final int topK;
+        private final PriorityQueue<Gap> smallestFirst  = new PriorityQueue<>();
+        private final Histogram histogram               = new Histogram();
+
+        Gaps(final int topK) {
+            this.topK = topK;
+        }
+
+        void add(final LogEntry before, final LogEntry after, final long sequence) {
+            long delta = after.getRawTimeStamp() - before.getRawTimeStamp();
+
+            histogram.record(delta);
+
+            if(smallestFirst.size() < topK) {
+                smallestFirst.add(new Gap(delta, sequence, before, after));
+            } else if(delta > smallestFirst.peek().delta) {
+                smallestFirst.poll();
+                smallestFirst.add(new Gap(delta, sequence, before, after));
+            }
+        }
+
+        /**
+         * @return The gaps, largest first (earliest first for equal gaps).
+         */
+        List<Gap> largest() {
+            List<Gap> gaps = new ArrayList<>(smallestFirst);
+
+            Collections.sort(gaps, Collections.reverseOrder());
+
+            return gaps;
+        }
+    }
+
+    private static class Gap implements Comparable<Gap> {
+        private final long delta;
+        private final long sequence;
+        private final LogEntry before;
+        private final LogEntry after;
+
+        Gap(final long delta, final long sequence, final LogEntry before, final LogEntry after) {
+            this.delta      = delta;
+            this.sequence   = sequence;
+            this.before     = before;
+            this.after      = after;
+        }
+
+        /**
+         * Smaller gaps first, and of equal gaps the later one first, so the earliest of equal gaps are kept.
+         */
+        public int compareTo(final Gap o) {
+            if(delta != o.delta) {
+                return (delta < o.delta) ? -1 : 1;
+            }
+
+            return (sequence > o.sequence) ? -1 : (sequence < o.sequence) ? 1 : 0;
+        }
+    }
+
+    /**
+     * Count deltas in buckets, exact up to 127 mS and then 64 buckets for each power of 2, so a bucket is less than 2%
+     * of its values wide.
+     */
+    static class Histogram {
+        private static final int EXACT          = 128;
+        private static final int SUB_BUCKETS    = 64;
+
+        private final long[] counts = new long[EXACT + (64 - 7) * SUB_BUCKETS];
+        private long count          = 0;
+        private long total          = 0;
+        private long max            = 0;
+
+        void record(final long delta) {
+            long value = Math.max(0, delta);
+
+            counts[bucket(value)]++;
+            count++;
+            total   += value;
+            max     = Math.max(max, value);
+        }
+
+        /**
+         * @param fraction The fraction (e.g. 0.99) of the deltas at or below the value.
+         * @return The (lowest value of the bucket of the) delta at the fraction; else 0 if there are no deltas.
+         */
+        long percentile(final double fraction) {
+            long rank   = (long) Math.ceil(fraction * count);
+            long seen   = 0;
+
+            if(rank >= count) {
+                return max;
+            }
+
+            for(int i = 0 ; i < counts.length ; i++) {
+                seen += counts[i];
+
+                if(seen >= rank && seen > 0) {
+                    return Math.min(max, lowest(i));
+                }
+            }
+
+            return 0;
+        }
+
+        String summary(final String name) {
+            return String.format("# %-6s %10d %10.1f %10d %10d %10d %10d %10d",
+                    name,
+                    count,
+                    (0 == count) ? 0.0 : (double) total / count,
+                    percentile(0.5),
+                    percentile(0.9),
+                    percentile(0.99),
+                    percentile(0.999),
+                    max);
+        }
+
+        private static int bucket(final long value) {
+            if(value < EXACT) {
+                return (int) value;
+            }
+
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+            return EXACT + (exponent - 7) * SUB_BUCKETS + (int) ((value >>> (exponent - 6)) & (SUB_BUCKETS - 1));
+        }
+
+        private static long lowest(final int bucket) {
+            if(bucket < EXACT) {
+                return bucket;
+            }
+
+            int exponent = (bucket - EXACT) / SUB_BUCKETS + 7;
+            int mantissa = (bucket - EXACT) % SUB_BUCKETS;
+
+            return (1L << exponent) + ((long) mantissa << (exponent - 6));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.insight.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Write time sorted log entries as JSON Lines, one JSON object per log entry e.g.
+ *
+ * <pre>
+ * {"source":1,"path":"server.log","timestamp":1463367600000,"time":"2016-05-16 03:00:00,000","delta":0,"payload":" INFO started"}
+ * </pre>
+ */
+public class JsonLinesEntryWriter extends FieldEntryWriter {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * @param sources A list of the sources that make up the time sorted log entries.
+     * @param out The stream to write to.
+     */
+    public JsonLinesEntryWriter(final List<String> sources, final OutputStream out) {
+        super(sources, out);
+    }
+
+    @Override
+    protected void writeHeader() {
+    }
+
+    @Override
+    protected void writeEntry(final int sourceIndex, final LogEntry logEntry, final long diffTs) throws IOException {
+        String payload = logEntry.getPayload();
+
+        out.write("{\"source\":");
+        writeLong(sourceIndex);
+        out.write(",\"path\":");
+        writeString(logEntry.getSource(), logEntry.getSource().length());
+        out.write(",\"timestamp\":");
+        writeLong(logEntry.getRawTimeStamp());
+        out.write(",\"time\":");
+        writeString(logEntry.getDisplayTimeStamp(), logEntry.getDisplayTimeStamp().length());
+        out.write(",\"delta\":");
+        writeLong(diffTs);
+        out.write(",\"payload\":");
+        writeString(payload, payloadLength(payload));
+        out.write("}\n");
+    }
+
+    private void writeString(final String value, final int length) throws IOException {
+        out.write('"');
+
+        int start = 0;
+        for(int i = 0 ; i < length ; i++) {
+            char c = value.charAt(i);
+
+            if(c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+
+            ///////////////////////////////////////////////////
+            // Write what doesn't need escaping in one go
+            out.write(value, start, i - start);
+            start = i + 1;
+
+            switch(c) {
+                case '"':   out.write("\\\""); break;
+                case '\\':  out.write("\\\\"); break;
+                case '\n':  out.write("\\n"); break;
+                case '\r':  out.write("\\r"); break;
+                case '\t':  out.write("\\t"); break;
+                default:
+                    out.write("\\u00");
+                    out.write(HEX[c >> 4]);
+                    out.write(HEX[c & 0xf]);
+            }
+        }
+
+        out.write(value, start, length - start);
+        out.write('"');
+    }
+}
@@ -0,0 +1,195 @@
+package com.insight.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Read lines of text incrementally from a byte stream, keeping track of the byte offset of every line.
+ *
+ * Lines are terminated by '\n', '\r' or "\r\n" (the terminator is not part of the returned line), and are decoded
+ * with the supplied charset, which has to be ASCII compatible (e.g. the platform default, UTF-8, ISO-8859-1).
+ *
+ * A maximum line length can be set, the bytes of a line past it are read over but not kept. The line terminators are
+ * found by a ByteScanner, many bytes at a time where the JVM allows it.
+ */
+public class LineReader implements Closeable {
+    private static final int BUFFER_SIZE        = 64 * 1024;
+    private static final ByteScanner SCANNER    = ByteScanner.get();
+
+    private final InputStream in;
+    private final Charset charset;
+    private final byte[] buffer             = new byte[BUFFER_SIZE];
+    private byte[] lineBuffer               = new byte[256];
+    private int position                    = 0;
+    private int limit                       = 0;
+    private long bufferOffset;
+    private long lineOffset                 = -1;
+    private int maxLineLength               = 0;
+    private boolean truncated               = false;
+    private boolean skipLineFeed            = false;
+    private boolean eof                     = false;
+
+    /**
+     * @param in The stream to read from.
+     */
+    public LineReader(final InputStream in) {
+        this(in, Charset.defaultCharset(), 0);
+    }
+
+    /**
+     * @param in The stream to read from.
+     * @param charset The charset the lines are encoded with.
+     * @param startOffset The byte offset (within the underlying source) the stream is currently positioned at.
+     */
+    public LineReader(final InputStream in, final Charset charset, final long startOffset) {
+        this.in             = in;
+        this.charset        = charset;
+        this.bufferOffset   = startOffset;
+    }
+
+    /**
+     * Read the next line.
+     *
+     * @return The next line (without its terminator); else null at the end of the stream.
+     * @throws IOException
+     */
+    public String readLine() throws IOException {
+        if(skipLineFeed) {
+            skipLineFeed = false;
+
+            if(position < limit || fill()) {
+                if('\n' == buffer[position]) {
+                    position++;
+                }
+            }
+        }
+
+        if(position >= limit && !fill()) {
+            return null;
+        }
+
+        lineOffset          = bufferOffset + position;
+        truncated           = false;
+        int lineLength      = 0;
+
+        while(true) {
+            int start   = position;
+            int end     = SCANNER.indexOfLineEnd(buffer, start, limit);
+
+            if(end >= 0) {
+                byte b = buffer[end];
+                String line;
+
+                position = end;
+
+                if(0 == lineLength && !truncated) {
+                    /////////////////////////////////////////////////////
+                    // The whole line is in the buffer, decode it directly
+                    line = new String(buffer, start, keep(0, position - start), charset);
+                } else {
+                    lineLength  = append(lineLength, start, position - start);
+                    line        = new String(lineBuffer, 0, lineLength, charset);
+                }
+
+                position++;
+                skipLineFeed = ('\r' == b);
+
+                return line;
+            }
+
+            position    = limit;
+            lineLength  = append(lineLength, start, position - start);
+
+            if(!fill()) {
+                ////////////////////////////////////////
+                // Last line without a trailing newline
+                return new String(lineBuffer, 0, lineLength, charset);
+            }
+        }
+    }
+
+    /**
+     * @param maxLineLength The most bytes of a line to keep; else 0 for no limit.
+     */
+    public void setMaxLineLength(final int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * @return true if the line last returned by readLine() was cut short at the maximum line length.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return The byte offset of the start of the line last returned by readLine(); else -1.
+     */
+    public long getLineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * @return The byte offset just past the data consumed so far.
+     */
+    public long getOffset() {
+        return bufferOffset + position;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @return The number of bytes of a part of a line to keep, given the number already kept.
+     */
+    private int keep(final int lineLength, final int length) {
+        if(0 == maxLineLength || lineLength + length <= maxLineLength) {
+            return length;
+        }
+
+        truncated = true;
+
+        return Math.max(0, maxLineLength - lineLength);
+    }
+
+    private int append(final int lineLength, final int start, final int partLength) {
+        int length = keep(lineLength, partLength);
+
+        if(lineLength + length > lineBuffer.length) {
+            byte[] bigger = new byte[Math.max(lineBuffer.length * 2, lineLength + length)];
+            System.arraycopy(lineBuffer, 0, bigger, 0, lineLength);
+            lineBuffer = bigger;
+        }
+
+        System.arraycopy(buffer, start, lineBuffer, lineLength, length);
+
+        return lineLength + length;
+    }
+
+    private boolean fill() throws IOException {
+        if(eof) {
+            return false;
+        }
+
+        bufferOffset    += limit;
+        position        = 0;
+        limit           = 0;
+
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while(0 == read);
+
+        if(read < 0) {
+            eof = true;
+            return false;
+        }
+
+        limit = read;
+
+        return true;
+    }
+}
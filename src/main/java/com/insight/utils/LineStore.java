@@ -0,0 +1,132 @@
+package com.insight.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Share the continuation lines (e.g. stack traces) that are repeated across log entries, so each distinct line, and
+ * each distinct set of continuation lines, is held in memory once however many log entries contain it.
+ *
+ * The canonical copies are kept in tables bounded to a maximum number of lines with the least recently used dropped
+ * first. A dropped copy stays in use by the log entries already referencing it, it just isn't shared with any new
+ * log entries, so the bound limits the table and never changes a payload.
+ */
+public class LineStore {
+    public static final int DEFAULT_MAX_LINES   = 100_000;
+
+    private final Map<String, String> lines;
+    private final Map<List<String>, String[]> blocks;
+    private long linesSeen                      = 0;
+    private long linesAdded                     = 0;
+    private long bytesSaved                     = 0;
+
+    /**
+     * @param maxLines The maximum number of distinct lines (and of distinct sets of continuation lines) to hold.
+     */
+    public LineStore(final int maxLines) {
+        this.lines  = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+                return size() > maxLines;
+            }
+        };
+        this.blocks = new LinkedHashMap<List<String>, String[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<List<String>, String[]> eldest) {
+                return size() > maxLines;
+            }
+        };
+    }
+
+    /**
+     * Hold a log entry's continuation lines as shared copies.
+     *
+     * @param logEntry The log entry.
+     * @return An equivalent log entry referencing the shared lines; else the log entry if it has a single line.
+     */
+    public synchronized LogEntry share(final LogEntry logEntry) {
+        String payload  = logEntry.getPayload();
+        String sep      = Utils.LINE_SEP;
+        int firstEnd    = payload.indexOf(sep);
+
+        if(firstEnd < 0 || firstEnd + sep.length() == payload.length() || !payload.endsWith(sep)) {
+            return logEntry;
+        }
+
+        List<String> continuation = new ArrayList<>();
+
+        for(int start = firstEnd + sep.length() ; start < payload.length() ; ) {
+            int end     = payload.indexOf(sep, start);
+            String line = payload.substring(start, end);
+            String held = lines.get(line);
+
+            linesSeen++;
+
+            if(null == held) {
+                lines.put(line, line);
+                held = line;
+                linesAdded++;
+            } else {
+                bytesSaved += 40 + 2L * line.length();
+            }
+
+            continuation.add(held);
+            start = end + sep.length();
+        }
+
+        String[] shared = blocks.get(continuation);
+
+        if(null == shared) {
+            shared = continuation.toArray(new String[continuation.size()]);
+            blocks.put(Arrays.asList(shared), shared);
+        } else {
+            bytesSaved += 16 + 4L * shared.length;
+        }
+
+        return new LogEntry(
+                logEntry.getSource(),
+                logEntry.getRawTimeStamp(),
+                logEntry.getDisplayTimeStamp(),
+                payload.substring(0, firstEnd),
+                shared);
+    }
+
+    /**
+     * @return The number of continuation lines shared.
+     */
+    public synchronized long getLinesSeen() {
+        return linesSeen;
+    }
+
+    /**
+     * @return The number of continuation lines that weren't already held.
+     */
+    public synchronized long getLinesAdded() {
+        return linesAdded;
+    }
+
+    /**
+     * @return An estimate of the heap not used because lines were shared.
+     */
+    public synchronized long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    /**
+     * @return The continuation lines seen for each line held, e.g. 10.0 means one copy where there would have been 10.
+     */
+    public synchronized double getDedupRatio() {
+        return (0 == linesAdded) ? 1.0 : (double) linesSeen / linesAdded;
+    }
+
+    /**
+     * @return A one line summary of the sharing.
+     */
+    public synchronized String statistics() {
+        return String.format("Line store: %d continuation lines, %d copies kept, dedup ratio %.1f, about %d bytes saved",
+                linesSeen, linesAdded, getDedupRatio(), bytesSaved);
+    }
+}
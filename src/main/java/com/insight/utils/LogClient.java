@@ -0,0 +1,71 @@
+package com.insight.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Send a LogViewer query to a LogServer, and copy its reply to stdout.
+ */
+public class LogClient {
+    /**
+     * Send a query to a LogServer on the loopback interface.
+     *
+     * @param port The port the LogServer is listening on.
+     * @param args The same arguments the LogViewer command line takes.
+     * @param out Where to copy the reply to.
+     * @throws IOException
+     */
+    public static void query(final int port, final String[] args, final OutputStream out) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+
+            for(String arg : args) {
+                writer.write(arg);
+                writer.write('\n');
+            }
+            writer.write('\n');
+            writer.flush();
+
+            InputStream in  = socket.getInputStream();
+            byte[] buffer   = new byte[64 * 1024];
+            int read;
+
+            while((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * For usage from the command line
+     *
+     * @param args [=p=PORT] followed by the LogViewer command line arguments.
+     * @throws IOException
+     */
+    public static void main(final String[] args) throws IOException {
+        int port            = LogServer.DEFAULT_PORT;
+        List<String> query  = new ArrayList<>();
+
+        for(String arg : args) {
+            if(arg.startsWith("=p=")) {
+                port = Integer.parseInt(arg.substring(3));
+            } else {
+                query.add(arg);
+            }
+        }
+
+        PrintStream out = System.out;
+
+        query(port, query.toArray(new String[query.size()]), out);
+    }
+}
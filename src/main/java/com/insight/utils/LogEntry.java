@@ -8,6 +8,8 @@ public class LogEntry implements Comparable<LogEntry> {
     private long rawTimeStamp;
     private String displayTimeStamp;
     private String payload;
+    private String firstLine;
+    private String[] lines;
 
     public LogEntry(
             final String source,
@@ -21,9 +23,26 @@ public class LogEntry implements Comparable<LogEntry> {
         this.payload            = payload;
     }
 
+    /**
+     * A log entry whose payload is held as its first line and its (shared) continuation lines, see LineStore.
+     */
+    LogEntry(
+            final String source,
+            final long rawTimeStamp,
+            final String displayTimeStamp,
+            final String firstLine,
+            final String[] lines)
+    {
+        this.source             = source;
+        this.rawTimeStamp       = rawTimeStamp;
+        this.displayTimeStamp   = displayTimeStamp;
+        this.firstLine          = firstLine;
+        this.lines              = lines;
+    }
+
     @Override
     public String toString() {
-        return String.format("%s %d %s %s", source, rawTimeStamp, displayTimeStamp, payload);
+        return String.format("%s %d %s %s", source, rawTimeStamp, displayTimeStamp, getPayload());
     }
 
     public int compareTo(LogEntry o) {
@@ -47,8 +66,83 @@ public class LogEntry implements Comparable<LogEntry> {
     }
 
     public String getPayload() {
-        return payload;
+        if(null != payload) {
+            return payload;
+        }
+
+        StringBuilder sb = new StringBuilder(firstLine).append(Utils.LINE_SEP);
+        for(String line : lines) {
+            sb.append(line).append(Utils.LINE_SEP);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * @param text The text to look for.
+     * @return true if the payload contains the text, without building the payload when its lines are shared.
+     */
+    public boolean contains(final String text) {
+        if(null != payload) {
+            return payload.contains(text);
+        }
+
+        if(text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            return getPayload().contains(text);
+        }
+
+        if(firstLine.contains(text)) {
+            return true;
+        }
+
+        for(String line : lines) {
+            if(line.contains(text)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param rawTimeStamp The (adjusted) timestamp.
+     * @param displayTimeStamp The (adjusted) timestamp to display.
+     * @return A copy of this entry with a different timestamp, still sharing any shared lines.
+     */
+    public LogEntry withTimeStamp(final long rawTimeStamp, final String displayTimeStamp) {
+        if(null != payload) {
+            return new LogEntry(source, rawTimeStamp, displayTimeStamp, payload);
+        }
+
+        return new LogEntry(source, rawTimeStamp, displayTimeStamp, firstLine, lines);
+    }
+
+    /**
+     * @return The payload, or just its first line when its lines are shared, enough to find its fields in (see
+     *         FieldFilter).
+     */
+    String getLeadingText() {
+        return (null != payload) ? payload : firstLine;
+    }
+
+    /**
+     * @return The continuation lines when they are shared (see LineStore); else null.
+     */
+    String[] getSharedLines() {
+        return lines;
     }
 
     public long getRawTimeStamp() { return rawTimeStamp; }
+
+    /**
+     * @return A rough estimate of the heap used by this entry (the source and any shared lines are assumed to be
+     *          shared).
+     */
+    public long getEstimatedSize() {
+        if(null == payload) {
+            return 64 + 2L * firstLine.length() + 2L * displayTimeStamp.length();
+        }
+
+        return 64 + 2L * payload.length() + 2L * displayTimeStamp.length();
+    }
 }
@@ -0,0 +1,75 @@
+package com.insight.utils;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Lazily merge several time ordered sources of log entries into a single time ordered sequence.
+ *
+ * Entries with the same timestamp are returned in source order, which is the same order Utils.timeSortLists gives
+ * when the lists are added in source order. Only one entry per source is held at any time, so a source is only read
+ * as far as the merge has got.
+ */
+public class LogEntryMerger implements Iterator<LogEntry> {
+    private final PriorityQueue<Head> heads;
+
+    /**
+     * @param sources The time ordered sources to merge, in source order.
+     */
+    public LogEntryMerger(final List<? extends Iterator<LogEntry>> sources) {
+        heads = new PriorityQueue<>(Math.max(1, sources.size()));
+
+        int index = 0;
+        for(Iterator<LogEntry> source : sources) {
+            if(source.hasNext()) {
+                heads.add(new Head(index, source.next(), source));
+            }
+            index++;
+        }
+    }
+
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    public LogEntry next() {
+        Head head = heads.poll();
+
+        if(null == head) {
+            throw new NoSuchElementException();
+        }
+
+        LogEntry logEntry = head.logEntry;
+
+        if(head.source.hasNext()) {
+            head.logEntry = head.source.next();
+            heads.add(head);
+        }
+
+        return logEntry;
+    }
+
+    private static class Head implements Comparable<Head> {
+        private final int index;
+        private final Iterator<LogEntry> source;
+        private LogEntry logEntry;
+
+        Head(final int index, final LogEntry logEntry, final Iterator<LogEntry> source) {
+            this.index      = index;
+            this.logEntry   = logEntry;
+            this.source     = source;
+        }
+
+        public int compareTo(Head o) {
+            int result = logEntry.compareTo(o.logEntry);
+
+            if(0 == result) {
+                result = Integer.compare(index, o.index);
+            }
+
+            return result;
+        }
+    }
+}
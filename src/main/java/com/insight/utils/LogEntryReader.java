@@ -0,0 +1,304 @@
+package com.insight.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Incrementally build the log entries of a single source, one entry at a time.
+ *
+ * The same rules as Utils.createLogEntries are applied, lines before the first timestamp are skipped, and each entry
+ * is made up of a timestamp line plus all the following lines up to (but not including) the next timestamp line.
+ * Only the entry currently being built is held in memory, and the log data is closed once the reader is exhausted.
+ */
+public class LogEntryReader implements Iterator<LogEntry>, AutoCloseable {
+    private final String source;
+    private final SimpleDateFormat sdf;
+    private final long startTs;
+    private final long endTs;
+    private final List<String> searchText;
+    private final int timestampAdjustment;
+    private EntryGrouper grouper;
+    private Iterator<long[]> ranges             = null;
+    private LineStore lineStore                 = null;
+    private FieldFilter fieldFilter             = null;
+    private EntryLimits entryLimits             = null;
+    private long entryOffset                    = -1;
+    private LogEntry nextEntry                  = null;
+    private boolean finished                    = false;
+
+    /**
+     * @param source The source of the log data
+     * @param lineReader Where to read the lines of the log data from.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+     *                null or empty implies no filtering
+     * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+     *              null or empty implies no filtering.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param timestampAdjustment A mS adjustment to the log entries timestamp.
+     * @throws ParseException
+     */
+    public LogEntryReader(
+            final String source,
+            final LineReader lineReader,
+            final String timestampDateFormat,
+            final String startAt,
+            final String endAt,
+            final List<String> searchText,
+            final int timestampAdjustment) throws ParseException {
+        this.source                 = source;
+        this.sdf                    = new SimpleDateFormat(timestampDateFormat);
+        this.sdf.setLenient(false);
+        this.grouper                = new EntryGrouper(lineReader, sdf);
+        this.startTs                = Utils.startTimeStamp(startAt, sdf);
+        this.endTs                  = Utils.endTimeStamp(endAt, sdf);
+        this.searchText             = searchText;
+        this.timestampAdjustment    = timestampAdjustment;
+    }
+
+    /**
+     * Open a reader on a log file, the file path is used as the source of the entries.
+     *
+     * @param logFilePath The file containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+     *                null or empty implies no filtering
+     * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+     *              null or empty implies no filtering.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param timestampAdjustment A mS adjustment to the log entries timestamp.
+     *
+     * @return A reader positioned before the first log entry.
+     * @throws FileNotFoundException
+     * @throws ParseException
+     */
+    public static LogEntryReader open(
+            final String logFilePath,
+            final String timestampDateFormat,
+            final String startAt,
+            final String endAt,
+            final List<String> searchText,
+            final int timestampAdjustment) throws FileNotFoundException, ParseException {
+        LineReader lineReader = new LineReader(new FileInputStream(logFilePath));
+
+        try {
+            return new LogEntryReader(
+                    logFilePath,
+                    lineReader,
+                    timestampDateFormat,
+                    startAt,
+                    endAt,
+                    searchText,
+                    timestampAdjustment);
+        } catch (ParseException | RuntimeException e) {
+            closeQuietly(lineReader);
+            throw e;
+        }
+    }
+
+    /**
+     * Open a reader on byte ranges of a log file, each range has to start at the start of a log entry (or the start of
+     * the file) and the ranges have to be in file order. The file path is used as the source of the entries.
+     *
+     * @param logFilePath The file containing log entries.
+     * @param ranges The byte ranges to read, each a {from, to} pair with to exclusive.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+     *                null or empty implies no filtering
+     * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+     *              null or empty implies no filtering.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param timestampAdjustment A mS adjustment to the log entries timestamp.
+     *
+     * @return A reader positioned before the first log entry of the first range.
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static LogEntryReader open(
+            final String logFilePath,
+            final List<long[]> ranges,
+            final String timestampDateFormat,
+            final String startAt,
+            final String endAt,
+            final List<String> searchText,
+            final int timestampAdjustment) throws IOException, ParseException {
+        if(!new File(logFilePath).isFile()) {
+            throw new FileNotFoundException(logFilePath);
+        }
+
+        LogEntryReader reader =
+                new LogEntryReader(
+                        logFilePath,
+                        new LineReader(new ByteArrayInputStream(new byte[0])),
+                        timestampDateFormat,
+                        startAt,
+                        endAt,
+                        searchText,
+                        timestampAdjustment);
+
+        reader.ranges = ranges.iterator();
+
+        return reader;
+    }
+
+    public boolean hasNext() {
+        if(null == nextEntry && !finished) {
+            try {
+                nextEntry = readEntry();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Problems reading [" + source + "]", e);
+            }
+
+            if(null == nextEntry) {
+                ////////////////////////////////////////////
+                // Exhausted, so let go of the log data now
+                close();
+            }
+        }
+
+        return null != nextEntry;
+    }
+
+    public LogEntry next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        LogEntry logEntry   = nextEntry;
+        nextEntry           = null;
+
+        return logEntry;
+    }
+
+    /**
+     * @param lineStore Where to share the continuation lines of the log entries read; else null to not share them.
+     */
+    public void setLineStore(final LineStore lineStore) {
+        this.lineStore = lineStore;
+    }
+
+    /**
+     * @param fieldFilter The field conditions a log entry has to pass; else null to not filter by field.
+     */
+    public void setFieldFilter(final FieldFilter fieldFilter) {
+        this.fieldFilter = fieldFilter;
+    }
+
+    /**
+     * @param entryLimits The most of a log entry to keep in memory; else null for no limit.
+     */
+    public void setEntryLimits(final EntryLimits entryLimits) {
+        this.entryLimits = entryLimits;
+        grouper.setLimits(entryLimits);
+    }
+
+    /**
+     * @param lines The number of whole lines of the first log entry left out before the data got to this reader.
+     * @param bytes The number of bytes of the first log entry left out before the data got to this reader.
+     */
+    void readPast(final long lines, final long bytes) {
+        grouper.readPast(lines, bytes);
+    }
+
+    /**
+     * @return The source of the log entries.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return The byte offset of the start of the entry last returned by next(); else -1.
+     */
+    public long getEntryOffset() {
+        return entryOffset;
+    }
+
+    /**
+     * @return The byte offset just past the data read so far.
+     */
+    public long getOffset() {
+        return grouper.getReadOffset();
+    }
+
+    public void close() {
+        finished    = true;
+        nextEntry   = null;
+
+        grouper.close();
+    }
+
+    /**
+     * Read lines until an entry that passes the filters has been built.
+     *
+     * @return The next log entry; else null when the source is exhausted.
+     * @throws IOException
+     */
+    private LogEntry readEntry() throws IOException {
+        while(true) {
+            String data;
+
+            while(null != (data = grouper.next())) {
+                if(null != fieldFilter && !fieldFilter.matches(data, sdf.toPattern().length())) {
+                    continue;
+                }
+
+                ////////////////////////////
+                // Try and create a LogEntry
+                LogEntry logEntry =
+                        Utils.createLogEntry(
+                                source,
+                                data,
+                                sdf,
+                                grouper.getTimeStamp() + timestampAdjustment,
+                                startTs,
+                                endTs,
+                                searchText);
+
+                if(null != logEntry) {
+                    entryOffset = grouper.getOffset();
+                    return (null == lineStore) ? logEntry : lineStore.share(logEntry);
+                }
+            }
+
+            if(null == ranges || !ranges.hasNext()) {
+                return null;
+            }
+
+            ///////////////////////////////
+            // Move on to the next range
+            grouper.close();
+            grouper = new EntryGrouper(rangeLineReader(source, ranges.next()), sdf);
+            grouper.setLimits(entryLimits);
+        }
+    }
+
+    private static LineReader rangeLineReader(final String logFilePath, final long[] range) throws IOException {
+        FileInputStream in = new FileInputStream(logFilePath);
+
+        try {
+            in.getChannel().position(range[0]);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+
+        return new LineReader(new RangeInputStream(in, range[1] - range[0]), Charset.defaultCharset(), range[0]);
+    }
+
+    private static void closeQuietly(final LineReader lineReader) {
+        try {
+            lineReader.close();
+        } catch (IOException e) {}
+    }
+}
@@ -0,0 +1,422 @@
+package com.insight.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over the time merged log entries of log files, read lazily.
+ *
+ * It covers a time range of (adjusted) timestamps, and each log file is only read between the byte offsets of the
+ * first log entry in the time range and the first log entry after it, found by a binary search of the log file. A
+ * split hands the first half of the time range to a new Spliterator, so splits read disjoint byte ranges of each log
+ * file and, in encounter order, give the same log entries as reading the log files whole. As with =h=, the log
+ * entries in each log file are expected to be in time ascending order.
+ *
+ * The number of log entries isn't known without reading them, so the Spliterator isn't SIZED, its estimated size is
+ * the number of bytes still to be read. Each Spliterator (split) closes its log files once it has been exhausted, so
+ * only the ones abandoned part way have to be closed by closing the Stream.
+ */
+public class LogEntrySpliterator implements Spliterator<LogEntry> {
+    public static final long DEFAULT_MIN_SPLIT_BYTES    = 1024 * 1024;
+
+    private static final int TAIL_PROBE_SIZE            = 64 * 1024;
+
+    private final List<String> logFilePaths;
+    private final List<Integer> timestampAdjustments;
+    private final String timestampDateFormat;
+    private final String startAt;
+    private final String endAt;
+    private final List<String> searchText;
+    private final FieldFilter fieldFilter;
+    private final EntryLimits entryLimits;
+    private final long minSplitBytes;
+    private final List<AutoCloseable> openReaders;
+    private final SimpleDateFormat sdf;
+    private final long[] from;
+    private final long[] to;
+    private boolean positioned;
+    private long lowTs;
+    private long highTs;
+    private boolean bounded;
+    private final List<AutoCloseable> readers   = new ArrayList<>();
+    private Iterator<LogEntry> merged           = null;
+
+    /**
+     * @param logFilePaths The files containing log entries.
+     * @param timestampAdjustments A mS adjustment to the log entries timestamp, for each log file.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+     *                null or empty implies no filtering
+     * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+     *              null or empty implies no filtering.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param fieldFilter The field conditions a log entry has to pass; else null to not filter by field.
+     * @param entryLimits The most of a log entry to keep in memory; else null for no limit.
+     * @param minSplitBytes The smallest number of bytes worth splitting.
+     * @param openReaders Where to keep the readers opened, so they can be closed.
+     * @throws ParseException
+     */
+    LogEntrySpliterator(
+            final List<String> logFilePaths,
+            final List<Integer> timestampAdjustments,
+            final String timestampDateFormat,
+            final String startAt,
+            final String endAt,
+            final List<String> searchText,
+            final FieldFilter fieldFilter,
+            final EntryLimits entryLimits,
+            final long minSplitBytes,
+            final List<AutoCloseable> openReaders) throws ParseException {
+        this.logFilePaths           = logFilePaths;
+        this.timestampAdjustments   = timestampAdjustments;
+        this.timestampDateFormat    = timestampDateFormat;
+        this.startAt                = startAt;
+        this.endAt                  = endAt;
+        this.searchText             = searchText;
+        this.fieldFilter            = fieldFilter;
+        this.entryLimits            = entryLimits;
+        this.minSplitBytes          = minSplitBytes;
+        this.openReaders            = openReaders;
+        this.sdf                    = new SimpleDateFormat(timestampDateFormat);
+        this.sdf.setLenient(false);
+        this.from                   = new long[logFilePaths.size()];
+        this.to                     = new long[logFilePaths.size()];
+        this.lowTs                  = Utils.startTimeStamp(startAt, sdf);
+        this.highTs                 = Utils.endTimeStamp(endAt, sdf);
+
+        for(int i = 0 ; i < to.length ; i++) {
+            to[i] = new File(logFilePaths.get(i)).length();
+        }
+    }
+
+    private LogEntrySpliterator(final LogEntrySpliterator parent, final long[] to, final long highTs) {
+        this.logFilePaths           = parent.logFilePaths;
+        this.timestampAdjustments   = parent.timestampAdjustments;
+        this.timestampDateFormat    = parent.timestampDateFormat;
+        this.startAt                = parent.startAt;
+        this.endAt                  = parent.endAt;
+        this.searchText             = parent.searchText;
+        this.fieldFilter            = parent.fieldFilter;
+        this.entryLimits            = parent.entryLimits;
+        this.minSplitBytes          = parent.minSplitBytes;
+        this.openReaders            = parent.openReaders;
+        this.sdf                    = (SimpleDateFormat) parent.sdf.clone();
+        this.from                   = parent.from.clone();
+        this.to                     = to;
+        this.positioned             = true;
+        this.lowTs                  = parent.lowTs;
+        this.highTs                 = highTs;
+        this.bounded                = true;
+    }
+
+    public boolean tryAdvance(final Consumer<? super LogEntry> action) {
+        if(null == merged) {
+            open();
+        }
+
+        if(!merged.hasNext()) {
+            close();
+            return false;
+        }
+
+        action.accept(merged.next());
+
+        return true;
+    }
+
+    public Spliterator<LogEntry> trySplit() {
+        if(null != merged || estimateSize() < 2 * minSplitBytes) {
+            return null;
+        }
+
+        try {
+            position();
+
+            if(!bounded) {
+                bound();
+            }
+
+            while(highTs - lowTs >= 2) {
+                long midTs      = lowTs + (highTs - lowTs) / 2;
+                long[] cut      = new long[to.length];
+                long prefix     = 0;
+                long suffix     = 0;
+
+                for(int i = 0 ; i < cut.length ; i++) {
+                    cut[i]  = seek(i, midTs + 1 - timestampAdjustments.get(i), from[i], to[i]);
+                    prefix  += cut[i] - from[i];
+                    suffix  += to[i] - cut[i];
+                }
+
+                if(0 == prefix) {
+                    lowTs = midTs + 1;
+                } else if(0 == suffix) {
+                    highTs = midTs;
+                } else {
+                    ////////////////////////////////////////////////////////////
+                    // Hand the first half on, and carry on with the second half
+                    LogEntrySpliterator first = new LogEntrySpliterator(this, cut, midTs);
+
+                    System.arraycopy(cut, 0, from, 0, cut.length);
+                    lowTs = midTs + 1;
+
+                    return first;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Problems splitting the log files", e);
+        }
+
+        return null;
+    }
+
+    public long estimateSize() {
+        long bytes = 0;
+
+        for(int i = 0 ; i < to.length ; i++) {
+            bytes += to[i] - from[i];
+        }
+
+        return bytes;
+    }
+
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * Open a reader on the byte range of each log file, and merge them.
+     */
+    private void open() {
+        List<Iterator<LogEntry>> sources = new ArrayList<>();
+
+        try {
+            position();
+
+            for(int i = 0 ; i < logFilePaths.size() ; i++) {
+                if(from[i] < to[i]) {
+                    LogEntryReader reader =
+                            LogEntryReader.open(
+                                    logFilePaths.get(i),
+                                    Collections.singletonList(new long[] { from[i], to[i] }),
+                                    timestampDateFormat,
+                                    startAt,
+                                    endAt,
+                                    searchText,
+                                    timestampAdjustments.get(i));
+
+                    reader.setFieldFilter(fieldFilter);
+                    reader.setEntryLimits(entryLimits);
+
+                    synchronized (openReaders) {
+                        openReaders.add(reader);
+                    }
+                    readers.add(reader);
+                    sources.add(reader);
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Problems opening the log files", e);
+        } catch (ParseException e) {
+            close();
+            throw new IllegalStateException(e);
+        }
+
+        merged = new LogEntryMerger(sources);
+    }
+
+    /**
+     * Close the readers of this Spliterator, once it has been exhausted.
+     */
+    private void close() {
+        for(AutoCloseable reader : readers) {
+            try {
+                reader.close();
+            } catch (Exception e) {}
+        }
+
+        synchronized (openReaders) {
+            openReaders.removeAll(readers);
+        }
+        readers.clear();
+    }
+
+    /**
+     * Narrow the byte range of each log file to the start and end timestamps, if any.
+     *
+     * @throws IOException
+     */
+    private void position() throws IOException {
+        if(positioned) {
+            return;
+        }
+
+        for(int i = 0 ; i < from.length ; i++) {
+            int adjustment = timestampAdjustments.get(i);
+
+            if(Long.MIN_VALUE != lowTs) {
+                from[i] = seek(i, lowTs - adjustment, from[i], to[i]);
+            }
+
+            if(Long.MAX_VALUE != highTs) {
+                to[i] = seek(i, highTs + 1 - adjustment, from[i], to[i]);
+            }
+        }
+
+        positioned = true;
+    }
+
+    /**
+     * Find the (adjusted) timestamps of the first and last log entries, for a time range without a start or end.
+     *
+     * @throws IOException
+     */
+    private void bound() throws IOException {
+        long first  = Long.MAX_VALUE;
+        long last   = Long.MIN_VALUE;
+
+        for(int i = 0 ; i < from.length ; i++) {
+            long[] entry    = probe(i, from[i], to[i]);
+            int adjustment  = timestampAdjustments.get(i);
+
+            if(null != entry) {
+                first   = Math.min(first, entry[1] + adjustment);
+                last    = Math.max(last, lastTimeStamp(i, from[i], to[i]) + adjustment);
+            }
+        }
+
+        lowTs   = Math.max(lowTs, first);
+        highTs  = Math.min(highTs, last);
+        bounded = true;
+    }
+
+    /**
+     * Binary search a byte range of a log file for the first log entry at or after a timestamp.
+     *
+     * @param source The index of the log file.
+     * @param ts The (unadjusted) mS timestamp to look for.
+     * @param from The byte offset of a log entry to start looking at.
+     * @param to The byte offset to stop looking at.
+     * @return The byte offset of the log entry; else to if there isn't one.
+     * @throws IOException
+     */
+    private long seek(final int source, final long ts, final long from, final long to) throws IOException {
+        long low    = from;
+        long high   = to;
+
+        while(low < high) {
+            long mid        = low + (high - low) / 2;
+            long[] entry    = probe(source, mid, to);
+
+            if(null == entry || entry[1] >= ts) {
+                high = mid;
+            } else {
+                low = entry[0] + 1;
+            }
+        }
+
+        long[] entry = probe(source, low, to);
+
+        return (null == entry) ? to : entry[0];
+    }
+
+    /**
+     * Find the first timestamp line that starts at or after a byte offset.
+     *
+     * @param source The index of the log file.
+     * @param offset The byte offset to look from.
+     * @param to The byte offset to stop looking at.
+     * @return The byte offset and (unadjusted) mS timestamp of the line; else null if there isn't one.
+     * @throws IOException
+     */
+    private long[] probe(final int source, final long offset, final long to) throws IOException {
+        if(offset >= to) {
+            return null;
+        }
+
+        try (LineReader lineReader = lineReader(source, offset, to)) {
+            String line;
+
+            while(null != (line = lineReader.readLine())) {
+                long ts = Utils.mSecTimeStampFromStartOfLine(line, sdf);
+
+                if(ts > 0) {
+                    return new long[] { lineReader.getLineOffset(), ts };
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Find the timestamp of the last log entry in a byte range of a log file, reading back from the end.
+     *
+     * @param source The index of the log file.
+     * @param from The byte offset to stop looking at.
+     * @param to The byte offset of the end of the range.
+     * @return The (unadjusted) mS timestamp; else Long.MIN_VALUE if there isn't one.
+     * @throws IOException
+     */
+    private long lastTimeStamp(final int source, final long from, final long to) throws IOException {
+        long offset = Math.max(from, to - TAIL_PROBE_SIZE);
+
+        while(true) {
+            long last = Long.MIN_VALUE;
+
+            try (LineReader lineReader = lineReader(source, offset, to)) {
+                String line;
+
+                while(null != (line = lineReader.readLine())) {
+                    long ts = Utils.mSecTimeStampFromStartOfLine(line, sdf);
+
+                    if(ts > 0) {
+                        last = ts;
+                    }
+                }
+            }
+
+            if(Long.MIN_VALUE != last || offset == from) {
+                return last;
+            }
+
+            offset = Math.max(from, offset - 2 * (to - offset));
+        }
+    }
+
+    /**
+     * Open a line reader on a log file, positioned at the start of the first line at or after an offset.
+     */
+    private LineReader lineReader(final int source, final long offset, final long to) throws IOException {
+        long start          = Math.max(0, offset - 1);
+        FileInputStream in  = new FileInputStream(logFilePaths.get(source));
+
+        try {
+            in.getChannel().position(start);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+
+        LineReader lineReader = new LineReader(new RangeInputStream(in, to - start), Charset.defaultCharset(), start);
+
+        if(offset > 0) {
+            // Skip the rest of the line the offset is part of
+            lineReader.readLine();
+        }
+
+        return lineReader;
+    }
+}
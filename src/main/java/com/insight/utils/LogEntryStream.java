@@ -0,0 +1,237 @@
+package com.insight.utils;
+
+import java.io.File;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The library API, for embedding the log viewer in other tools. Build a lazy Stream of the time merged log entries of
+ * log files e.g.
+ *
+ *      try (Stream&lt;LogEntry&gt; logEntries = LogEntryStream.builder()
+ *              .logFiles("server1.log", "server2.log")
+ *              .startAt("2016-05-16 03:00:00,000")
+ *              .searchText("ERROR")
+ *              .parallel(true)
+ *              .stream()) {
+ *          ...
+ *      }
+ *
+ * Nothing is read until the Stream is used, and invalid arguments are reported by a RuntimeException rather than the
+ * usage text (and exit) of the command line. Closing the Stream closes the log files still being read. A parallel
+ * Stream splits the log files by time range, see LogEntrySpliterator.
+ */
+public class LogEntryStream {
+
+    private LogEntryStream() {
+    }
+
+    /**
+     * @return A builder with the default timestamp format, no filters and no timestamp adjustments.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private final List<String> logFiles             = new ArrayList<>();
+        private final List<String> searchText           = new ArrayList<>();
+        private final List<String> fieldConditions      = new ArrayList<>();
+        private String fieldDefinitions                 = null;
+        private List<Integer> timestampAdjustments      = null;
+        private long entryBytes                         = 0;
+        private int entryLines                          = 0;
+        private String timestampDateFormat              = Options.DEFAULT_TIMESTAMP_FORMAT;
+        private String startAt                          = null;
+        private String endAt                            = null;
+        private long minSplitBytes                      = LogEntrySpliterator.DEFAULT_MIN_SPLIT_BYTES;
+        private boolean parallel                        = false;
+
+        private Builder() {
+        }
+
+        /**
+         * @param logFilePaths The files containing log entries, added to any already specified.
+         * @return This builder.
+         */
+        public Builder logFiles(final String... logFilePaths) {
+            return logFiles(Arrays.asList(logFilePaths));
+        }
+
+        /**
+         * @param logFilePaths The files containing log entries, added to any already specified.
+         * @return This builder.
+         */
+        public Builder logFiles(final List<String> logFilePaths) {
+            logFiles.addAll(logFilePaths);
+            return this;
+        }
+
+        /**
+         * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+         * @return This builder.
+         */
+        public Builder timestampFormat(final String timestampDateFormat) {
+            this.timestampDateFormat = timestampDateFormat;
+            return this;
+        }
+
+        /**
+         * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+         *                null or empty implies no filtering
+         * @return This builder.
+         */
+        public Builder startAt(final String startAt) {
+            this.startAt = startAt;
+            return this;
+        }
+
+        /**
+         * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+         *              null or empty implies no filtering.
+         * @return This builder.
+         */
+        public Builder endAt(final String endAt) {
+            this.endAt = endAt;
+            return this;
+        }
+
+        /**
+         * @param searchText Text strings to match a log entry against, added to any already specified.
+         * @return This builder.
+         */
+        public Builder searchText(final String... searchText) {
+            this.searchText.addAll(Arrays.asList(searchText));
+            return this;
+        }
+
+        /**
+         * @param fieldDefinitions The field rules (see FieldFilter) e.g. "level:1,thread:[],logger:3".
+         * @return This builder.
+         */
+        public Builder fields(final String fieldDefinitions) {
+            this.fieldDefinitions = fieldDefinitions;
+            return this;
+        }
+
+        /**
+         * @param fieldConditions Field conditions (see FieldFilter) e.g. "level=ERROR,WARN", added to any already
+         *                        specified.
+         * @return This builder.
+         */
+        public Builder where(final String... fieldConditions) {
+            this.fieldConditions.addAll(Arrays.asList(fieldConditions));
+            return this;
+        }
+
+        /**
+         * @param timestampAdjustments A mS adjustment to the log entries timestamp, for each log file (0 if missing).
+         * @return This builder.
+         */
+        public Builder timestampAdjustments(final List<Integer> timestampAdjustments) {
+            this.timestampAdjustments = new ArrayList<>(timestampAdjustments);
+            return this;
+        }
+
+        /**
+         * @param maxBytes The most bytes (characters) of a log entry to keep (see EntryLimits); else 0 for no limit.
+         * @param maxLines The most lines of a log entry to keep; else 0 for no limit.
+         * @return This builder.
+         */
+        public Builder entryLimits(final long maxBytes, final int maxLines) {
+            this.entryBytes = maxBytes;
+            this.entryLines = maxLines;
+            return this;
+        }
+
+        /**
+         * @param minSplitBytes The smallest number of bytes of the log files worth splitting for a parallel Stream.
+         * @return This builder.
+         */
+        public Builder minSplitBytes(final long minSplitBytes) {
+            this.minSplitBytes = minSplitBytes;
+            return this;
+        }
+
+        /**
+         * @param parallel true to build a parallel Stream.
+         * @return This builder.
+         */
+        public Builder parallel(final boolean parallel) {
+            this.parallel = parallel;
+            return this;
+        }
+
+        /**
+         * @return A Spliterator over the time merged log entries, each split closes its log files once it has been
+         *         exhausted (a split abandoned part way leaves them open, use stream() to be able to close them).
+         * @throws ParseException
+         */
+        public LogEntrySpliterator spliterator() throws ParseException {
+            return spliterator(new ArrayList<AutoCloseable>());
+        }
+
+        /**
+         * @return A lazy Stream of the time merged log entries.
+         * @throws ParseException
+         */
+        public Stream<LogEntry> stream() throws ParseException {
+            final List<AutoCloseable> openReaders = new ArrayList<>();
+
+            return StreamSupport.stream(spliterator(openReaders), parallel).onClose(new Runnable() {
+                public void run() {
+                    synchronized (openReaders) {
+                        for(AutoCloseable reader : openReaders) {
+                            try {
+                                reader.close();
+                            } catch (Exception e) {}
+                        }
+                        openReaders.clear();
+                    }
+                }
+            });
+        }
+
+        LogEntrySpliterator spliterator(final List<AutoCloseable> openReaders) throws ParseException {
+            if(logFiles.size() < 1) {
+                throw new RuntimeException("No log files specified");
+            }
+
+            for(String logFile : logFiles) {
+                if(! new File(logFile).isFile()) {
+                    throw new RuntimeException("File [" + logFile + "] cannot be accessed.");
+                }
+            }
+
+            ///////////////////////////////////////////////////////////
+            // As on the command line, missing adjustments default to 0
+            List<Integer> adjustments = new ArrayList<>();
+
+            for(int i = 0 ; i < logFiles.size() ; i++) {
+                boolean specified = null != timestampAdjustments && i < timestampAdjustments.size();
+
+                adjustments.add(specified ? timestampAdjustments.get(i) : 0);
+            }
+
+            if(minSplitBytes < 1) {
+                throw new RuntimeException("Minimum split bytes [" + minSplitBytes + "] has to be > 0");
+            }
+
+            return new LogEntrySpliterator(
+                    new ArrayList<>(logFiles),
+                    adjustments,
+                    timestampDateFormat,
+                    startAt,
+                    endAt,
+                    searchText.isEmpty() ? null : new ArrayList<>(searchText),
+                    FieldFilter.parse(fieldDefinitions, fieldConditions),
+                    EntryLimits.of(entryBytes, entryLines),
+                    minSplitBytes,
+                    openReaders);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.insight.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * All the (unfiltered) log entries of a single log file kept in memory, with their timestamps indexed for time range
+ * lookups.
+ *
+ * The file is re-read from the start of its last entry when it grows, so appended data is picked up without parsing
+ * the whole file again. If the file shrinks, is another file (its identity, e.g. inode, changed) or its first bytes
+ * changed, it was truncated, rotated or rewritten (even if it's already longer than before) and is read again from
+ * the start.
+ */
+public class LogIndex {
+    public static final int HEAD_BYTES          = 4096;
+
+    private final String logFilePath;
+    private final String timestampDateFormat;
+    private final LineStore lineStore;
+    private final List<LogEntry> logEntries     = new ArrayList<>();
+    private long[] timestamps                   = new long[1024];
+    private boolean timeOrdered                 = true;
+    private long lastEntryOffset                = 0;
+    private long length                         = -1;
+    private long lastModified                   = -1;
+    private String identity                     = null;
+    private long headLength                     = 0;
+    private long headChecksum                   = 0;
+    private volatile long estimatedSize         = 0;
+
+    /**
+     * @param logFilePath The file containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     */
+    public LogIndex(final String logFilePath, final String timestampDateFormat) {
+        this(logFilePath, timestampDateFormat, null);
+    }
+
+    /**
+     * @param logFilePath The file containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param lineStore Where to share the continuation lines of the log entries; else null to not share them.
+     */
+    public LogIndex(final String logFilePath, final String timestampDateFormat, final LineStore lineStore) {
+        this.logFilePath            = logFilePath;
+        this.timestampDateFormat    = timestampDateFormat;
+        this.lineStore              = lineStore;
+    }
+
+    /**
+     * Bring the index up to date with the log file.
+     *
+     * @return true if the log file had changed.
+     * @throws IOException
+     * @throws ParseException
+     */
+    public synchronized boolean refresh() throws IOException, ParseException {
+        File file                   = new File(logFilePath);
+        long currentLength          = file.length();
+        long currentLastModified    = file.lastModified();
+        String currentIdentity      = Checkpoints.identity(file);
+
+        if(currentLength == length && currentLastModified == lastModified && currentIdentity.equals(identity)) {
+            return false;
+        }
+
+        long from = lastEntryOffset;
+
+        if(currentLength < length || !currentIdentity.equals(identity)
+                || headChecksum != Checkpoints.checksum(file, 0, headLength) || logEntries.isEmpty()) {
+            ////////////////////////////////////////////////////////
+            // Truncated, rotated or rewritten, start from scratch
+            logEntries.clear();
+            timeOrdered     = true;
+            estimatedSize   = 0;
+            from            = 0;
+        } else {
+            /////////////////////////////////////////////////////////////////
+            // The last entry may have had more lines appended, so re-read it
+            estimatedSize -= size(logEntries.remove(logEntries.size() - 1));
+        }
+
+        InputStream in = new FileInputStream(file);
+
+        try {
+            long skipped = 0;
+            while(skipped < from) {
+                skipped += in.skip(from - skipped);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+
+        try (LogEntryReader reader =
+                     new LogEntryReader(
+                             logFilePath,
+                             new LineReader(in, Charset.defaultCharset(), from),
+                             timestampDateFormat,
+                             null,
+                             null,
+                             null,
+                             0)) {
+            reader.setLineStore(lineStore);
+
+            while(reader.hasNext()) {
+                add(reader.next());
+                lastEntryOffset = reader.getEntryOffset();
+            }
+
+            length          = reader.getOffset();
+            lastModified    = currentLastModified;
+            identity        = currentIdentity;
+            headLength      = Math.min(length, HEAD_BYTES);
+            headChecksum    = Checkpoints.checksum(file, 0, headLength);
+        }
+
+        return true;
+    }
+
+    /**
+     * Select log entries in the same way Utils.createLogEntries does, using the index to skip entries outside of
+     * the time range.
+     *
+     * @param startTs mS timestamp to start collecting (adjusted) log entries at.
+     * @param endTs mS timestamp to stop collecting (adjusted) log entries at.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param timestampAdjustment A mS adjustment to the log entries timestamp.
+     *
+     * @return The selected entries in file order.
+     */
+    public synchronized List<LogEntry> select(
+            final long startTs,
+            final long endTs,
+            final List<String> searchText,
+            final int timestampAdjustment) {
+        List<LogEntry> selected = new ArrayList<>();
+        SimpleDateFormat sdf    = new SimpleDateFormat(timestampDateFormat);
+        int from                = 0;
+        int to                  = logEntries.size();
+
+        if(timeOrdered) {
+            if(startTs > 0) {
+                from = firstIndexAtOrAfter(startTs - timestampAdjustment);
+            }
+
+            if(endTs < Long.MAX_VALUE) {
+                to = firstIndexAtOrAfter(endTs - timestampAdjustment + 1);
+            }
+        }
+
+        for(int i = from ; i < to ; i++) {
+            LogEntry logEntry   = logEntries.get(i);
+            long rawTimeStamp   = timestamps[i] + timestampAdjustment;
+
+            if(rawTimeStamp < startTs || rawTimeStamp > endTs) {
+                continue;
+            }
+
+            if(!matchesSearchText(logEntry, searchText)) {
+                continue;
+            }
+
+            if(0 != timestampAdjustment) {
+                logEntry = logEntry.withTimeStamp(rawTimeStamp, sdf.format(new Date(rawTimeStamp)));
+            }
+
+            selected.add(logEntry);
+        }
+
+        return selected;
+    }
+
+    /**
+     * @return The number of log entries in the index.
+     */
+    public synchronized int size() {
+        return logEntries.size();
+    }
+
+    /**
+     * @return The size of the log file when it was last read.
+     */
+    public synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * @return The last modified time of the log file when it was last read.
+     */
+    public synchronized long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return The (estimated) heap used by the log entries in the index, it can be read while the index is refreshed.
+     */
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    public String getLogFilePath() {
+        return logFilePath;
+    }
+
+    public String getTimestampDateFormat() {
+        return timestampDateFormat;
+    }
+
+    private void add(final LogEntry logEntry) {
+        int index = logEntries.size();
+
+        if(index == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, index * 2);
+        }
+
+        timestamps[index] = logEntry.getRawTimeStamp();
+
+        if(index > 0 && timestamps[index] < timestamps[index - 1]) {
+            timeOrdered = false;
+        }
+
+        logEntries.add(logEntry);
+        estimatedSize += size(logEntry);
+    }
+
+    private static long size(final LogEntry logEntry) {
+        return logEntry.getEstimatedSize() + 8;
+    }
+
+    private int firstIndexAtOrAfter(final long ts) {
+        int low     = 0;
+        int high    = logEntries.size();
+
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+
+            if(timestamps[mid] < ts) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private static boolean matchesSearchText(final LogEntry logEntry, final List<String> searchText) {
+        if(null == searchText || searchText.size() < 1) {
+            return true;
+        }
+
+        for(String text : searchText) {
+            if(logEntry.contains(text)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
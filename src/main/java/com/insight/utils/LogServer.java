@@ -0,0 +1,428 @@
+package com.insight.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long running LogViewer that keeps the log entries of the log files it has seen in memory (see LogIndex), and
+ * answers queries from LogClient over a loopback socket.
+ *
+ * A query is a list of the arguments the command line takes, sent one argument per line (UTF-8) and terminated by an
+ * empty line; the reply is exactly what the command line would have written to stdout. Only the options that select
+ * and write log entries (QUERY_OPTIONS) can be used, a query with any other option is answered with an error. The log
+ * files are checked for growth in the background and before every query.
+ *
+ * The log files kept in memory are bounded by an (estimated) size in bytes, the least recently queried are dropped
+ * first (and loaded again if they are queried again).
+ */
+public class LogServer {
+    public static final int DEFAULT_PORT            = 7077;
+    public static final long DEFAULT_WATCH_MS       = 1000;
+    public static final long DEFAULT_INDEX_BYTES    = Runtime.getRuntime().maxMemory() / 2;
+    public static final List<String> QUERY_OPTIONS  =
+            Arrays.asList("=t=", "=s=", "=e=", "=f=", "=a=", "=F=", "=q=", "=h=", "=l=", "=o=");
+
+    private final LinkedHashMap<String, LogIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxIndexBytes;
+    private final ResultCache resultCache;
+    private final LineStore lineStore               = new LineStore(LineStore.DEFAULT_MAX_LINES);
+    private final ExecutorService workers           = Executors.newCachedThreadPool(daemonThreads("query"));
+    private final ScheduledExecutorService watcher  = Executors.newSingleThreadScheduledExecutor(daemonThreads("watch"));
+    private ServerSocket serverSocket;
+
+    /**
+     * @param watchMs How often (in mS) to check the log files for growth.
+     */
+    public LogServer(final long watchMs) {
+        this(watchMs, ResultCache.DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param watchMs How often (in mS) to check the log files for growth.
+     * @param cacheBytes The (estimated) maximum size of the cached query results, 0 disables caching.
+     */
+    public LogServer(final long watchMs, final long cacheBytes) {
+        this(watchMs, cacheBytes, DEFAULT_INDEX_BYTES);
+    }
+
+    /**
+     * @param watchMs How often (in mS) to check the log files for growth.
+     * @param cacheBytes The (estimated) maximum size of the cached query results, 0 disables caching.
+     * @param indexBytes The (estimated) maximum size of the log files kept in memory.
+     */
+    public LogServer(final long watchMs, final long cacheBytes, final long indexBytes) {
+        resultCache     = (cacheBytes > 0) ? new ResultCache(cacheBytes) : null;
+        maxIndexBytes   = indexBytes;
+
+        watcher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                List<LogIndex> watched;
+
+                synchronized (indexes) {
+                    watched = new ArrayList<>(indexes.values());
+                }
+
+                for(LogIndex index : watched) {
+                    try {
+                        index.refresh();
+                    } catch (Exception e) {
+                        System.err.println("Problems refreshing [" + index.getLogFilePath() + "] " + e);
+                    }
+                }
+            }
+        }, watchMs, watchMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the (up to date) index of a log file, loading it if this is the first time it has been seen.
+     *
+     * @param logFilePath The file containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @return The index.
+     * @throws IOException
+     * @throws ParseException
+     */
+    public LogIndex index(final String logFilePath, final String timestampDateFormat)
+            throws IOException, ParseException {
+        String key = timestampDateFormat + "\n" + new File(logFilePath).getCanonicalPath();
+        LogIndex index;
+
+        synchronized (indexes) {
+            index = indexes.get(key);
+
+            if(null == index) {
+                index = new LogIndex(logFilePath, timestampDateFormat, lineStore);
+                indexes.put(key, index);
+            }
+        }
+
+        index.refresh();
+        evict(index);
+
+        return index;
+    }
+
+    /**
+     * Drop the least recently queried log files until the rest fit in the memory allowed, other than the one in use.
+     */
+    private void evict(final LogIndex inUse) {
+        synchronized (indexes) {
+            long usedBytes = 0;
+
+            for(LogIndex index : indexes.values()) {
+                usedBytes += index.getEstimatedSize();
+            }
+
+            Iterator<LogIndex> iterator = indexes.values().iterator();
+            while(usedBytes > maxIndexBytes && iterator.hasNext()) {
+                LogIndex eldest = iterator.next();
+
+                if(eldest != inUse) {
+                    usedBytes -= eldest.getEstimatedSize();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of log files kept in memory.
+     */
+    public int getIndexCount() {
+        synchronized (indexes) {
+            return indexes.size();
+        }
+    }
+
+    /**
+     * Answer a query, writing what the command line would have written.
+     *
+     * @param args The command line arguments of the query.
+     * @param out The stream to write to.
+     */
+    public void query(final String[] args, final PrintStream out) {
+        try {
+            Options options = Utils.parseOptions(args, out, System.err);
+
+            for(String arg : args) {
+                if(arg.length() >= 3 && arg.charAt(0) == '=' && arg.charAt(2) == '='
+                        && !QUERY_OPTIONS.contains(arg.substring(0, 3))) {
+                    throw new RuntimeException("The query server doesn't support " + arg.substring(0, 3) + ", only "
+                            + QUERY_OPTIONS + " can be used in a query");
+                }
+            }
+
+            for(String logFile : options.getLogFiles()) {
+                if(! new File(logFile).exists()) {
+                    throw new RuntimeException("File [" + logFile + "] cannot be accessed.");
+                }
+            }
+
+            if(options.getLogFiles().size() < 1) {
+                throw new RuntimeException("No log files specified");
+            }
+
+            options.validate();
+
+            SimpleDateFormat sdf        = new SimpleDateFormat(options.getTimestampDateFormat());
+            long startTs                = Utils.startTimeStamp(options.getStartAt(), sdf);
+            long endTs                  = Utils.endTimeStamp(options.getEndAt(), sdf);
+            List<Integer> adjustments   = options.getTimestampAdjustments();
+            List<List<LogEntry>> logs   = new ArrayList<>();
+            List<String> sources        = new ArrayList<>();
+            FieldFilter fieldFilter     = options.getFieldFilter();
+
+            for(int i = 0 ; i < options.getLogFiles().size() ; i++) {
+                String logFilePath          = options.getLogFiles().get(i);
+                LogIndex index              = index(logFilePath, options.getTimestampDateFormat());
+                List<LogEntry> logEntries   = select(index, startTs, endTs, options.getSearchText(), adjustments.get(i));
+
+                logs.add((null == fieldFilter) ? logEntries : filter(logEntries, fieldFilter));
+                sources.add(logFilePath);
+            }
+
+            Utils.emitList(
+                    timeSort(logs, options.getHead(), options.getTail()),
+                    Utils.entryWriter(options.getOutputFormat(), sources, out),
+                    "");
+        } catch (Exception e) {
+            out.println("# Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Select log entries from an index, using the cached results when possible.
+     */
+    private List<LogEntry> select(
+            final LogIndex index,
+            final long startTs,
+            final long endTs,
+            final List<String> searchText,
+            final int timestampAdjustment) {
+        if(null == resultCache) {
+            return index.select(startTs, endTs, searchText, timestampAdjustment);
+        }
+
+        synchronized (index) {
+            ResultCache.Key key =
+                    ResultCache.key(
+                            index.getLogFilePath(),
+                            index.getLength(),
+                            index.getLastModified(),
+                            index.getTimestampDateFormat(),
+                            timestampAdjustment,
+                            searchText);
+
+            List<LogEntry> logEntries = resultCache.get(key, startTs, endTs);
+
+            if(null == logEntries) {
+                logEntries = index.select(startTs, endTs, searchText, timestampAdjustment);
+                resultCache.put(key, startTs, endTs, logEntries);
+            }
+
+            return logEntries;
+        }
+    }
+
+    /**
+     * Select the log entries that pass the field conditions, the cached results are kept unfiltered.
+     */
+    private static List<LogEntry> filter(final List<LogEntry> logEntries, final FieldFilter fieldFilter) {
+        List<LogEntry> filtered = new ArrayList<>();
+
+        for(LogEntry logEntry : logEntries) {
+            if(fieldFilter.matches(logEntry)) {
+                filtered.add(logEntry);
+            }
+        }
+
+        return filtered;
+    }
+
+    /**
+     * @return The cache of query results; else null if caching is disabled.
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Start accepting queries on the loopback interface.
+     *
+     * @param port The port to listen on, 0 picks a free port.
+     * @return The port being listened on.
+     * @throws IOException
+     */
+    public int start(final int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+        workers.execute(new Runnable() {
+            public void run() {
+                while(!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+
+                        workers.execute(new Runnable() {
+                            public void run() {
+                                handle(socket);
+                            }
+                        });
+                    } catch (IOException e) {
+                        if(!serverSocket.isClosed()) {
+                            System.err.println("Problems accepting a query " + e);
+                        }
+                    }
+                }
+            }
+        });
+
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stop accepting queries, and stop watching the log files.
+     */
+    public void stop() {
+        watcher.shutdownNow();
+
+        try {
+            if(null != serverSocket) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {}
+
+        workers.shutdown();
+    }
+
+    private void handle(final Socket socket) {
+        try (Socket s = socket) {
+            BufferedReader in =
+                    new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            List<String> args = new ArrayList<>();
+            String arg;
+
+            while(null != (arg = in.readLine()) && arg.length() > 0) {
+                args.add(arg);
+            }
+
+            PrintStream out = new PrintStream(new BufferedOutputStream(s.getOutputStream()), false);
+
+            query(args.toArray(new String[args.size()]), out);
+
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Problems answering a query " + e);
+        }
+    }
+
+    private static List<LogEntry> timeSort(final List<List<LogEntry>> logs, final int head, final int tail) {
+        if(head < 1 && tail < 1) {
+            return Utils.timeSortLists(logs);
+        }
+
+        List<Iterator<LogEntry>> sources = new ArrayList<>();
+        for(List<LogEntry> log : logs) {
+            sources.add(log.iterator());
+        }
+
+        if(head > 0) {
+            return Utils.headLogEntries(sources, head);
+        }
+
+        return Utils.tailLogEntries(sources, tail);
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "LogServer-" + name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    static void usage() {
+        System.err.println("");
+        System.err.println("LogServer: Keep log files in memory and answer LogViewer queries from LogClient.");
+        System.err.println("");
+        System.err.println("Usage: [=p=PORT] [=w=MS] [=c=BYTES] [=m=BYTES] [=t=TS] [logfile logfile ...]");
+        System.err.println("");
+        System.err.println("   =p=PORT Set the loopback port to listen on (default is " + DEFAULT_PORT + ")");
+        System.err.println("   =w=MS   Set how often (in mS) the log files are checked for growth (default is " + DEFAULT_WATCH_MS + ")");
+        System.err.println("   =c=BYTES Set the maximum size of the cached query results (default is " + ResultCache.DEFAULT_MAX_BYTES + ", 0 disables)");
+        System.err.println("   =m=BYTES Set the maximum size of the log files kept in memory (default is half the heap, " + DEFAULT_INDEX_BYTES + ")");
+        System.err.println("   =t=TS   Set the log entry TimeStamp formatter used to preload the log files.");
+        System.err.println("");
+        System.err.println("Log files are loaded when first queried, any specified here are loaded at start up.");
+        System.err.println("");
+
+        System.exit(1);
+    }
+
+    /**
+     * For usage from the command line
+     *
+     * @param args
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static void main(final String[] args) throws IOException, ParseException, InterruptedException {
+        int port                = DEFAULT_PORT;
+        long watchMs            = DEFAULT_WATCH_MS;
+        long cacheBytes         = ResultCache.DEFAULT_MAX_BYTES;
+        long indexBytes         = DEFAULT_INDEX_BYTES;
+        List<String> preload    = new ArrayList<>();
+
+        try {
+            for(String arg : args) {
+                if(arg.startsWith("=p=")) {
+                    port = Integer.parseInt(arg.substring(3));
+                } else if(arg.startsWith("=w=")) {
+                    watchMs = Long.parseLong(arg.substring(3));
+                } else if(arg.startsWith("=c=")) {
+                    cacheBytes = Long.parseLong(arg.substring(3));
+                } else if(arg.startsWith("=m=")) {
+                    indexBytes = Long.parseLong(arg.substring(3));
+                } else {
+                    preload.add(arg);
+                }
+            }
+        } catch (NumberFormatException e) {
+            usage();
+        }
+
+        Options options     = Options.parse(preload.toArray(new String[preload.size()]), System.out);
+        LogServer server    = new LogServer(watchMs, cacheBytes, indexBytes);
+
+        for(String logFilePath : options.getLogFiles()) {
+            LogIndex index = server.index(logFilePath, options.getTimestampDateFormat());
+
+            System.out.println("# Loaded [" + logFilePath + "] " + index.size() + " entries");
+        }
+
+        System.out.println("# Listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.start(port));
+
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,172 @@
+package com.insight.utils;
+
+import java.io.File;
+import java.io.PrintStream;
+
+/**
+ * Choose how a run holds the log entries, before it reads them, from the size of the log files, the heap available
+ * and the options, and watch the heap while they are read in memory.
+ *
+ * The log entries are held in memory (the fastest) when their estimated heap fits in a fraction of the free heap,
+ * else they are time sorted by an ExternalSorter within a memory budget, which reads the runs of a log file that are
+ * in time order again rather than holding them, and spills the rest to temporary files. Runs whose options already
+ * stream the log entries (e.g. pipes, a context, head or tail) are left to stream, as are runs that choose how to
+ * hold them (=m=, =i=, =P=, =d=, =k= or an index).
+ *
+ * If the heap fills up while the log entries are being read into memory anyway (e.g. the estimate was too low), the
+ * run drops them and merges the log files with an external sort instead, see isUnderPressure().
+ */
+public class MemoryPlanner {
+    public static final String IN_MEMORY            = "in memory";
+    public static final String STREAMING            = "streaming";
+    public static final String EXTERNAL_SORT        = "external sort";
+    public static final String AS_REQUESTED         = "as requested";
+
+    public static final int HEAP_PER_INPUT_BYTE     = 3;
+    public static final double HEAP_FRACTION        = 0.5;
+    public static final double PRESSURE_FRACTION    = 0.85;
+    public static final long MIN_SORT_MEMORY        = 16L * 1024 * 1024;
+    public static final int CHECK_INTERVAL          = 16 * 1024;
+
+    private static final long KB                    = 1024L;
+    private static final long MB                    = 1024L * KB;
+    private static final long GB                    = 1024L * MB;
+
+    private final long maxHeap;
+    private final long inputBytes;
+    private final long budget;
+    private String mode;
+    private String reason;
+
+    MemoryPlanner(final String mode, final long maxHeap, final long inputBytes, final long budget, final String reason) {
+        this.mode       = mode;
+        this.maxHeap    = maxHeap;
+        this.inputBytes = inputBytes;
+        this.budget     = budget;
+        this.reason     = reason;
+    }
+
+    /**
+     * Plan a run with the heap of this JVM.
+     *
+     * @param options Validated options.
+     * @return The plan.
+     */
+    public static MemoryPlanner plan(final Options options) {
+        Runtime runtime = Runtime.getRuntime();
+
+        return plan(options, runtime.maxMemory(), runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * @param options Validated options.
+     * @param maxHeap The most heap the JVM can have.
+     * @param usedHeap The heap in use.
+     * @return The plan.
+     */
+    static MemoryPlanner plan(final Options options, final long maxHeap, final long usedHeap) {
+        long inputBytes     = 0;
+        boolean piped       = false;
+        long budget         = (long) ((maxHeap - usedHeap) * HEAP_FRACTION);
+
+        for(String logFile : options.getLogFiles()) {
+            if(Utils.isPipe(logFile)) {
+                piped = true;
+            } else {
+                inputBytes += new File(logFile).length();
+            }
+        }
+
+        if(options.getSortMemory() > 0 || options.getIngestThreads() > 0 || options.getPipelineCapacity() > 0
+                || options.getLineStoreLines() > 0 || null != options.getCheckpointFile()
+                || options.getIndexFalsePositiveRate() > 0 || options.isTokenIndex()) {
+            return new MemoryPlanner(AS_REQUESTED, maxHeap, inputBytes, budget, "set by the options");
+        }
+
+        if(piped || options.getHead() > 0 || options.getTail() > 0 || options.getContextMillis() > 0
+                || options.getContextEntries() > 0 || options.getGaps() > 0 || null != options.getTracePattern()
+                || null != options.getSampler(null) || options.getTemplates() > 0 || null != options.getQueryFile()) {
+            return new MemoryPlanner(STREAMING, maxHeap, inputBytes, budget, "the options stream the log entries");
+        }
+
+        if(inputBytes * HEAP_PER_INPUT_BYTE <= budget) {
+            return new MemoryPlanner(IN_MEMORY, maxHeap, inputBytes, budget, "the log entries fit in the heap");
+        }
+
+        return new MemoryPlanner(EXTERNAL_SORT, maxHeap, inputBytes, budget, "the log entries don't fit in the heap");
+    }
+
+    /**
+     * @return One of IN_MEMORY, STREAMING, EXTERNAL_SORT or AS_REQUESTED.
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * @return The memory budget of an external sort; else 0 if the plan isn't one.
+     */
+    public long getSortMemory() {
+        return EXTERNAL_SORT.equals(mode) ? Math.max(MIN_SORT_MEMORY, budget / 2) : 0;
+    }
+
+    /**
+     * Check, while the log entries are read into memory, that the heap isn't filling up.
+     *
+     * @param logEntries The number of log entries read so far.
+     * @return true if the heap is nearly full (after a collection), the plan is then an external sort.
+     */
+    public boolean isUnderPressure(final long logEntries) {
+        if(!IN_MEMORY.equals(mode) || usedHeap(false) < PRESSURE_FRACTION * maxHeap) {
+            return false;
+        }
+
+        long used = usedHeap(true);
+
+        if(used < PRESSURE_FRACTION * maxHeap) {
+            return false;
+        }
+
+        mode    = EXTERNAL_SORT;
+        reason  = String.format("the heap was %d%% full after %d log entries", 100 * used / maxHeap, logEntries);
+
+        return true;
+    }
+
+    /**
+     * @param collect true to collect the garbage first, as it may be most of what's used.
+     * @return The heap in use.
+     */
+    long usedHeap(final boolean collect) {
+        Runtime runtime = Runtime.getRuntime();
+
+        if(collect) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @param out Where to write the plan, e.g. stderr.
+     */
+    public void emit(final PrintStream out) {
+        out.println(String.format("# Memory plan: %s%s, %s (%s of log files, %s of the %s heap to use)",
+                mode,
+                EXTERNAL_SORT.equals(mode) ? " within " + size(getSortMemory()) : "",
+                reason,
+                size(inputBytes),
+                size(budget),
+                size(maxHeap)));
+    }
+
+    private static String size(final long bytes) {
+        if(bytes >= 10 * GB) {
+            return (bytes / GB) + " GB";
+        } else if(bytes >= 10 * MB) {
+            return (bytes / MB) + " MB";
+        }
+
+        return (bytes / KB) + " KB";
+    }
+}
@@ -0,0 +1,495 @@
+package com.insight.utils;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The options of a single LogViewer run, as specified on the command line.
+ */
+public class Options {
+    public static final String DEFAULT_TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss,SSS";
+    public static final String OUTPUT_TEXT              = "text";
+    public static final String OUTPUT_JSONL             = "jsonl";
+    public static final String OUTPUT_CSV               = "csv";
+
+    private String timestampDateFormat          = DEFAULT_TIMESTAMP_FORMAT;
+    private String startAt                      = null;
+    private String endAt                        = null;
+    private String timestampAdjustments         = null;
+    private String head                         = null;
+    private String tail                         = null;
+    private String ingestThreads                = null;
+    private String pipelineCapacity             = null;
+    private String sortMemory                   = null;
+    private String contextMillis                = null;
+    private String contextEntries               = null;
+    private String gaps                         = null;
+    private String tracePattern                 = null;
+    private String indexFalsePositiveRate       = null;
+    private String tokenIndex                   = null;
+    private String lineStoreLines               = null;
+    private String entryBytes                   = null;
+    private String entryLines                   = null;
+    private String checkpointFile               = null;
+    private String sample                       = null;
+    private String templates                    = null;
+    private String queryFile                    = null;
+    private String verbose                      = null;
+    private String outputFormat                 = OUTPUT_TEXT;
+    private String fieldDefinitions             = null;
+    private final List<String> fieldConditions  = new ArrayList<>();
+    private final List<String> searchText       = new ArrayList<>();
+    private final List<String> logFiles         = new ArrayList<>();
+
+    /**
+     * Build the options from command line arguments, values on the command line override the defaults.
+     *
+     * @param args The command line arguments.
+     * @param out Where to report any ignored arguments.
+     * @return The options.
+     */
+    public static Options parse(final String[] args, final PrintStream out) {
+        Options options = new Options();
+
+        for(String filePath : args) {
+            if (filePath.startsWith("=s=")) {
+                options.startAt = filePath.substring(3);
+            } else if (filePath.startsWith("=e=")) {
+                options.endAt = filePath.substring(3);
+            } else if(filePath.startsWith("=t=")) {
+                options.timestampDateFormat = filePath.substring(3);
+            } else if(filePath.startsWith("=a=")) {
+                options.timestampAdjustments = filePath.substring(3);
+            } else if(filePath.startsWith("=f=")) {
+                options.searchText.add(filePath.substring(3));
+            } else if(filePath.startsWith("=h=")) {
+                options.head = filePath.substring(3);
+            } else if(filePath.startsWith("=l=")) {
+                options.tail = filePath.substring(3);
+            } else if(filePath.startsWith("=i=")) {
+                options.ingestThreads = filePath.substring(3);
+            } else if(filePath.startsWith("=P=")) {
+                options.pipelineCapacity = filePath.substring(3);
+            } else if(filePath.startsWith("=C=")) {
+                options.contextMillis = filePath.substring(3);
+            } else if(filePath.startsWith("=n=")) {
+                options.contextEntries = filePath.substring(3);
+            } else if(filePath.startsWith("=x=")) {
+                options.indexFalsePositiveRate = filePath.substring(3);
+            } else if(filePath.startsWith("=I=")) {
+                options.tokenIndex = filePath.substring(3);
+            } else if(filePath.startsWith("=d=")) {
+                options.lineStoreLines = filePath.substring(3);
+            } else if(filePath.startsWith("=o=")) {
+                options.outputFormat = filePath.substring(3).trim().toLowerCase();
+            } else if(filePath.startsWith("=T=")) {
+                options.tracePattern = filePath.substring(3);
+            } else if(filePath.startsWith("=g=")) {
+                options.gaps = filePath.substring(3);
+            } else if(filePath.startsWith("=F=")) {
+                options.fieldDefinitions = filePath.substring(3);
+            } else if(filePath.startsWith("=q=")) {
+                options.fieldConditions.add(filePath.substring(3));
+            } else if(filePath.startsWith("=B=")) {
+                options.entryBytes = filePath.substring(3);
+            } else if(filePath.startsWith("=L=")) {
+                options.entryLines = filePath.substring(3);
+            } else if(filePath.startsWith("=k=")) {
+                options.checkpointFile = filePath.substring(3);
+            } else if(filePath.startsWith("=Q=")) {
+                options.queryFile = filePath.substring(3);
+            } else if(filePath.startsWith("=M=")) {
+                options.templates = filePath.substring(3);
+            } else if(filePath.startsWith("=S=")) {
+                options.sample = filePath.substring(3);
+            } else if(filePath.startsWith("=m=")) {
+                options.sortMemory = filePath.substring(3);
+            } else if(filePath.startsWith("=v=")) {
+                options.verbose = filePath.substring(3);
+            } else {
+                if(! options.logFiles.contains(filePath)) {
+                    options.logFiles.add(filePath);
+                } else {
+                    out.println("# Not processing duplicate file [" + filePath + "]");
+                }
+            }
+        }
+
+        return options;
+    }
+
+    /**
+     * Check that the option values are valid and consistent.
+     *
+     * @throws RuntimeException if they're not.
+     */
+    public void validate() {
+        Utils.validateFilterRanges(timestampDateFormat, startAt, endAt);
+        Utils.timestampAdjustments(logFiles.size(), timestampAdjustments);
+
+        int modes = (getIngestThreads() > 0 ? 1 : 0)
+                    + (getPipelineCapacity() > 0 ? 1 : 0)
+                    + (getSortMemory() > 0 ? 1 : 0);
+
+        if(modes > 1) {
+            throw new RuntimeException("Only one of ingest threads [" + ingestThreads + "], pipeline ["
+                    + pipelineCapacity + "] or sort memory [" + sortMemory + "] can be set");
+        }
+
+        if(getContextMillis() > 0 || getContextEntries() > 0) {
+            if(searchText.isEmpty()) {
+                throw new RuntimeException("A context (=C= or =n=) needs text (=f=) to match");
+            }
+
+            if(getIngestThreads() > 0 || getPipelineCapacity() > 0) {
+                throw new RuntimeException("A context can't be used with ingest threads or the pipeline");
+            }
+        }
+
+        isVerbose();
+
+        if(getIngestThreads() > 0 && (getHead() > 0 || getTail() > 0)) {
+            throw new RuntimeException("Ingest threads (=i=) can't be used with head or tail");
+        }
+
+        if(logFiles.contains(Utils.STDIN) && (getIngestThreads() > 0 || getPipelineCapacity() > 0)) {
+            throw new RuntimeException("stdin (" + Utils.STDIN + ") can't be used with ingest threads or the pipeline");
+        }
+
+        if((getIndexFalsePositiveRate() > 0 || isTokenIndex()) && modes > 0) {
+            throw new RuntimeException("An index (=x= or =I=) can't be used with ingest threads, the pipeline or sort memory");
+        }
+
+        if(null != getCheckpointFile()) {
+            if(modes > 0 || getIndexFalsePositiveRate() > 0 || isTokenIndex()) {
+                throw new RuntimeException("Checkpoints (=k=) can't be used with ingest threads, the pipeline, sort memory or an index");
+            }
+
+            for(String logFile : logFiles) {
+                if(Utils.isPipe(logFile)) {
+                    throw new RuntimeException("Checkpoints (=k=) can't be used with a pipe [" + logFile + "]");
+                }
+            }
+        }
+
+        getLineStoreLines();
+        getFieldFilter();
+        getEntryLimits();
+
+        if(null != getTracePattern()) {
+            if(getIngestThreads() > 0 || getPipelineCapacity() > 0 || getGaps() > 0) {
+                throw new RuntimeException("Traces (=T=) can't be used with ingest threads, the pipeline or a gap report");
+            }
+
+            if(!OUTPUT_TEXT.equals(outputFormat)) {
+                throw new RuntimeException("Traces (=T=) are only written as " + OUTPUT_TEXT);
+            }
+        }
+
+        if(null != getSampler(null)) {
+            if(getIngestThreads() > 0 || getPipelineCapacity() > 0 || getGaps() > 0 || null != getTracePattern()) {
+                throw new RuntimeException("A sample (=S=) can't be used with ingest threads, the pipeline, a gap report or traces");
+            }
+
+            if(getHead() > 0 || getTail() > 0) {
+                throw new RuntimeException("A sample (=S=) can't be used with head or tail");
+            }
+        }
+
+        if(getTemplates() > 0) {
+            if(getIngestThreads() > 0 || getPipelineCapacity() > 0 || getSortMemory() > 0 || getGaps() > 0
+                    || null != getTracePattern() || null != getSampler(null)) {
+                throw new RuntimeException("A template report (=M=) can't be used with ingest threads, the pipeline, "
+                        + "=m=, a gap report, traces or a sample");
+            }
+
+            if(getHead() > 0 || getTail() > 0 || getContextMillis() > 0 || getContextEntries() > 0) {
+                throw new RuntimeException("A template report (=M=) can't be used with head, tail or context");
+            }
+
+            if(!OUTPUT_TEXT.equals(outputFormat)) {
+                throw new RuntimeException("A template report (=M=) is only written as " + OUTPUT_TEXT);
+            }
+        }
+
+        if(null != queryFile) {
+            if(getIngestThreads() > 0 || getPipelineCapacity() > 0 || getGaps() > 0 || null != getTracePattern()
+                    || null != getSampler(null) || getTemplates() > 0) {
+                throw new RuntimeException("Queries (=Q=) can't be used with ingest threads, the pipeline, a gap report, "
+                        + "traces, a sample or a template report");
+            }
+
+            if(getHead() > 0 || getTail() > 0 || getContextMillis() > 0 || getContextEntries() > 0) {
+                throw new RuntimeException("Queries (=Q=) can't be used with head, tail or context");
+            }
+
+            getQueryBatch();
+        }
+
+        if(getLineStoreLines() > 0) {
+            boolean streamed = getPipelineCapacity() > 0 || getSortMemory() > 0 || getContextMillis() > 0
+                    || getContextEntries() > 0 || getHead() > 0 || getTail() > 0 || getTemplates() > 0 || getGaps() > 0
+                    || null != getTracePattern() || null != getSampler(null) || null != queryFile;
+
+            for(String logFile : logFiles) {
+                streamed |= Utils.isPipe(logFile);
+            }
+
+            if(streamed) {
+                throw new RuntimeException("Repeated lines (=d=) are only shared when the log entries are held in memory, "
+                        + "they can't be used with =P=, =m=, =C=, =n=, pipes, =h=, =l=, =M=, =g=, =T=, =S= or =Q=");
+            }
+        }
+
+        if(getGaps() > 0) {
+            if(getIngestThreads() > 0 || getPipelineCapacity() > 0) {
+                throw new RuntimeException("A gap report (=g=) can't be used with ingest threads or the pipeline");
+            }
+
+            if(!OUTPUT_TEXT.equals(outputFormat)) {
+                throw new RuntimeException("A gap report (=g=) is only written as " + OUTPUT_TEXT);
+            }
+        }
+
+        if(!OUTPUT_TEXT.equals(outputFormat) && !OUTPUT_JSONL.equals(outputFormat) && !OUTPUT_CSV.equals(outputFormat)) {
+            throw new RuntimeException("Invalid output format [" + outputFormat + "], it has to be "
+                    + OUTPUT_TEXT + ", " + OUTPUT_JSONL + " or " + OUTPUT_CSV);
+        }
+
+        if(getHead() > 0 && getTail() > 0) {
+            throw new RuntimeException("Only one of head [" + head + "] or tail [" + tail + "] can be set");
+        }
+    }
+
+    /**
+     * @return One of the OUTPUT_ formats.
+     */
+    public String getOutputFormat() {
+        return outputFormat;
+    }
+
+    public String getTimestampDateFormat() {
+        return timestampDateFormat;
+    }
+
+    public String getStartAt() {
+        return startAt;
+    }
+
+    public String getEndAt() {
+        return endAt;
+    }
+
+    public List<String> getSearchText() {
+        return searchText;
+    }
+
+    /**
+     * @return The filter of the field conditions (=q=), using the field definitions (=F=); else null if there are no
+     *         conditions.
+     */
+    public FieldFilter getFieldFilter() {
+        return FieldFilter.parse(fieldDefinitions, fieldConditions);
+    }
+
+    public List<String> getLogFiles() {
+        return logFiles;
+    }
+
+    /**
+     * @return The mS timestamp adjustment for each of the log files.
+     */
+    public List<Integer> getTimestampAdjustments() {
+        return Utils.timestampAdjustments(logFiles.size(), timestampAdjustments);
+    }
+
+    /**
+     * @return The number of threads to parse the log files on when reading them concurrently; else 0 to read them
+     *          one after the other.
+     */
+    public int getIngestThreads() {
+        return Utils.outputLimit("ingest threads", ingestThreads);
+    }
+
+    /**
+     * @return The number of batches each ring buffer holds when running as a pipeline; else 0 to not run as a
+     *          pipeline.
+     */
+    public int getPipelineCapacity() {
+        return Utils.outputLimit("pipeline capacity", pipelineCapacity);
+    }
+
+    /**
+     * @return The number of bytes of log entries to hold in memory when sorting; else 0 to sort everything in
+     *          memory.
+     */
+    public long getSortMemory() {
+        return Utils.byteCount("sort memory", sortMemory);
+    }
+
+    /**
+     * @return The mS either side of a matching log entry to also output log entries from; else 0 for none.
+     */
+    public int getContextMillis() {
+        return Utils.outputLimit("context mS", contextMillis);
+    }
+
+    /**
+     * @return The number of log entries either side of a matching log entry to also output; else 0 for none.
+     */
+    public int getContextEntries() {
+        return Utils.outputLimit("context entries", contextEntries);
+    }
+
+    /**
+     * @return The regular expression (its first group, if it has one) to find the trace id of a log entry with, to
+     *         group the log entries by (see TraceGrouper); else null.
+     */
+    public Pattern getTracePattern() {
+        if(null == tracePattern || tracePattern.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return Pattern.compile(tracePattern);
+        } catch (PatternSyntaxException e) {
+            throw new RuntimeException("Invalid trace pattern [" + tracePattern + "]", e);
+        }
+    }
+
+    /**
+     * @param writer What to write the sample with.
+     * @return The sampler (=S=N[,source|,MS]) to write a sample of the log entries with, instead of all of them; else
+     *         null.
+     */
+    public Sampler getSampler(final EntryWriter writer) {
+        return Sampler.parse(sample, writer);
+    }
+
+    /**
+     * @return The batch of queries (=Q=) to run over the log files in one pass, each written to its own file; else
+     *         null.
+     */
+    public QueryBatch getQueryBatch() {
+        return (null == queryFile) ? null : QueryBatch.load(queryFile, timestampDateFormat, fieldDefinitions);
+    }
+
+    /**
+     * @return The file of the batch of queries (=Q=); else null.
+     */
+    public String getQueryFile() {
+        return queryFile;
+    }
+
+    /**
+     * @return The number of most frequent templates to report (see TemplateReport) instead of the log entries; else 0.
+     */
+    public int getTemplates() {
+        return Utils.outputLimit("templates", templates);
+    }
+
+    /**
+     * @return The number of largest gaps to report (see GapReport) instead of the log entries; else 0.
+     */
+    public int getGaps() {
+        return Utils.outputLimit("gaps", gaps);
+    }
+
+    /**
+     * @return The false positive rate of the block index (see BlockIndex) to read the log files with; else 0 to read
+     *          the log files without one.
+     */
+    public double getIndexFalsePositiveRate() {
+        if(null == indexFalsePositiveRate || indexFalsePositiveRate.trim().length() < 1) {
+            return 0;
+        }
+
+        double rate;
+
+        try {
+            rate = Double.parseDouble(indexFalsePositiveRate.trim());
+        } catch(NumberFormatException e) {
+            throw new RuntimeException("Invalid index false positive rate [" + indexFalsePositiveRate + "]", e);
+        }
+
+        if(rate <= 0 || rate >= 1) {
+            throw new RuntimeException("Invalid index false positive rate [" + indexFalsePositiveRate
+                    + "], it has to be > 0 and < 1");
+        }
+
+        return rate;
+    }
+
+    /**
+     * @return true if the log files are to be read through their token index (see TokenIndex).
+     */
+    public boolean isTokenIndex() {
+        return isOn("token index", tokenIndex);
+    }
+
+    /**
+     * @return true if the run is to say on stderr how it holds the log entries (see MemoryPlanner).
+     */
+    public boolean isVerbose() {
+        return isOn("verbose", verbose);
+    }
+
+    /**
+     * @param name What the switch is, for the error.
+     * @param value on or off; else null or empty for off.
+     * @return true if the switch is on.
+     * @throws RuntimeException if the value is neither.
+     */
+    private static boolean isOn(final String name, final String value) {
+        if(null == value || value.trim().length() < 1 || "off".equalsIgnoreCase(value.trim())) {
+            return false;
+        }
+
+        if(!"on".equalsIgnoreCase(value.trim())) {
+            throw new RuntimeException("Invalid " + name + " [" + value + "], it has to be on or off");
+        }
+
+        return true;
+    }
+
+    /**
+     * @return The maximum number of distinct continuation lines to share between log entries (see LineStore); else 0
+     *          to not share them.
+     */
+    public int getLineStoreLines() {
+        return Utils.outputLimit("line store lines", lineStoreLines);
+    }
+
+    /**
+     * @return The most bytes (=B=) and lines (=L=) of a log entry to keep in memory (see EntryLimits); else null for
+     *          no limit.
+     */
+    public EntryLimits getEntryLimits() {
+        return EntryLimits.of(Utils.byteCount("entry bytes", entryBytes), Utils.outputLimit("entry lines", entryLines));
+    }
+
+    /**
+     * @return The file to keep how far each log file has been read in (see Checkpoints), so only what was appended is
+     *          read next time; else null to read the log files in full.
+     */
+    public String getCheckpointFile() {
+        return (null == checkpointFile || checkpointFile.trim().isEmpty()) ? null : checkpointFile;
+    }
+
+    /**
+     * @return The number of entries to output from the start; else 0 for no limit.
+     */
+    public int getHead() {
+        return Utils.outputLimit("head", head);
+    }
+
+    /**
+     * @return The number of entries to output from the end; else 0 for no limit.
+     */
+    public int getTail() {
+        return Utils.outputLimit("tail", tail);
+    }
+}
@@ -0,0 +1,257 @@
+package com.insight.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Time sort lists of log entries on many threads, giving exactly what Utils.timeSortLists would (a stable sort of the
+ * lists in order, so entries with the same timestamp keep their source and then file order).
+ *
+ * Each list is (stable) sorted on its own, unless it's in time order already. Splitter timestamps are then sampled
+ * across all the lists, and every list is split at them by binary search, so each partition holds a time range of
+ * every list. All the entries with the same timestamp fall in the same partition, so merging each partition by
+ * timestamp and then source order (see LogEntryMerger), independently on a fork-join pool, and concatenating the
+ * partitions in order gives the same order as the single threaded sort.
+ */
+public class ParallelMerge {
+    public static final int MIN_PARALLEL_ENTRIES    = 64 * 1024;
+    public static final int SAMPLES_PER_PARTITION   = 32;
+
+    private final int parallelism;
+    private final int minParallelEntries;
+
+    /**
+     * @param parallelism The number of threads to sort and merge on.
+     */
+    public ParallelMerge(final int parallelism) {
+        this(parallelism, MIN_PARALLEL_ENTRIES);
+    }
+
+    /**
+     * @param parallelism The number of threads to sort and merge on.
+     * @param minParallelEntries The fewest entries worth sorting on more than one thread.
+     */
+    public ParallelMerge(final int parallelism, final int minParallelEntries) {
+        this.parallelism        = Math.max(1, parallelism);
+        this.minParallelEntries = minParallelEntries;
+    }
+
+    /**
+     * Time sort lists of log entries.
+     *
+     * @param logs The log entries of each source, in source order, they don't have to be in time order.
+     * @return The log entries, time sorted.
+     */
+    public List<LogEntry> timeSortLists(final List<List<LogEntry>> logs) {
+        long total = 0;
+
+        for(List<LogEntry> log : logs) {
+            total += log.size();
+        }
+
+        if(parallelism < 2 || total < minParallelEntries) {
+            return sequential(logs);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            List<List<LogEntry>> sorted = sortEach(pool, logs);
+            long[] splitters            = splitters(sorted, parallelism);
+            int partitions              = splitters.length + 1;
+            int[][] bounds              = new int[sorted.size()][];
+            int[] offsets               = new int[partitions + 1];
+
+            ////////////////////////////////////////////////////////////////
+            // Split every list at the splitters, partition p of a list is
+            // bounds[p] (inclusive) to bounds[p + 1] (exclusive)
+            for(int i = 0 ; i < sorted.size() ; i++) {
+                List<LogEntry> log  = sorted.get(i);
+                bounds[i]           = new int[partitions + 1];
+
+                for(int p = 0 ; p < splitters.length ; p++) {
+                    bounds[i][p + 1] = lowerBound(log, splitters[p], bounds[i][p]);
+                }
+                bounds[i][partitions] = log.size();
+
+                for(int p = 0 ; p < partitions ; p++) {
+                    offsets[p + 1] += bounds[i][p + 1] - bounds[i][p];
+                }
+            }
+
+            for(int p = 0 ; p < partitions ; p++) {
+                offsets[p + 1] += offsets[p];
+            }
+
+            final LogEntry[] merged         = new LogEntry[offsets[partitions]];
+            List<Callable<Void>> merges     = new ArrayList<>();
+
+            for(int p = 0 ; p < partitions ; p++) {
+                final List<Iterator<LogEntry>> parts    = new ArrayList<>();
+                final int offset                        = offsets[p];
+
+                for(int i = 0 ; i < sorted.size() ; i++) {
+                    parts.add(sorted.get(i).subList(bounds[i][p], bounds[i][p + 1]).iterator());
+                }
+
+                merges.add(new Callable<Void>() {
+                    public Void call() {
+                        LogEntryMerger merger   = new LogEntryMerger(parts);
+                        int index               = offset;
+
+                        while(merger.hasNext()) {
+                            merged[index++] = merger.next();
+                        }
+
+                        return null;
+                    }
+                });
+            }
+
+            await(pool.invokeAll(merges));
+
+            return new ArrayList<>(Arrays.asList(merged));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The single threaded sort, a stable sort of the lists in order.
+     */
+    static List<LogEntry> sequential(final List<List<LogEntry>> logs) {
+        List<LogEntry> timeSortedLogEntries   = new ArrayList<>();
+
+        for(List<LogEntry> log : logs) {
+            timeSortedLogEntries.addAll(log);
+        }
+
+        Collections.sort(timeSortedLogEntries);
+
+        return timeSortedLogEntries;
+    }
+
+    /**
+     * @return Each list time sorted (stable), the lists already in time order aren't copied.
+     */
+    private static List<List<LogEntry>> sortEach(final ForkJoinPool pool, final List<List<LogEntry>> logs) {
+        List<Callable<List<LogEntry>>> sorts = new ArrayList<>();
+
+        for(final List<LogEntry> log : logs) {
+            sorts.add(new Callable<List<LogEntry>>() {
+                public List<LogEntry> call() {
+                    if(isTimeSorted(log)) {
+                        return log;
+                    }
+
+                    List<LogEntry> sorted = new ArrayList<>(log);
+                    Collections.sort(sorted);
+
+                    return sorted;
+                }
+            });
+        }
+
+        return await(pool.invokeAll(sorts));
+    }
+
+    private static boolean isTimeSorted(final List<LogEntry> log) {
+        long last = Long.MIN_VALUE;
+
+        for(LogEntry logEntry : log) {
+            if(logEntry.getRawTimeStamp() < last) {
+                return false;
+            }
+            last = logEntry.getRawTimeStamp();
+        }
+
+        return true;
+    }
+
+    /**
+     * Sample timestamps from every list, in proportion to its size, and take evenly spaced ones as the splitters.
+     *
+     * @return The distinct splitter timestamps (above the earliest sampled), ascending, there may be fewer than
+     *         partitions - 1.
+     */
+    static long[] splitters(final List<List<LogEntry>> sorted, final int partitions) {
+        long total = 0;
+
+        for(List<LogEntry> log : sorted) {
+            total += log.size();
+        }
+
+        int wanted          = partitions * SAMPLES_PER_PARTITION;
+        List<Long> samples  = new ArrayList<>(wanted + sorted.size());
+
+        for(List<LogEntry> log : sorted) {
+            int count = (int) Math.min(log.size(), Math.max(1, (long) wanted * log.size() / Math.max(1, total)));
+
+            for(int i = 0 ; i < count && !log.isEmpty() ; i++) {
+                samples.add(log.get((int) ((long) i * log.size() / count)).getRawTimeStamp());
+            }
+        }
+
+        Collections.sort(samples);
+
+        long[] splitters    = new long[partitions - 1];
+        int distinct        = 0;
+
+        for(int p = 1 ; p < partitions && !samples.isEmpty() ; p++) {
+            long splitter = samples.get((int) ((long) p * samples.size() / partitions));
+
+            if(splitter > ((0 == distinct) ? samples.get(0) : splitters[distinct - 1])) {
+                splitters[distinct++] = splitter;
+            }
+        }
+
+        return Arrays.copyOf(splitters, distinct);
+    }
+
+    /**
+     * @return The index of the first entry at or after the timestamp, searching from the index from.
+     */
+    static int lowerBound(final List<LogEntry> log, final long timeStamp, final int from) {
+        int low     = from;
+        int high    = log.size();
+
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+
+            if(log.get(middle).getRawTimeStamp() < timeStamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private static <T> List<T> await(final List<Future<T>> futures) {
+        List<T> results = new ArrayList<>();
+
+        try {
+            for(Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted merging log entries", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+
+        return results;
+    }
+}
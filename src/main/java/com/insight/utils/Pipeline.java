@@ -0,0 +1,467 @@
+package com.insight.utils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Run LogViewer as concurrent stages, so reading, parsing, filtering, merging and writing all overlap and the first
+ * log entries are written while the log files are still being read.
+ *
+ * <pre>
+ *   read (per file) -> parse (per file) -> filter (per file) -> merge -> write
+ * </pre>
+ *
+ * The stages are connected by RingBuffers of batches, whose queue depth statistics are reported once the run has
+ * finished. As with =h=, the log entries in each log file are expected to be in time ascending order.
+ */
+public class Pipeline {
+    public static final int BATCH_SIZE          = 256;
+    public static final int CHUNK_SIZE          = 64 * 1024;
+
+    private final int capacity;
+    private final List<RingBuffer<?>> rings     = new ArrayList<>();
+    private final List<Thread> threads          = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private FieldFilter fieldFilter             = null;
+    private EntryLimits entryLimits             = null;
+
+    /**
+     * @param capacity The number of batches each ring buffer can hold.
+     */
+    public Pipeline(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param fieldFilter The field conditions a log entry has to pass; else null to not filter by field.
+     */
+    public void setFieldFilter(final FieldFilter fieldFilter) {
+        this.fieldFilter = fieldFilter;
+    }
+
+    /**
+     * @param entryLimits The most of a log entry to keep in memory; else null for no limit.
+     */
+    public void setEntryLimits(final EntryLimits entryLimits) {
+        this.entryLimits = entryLimits;
+    }
+
+    /**
+     * Read, time merge and write the log entries of the log files.
+     *
+     * @param logFilePaths The files containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+     *                null or empty implies no filtering
+     * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+     *              null or empty implies no filtering.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param timestampAdjustments A mS adjustment to the log entries timestamp, for each log file.
+     * @param head The number of log entries to write from the start; else 0 for no limit.
+     * @param tail The number of log entries to write from the end; else 0 for no limit.
+     * @param out The stream to write the log entries to.
+     * @param statistics The stream to write the queue depth statistics to.
+     * @throws IOException
+     * @throws ParseException
+     */
+    public void run(
+            final List<String> logFilePaths,
+            final String timestampDateFormat,
+            final String startAt,
+            final String endAt,
+            final List<String> searchText,
+            final List<Integer> timestampAdjustments,
+            final int head,
+            final int tail,
+            final PrintStream out,
+            final PrintStream statistics) throws IOException, ParseException {
+        run(logFilePaths, timestampDateFormat, startAt, endAt, searchText, timestampAdjustments, head, tail,
+                new TextEntryWriter(logFilePaths, out), statistics);
+    }
+
+    /**
+     * Read, time merge and write the log entries of the log files.
+     *
+     * @param logFilePaths The files containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+     *                null or empty implies no filtering
+     * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+     *              null or empty implies no filtering.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param timestampAdjustments A mS adjustment to the log entries timestamp, for each log file.
+     * @param head The number of log entries to write from the start; else 0 for no limit.
+     * @param tail The number of log entries to write from the end; else 0 for no limit.
+     * @param writer The writer of the output format.
+     * @param statistics The stream to write the queue depth statistics to.
+     * @throws IOException
+     * @throws ParseException
+     */
+    public void run(
+            final List<String> logFilePaths,
+            final String timestampDateFormat,
+            final String startAt,
+            final String endAt,
+            final List<String> searchText,
+            final List<Integer> timestampAdjustments,
+            final int head,
+            final int tail,
+            final EntryWriter writer,
+            final PrintStream statistics) throws IOException, ParseException {
+        SimpleDateFormat sdf                            = dateFormat(timestampDateFormat);
+        final long startTs                              = Utils.startTimeStamp(startAt, sdf);
+        final long endTs                                = Utils.endTimeStamp(endAt, sdf);
+        List<Iterator<LogEntry>> filtered               = new ArrayList<>();
+
+        for(int i = 0 ; i < logFilePaths.size() ; i++) {
+            final String logFilePath                    = logFilePaths.get(i);
+            final int timestampAdjustment               = timestampAdjustments.get(i);
+            final RingBuffer<Chunk> chunks              = ring("read " + (i + 1));
+            final RingBuffer<List<RawEntry>> rawEntries = ring("parse " + (i + 1));
+            final RingBuffer<List<LogEntry>> logEntries = ring("filter " + (i + 1));
+
+            stage("read-" + (i + 1), null, chunks, new Runnable() {
+                public void run() {
+                    read(logFilePath, chunks);
+                }
+            });
+
+            stage("parse-" + (i + 1), chunks, rawEntries, new Runnable() {
+                public void run() {
+                    parse(timestampDateFormat, chunks, rawEntries);
+                }
+            });
+
+            stage("filter-" + (i + 1), rawEntries, logEntries, new Runnable() {
+                public void run() {
+                    filter(logFilePath, timestampDateFormat, startTs, endTs, searchText, timestampAdjustment,
+                            rawEntries, logEntries);
+                }
+            });
+
+            filtered.add(new BatchIterator<>(logEntries));
+        }
+
+        final List<Iterator<LogEntry>> sources  = filtered;
+        final RingBuffer<List<LogEntry>> merged = ring("merge");
+
+        stage("merge", null, merged, new Runnable() {
+            public void run() {
+                LogEntryMerger merger   = new LogEntryMerger(sources);
+                List<LogEntry> batch    = new ArrayList<>(BATCH_SIZE);
+
+                while(merger.hasNext()) {
+                    batch.add(merger.next());
+
+                    if(batch.size() == BATCH_SIZE) {
+                        if(!merged.put(batch)) {
+                            return;
+                        }
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+
+                if(!batch.isEmpty()) {
+                    merged.put(batch);
+                }
+            }
+        });
+
+        for(Thread thread : threads) {
+            thread.start();
+        }
+
+        try {
+            Utils.emitMerged(new BatchIterator<>(merged), writer, "", head, tail);
+        } finally {
+            cancel();
+
+            for(Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            statistics.println("# Pipeline queue depths:");
+            for(RingBuffer<?> ring : rings) {
+                statistics.println("# " + ring.statistics());
+            }
+        }
+
+        Throwable cause = failure.get();
+
+        if(cause instanceof UncheckedIOException) {
+            cause = cause.getCause();
+        }
+
+        if(cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if(cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if(cause instanceof Error) {
+            throw (Error) cause;
+        } else if(null != cause) {
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private void read(final String logFilePath, final RingBuffer<Chunk> chunks) {
+        try (InputStream in = new FileInputStream(logFilePath)) {
+            while(true) {
+                byte[] data = new byte[CHUNK_SIZE];
+                int length  = in.read(data);
+
+                if(length < 0) {
+                    break;
+                }
+
+                if(length > 0 && !chunks.put(new Chunk(data, length))) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Problems reading [" + logFilePath + "]", e);
+        }
+    }
+
+    private void parse(
+            final String timestampDateFormat,
+            final RingBuffer<Chunk> chunks,
+            final RingBuffer<List<RawEntry>> rawEntries) {
+        EntryGrouper grouper =
+                new EntryGrouper(
+                        new LineReader(new ChunkInputStream(chunks), Charset.defaultCharset(), 0),
+                        dateFormat(timestampDateFormat));
+        grouper.setLimits(entryLimits);
+        List<RawEntry> batch = new ArrayList<>(BATCH_SIZE);
+        String data;
+
+        try {
+            while(null != (data = grouper.next())) {
+                batch.add(new RawEntry(grouper.getTimeStamp(), data));
+
+                if(batch.size() == BATCH_SIZE) {
+                    if(!rawEntries.put(batch)) {
+                        return;
+                    }
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if(!batch.isEmpty()) {
+            rawEntries.put(batch);
+        }
+    }
+
+    private void filter(
+            final String source,
+            final String timestampDateFormat,
+            final long startTs,
+            final long endTs,
+            final List<String> searchText,
+            final int timestampAdjustment,
+            final RingBuffer<List<RawEntry>> rawEntries,
+            final RingBuffer<List<LogEntry>> logEntries) {
+        SimpleDateFormat sdf    = dateFormat(timestampDateFormat);
+        int patternLength       = sdf.toPattern().length();
+        List<LogEntry> filtered = new ArrayList<>(BATCH_SIZE);
+        List<RawEntry> batch;
+
+        while(null != (batch = rawEntries.take())) {
+            for(RawEntry rawEntry : batch) {
+                if(null != fieldFilter && !fieldFilter.matches(rawEntry.data, patternLength)) {
+                    continue;
+                }
+
+                LogEntry logEntry =
+                        Utils.createLogEntry(
+                                source,
+                                rawEntry.data,
+                                sdf,
+                                rawEntry.timeStamp + timestampAdjustment,
+                                startTs,
+                                endTs,
+                                searchText);
+
+                if(null != logEntry) {
+                    filtered.add(logEntry);
+                }
+            }
+
+            if(filtered.size() >= BATCH_SIZE) {
+                if(!logEntries.put(filtered)) {
+                    return;
+                }
+                filtered = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        if(!filtered.isEmpty()) {
+            logEntries.put(filtered);
+        }
+    }
+
+    /**
+     * Start a stage on its own thread, when it finishes (or fails) it stops its input and closes its output.
+     */
+    private void stage(
+            final String name,
+            final RingBuffer<?> in,
+            final RingBuffer<?> out,
+            final Runnable work) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    work.run();
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                    cancel();
+                } finally {
+                    if(null != in) {
+                        in.cancel();
+                    }
+                    out.close();
+                }
+            }
+        }, "Pipeline-" + name);
+
+        thread.setDaemon(true);
+        threads.add(thread);
+    }
+
+    private <T> RingBuffer<T> ring(final String name) {
+        RingBuffer<T> ring = new RingBuffer<>(name, capacity);
+
+        rings.add(ring);
+
+        return ring;
+    }
+
+    private void cancel() {
+        for(RingBuffer<?> ring : rings) {
+            ring.cancel();
+        }
+    }
+
+    private static SimpleDateFormat dateFormat(final String timestampDateFormat) {
+        SimpleDateFormat sdf = new SimpleDateFormat(timestampDateFormat);
+
+        sdf.setLenient(false);
+
+        return sdf;
+    }
+
+    private static class Chunk {
+        private final byte[] data;
+        private final int length;
+
+        Chunk(final byte[] data, final int length) {
+            this.data   = data;
+            this.length = length;
+        }
+    }
+
+    private static class RawEntry {
+        private final long timeStamp;
+        private final String data;
+
+        RawEntry(final long timeStamp, final String data) {
+            this.timeStamp  = timeStamp;
+            this.data       = data;
+        }
+    }
+
+    /**
+     * Present a ring of chunks as a stream.
+     */
+    private static class ChunkInputStream extends InputStream {
+        private final RingBuffer<Chunk> chunks;
+        private Chunk chunk     = null;
+        private int position    = 0;
+        private boolean eof     = false;
+
+        ChunkInputStream(final RingBuffer<Chunk> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+
+            return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(eof) {
+                return -1;
+            }
+
+            if(null == chunk || position == chunk.length) {
+                chunk       = chunks.take();
+                position    = 0;
+
+                if(null == chunk) {
+                    eof = true;
+                    return -1;
+                }
+            }
+
+            int count = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk.data, position, b, off, count);
+            position += count;
+
+            return count;
+        }
+    }
+
+    /**
+     * Present a ring of batches as the items in the batches.
+     */
+    private static class BatchIterator<E> implements Iterator<E> {
+        private final RingBuffer<List<E>> batches;
+        private List<E> batch   = null;
+        private int position    = 0;
+
+        BatchIterator(final RingBuffer<List<E>> batches) {
+            this.batches = batches;
+        }
+
+        public boolean hasNext() {
+            while(null == batch || position == batch.size()) {
+                batch       = batches.take();
+                position    = 0;
+
+                if(null == batch) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        public E next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return batch.get(position++);
+        }
+    }
+}
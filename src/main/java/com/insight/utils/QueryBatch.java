@@ -0,0 +1,342 @@
+package com.insight.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Run a batch of named queries over the same log files in one pass, instead of one run per query.
+ *
+ * Each line of the query file is a query, the file its results are written to followed by its filters (=s=, =e=, =f=,
+ * =F= and =q=, quoted as on a command line), e.g.
+ *
+ *      errors.log =f=ERROR =f=FATAL
+ *      night.log '=s=2016-05-16 00:00:00,000' '=e=2016-05-16 06:00:00,000'
+ *
+ * The log files are read, parsed and merged once, narrowed to what at least one query could match, and every merged
+ * log entry is checked against the compiled filters of each query, so N queries cost little more than one. Each
+ * query's results are written time sorted, in the output format, to its file.
+ */
+public class QueryBatch implements EntryWriter {
+    private static final Set<String> QUERY_OPTIONS  = new HashSet<>(Arrays.asList("=s=", "=e=", "=f=", "=F=", "=q="));
+
+    private final List<Query> queries;
+    private final SimpleDateFormat sdf;
+
+    private QueryBatch(final List<Query> queries, final SimpleDateFormat sdf) {
+        this.queries    = queries;
+        this.sdf        = sdf;
+    }
+
+    /**
+     * Load the queries, blank lines and lines starting with # are ignored.
+     *
+     * @param queryFilePath The file of queries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param fieldDefinitions The field definitions (=F=) of queries that don't define their own; else null.
+     * @return The queries.
+     * @throws RuntimeException if the file can't be read or a query is invalid.
+     */
+    public static QueryBatch load(
+            final String queryFilePath,
+            final String timestampDateFormat,
+            final String fieldDefinitions) {
+        List<String> lines;
+
+        try {
+            lines = Files.readAllLines(Paths.get(queryFilePath), Charset.defaultCharset());
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read the queries [" + queryFilePath + "]", e);
+        }
+
+        SimpleDateFormat sdf    = new SimpleDateFormat(timestampDateFormat);
+        List<Query> queries     = new ArrayList<>();
+        Set<String> names       = new HashSet<>();
+
+        sdf.setLenient(false);
+
+        for(String line : lines) {
+            if(line.trim().isEmpty() || line.trim().startsWith("#")) {
+                continue;
+            }
+
+            Query query = Query.parse(line, timestampDateFormat, fieldDefinitions, sdf);
+
+            if(!names.add(query.name)) {
+                throw new RuntimeException("Duplicate query [" + query.name + "] in [" + queryFilePath + "]");
+            }
+
+            queries.add(query);
+        }
+
+        if(queries.isEmpty()) {
+            throw new RuntimeException("No queries in [" + queryFilePath + "]");
+        }
+
+        return new QueryBatch(queries, sdf);
+    }
+
+    /**
+     * @return The earliest timestamp any query starts at, to read from; else null if a query has no start.
+     */
+    public String getStartAt() {
+        long startTs = Long.MAX_VALUE;
+
+        for(Query query : queries) {
+            startTs = Math.min(startTs, query.startTs);
+        }
+
+        return (startTs > 0) ? sdf.format(new Date(startTs)) : null;
+    }
+
+    /**
+     * @return The latest timestamp any query ends at, to read to; else null if a query has no end.
+     */
+    public String getEndAt() {
+        long endTs = Long.MIN_VALUE;
+
+        for(Query query : queries) {
+            endTs = Math.max(endTs, query.endTs);
+        }
+
+        return (endTs < Long.MAX_VALUE) ? sdf.format(new Date(endTs)) : null;
+    }
+
+    /**
+     * @return All the queries' text, to read the log entries that have any of it; else empty if a query has none.
+     */
+    public List<String> getSearchText() {
+        List<String> searchText = new ArrayList<>();
+
+        for(Query query : queries) {
+            if(query.searchText.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            for(String text : query.searchText) {
+                if(!searchText.contains(text)) {
+                    searchText.add(text);
+                }
+            }
+        }
+
+        return searchText;
+    }
+
+    /**
+     * Open each query's results file, writing it in the output format. A results file can't be one of the log files.
+     *
+     * @param outputFormat One of the Options.OUTPUT_ formats.
+     * @param sources A list of the sources that make up the time sorted log entries.
+     * @throws IOException
+     * @throws RuntimeException if a query would write its results over a log file.
+     */
+    public void open(final String outputFormat, final List<String> sources) throws IOException {
+        Set<String> logFiles = new HashSet<>();
+
+        for(String source : sources) {
+            if(!Utils.isPipe(source)) {
+                logFiles.add(new File(source).getCanonicalPath());
+            }
+        }
+
+        for(Query query : queries) {
+            if(logFiles.contains(new File(query.name).getCanonicalPath())) {
+                throw new RuntimeException("The query [" + query.name + "] would overwrite a log file");
+            }
+        }
+
+        try {
+            for(Query query : queries) {
+                query.out       = new PrintStream(new BufferedOutputStream(new FileOutputStream(query.name), 64 * 1024));
+                query.writer    = Utils.entryWriter(outputFormat, sources, query.out);
+            }
+        } catch (IOException | RuntimeException e) {
+            ////////////////////////////////////////////
+            // Don't leave the ones already open behind
+            for(Query query : queries) {
+                if(null != query.out) {
+                    query.out.close();
+                }
+            }
+            throw e;
+        }
+    }
+
+    public void begin(final String label) {
+        for(Query query : queries) {
+            query.writer.begin(query.name);
+        }
+    }
+
+    public void write(final LogEntry logEntry) {
+        for(Query query : queries) {
+            if(query.matches(logEntry)) {
+                query.writer.write(logEntry);
+                query.count++;
+            }
+        }
+    }
+
+    public void end() {
+        for(Query query : queries) {
+            query.writer.end();
+            query.out.close();
+        }
+    }
+
+    /**
+     * @param out Where to write how many log entries each query matched, e.g. stdout.
+     */
+    public void emitSummary(final PrintStream out) {
+        for(Query query : queries) {
+            out.println(String.format("# Query %s: %d log entries", query.name, query.count));
+        }
+    }
+
+    /**
+     * A query, the file its results are written to and its compiled filters.
+     */
+    private static class Query {
+        private final String name;
+        private final long startTs;
+        private final long endTs;
+        private final List<String> searchText;
+        private final FieldFilter fieldFilter;
+        private PrintStream out;
+        private EntryWriter writer;
+        private long count                  = 0;
+
+        Query(
+                final String name,
+                final long startTs,
+                final long endTs,
+                final List<String> searchText,
+                final FieldFilter fieldFilter) {
+            this.name           = name;
+            this.startTs        = startTs;
+            this.endTs          = endTs;
+            this.searchText     = searchText;
+            this.fieldFilter    = fieldFilter;
+        }
+
+        static Query parse(
+                final String line,
+                final String timestampDateFormat,
+                final String fieldDefinitions,
+                final SimpleDateFormat sdf) {
+            List<String> args = tokenize(line);
+
+            if(null != fieldDefinitions) {
+                args.add(0, "=F=" + fieldDefinitions);
+            }
+
+            for(String arg : args) {
+                if(arg.length() >= 3 && arg.charAt(0) == '=' && arg.charAt(2) == '='
+                        && !QUERY_OPTIONS.contains(arg.substring(0, 3))) {
+                    throw new RuntimeException("Invalid query [" + line + "], only " + QUERY_OPTIONS
+                            + " can be used in a query");
+                }
+            }
+
+            Options options = Options.parse(args.toArray(new String[0]), System.err);
+
+            if(options.getLogFiles().size() != 1) {
+                throw new RuntimeException("Invalid query [" + line + "], it has to start with the file to write to");
+            }
+
+            Utils.validateFilterRanges(timestampDateFormat, options.getStartAt(), options.getEndAt());
+
+            try {
+                return new Query(
+                        options.getLogFiles().get(0),
+                        Utils.startTimeStamp(options.getStartAt(), sdf),
+                        Utils.endTimeStamp(options.getEndAt(), sdf),
+                        options.getSearchText(),
+                        options.getFieldFilter());
+            } catch (ParseException e) {
+                throw new RuntimeException("Invalid query [" + line + "]", e);
+            }
+        }
+
+        boolean matches(final LogEntry logEntry) {
+            long ts = logEntry.getRawTimeStamp();
+
+            if(ts < startTs || ts > endTs) {
+                return false;
+            }
+
+            if(!searchText.isEmpty()) {
+                boolean found = false;
+
+                for(String text : searchText) {
+                    if(logEntry.contains(text)) {
+                        found = true;
+                        break;
+                    }
+                }
+
+                if(!found) {
+                    return false;
+                }
+            }
+
+            return null == fieldFilter || fieldFilter.matches(logEntry);
+        }
+
+        /**
+         * Split a line into arguments at whitespace, except within single or double quotes.
+         */
+        private static List<String> tokenize(final String line) {
+            List<String> args   = new ArrayList<>();
+            StringBuilder arg   = null;
+            char quote          = 0;
+
+            for(int i = 0 ; i < line.length() ; i++) {
+                char c = line.charAt(i);
+
+                if(0 != quote) {
+                    if(c == quote) {
+                        quote = 0;
+                    } else {
+                        arg.append(c);
+                    }
+                } else if('\'' == c || '"' == c) {
+                    quote   = c;
+                    arg     = (null == arg) ? new StringBuilder() : arg;
+                } else if(Character.isWhitespace(c)) {
+                    if(null != arg) {
+                        args.add(arg.toString());
+                        arg = null;
+                    }
+                } else {
+                    arg = (null == arg) ? new StringBuilder() : arg;
+                    arg.append(c);
+                }
+            }
+
+            if(0 != quote) {
+                throw new RuntimeException("Invalid query [" + line + "], unbalanced quotes");
+            }
+
+            if(null != arg) {
+                args.add(arg.toString());
+            }
+
+            return args;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.insight.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Limit a stream to a number of bytes.
+ */
+class RangeInputStream extends FilterInputStream {
+    private long remaining;
+
+    /**
+     * @param in The stream, positioned at the start of the range.
+     * @param length The number of bytes in the range.
+     */
+    RangeInputStream(final InputStream in, final long length) {
+        super(in);
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(remaining <= 0) {
+            return -1;
+        }
+
+        int b = super.read();
+        if(b >= 0) {
+            remaining--;
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(remaining <= 0) {
+            return -1;
+        }
+
+        int read = super.read(b, off, (int) Math.min(len, remaining));
+        if(read > 0) {
+            remaining -= read;
+        }
+
+        return read;
+    }
+}
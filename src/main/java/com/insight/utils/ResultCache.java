@@ -0,0 +1,321 @@
+package com.insight.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A cache of the log entries selected from a single log file, bounded by an (estimated) size in bytes with the least
+ * recently used results evicted first.
+ *
+ * Results are keyed by the identity of the log file (path, size and last modified time) and everything other than the
+ * time range that selected them (timestamp format, timestamp adjustment and text filters). A lookup for a time range
+ * that lies within a cached wider time range is answered from the wider result.
+ */
+public class ResultCache {
+    public static final long DEFAULT_MAX_BYTES  = 64L * 1024 * 1024;
+
+    private static final long RESULT_OVERHEAD   = 128;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Window, List<LogEntry>> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes                      = 0;
+    private long hits                           = 0;
+    private long misses                         = 0;
+    private long evictions                      = 0;
+
+    /**
+     * @param maxBytes The (estimated) maximum size of the cached results.
+     */
+    public ResultCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Build the key of the results selected from a log file.
+     *
+     * @param logFilePath The file containing log entries.
+     * @param length The size of the file the results were selected from.
+     * @param lastModified The last modified time of the file the results were selected from.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param timestampAdjustment A mS adjustment to the log entries timestamp.
+     * @param searchText A list of text string to match a lig entry against.
+     * @return The key.
+     */
+    public static Key key(
+            final String logFilePath,
+            final long length,
+            final long lastModified,
+            final String timestampDateFormat,
+            final int timestampAdjustment,
+            final List<String> searchText) {
+        return new Key(logFilePath, length, lastModified, timestampDateFormat, timestampAdjustment, searchText);
+    }
+
+    /**
+     * Look up the log entries selected for a time range.
+     *
+     * @param key The key of the results.
+     * @param startTs mS timestamp the (adjusted) log entries start at.
+     * @param endTs mS timestamp the (adjusted) log entries end at.
+     * @return The log entries in file order (not modifiable); else null if nothing cached covers the time range.
+     */
+    public synchronized List<LogEntry> get(final Key key, final long startTs, final long endTs) {
+        Window window               = new Window(key, startTs, endTs);
+        List<LogEntry> logEntries   = results.get(window);
+
+        if(null != logEntries) {
+            hits++;
+            return logEntries;
+        }
+
+        //////////////////////////////////////////////////
+        // Look for a wider time range with the same key
+        for(Map.Entry<Window, List<LogEntry>> result : results.entrySet()) {
+            Window wider = result.getKey();
+
+            if(wider.key.equals(key) && wider.startTs <= startTs && wider.endTs >= endTs) {
+                logEntries = narrow(result.getValue(), wider.timeOrdered, startTs, endTs);
+
+                // Mark the wider result as recently used
+                results.get(wider);
+                hits++;
+
+                return logEntries;
+            }
+        }
+
+        misses++;
+
+        return null;
+    }
+
+    /**
+     * Cache the log entries selected for a time range.
+     *
+     * @param key The key of the results.
+     * @param startTs mS timestamp the (adjusted) log entries start at.
+     * @param endTs mS timestamp the (adjusted) log entries end at.
+     * @param logEntries The log entries in file order.
+     */
+    public synchronized void put(final Key key, final long startTs, final long endTs, final List<LogEntry> logEntries) {
+        Window window   = new Window(key, startTs, endTs);
+        long bytes      = RESULT_OVERHEAD;
+
+        for(int i = 0 ; i < logEntries.size() ; i++) {
+            LogEntry logEntry = logEntries.get(i);
+
+            bytes += logEntry.getEstimatedSize();
+
+            if(i > 0 && logEntry.getRawTimeStamp() < logEntries.get(i - 1).getRawTimeStamp()) {
+                window.timeOrdered = false;
+            }
+        }
+
+        if(bytes > maxBytes) {
+            return;
+        }
+
+        window.bytes = bytes;
+
+        //////////////////////////////////////////////////////////////
+        // Drop anything this result replaces, or makes unnecessary
+        Iterator<Window> iterator = results.keySet().iterator();
+        while(iterator.hasNext()) {
+            Window cached = iterator.next();
+
+            if(cached.key.equals(key) && cached.startTs >= startTs && cached.endTs <= endTs) {
+                usedBytes -= cached.bytes;
+                iterator.remove();
+            }
+        }
+
+        results.put(window, Collections.unmodifiableList(new ArrayList<>(logEntries)));
+        usedBytes += bytes;
+
+        ///////////////////////////////////
+        // Evict the least recently used
+        iterator = results.keySet().iterator();
+        while(usedBytes > maxBytes && iterator.hasNext()) {
+            Window eldest = iterator.next();
+
+            usedBytes -= eldest.bytes;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    private static List<LogEntry> narrow(
+            final List<LogEntry> logEntries,
+            final boolean timeOrdered,
+            final long startTs,
+            final long endTs) {
+        if(timeOrdered) {
+            return logEntries.subList(
+                    firstIndexAtOrAfter(logEntries, startTs),
+                    firstIndexAfter(logEntries, endTs));
+        }
+
+        List<LogEntry> narrowed = new ArrayList<>();
+
+        for(LogEntry logEntry : logEntries) {
+            if(logEntry.getRawTimeStamp() >= startTs && logEntry.getRawTimeStamp() <= endTs) {
+                narrowed.add(logEntry);
+            }
+        }
+
+        return Collections.unmodifiableList(narrowed);
+    }
+
+    private static int firstIndexAtOrAfter(final List<LogEntry> logEntries, final long ts) {
+        int low     = 0;
+        int high    = logEntries.size();
+
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+
+            if(logEntries.get(mid).getRawTimeStamp() < ts) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private static int firstIndexAfter(final List<LogEntry> logEntries, final long ts) {
+        int low     = 0;
+        int high    = logEntries.size();
+
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+
+            if(logEntries.get(mid).getRawTimeStamp() <= ts) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Everything, other than the time range, that determines the log entries selected from a log file.
+     */
+    public static class Key {
+        private final String logFilePath;
+        private final long length;
+        private final long lastModified;
+        private final String timestampDateFormat;
+        private final int timestampAdjustment;
+        private final Set<String> searchText;
+
+        Key(
+                final String logFilePath,
+                final long length,
+                final long lastModified,
+                final String timestampDateFormat,
+                final int timestampAdjustment,
+                final List<String> searchText) {
+            this.logFilePath            = logFilePath;
+            this.length                 = length;
+            this.lastModified           = lastModified;
+            this.timestampDateFormat    = timestampDateFormat;
+            this.timestampAdjustment    = timestampAdjustment;
+            this.searchText             = (null == searchText)
+                                                ? Collections.<String>emptySet()
+                                                : new HashSet<>(searchText);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+
+            return length == other.length
+                    && lastModified == other.lastModified
+                    && timestampAdjustment == other.timestampAdjustment
+                    && logFilePath.equals(other.logFilePath)
+                    && timestampDateFormat.equals(other.timestampDateFormat)
+                    && searchText.equals(other.searchText);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = logFilePath.hashCode();
+
+            result = 31 * result + (int) (length ^ (length >>> 32));
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            result = 31 * result + timestampDateFormat.hashCode();
+            result = 31 * result + timestampAdjustment;
+            result = 31 * result + searchText.hashCode();
+
+            return result;
+        }
+    }
+
+    private static class Window {
+        private final Key key;
+        private final long startTs;
+        private final long endTs;
+        private boolean timeOrdered = true;
+        private long bytes          = 0;
+
+        Window(final Key key, final long startTs, final long endTs) {
+            this.key        = key;
+            this.startTs    = startTs;
+            this.endTs      = endTs;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Window)) {
+                return false;
+            }
+
+            Window other = (Window) o;
+
+            return startTs == other.startTs && endTs == other.endTs && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = key.hashCode();
+
+            result = 31 * result + (int) (startTs ^ (startTs >>> 32));
+            result = 31 * result + (int) (endTs ^ (endTs >>> 32));
+
+            return result;
+        }
+    }
+}
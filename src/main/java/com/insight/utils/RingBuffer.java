@@ -0,0 +1,161 @@
+package com.insight.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock free, single producer / single consumer queue connecting two pipeline stages.
+ *
+ * Each slot holds a batch of items so the cost of the hand over is shared by the whole batch. A producer that finds
+ * the ring full (or a consumer that finds it empty) spins, yields and then parks briefly, which is the back pressure
+ * between the stages. The producer samples the queue depth on every put, so a ring that is usually full points at a
+ * slow consumer, and one that is usually empty at a slow producer.
+ *
+ * @param <T> The type of the batches.
+ */
+public class RingBuffer<T> {
+    private static final int SPINS          = 100;
+    private static final int YIELDS         = 100;
+    private static final long PARK_NANOS    = 50_000;
+
+    private final String name;
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong head           = new AtomicLong();
+    private final AtomicLong tail           = new AtomicLong();
+    private volatile boolean closed         = false;
+    private volatile boolean cancelled      = false;
+
+    // Only updated by the producer
+    private long puts                       = 0;
+    private long depthTotal                 = 0;
+    private long maxDepth                   = 0;
+    private long fullWaits                  = 0;
+
+    // Only updated by the consumer
+    private long emptyWaits                 = 0;
+
+    /**
+     * @param name The name reported in the statistics.
+     * @param capacity The number of batches the ring can hold, rounded up to a power of 2.
+     */
+    public RingBuffer(final String name, final int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+
+        this.name   = name;
+        this.slots  = new Object[size];
+        this.mask   = size - 1;
+    }
+
+    /**
+     * Add a batch, waiting while the ring is full.
+     *
+     * @param batch The batch to add.
+     * @return false if the consumer has gone away (the batch was not added).
+     */
+    public boolean put(final T batch) {
+        long t      = tail.get();
+        int idle    = 0;
+
+        while(t - head.get() == slots.length) {
+            if(cancelled) {
+                return false;
+            }
+
+            if(0 == idle) {
+                fullWaits++;
+            }
+            idle = backOff(idle);
+        }
+
+        if(cancelled) {
+            return false;
+        }
+
+        slots[(int) (t & mask)] = batch;
+        tail.lazySet(t + 1);
+
+        long depth  = t + 1 - head.get();
+        depthTotal  += depth;
+        maxDepth    = Math.max(maxDepth, depth);
+        puts++;
+
+        return true;
+    }
+
+    /**
+     * Remove the next batch, waiting while the ring is empty.
+     *
+     * @return The next batch; else null once the producer has finished and all the batches have been taken.
+     */
+    @SuppressWarnings("unchecked")
+    public T take() {
+        long h      = head.get();
+        int idle    = 0;
+
+        while(h == tail.get()) {
+            if(closed && h == tail.get()) {
+                return null;
+            }
+
+            if(0 == idle) {
+                emptyWaits++;
+            }
+            idle = backOff(idle);
+        }
+
+        int slot    = (int) (h & mask);
+        T batch     = (T) slots[slot];
+
+        slots[slot] = null;
+        head.lazySet(h + 1);
+
+        return batch;
+    }
+
+    /**
+     * Called by the producer once it has added its last batch.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Called by the consumer when it doesn't want any more batches.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if the consumer doesn't want any more batches.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return The queue depth statistics of the ring, only valid once the producer and consumer have finished.
+     */
+    public String statistics() {
+        return String.format("%-24s capacity %4d  avg depth %7.1f  max depth %4d  producer waits %7d  consumer waits %7d",
+                name,
+                slots.length,
+                (0 == puts) ? 0.0 : (double) depthTotal / puts,
+                maxDepth,
+                fullWaits,
+                emptyWaits);
+    }
+
+    private static int backOff(final int idle) {
+        if(idle < SPINS) {
+            // Spin
+        } else if(idle < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+
+        return idle + 1;
+    }
+}
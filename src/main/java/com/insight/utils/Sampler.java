@@ -0,0 +1,226 @@
+package com.insight.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Write a uniform random sample of time sorted log entries, instead of all of them, in one pass.
+ *
+ * The sample is a fixed size reservoir, either one across all the log entries, one per source or one per time stratum
+ * (e.g. every hour), so each source or period is represented whatever its volume. A reservoir is filled by Li's
+ * "Algorithm L", which draws how many log entries to skip before the next replacement rather than a random number per
+ * log entry, so the cost of a log entry that isn't sampled is a counter decrement. The random numbers are seeded, so
+ * the same log entries always give the same sample.
+ *
+ * The memory used is the reservoirs, not the log entries read, i.e. the sample size times the number of strata. The
+ * sample is written, in time order, by another writer at the end.
+ */
+public class Sampler implements EntryWriter {
+    public static final String BY_SOURCE        = "source";
+    public static final long DEFAULT_SEED       = 0x4c4f4756L;  // LOGV
+
+    private final int size;
+    private final boolean bySource;
+    private final long stratumMillis;
+    private final EntryWriter writer;
+    private final Random random;
+    private final Map<Object, Reservoir> reservoirs = new HashMap<>();
+    private String label                            = null;
+    private long sequence                           = 0;
+
+    /**
+     * @param size The number of log entries to sample, from all of them or from each stratum.
+     * @param bySource true for a sample from each source.
+     * @param stratumMillis The mS of each time stratum, for a sample from each; else 0.
+     * @param writer What to write the sample with.
+     * @param seed The seed of the random numbers.
+     */
+    public Sampler(
+            final int size,
+            final boolean bySource,
+            final long stratumMillis,
+            final EntryWriter writer,
+            final long seed) {
+        this.size           = size;
+        this.bySource       = bySource;
+        this.stratumMillis  = stratumMillis;
+        this.writer         = writer;
+        this.random         = new Random(seed);
+    }
+
+    public void begin(final String label) {
+        this.label = label;
+    }
+
+    public void write(final LogEntry logEntry) {
+        Object stratum;
+
+        if(bySource) {
+            stratum = logEntry.getSource();
+        } else if(stratumMillis > 0) {
+            stratum = Math.floorDiv(logEntry.getRawTimeStamp(), stratumMillis);
+        } else {
+            stratum = Boolean.TRUE;
+        }
+
+        Reservoir reservoir = reservoirs.get(stratum);
+
+        if(null == reservoir) {
+            reservoir = new Reservoir(size, random);
+            reservoirs.put(stratum, reservoir);
+        }
+
+        reservoir.offer(logEntry, sequence++);
+    }
+
+    public void end() {
+        List<Sampled> sample = new ArrayList<>();
+
+        for(Reservoir reservoir : reservoirs.values()) {
+            for(int i = 0 ; i < reservoir.filled ; i++) {
+                sample.add(reservoir.sampled[i]);
+            }
+        }
+
+        ///////////////////////////////////////////////////////////////////
+        // The log entries arrived in time order, so the sequence is too
+        Collections.sort(sample, new Comparator<Sampled>() {
+            public int compare(final Sampled o1, final Sampled o2) {
+                return Long.compare(o1.sequence, o2.sequence);
+            }
+        });
+
+        writer.begin(label);
+
+        for(Sampled sampled : sample) {
+            writer.write(sampled.logEntry);
+        }
+
+        writer.end();
+    }
+
+    /**
+     * @return A summary of the sampling e.g. for stderr.
+     */
+    public String statistics() {
+        long sampled = 0;
+
+        for(Reservoir reservoir : reservoirs.values()) {
+            sampled += reservoir.filled;
+        }
+
+        return String.format("Sample: %d of %d log entries, %d strata", sampled, sequence, reservoirs.size());
+    }
+
+    /**
+     * Parse the command line sampling, N[,source|,MS].
+     *
+     * @param sample The sampling e.g. "10000", "1000,source" or "100,3600000".
+     * @param writer What to write the sample with.
+     * @return The sampler; else null if sample isn't set.
+     * @throws RuntimeException if the sampling is invalid.
+     */
+    public static Sampler parse(final String sample, final EntryWriter writer) {
+        if(null == sample || sample.trim().isEmpty()) {
+            return null;
+        }
+
+        String[] parts  = sample.trim().split(",", 2);
+        int size        = Utils.outputLimit("sample size", parts[0]);
+        boolean source  = parts.length > 1 && BY_SOURCE.equals(parts[1].trim());
+        long millis     = 0;
+
+        if(parts.length > 1 && !source) {
+            try {
+                millis = Long.parseLong(parts[1].trim());
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Invalid sample strata [" + sample + "], it has to be " + BY_SOURCE + " or mS", e);
+            }
+
+            if(millis < 1) {
+                throw new RuntimeException("Invalid sample strata [" + sample + "], the mS have to be > 0");
+            }
+        }
+
+        return new Sampler(size, source, millis, writer, DEFAULT_SEED);
+    }
+
+    /**
+     * A fixed size uniform sample of a stream of log entries (Algorithm L).
+     */
+    private static class Reservoir {
+        private final int size;
+        private final Random random;
+        private Sampled[] sampled;
+        private int filled          = 0;
+        private double w;
+        private long skip;
+
+        Reservoir(final int size, final Random random) {
+            this.size       = size;
+            this.random     = random;
+            this.sampled    = new Sampled[Math.min(size, 16)];   // grown as needed, strata can be sparse
+        }
+
+        void offer(final LogEntry logEntry, final long sequence) {
+            if(filled < size) {
+                if(filled == sampled.length) {
+                    sampled = Arrays.copyOf(sampled, (int) Math.min(size, 2L * sampled.length));
+                }
+
+                sampled[filled++] = new Sampled(logEntry, sequence);
+
+                if(filled == size) {
+                    w = Math.exp(Math.log(uniform()) / size);
+                    nextSkip();
+                }
+
+                return;
+            }
+
+            if(skip > 0) {
+                skip--;
+                return;
+            }
+
+            sampled[random.nextInt(size)] = new Sampled(logEntry, sequence);
+            w *= Math.exp(Math.log(uniform()) / size);
+            nextSkip();
+        }
+
+        private void nextSkip() {
+            double skipped = Math.floor(Math.log(uniform()) / Math.log(1 - w));
+
+            skip = (skipped >= Long.MAX_VALUE || Double.isNaN(skipped)) ? Long.MAX_VALUE : (long) skipped;
+        }
+
+        /**
+         * @return A random number in (0, 1).
+         */
+        private double uniform() {
+            double u;
+
+            do {
+                u = random.nextDouble();
+            } while(0 == u);
+
+            return u;
+        }
+    }
+
+    private static class Sampled {
+        private final LogEntry logEntry;
+        private final long sequence;
+
+        Sampled(final LogEntry logEntry, final long sequence) {
+            this.logEntry   = logEntry;
+            this.sequence   = sequence;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.insight.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cluster the first lines of log entries into templates, the constant text of each message shape with its variable
+ * parts as wildcards e.g. "INFO [thread-<*>] Svc - request req-<*> took <*>ms".
+ *
+ * This is the "Drain" algorithm (He et al., ICWS 2017): numbers, hex and ids are masked first, then each line is routed
+ * down a fixed depth tree, by its number of tokens and then its leading tokens, to a short list of templates, and joins
+ * the most similar one (the fraction of its tokens that are the same) if it's similar enough, turning the tokens that
+ * differ into wildcards, else starts a new template. The cost of a line is independent of the number of lines mined.
+ *
+ * A miner isn't thread safe, one is used per source and then they are combined (see add(TemplateMiner, int)).
+ */
+public class TemplateMiner {
+    public static final String WILDCARD                 = "<*>";
+    public static final double DEFAULT_SIMILARITY       = 0.4;
+    public static final int DEFAULT_DEPTH               = 4;
+    public static final int DEFAULT_MAX_CHILDREN        = 100;
+
+    private static final Pattern VARIABLE               = Pattern.compile(
+            "0[xX][0-9a-fA-F]+"
+            + "|\\b(?=[0-9a-fA-F-]*[0-9])[0-9a-fA-F]{8,}(?:-[0-9a-fA-F]{4,})*\\b"
+            + "|(?<![A-Za-z])[+-]?[0-9]+(?:[.:,][0-9]+)*");
+
+    private final int sourceCount;
+    private final double similarity;
+    private final int prefixDepth;
+    private final int maxChildren;
+    private final Node root                             = new Node();
+    private final List<Template> templates              = new ArrayList<>();
+
+    /**
+     * @param sourceCount The number of sources whose occurrences of each template are counted separately.
+     */
+    public TemplateMiner(final int sourceCount) {
+        this(sourceCount, DEFAULT_SIMILARITY, DEFAULT_DEPTH, DEFAULT_MAX_CHILDREN);
+    }
+
+    /**
+     * @param sourceCount The number of sources whose occurrences of each template are counted separately.
+     * @param similarity The fraction of tokens that have to be the same for a line to join a template.
+     * @param depth The depth of the tree, the leading tokens routed by are the depth - 2.
+     * @param maxChildren The most children of a node, any more leading tokens are routed as a wildcard.
+     */
+    public TemplateMiner(final int sourceCount, final double similarity, final int depth, final int maxChildren) {
+        if(sourceCount < 1 || similarity <= 0 || similarity > 1 || depth < 3 || maxChildren < 2) {
+            throw new RuntimeException("Invalid template miner, " + sourceCount + " sources, similarity "
+                    + similarity + ", depth " + depth + ", max children " + maxChildren);
+        }
+
+        this.sourceCount    = sourceCount;
+        this.similarity     = similarity;
+        this.prefixDepth    = depth - 2;
+        this.maxChildren    = maxChildren;
+    }
+
+    /**
+     * Mine the first line of a log entry.
+     *
+     * @param logEntry The log entry.
+     * @param source The index of the log entry's source.
+     */
+    public void add(final LogEntry logEntry, final int source) {
+        String[] tokens         = tokenize(firstLine(logEntry.getLeadingText()));
+        Template template       = match(tokens);
+
+        template.occurrences[source].add(logEntry.getRawTimeStamp(), logEntry.getDisplayTimeStamp());
+    }
+
+    /**
+     * Combine the templates of another miner into this one, e.g. from the miner of one source.
+     *
+     * @param miner The miner to combine.
+     * @param source The index of the source the (first) occurrences of the other miner's templates are counted as.
+     */
+    public void add(final TemplateMiner miner, final int source) {
+        for(Template other : miner.templates) {
+            Template template = match(other.tokens.clone());
+
+            for(int i = 0 ; i < other.occurrences.length ; i++) {
+                template.occurrences[source + i].add(other.occurrences[i]);
+            }
+        }
+    }
+
+    /**
+     * @return The templates, in the order they were first seen.
+     */
+    public List<Template> getTemplates() {
+        return templates;
+    }
+
+    /**
+     * Mask the variable parts of a line, and split it into tokens.
+     */
+    static String[] tokenize(final String line) {
+        Matcher matcher = VARIABLE.matcher(line);
+        String masked   = matcher.find() ? matcher.replaceAll(Matcher.quoteReplacement(WILDCARD)) : line;
+        String trimmed  = masked.trim();
+
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+    }
+
+    private static String firstLine(final String text) {
+        for(int i = 0 ; i < text.length() ; i++) {
+            char c = text.charAt(i);
+
+            if('\n' == c || '\r' == c) {
+                return text.substring(0, i);
+            }
+        }
+
+        return text;
+    }
+
+    /**
+     * @return The template the tokens join, updated to match them; else a new template of them.
+     */
+    private Template match(final String[] tokens) {
+        Node node = root.child(String.valueOf(tokens.length), Integer.MAX_VALUE);
+
+        for(int i = 0 ; i < prefixDepth && i < tokens.length ; i++) {
+            String token = tokens[i].contains(WILDCARD) ? WILDCARD : tokens[i];
+
+            node = node.child(token, maxChildren);
+        }
+
+        Template best       = null;
+        double bestScore    = -1;
+        int bestWildcards   = -1;
+
+        for(Template template : node.templates) {
+            int same        = 0;
+            int wildcards   = 0;
+
+            for(int i = 0 ; i < tokens.length ; i++) {
+                if(WILDCARD.equals(template.tokens[i])) {
+                    wildcards++;
+                } else if(template.tokens[i].equals(tokens[i])) {
+                    same++;
+                }
+            }
+
+            double score = (0 == tokens.length) ? 1 : (double) same / tokens.length;
+
+            if(score > bestScore || (score == bestScore && wildcards > bestWildcards)) {
+                best            = template;
+                bestScore       = score;
+                bestWildcards   = wildcards;
+            }
+        }
+
+        if(null != best && bestScore >= similarity) {
+            for(int i = 0 ; i < tokens.length ; i++) {
+                if(!best.tokens[i].equals(tokens[i])) {
+                    best.tokens[i] = WILDCARD;
+                }
+            }
+
+            return best;
+        }
+
+        Template template = new Template(tokens, sourceCount);
+
+        node.templates.add(template);
+        templates.add(template);
+
+        return template;
+    }
+
+    /**
+     * A node of the tree the lines are routed down, by their number of tokens and then their leading tokens.
+     */
+    private static class Node {
+        private final Map<String, Node> children    = new HashMap<>();
+        private final List<Template> templates      = new ArrayList<>();
+
+        /**
+         * @return The child for the token (made if need be), or the wildcard child when there are too many children.
+         */
+        Node child(final String token, final int maxChildren) {
+            Node child = children.get(token);
+
+            if(null == child) {
+                if(children.size() >= maxChildren - 1 && !WILDCARD.equals(token)) {
+                    return child(WILDCARD, Integer.MAX_VALUE);
+                }
+
+                child = new Node();
+                children.put(token, child);
+            }
+
+            return child;
+        }
+    }
+
+    /**
+     * A message shape, and its occurrences in each source.
+     */
+    public static class Template {
+        private final String[] tokens;
+        private final Occurrences[] occurrences;
+
+        Template(final String[] tokens, final int sourceCount) {
+            this.tokens         = tokens;
+            this.occurrences    = new Occurrences[sourceCount];
+
+            for(int i = 0 ; i < sourceCount ; i++) {
+                occurrences[i] = new Occurrences();
+            }
+        }
+
+        /**
+         * @return The template's text, with its variable tokens as WILDCARD.
+         */
+        public String getText() {
+            return String.join(" ", tokens);
+        }
+
+        /**
+         * @param source The index of the source.
+         * @return The occurrences of the template in the source.
+         */
+        public Occurrences getOccurrences(final int source) {
+            return occurrences[source];
+        }
+
+        /**
+         * @return The occurrences of the template in all the sources.
+         */
+        public Occurrences getTotal() {
+            Occurrences total = new Occurrences();
+
+            for(Occurrences occurrence : occurrences) {
+                total.add(occurrence);
+            }
+
+            return total;
+        }
+    }
+
+    /**
+     * How many times, and from when to when, a template occurred.
+     */
+    public static class Occurrences {
+        private long count              = 0;
+        private long first              = Long.MAX_VALUE;
+        private long last               = Long.MIN_VALUE;
+        private String firstTimeStamp   = null;
+        private String lastTimeStamp    = null;
+
+        void add(final long timeStamp, final String displayTimeStamp) {
+            count++;
+
+            if(timeStamp < first) {
+                first           = timeStamp;
+                firstTimeStamp  = displayTimeStamp;
+            }
+
+            if(timeStamp >= last) {
+                last            = timeStamp;
+                lastTimeStamp   = displayTimeStamp;
+            }
+        }
+
+        void add(final Occurrences other) {
+            if(0 == other.count) {
+                return;
+            }
+
+            count += other.count;
+
+            if(other.first < first) {
+                first           = other.first;
+                firstTimeStamp  = other.firstTimeStamp;
+            }
+
+            if(other.last >= last) {
+                last            = other.last;
+                lastTimeStamp   = other.lastTimeStamp;
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getFirst() {
+            return first;
+        }
+
+        public String getFirstTimeStamp() {
+            return firstTimeStamp;
+        }
+
+        public String getLastTimeStamp() {
+            return lastTimeStamp;
+        }
+    }
+}
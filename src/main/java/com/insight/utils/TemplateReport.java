@@ -0,0 +1,170 @@
+package com.insight.utils;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Report the message shapes (templates, see TemplateMiner) of the log entries, instead of writing the log entries.
+ *
+ * The log entries of each source are mined as they are read, each source on its own thread with its own miner, as the
+ * templates don't depend on the order of the log entries across sources. The miners are then combined, and the K most
+ * frequent templates are reported with their count, first and last timestamps in each source. Only the templates are
+ * held in memory, not the log entries.
+ */
+public class TemplateReport {
+    private final int topK;
+    private final List<String> sources;
+    private final PrintStream out;
+    private TemplateMiner miner                 = null;
+    private long logEntries                     = 0;
+
+    /**
+     * @param topK The number of templates to report.
+     * @param sources The sources of the log entries.
+     * @param out The stream to write the report to.
+     */
+    public TemplateReport(final int topK, final List<String> sources, final PrintStream out) {
+        this.topK       = topK;
+        this.sources    = sources;
+        this.out        = out;
+    }
+
+    /**
+     * Mine the log entries of every source, in parallel.
+     *
+     * @param logs The log entries of each source, in the same order as the sources.
+     * @param threads The most sources to mine at once.
+     */
+    public void mine(final List<? extends Iterator<LogEntry>> logs, final int threads) {
+        ExecutorService miners              = Executors.newFixedThreadPool(
+                                                    Math.max(1, Math.min(threads, logs.size())), daemonThreads());
+        List<Future<TemplateMiner>> mined   = new ArrayList<>();
+
+        try {
+            for(final Iterator<LogEntry> log : logs) {
+                mined.add(miners.submit(new Callable<TemplateMiner>() {
+                    public TemplateMiner call() {
+                        TemplateMiner sourceMiner = new TemplateMiner(1);
+
+                        while(log.hasNext()) {
+                            sourceMiner.add(log.next(), 0);
+                        }
+
+                        return sourceMiner;
+                    }
+                }));
+            }
+
+            ///////////////////////////////////////////////////////
+            // Combined in source order, so the report is the same
+            // whichever source finishes first
+            miner = new TemplateMiner(sources.size());
+
+            for(int i = 0 ; i < mined.size() ; i++) {
+                miner.add(mined.get(i).get(), i);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted mining templates", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            miners.shutdownNow();
+        }
+
+        for(TemplateMiner.Template template : miner.getTemplates()) {
+            logEntries += template.getTotal().getCount();
+        }
+    }
+
+    /**
+     * @return The templates mined, most frequent first (earliest first for equal counts).
+     */
+    public List<TemplateMiner.Template> getTemplates() {
+        List<TemplateMiner.Template> templates = new ArrayList<>(miner.getTemplates());
+
+        Collections.sort(templates, new Comparator<TemplateMiner.Template>() {
+            public int compare(final TemplateMiner.Template o1, final TemplateMiner.Template o2) {
+                TemplateMiner.Occurrences total1 = o1.getTotal();
+                TemplateMiner.Occurrences total2 = o2.getTotal();
+
+                if(total1.getCount() != total2.getCount()) {
+                    return Long.compare(total2.getCount(), total1.getCount());
+                }
+
+                return Long.compare(total1.getFirst(), total2.getFirst());
+            }
+        });
+
+        return templates;
+    }
+
+    /**
+     * Write the report.
+     *
+     * @param label A label for the report.
+     */
+    public void emit(final String label) {
+        List<TemplateMiner.Template> templates = getTemplates();
+
+        if(null != label && label.trim().length() > 0) {
+            out.println("# Label: " + label);
+        }
+
+        out.println("# Sources:");
+        for(int i = 0 ; i < sources.size() ; i++) {
+            out.println(String.format("# %2d %s", i + 1, sources.get(i)));
+        }
+        out.println("#");
+
+        out.println(String.format("# Top %d of %d templates, from %d log entries:",
+                Math.min(topK, templates.size()), templates.size(), logEntries));
+
+        for(int rank = 0 ; rank < topK && rank < templates.size() ; rank++) {
+            TemplateMiner.Template template     = templates.get(rank);
+            TemplateMiner.Occurrences total     = template.getTotal();
+
+            out.println("#");
+            out.println(String.format("# %d: %d log entries, %s to %s",
+                    rank + 1, total.getCount(), total.getFirstTimeStamp(), total.getLastTimeStamp()));
+            out.println(template.getText());
+
+            for(int i = 0 ; i < sources.size() ; i++) {
+                TemplateMiner.Occurrences occurrences = template.getOccurrences(i);
+
+                if(occurrences.getCount() > 0) {
+                    out.println(String.format("# %2d %10d %s to %s",
+                            i + 1, occurrences.getCount(),
+                            occurrences.getFirstTimeStamp(), occurrences.getLastTimeStamp()));
+                }
+            }
+        }
+
+        out.println("#");
+        out.flush();
+    }
+
+    private static ThreadFactory daemonThreads() {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "TemplateReport-mine");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        };
+    }
+}
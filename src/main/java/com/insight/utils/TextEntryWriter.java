@@ -0,0 +1,265 @@
+package com.insight.utils;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Write time sorted log entries, one at a time, in the padded text format (see Utils.emitList).
+ *
+ * A large list of log entries (see writeAll) is formatted in consecutive batches on all the processors, each batch
+ * starting from the source and timestamp of the log entry before it, and the batches are written in order, so the
+ * output is the same as writing the log entries one at a time.
+ */
+public class TextEntryWriter implements EntryWriter {
+    public static final int MIN_PARALLEL_ENTRIES    = 16 * 1024;
+    public static final int BATCH_SIZE              = 2 * 1024;
+
+    private static final String NEW_LINE            = System.lineSeparator();
+
+    private final List<String> sources;
+    private final PrintStream out;
+    private final Map<String, Integer> sourceIndexes    = new HashMap<>();
+    private int lastIndex                               = -1;
+    private long lastTs                                 = -1;
+
+    /**
+     * @param sources A list of the sources that make up the time sorted log entries.
+     * @param out The stream to write to.
+     */
+    public TextEntryWriter(final List<String> sources, final PrintStream out) {
+        this.sources    = sources;
+        this.out        = out;
+
+        for(int i = 0 ; i < sources.size() ; i++) {
+            if(!sourceIndexes.containsKey(sources.get(i))) {
+                sourceIndexes.put(sources.get(i), i);
+            }
+        }
+    }
+
+    /**
+     * Write the description of the sources that precedes the log entries.
+     *
+     * @param label Text to display at the top of the output
+     */
+    public void begin(final String label) {
+        if(null != label && label.trim().length() > 0) {
+            out.println("# Label: " + label);
+        }
+
+        out.println("# Sources:");
+
+        int i = 1;
+        for(String theSource : sources) {
+            out.println(String.format("# %2d %s", i, theSource));
+            i++;
+        }
+        out.println("#");
+
+        out.println("# Time sorted log entries:");
+    }
+
+    /**
+     * Write the next time sorted log entry.
+     *
+     * @param logEntry The log entry.
+     */
+    public void write(final LogEntry logEntry) {
+        StringBuilder sb = new StringBuilder();
+
+        format(logEntry, lastIndex, lastTs, sb);
+        out.print(sb);
+
+        lastIndex   = indexOf(logEntry);
+        lastTs      = logEntry.getRawTimeStamp();
+    }
+
+    /**
+     * Write the next time sorted log entries, formatting large lists on all the processors.
+     *
+     * @param logEntries The log entries.
+     */
+    public void writeAll(final List<LogEntry> logEntries) {
+        writeAll(logEntries, Runtime.getRuntime().availableProcessors(), BATCH_SIZE, MIN_PARALLEL_ENTRIES);
+    }
+
+    /**
+     * @param threads The number of threads to format on.
+     * @param batchSize The number of log entries to format at a time.
+     * @param minParallelEntries The fewest log entries worth formatting on more than one thread.
+     */
+    void writeAll(
+            final List<LogEntry> logEntries,
+            final int threads,
+            final int batchSize,
+            final int minParallelEntries) {
+        if(threads < 2 || logEntries.size() < minParallelEntries) {
+            for(LogEntry logEntry : logEntries) {
+                write(logEntry);
+            }
+
+            return;
+        }
+
+        ExecutorService formatters          = Executors.newFixedThreadPool(threads, daemonThreads());
+        ArrayDeque<Future<String>> batches  = new ArrayDeque<>();
+
+        try {
+            for(int from = 0 ; from < logEntries.size() ; from += batchSize) {
+                ////////////////////////////////////////////////////////////////
+                // Keep a few batches per thread in flight, writing the oldest
+                // (in order) before formatting any more
+                if(batches.size() >= 2 * threads) {
+                    out.print(batches.poll().get());
+                }
+
+                batches.add(formatters.submit(
+                        batch(logEntries, from, Math.min(logEntries.size(), from + batchSize), lastIndex, lastTs)));
+            }
+
+            while(!batches.isEmpty()) {
+                out.print(batches.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted writing log entries", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            formatters.shutdownNow();
+        }
+
+        if(!logEntries.isEmpty()) {
+            LogEntry last   = logEntries.get(logEntries.size() - 1);
+            lastIndex       = indexOf(last);
+            lastTs          = last.getRawTimeStamp();
+        }
+    }
+
+    /**
+     * Finish writing, flushing anything buffered.
+     */
+    public void end() {
+        out.flush();
+    }
+
+    /**
+     * @return The formatting of the log entries from (inclusive) to (exclusive), starting from the source and timestamp
+     *         of the log entry before from (or those given for the first batch).
+     */
+    private Callable<String> batch(
+            final List<LogEntry> logEntries,
+            final int from,
+            final int to,
+            final int firstLastIndex,
+            final long firstLastTs) {
+        return new Callable<String>() {
+            public String call() {
+                StringBuilder sb    = new StringBuilder();
+                int previousIndex   = firstLastIndex;
+                long previousTs     = firstLastTs;
+
+                if(from > 0) {
+                    previousIndex   = indexOf(logEntries.get(from - 1));
+                    previousTs      = logEntries.get(from - 1).getRawTimeStamp();
+                }
+
+                for(int i = from ; i < to ; i++) {
+                    LogEntry logEntry = logEntries.get(i);
+
+                    format(logEntry, previousIndex, previousTs, sb);
+
+                    previousIndex   = indexOf(logEntry);
+                    previousTs      = logEntry.getRawTimeStamp();
+                }
+
+                return sb.toString();
+            }
+        };
+    }
+
+    private int indexOf(final LogEntry logEntry) {
+        Integer found = sourceIndexes.get(logEntry.getSource());
+
+        return (null == found) ? -1 : found;
+    }
+
+    /**
+     * Format a log entry, one padded line per line of its payload.
+     *
+     * @param logEntry The log entry.
+     * @param previousIndex The source index of the log entry written before it; else -1.
+     * @param previousTs The timestamp of the log entry written before it; else -1.
+     * @param sb Where to append the lines.
+     */
+    private void format(
+            final LogEntry logEntry,
+            final int previousIndex,
+            final long previousTs,
+            final StringBuilder sb) {
+        /////////////////////////////////////////////////////////////////////////////
+        // Depending on the source position, where in the line we display the payload
+        String dts      =   logEntry.getDisplayTimeStamp();
+        long rawTs      =   logEntry.getRawTimeStamp();
+        int index       =   indexOf(logEntry);
+        long diffTs     =   -1;
+        String pad1     =   "";
+        String pad2     =   "";
+
+        if(-1 == previousTs) {
+            diffTs = 0;
+        } else {
+            diffTs  = rawTs - previousTs;
+        }
+
+        pad1 = String.format("%s%2d%9d %20s",
+                (index != previousIndex ? "*" : "."),
+                (index + 1),
+                diffTs,
+                dts);
+
+        pad2 = String.format("%s%2d%9s %-20s",
+                ".",
+                (index + 1),
+                ".",
+                ".");
+
+        /////////////////////////////////////////////////////////////////
+        // Extract each line from the payload and display it with padding
+        boolean firstLine   = true;
+
+        StringTokenizer st = new StringTokenizer(logEntry.getPayload(), Utils.LINE_SEP);
+        while(st.hasMoreElements()) {
+            if(firstLine) {
+                sb.append(pad1).append(st.nextToken()).append(NEW_LINE);
+                firstLine   = false;
+            } else {
+                sb.append(pad2).append(st.nextToken()).append(NEW_LINE);
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "TextEntryWriter-format");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        };
+    }
+}
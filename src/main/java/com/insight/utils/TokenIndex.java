@@ -0,0 +1,659 @@
+package com.insight.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent inverted index of a log file, from each token to the log entries that contain it.
+ *
+ * A token is a run of letters and digits. The index (saved next to the log file with INDEX_SUFFIX added) holds the
+ * byte offset of every log entry and, for every token, the (delta and varint compressed) ordinals of the log entries
+ * it occurs in. Only the dictionary is loaded, a posting list is read when a query needs it.
+ *
+ * As the text filters match substrings, the tokens of a text that touch its start or end may only be part of a token
+ * in a log entry (its suffix, its prefix or, for a text that is a single token, any part of it), the other tokens of
+ * the text have to match exactly. The dictionary is sorted, so the tokens a prefix matches are a range of it. For the
+ * suffixes and substrings the dictionary is itself indexed, by the trigrams (three character runs) of its tokens, and
+ * only the tokens holding every trigram of the text are checked, just the texts shorter than a trigram scan the whole
+ * dictionary. The log entries found are candidates only, they are read and checked by the usual filters, so the index
+ * never changes what is selected.
+ */
+public class TokenIndex {
+    public static final String INDEX_SUFFIX     = ".lvtok";
+
+    private static final int MAGIC              = 0x4c56544b;   // LVTK
+    private static final int VERSION            = 2;
+    private static final int TRIGRAM            = 3;
+
+    private final String logFilePath;
+    private final File indexFile;
+    private final long length;
+    private final long lastModified;
+    private final String timestampDateFormat;
+    private long[] offsets                      = new long[0];
+    private String[] tokens                     = new String[0];
+    private long[] postingPositions             = new long[0];
+    private int[] postingCounts                 = new int[0];
+    private long[] trigrams                     = new long[0];
+    private long[] trigramPositions             = new long[0];
+    private int[] trigramCounts                 = new int[0];
+    private long tokenPostingsEnd               = 0;
+    private long postingsStart                  = 0;
+
+    private TokenIndex(
+            final String logFilePath,
+            final long length,
+            final long lastModified,
+            final String timestampDateFormat) {
+        this.logFilePath            = logFilePath;
+        this.indexFile              = new File(logFilePath + INDEX_SUFFIX);
+        this.length                 = length;
+        this.lastModified           = lastModified;
+        this.timestampDateFormat    = timestampDateFormat;
+    }
+
+    /**
+     * Load the index of a log file, building (and saving) it if there isn't an up to date one.
+     *
+     * @param logFilePath The file containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @return The index; else null if it had to be built and couldn't be saved (e.g. a read only directory), as the
+     *         posting lists are only read from the saved index the log file then has to be read without it.
+     * @throws IOException
+     */
+    public static TokenIndex load(final String logFilePath, final String timestampDateFormat) throws IOException {
+        File logFile = new File(logFilePath);
+
+        if(!logFile.isFile()) {
+            throw new IOException("No such log file [" + logFilePath + "]");
+        }
+
+        TokenIndex index = new TokenIndex(logFilePath, logFile.length(), logFile.lastModified(), timestampDateFormat);
+
+        if(index.indexFile.isFile() && index.read()) {
+            return index;
+        }
+
+        return index.build() ? index : null;
+    }
+
+    /**
+     * Find the byte ranges of the log file holding the log entries that could match any of the texts.
+     *
+     * @param searchText A list of text string to match a lig entry against, null or empty matches everything.
+     * @return The byte ranges ({from, to} with to exclusive) in file order, adjacent log entries are combined.
+     * @throws IOException
+     */
+    public List<long[]> candidateRanges(final List<String> searchText) throws IOException {
+        boolean[] candidates = new boolean[offsets.length - 1];
+
+        if(null == searchText || searchText.isEmpty()) {
+            Arrays.fill(candidates, true);
+        } else {
+            try (RandomAccessFile in = new RandomAccessFile(indexFile, "r")) {
+                for(String text : searchText) {
+                    if(!select(in, text, candidates)) {
+                        Arrays.fill(candidates, true);
+                        break;
+                    }
+                }
+            }
+        }
+
+        List<long[]> ranges = new ArrayList<>();
+
+        for(int i = 0 ; i < candidates.length ; i++) {
+            if(!candidates[i]) {
+                continue;
+            }
+
+            long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if(null != last && last[1] == offsets[i]) {
+                last[1] = offsets[i + 1];
+            } else {
+                ranges.add(new long[] { offsets[i], offsets[i + 1] });
+            }
+        }
+
+        return ranges;
+    }
+
+    /**
+     * @return The number of log entries in the log file.
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return The number of distinct tokens in the log file.
+     */
+    public int getTokenCount() {
+        return tokens.length;
+    }
+
+    /**
+     * Mark the log entries that could contain a text.
+     *
+     * @return false if the text has no tokens, so every log entry could contain it.
+     */
+    private boolean select(
+            final RandomAccessFile in,
+            final String text,
+            final boolean[] candidates) throws IOException {
+        List<int[]> spans = tokenSpans(text);
+
+        if(spans.isEmpty()) {
+            return false;
+        }
+
+        boolean[] matched = null;
+
+        for(int[] span : spans) {
+            String token        = text.substring(span[0], span[1]);
+            boolean atStart     = (0 == span[0]);
+            boolean atEnd       = (text.length() == span[1]);
+            boolean[] entries   = new boolean[candidates.length];
+
+            for(int t : matchingTokens(in, token, atStart, atEnd)) {
+                readPostings(in, t, entries);
+            }
+
+            ///////////////////////////////////////////////////////
+            // Every token of the text has to be in the log entry
+            if(null == matched) {
+                matched = entries;
+            } else {
+                for(int i = 0 ; i < matched.length ; i++) {
+                    matched[i] &= entries[i];
+                }
+            }
+        }
+
+        for(int i = 0 ; i < candidates.length ; i++) {
+            candidates[i] |= matched[i];
+        }
+
+        return true;
+    }
+
+    /**
+     * Find the dictionary tokens a token of a text could be part of.
+     *
+     * @param token The token.
+     * @param atStart True if the token starts the text, so it may be the end of a longer token.
+     * @param atEnd True if the token ends the text, so it may be the start of a longer token.
+     * @return The ordinals of the matching tokens, in dictionary order.
+     * @throws IOException
+     */
+    int[] matchingTokens(final String token, final boolean atStart, final boolean atEnd) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(indexFile, "r")) {
+            return matchingTokens(in, token, atStart, atEnd);
+        }
+    }
+
+    /**
+     * @return The token of the dictionary at an ordinal.
+     */
+    String getToken(final int t) {
+        return tokens[t];
+    }
+
+    private int[] matchingTokens(
+            final RandomAccessFile in,
+            final String token,
+            final boolean atStart,
+            final boolean atEnd) throws IOException {
+        if(!atStart && !atEnd) {
+            ///////////////////////////////////////////////
+            // Surrounded by other text, so a whole token
+            int t = Arrays.binarySearch(tokens, token);
+
+            return (t >= 0) ? new int[] { t } : new int[0];
+        }
+
+        if(!atStart) {
+            ///////////////////////////////////////////////////////////
+            // The start of a token, a range of the sorted dictionary
+            int from    = lowerBound(token);
+            int to      = lowerBound(token + Character.MAX_VALUE);
+            int[] range = new int[to - from];
+
+            for(int i = 0 ; i < range.length ; i++) {
+                range[i] = from + i;
+            }
+
+            return range;
+        }
+
+        int[] candidates    = trigramCandidates(in, token);
+        int[] matches       = new int[(null == candidates) ? tokens.length : candidates.length];
+        int count           = 0;
+
+        for(int i = 0 ; i < matches.length ; i++) {
+            int t = (null == candidates) ? i : candidates[i];
+
+            if(atEnd ? tokens[t].contains(token) : tokens[t].endsWith(token)) {
+                matches[count++] = t;
+            }
+        }
+
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * @return The ordinals of the tokens holding every trigram of the token; else null if it is shorter than a trigram.
+     */
+    private int[] trigramCandidates(final RandomAccessFile in, final String token) throws IOException {
+        if(token.length() < TRIGRAM) {
+            return null;
+        }
+
+        List<Integer> found = new ArrayList<>();
+
+        for(int i = 0 ; i + TRIGRAM <= token.length() ; i++) {
+            int g = Arrays.binarySearch(trigrams, trigram(token, i));
+
+            if(g < 0) {
+                return new int[0];
+            }
+            if(!found.contains(g)) {
+                found.add(g);
+            }
+        }
+
+        ///////////////////////////////////////////////////////
+        // Start from the rarest trigram, the rest only narrow
+        Integer[] order = found.toArray(new Integer[0]);
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(final Integer a, final Integer b) {
+                return Integer.compare(trigramCounts[a], trigramCounts[b]);
+            }
+        });
+
+        int[] candidates = null;
+
+        for(int g : order) {
+            long end    = (g + 1 < trigrams.length) ? trigramPositions[g + 1] : in.length() - postingsStart;
+            int[] list  = readOrdinals(in, trigramPositions[g], end, trigramCounts[g]);
+
+            candidates = (null == candidates) ? list : intersect(candidates, list);
+            if(0 == candidates.length) {
+                break;
+            }
+        }
+
+        return candidates;
+    }
+
+    private void readPostings(final RandomAccessFile in, final int t, final boolean[] entries) throws IOException {
+        long end = (t + 1 < tokens.length) ? postingPositions[t + 1] : tokenPostingsEnd;
+
+        for(int ordinal : readOrdinals(in, postingPositions[t], end, postingCounts[t])) {
+            entries[ordinal] = true;
+        }
+    }
+
+    private int[] readOrdinals(final RandomAccessFile in, final long from, final long to, final int count)
+            throws IOException {
+        byte[] bytes = new byte[(int) (to - from)];
+
+        in.seek(postingsStart + from);
+        in.readFully(bytes);
+
+        DataInputStream postings    = new DataInputStream(new ByteArrayInputStream(bytes));
+        int[] ordinals              = new int[count];
+        int ordinal                 = -1;
+
+        for(int i = 0 ; i < count ; i++) {
+            ordinal     += readVarLong(postings) + 1;
+            ordinals[i] = ordinal;
+        }
+
+        return ordinals;
+    }
+
+    private int lowerBound(final String token) {
+        int t = Arrays.binarySearch(tokens, token);
+
+        return (t >= 0) ? t : -t - 1;
+    }
+
+    private static int[] intersect(final int[] a, final int[] b) {
+        int[] both  = new int[Math.min(a.length, b.length)];
+        int count   = 0;
+
+        for(int i = 0, j = 0 ; i < a.length && j < b.length ; ) {
+            if(a[i] < b[j]) {
+                i++;
+            } else if(a[i] > b[j]) {
+                j++;
+            } else {
+                both[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(both, count);
+    }
+
+    /**
+     * @return The three characters of the text from an index, packed into a long.
+     */
+    private static long trigram(final String text, final int from) {
+        return ((long) text.charAt(from) << 32) | ((long) text.charAt(from + 1) << 16) | text.charAt(from + 2);
+    }
+
+    /**
+     * @return true if the index was saved; else false.
+     */
+    private boolean build() throws IOException {
+        SimpleDateFormat sdf                    = new SimpleDateFormat(timestampDateFormat);
+        sdf.setLenient(false);
+
+        EntryGrouper grouper                    = new EntryGrouper(new LineReader(new FileInputStream(logFilePath)), sdf);
+        Map<String, Postings> postings          = new HashMap<>();
+        List<Long> entryOffsets                 = new ArrayList<>();
+        String data;
+
+        try {
+            while(null != (data = grouper.next())) {
+                int ordinal = entryOffsets.size();
+                entryOffsets.add(grouper.getOffset());
+
+                for(int[] span : tokenSpans(data)) {
+                    String token    = data.substring(span[0], span[1]);
+                    Postings list   = postings.get(token);
+
+                    if(null == list) {
+                        list = new Postings();
+                        postings.put(token, list);
+                    }
+
+                    list.add(ordinal);
+                }
+            }
+
+            entryOffsets.add(grouper.getReadOffset());
+        } finally {
+            grouper.close();
+        }
+
+        offsets = new long[entryOffsets.size()];
+        for(int i = 0 ; i < offsets.length ; i++) {
+            offsets[i] = entryOffsets.get(i);
+        }
+
+        tokens              = postings.keySet().toArray(new String[0]);
+        postingPositions    = new long[tokens.length];
+        postingCounts       = new int[tokens.length];
+        Arrays.sort(tokens);
+
+        long position = 0;
+        for(int t = 0 ; t < tokens.length ; t++) {
+            Postings list       = postings.get(tokens[t]);
+            postingPositions[t] = position;
+            postingCounts[t]    = list.count;
+            position            += list.bytes.size();
+        }
+        tokenPostingsEnd = position;
+
+        ////////////////////////////////////////////////////////////
+        // Index the dictionary by the trigrams of its tokens, the
+        // tokens of each trigram in dictionary order
+        Map<Long, Postings> trigramTokens = new HashMap<>();
+
+        for(int t = 0 ; t < tokens.length ; t++) {
+            for(int i = 0 ; i + TRIGRAM <= tokens[t].length() ; i++) {
+                Long key        = trigram(tokens[t], i);
+                Postings list   = trigramTokens.get(key);
+
+                if(null == list) {
+                    list = new Postings();
+                    trigramTokens.put(key, list);
+                }
+
+                list.add(t);
+            }
+        }
+
+        Long[] keys         = trigramTokens.keySet().toArray(new Long[0]);
+        Arrays.sort(keys);
+        trigrams            = new long[keys.length];
+        trigramPositions    = new long[keys.length];
+        trigramCounts       = new int[keys.length];
+
+        List<Postings> trigramLists = new ArrayList<>();
+        for(int g = 0 ; g < keys.length ; g++) {
+            Postings list       = trigramTokens.get(keys[g]);
+            trigrams[g]         = keys[g];
+            trigramPositions[g] = position;
+            trigramCounts[g]    = list.count;
+            position            += list.bytes.size();
+            trigramLists.add(list);
+        }
+
+        try {
+            write(postings, trigramLists);
+        } catch (IOException e) {
+            indexFile.delete();
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if(MAGIC != in.readInt()
+                    || VERSION != in.readInt()
+                    || length != in.readLong()
+                    || lastModified != in.readLong()
+                    || !timestampDateFormat.equals(in.readUTF())) {
+                return false;
+            }
+
+            int entries         = in.readInt();
+            offsets             = new long[entries + 1];
+
+            long offset = 0;
+            for(int i = 0 ; i < offsets.length ; i++) {
+                offset      += readVarLong(in);
+                offsets[i]  = offset;
+            }
+
+            int count           = in.readInt();
+            tokens              = new String[count];
+            postingPositions    = new long[count];
+            postingCounts       = new int[count];
+
+            for(int t = 0 ; t < count ; t++) {
+                tokens[t]           = in.readUTF();
+                postingPositions[t] = in.readLong();
+                postingCounts[t]    = in.readInt();
+            }
+
+            count               = in.readInt();
+            trigrams            = new long[count];
+            trigramPositions    = new long[count];
+            trigramCounts       = new int[count];
+
+            for(int g = 0 ; g < count ; g++) {
+                trigrams[g]         = in.readLong();
+                trigramPositions[g] = in.readLong();
+                trigramCounts[g]    = in.readInt();
+            }
+
+            tokenPostingsEnd    = in.readLong();
+            postingsStart       = in.readLong();
+
+            return true;
+        } catch (IOException | RuntimeException e) {
+            /////////////////////////////////////
+            // Truncated or corrupt, rebuild it
+            return false;
+        }
+    }
+
+    private void write(final Map<String, Postings> postings, final List<Postings> trigramLists) throws IOException {
+        ByteArrayOutputStream head  = new ByteArrayOutputStream();
+        DataOutputStream out        = new DataOutputStream(head);
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(length);
+        out.writeLong(lastModified);
+        out.writeUTF(timestampDateFormat);
+        out.writeInt(offsets.length - 1);
+
+        long previous = 0;
+        for(long offset : offsets) {
+            writeVarLong(out, offset - previous);
+            previous = offset;
+        }
+
+        out.writeInt(tokens.length);
+        for(int t = 0 ; t < tokens.length ; t++) {
+            out.writeUTF(tokens[t]);
+            out.writeLong(postingPositions[t]);
+            out.writeInt(postingCounts[t]);
+        }
+
+        out.writeInt(trigrams.length);
+        for(int g = 0 ; g < trigrams.length ; g++) {
+            out.writeLong(trigrams[g]);
+            out.writeLong(trigramPositions[g]);
+            out.writeInt(trigramCounts[g]);
+        }
+
+        out.writeLong(tokenPostingsEnd);
+        postingsStart = head.size() + 8;
+        out.writeLong(postingsStart);
+        out.flush();
+
+        try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            head.writeTo(file);
+
+            for(String token : tokens) {
+                postings.get(token).bytes.writeTo(file);
+            }
+
+            for(Postings list : trigramLists) {
+                list.bytes.writeTo(file);
+            }
+        }
+    }
+
+    /**
+     * @return The {start, end} of each run of letters and digits in the text.
+     */
+    static List<int[]> tokenSpans(final String text) {
+        List<int[]> spans   = new ArrayList<>();
+        int start           = -1;
+
+        for(int i = 0 ; i <= text.length() ; i++) {
+            boolean tokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+
+            if(tokenChar && start < 0) {
+                start = i;
+            } else if(!tokenChar && start >= 0) {
+                spans.add(new int[] { start, i });
+                start = -1;
+            }
+        }
+
+        return spans;
+    }
+
+    private static void writeVarLong(final DataOutput out, long value) throws IOException {
+        while((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(final DataInput in) throws IOException {
+        long value  = 0;
+        int shift   = 0;
+        int b;
+
+        do {
+            b       = in.readUnsignedByte();
+            value   |= (long) (b & 0x7f) << shift;
+            shift   += 7;
+        } while((b & 0x80) != 0);
+
+        return value;
+    }
+
+    /**
+     * The compressed ordinals of the log entries a token occurs in, each stored as the gap from the previous one.
+     */
+    private static class Postings {
+        private final ByteArrayOutputStream bytes   = new ByteArrayOutputStream();
+        private final DataOutputStream out          = new DataOutputStream(bytes);
+        private int last                            = -1;
+        private int count                           = 0;
+
+        void add(final int ordinal) throws IOException {
+            if(ordinal == last) {
+                return;
+            }
+
+            writeVarLong(out, ordinal - last - 1);
+            last = ordinal;
+            count++;
+        }
+    }
+
+    /**
+     * For usage from the command line, build (or rebuild) the indexes of log files.
+     *
+     * @param args
+     * @throws IOException
+     */
+    public static void main(final String[] args) throws IOException {
+        Options options = Options.parse(args, System.out);
+
+        if(options.getLogFiles().isEmpty()) {
+            System.err.println("");
+            System.err.println("TokenIndex: Build the token indexes LogViewer's =I= option searches with.");
+            System.err.println("");
+            System.err.println("Usage: [=t=TS] logfile logfile ...");
+            System.err.println("");
+
+            System.exit(1);
+        }
+
+        for(String logFilePath : options.getLogFiles()) {
+            TokenIndex index = load(logFilePath, options.getTimestampDateFormat());
+
+            if(null == index) {
+                throw new IOException("Unable to save the token index [" + logFilePath + INDEX_SUFFIX + "]");
+            }
+
+            System.out.println("# Indexed [" + logFilePath + "] " + index.size() + " entries, "
+                    + index.getTokenCount() + " tokens, " + index.indexFile.length() + " bytes");
+        }
+    }
+}
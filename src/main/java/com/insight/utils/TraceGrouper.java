@@ -0,0 +1,402 @@
+package com.insight.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Group time sorted log entries by a trace (correlation) id, instead of writing them in time order, and write the
+ * time line of each trace with the mS between its log entries.
+ *
+ * The id of a log entry is the first match of a regular expression in its payload (its first group, if it has one),
+ * log entries without an id are dropped. The groups are held in a hash table until they outgrow the memory budget,
+ * then every group (and every log entry after it) is written to one of a number of partition files by the hash of its
+ * id, and each partition is grouped in memory in turn at the end. As the log entries arrive in time order, the log
+ * entries of a group are always in time order.
+ *
+ * The traces are written in the order of their first log entry (so by their first timestamp) whether or not they were
+ * spilled: each partition's traces are written to a file of their own in that order, and these are merged at the end.
+ * A partition is grouped in memory as a whole, so the budget only holds while the spilled log entries are within about
+ * PARTITIONS times it (and spread evenly across the ids), a larger partition takes as much memory as it needs.
+ */
+public class TraceGrouper implements EntryWriter {
+    public static final long DEFAULT_MAX_BYTES  = 256L * 1024 * 1024;
+    public static final int PARTITIONS          = 64;
+
+    private static final long GROUP_OVERHEAD    = 96;
+
+    private final Pattern idPattern;
+    private final long maxBytes;
+    private final List<String> sources;
+    private final PrintStream out;
+    private final File tempDirectory;
+    private final Map<String, List<LogEntry>> groups    = new LinkedHashMap<>();
+    private final Map<String, Integer> sourceIndexes    = new LinkedHashMap<>();
+    private File[] partitionFiles                       = null;
+    private DataOutputStream[] partitions               = null;
+    private String label                                = null;
+    private long usedBytes                              = 0;
+    private long logEntries                             = 0;
+    private long spilledBytes                           = 0;
+    private long traces                                 = 0;
+
+    /**
+     * @param idPattern The regular expression to find the id of a log entry with.
+     * @param maxBytes The (estimated) maximum amount of memory to hold the groups in.
+     * @param sources A list of the sources that make up the time sorted log entries.
+     * @param out The stream to write the traces to.
+     */
+    public TraceGrouper(final Pattern idPattern, final long maxBytes, final List<String> sources, final PrintStream out) {
+        this(idPattern, maxBytes, sources, out, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * @param idPattern The regular expression to find the id of a log entry with.
+     * @param maxBytes The (estimated) maximum amount of memory to hold the groups in.
+     * @param sources A list of the sources that make up the time sorted log entries.
+     * @param out The stream to write the traces to.
+     * @param tempDirectory Where to write the partition files.
+     */
+    public TraceGrouper(
+            final Pattern idPattern,
+            final long maxBytes,
+            final List<String> sources,
+            final PrintStream out,
+            final File tempDirectory) {
+        this.idPattern      = idPattern;
+        this.maxBytes       = maxBytes;
+        this.sources        = sources;
+        this.out            = out;
+        this.tempDirectory  = tempDirectory;
+
+        for(int i = 0 ; i < sources.size() ; i++) {
+            if(!sourceIndexes.containsKey(sources.get(i))) {
+                sourceIndexes.put(sources.get(i), i);
+            }
+        }
+    }
+
+    public void begin(final String label) {
+        this.label = label;
+    }
+
+    public void write(final LogEntry logEntry) {
+        String id = traceId(logEntry);
+
+        if(null == id) {
+            return;
+        }
+
+        logEntries++;
+
+        try {
+            if(null != partitions) {
+                spill(id, logEntries, logEntry);
+                return;
+            }
+
+            List<LogEntry> group = groups.get(id);
+
+            if(null == group) {
+                group = new ArrayList<>();
+                groups.put(id, group);
+                usedBytes += GROUP_OVERHEAD + 2L * id.length();
+            }
+
+            group.add(logEntry);
+            usedBytes += logEntry.getEstimatedSize();
+
+            if(usedBytes > maxBytes) {
+                ///////////////////////////////////////////////////////////
+                // Out of memory, partition everything from here on by id
+                partitionFiles  = new File[PARTITIONS];
+                partitions      = new DataOutputStream[PARTITIONS];
+
+                for(int i = 0 ; i < PARTITIONS ; i++) {
+                    partitionFiles[i] = File.createTempFile("logviewer", ".trace", tempDirectory);
+                    partitionFiles[i].deleteOnExit();
+                    partitions[i] = new DataOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(partitionFiles[i]), 64 * 1024));
+                }
+
+                ///////////////////////////////////////////////////////////////////
+                // The groups held so far are ordered by when they were first
+                // seen, every log entry from here on comes after all of them
+                long order = 0;
+
+                for(Map.Entry<String, List<LogEntry>> spilled : groups.entrySet()) {
+                    order++;
+
+                    for(LogEntry spilledEntry : spilled.getValue()) {
+                        spill(spilled.getKey(), order, spilledEntry);
+                    }
+                }
+
+                groups.clear();
+                usedBytes = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Problems writing a trace partition", e);
+        }
+    }
+
+    public void end() {
+        if(null != label && label.trim().length() > 0) {
+            out.println("# Label: " + label);
+        }
+
+        out.println("# Sources:");
+        for(int i = 0 ; i < sources.size() ; i++) {
+            out.println(String.format("# %2d %s", i + 1, sources.get(i)));
+        }
+        out.println("#");
+
+        try {
+            if(null == partitions) {
+                for(Map.Entry<String, List<LogEntry>> group : groups.entrySet()) {
+                    emitTrace(group.getKey(), group.getValue(), out);
+                }
+            } else {
+                for(int i = 0 ; i < PARTITIONS ; i++) {
+                    spilledBytes += partitions[i].size();
+                    partitions[i].close();
+
+                    writeTraces(partitionFiles[i]);
+                }
+
+                mergeTraces();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Problems reading a trace partition", e);
+        } finally {
+            close();
+        }
+
+        out.println(String.format("# %d traces, %d log entries", traces, logEntries));
+        out.flush();
+    }
+
+    /**
+     * @return The number of bytes written to the partition files; else 0 if the groups fitted in memory.
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Delete any partition files left, e.g. when the log entries could not all be read.
+     */
+    public void close() {
+        if(null == partitions) {
+            return;
+        }
+
+        for(int i = 0 ; i < PARTITIONS ; i++) {
+            try {
+                partitions[i].close();
+            } catch (IOException e) {}
+            partitionFiles[i].delete();
+        }
+    }
+
+    /**
+     * @param logEntry The log entry.
+     * @return The trace id of the log entry; else null if it doesn't have one.
+     */
+    String traceId(final LogEntry logEntry) {
+        Matcher matcher = idPattern.matcher(logEntry.getPayload());
+
+        if(!matcher.find()) {
+            return null;
+        }
+
+        return (matcher.groupCount() > 0) ? matcher.group(1) : matcher.group();
+    }
+
+    private void emitTrace(final String id, final List<LogEntry> trace, final PrintStream traceOut) {
+        long duration           = trace.get(trace.size() - 1).getRawTimeStamp() - trace.get(0).getRawTimeStamp();
+        TextEntryWriter writer  = new TextEntryWriter(sources, traceOut);
+        Set<String> hops        = new HashSet<>();
+
+        for(LogEntry logEntry : trace) {
+            hops.add(logEntry.getSource());
+        }
+
+        traceOut.println(String.format("# Trace %s: %d log entries, %d mS, %d sources",
+                id, trace.size(), duration, hops.size()));
+
+        for(LogEntry logEntry : trace) {
+            writer.write(logEntry);
+        }
+
+        traceOut.println("#");
+        traces++;
+    }
+
+    /**
+     * Group a partition and replace it with the text of its traces, each after the order of its first log entry.
+     */
+    private void writeTraces(final File file) throws IOException {
+        Map<String, Long> orders            = new LinkedHashMap<>();
+        Map<String, List<LogEntry>> groups  = readPartition(file, orders);
+        ByteArrayOutputStream bytes         = new ByteArrayOutputStream();
+        PrintStream traceOut                = new PrintStream(bytes);
+
+        try (DataOutputStream partition =
+                     new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+            for(Map.Entry<String, List<LogEntry>> group : groups.entrySet()) {
+                bytes.reset();
+                emitTrace(group.getKey(), group.getValue(), traceOut);
+                traceOut.flush();
+
+                partition.writeLong(orders.get(group.getKey()));
+                partition.writeInt(bytes.size());
+                bytes.writeTo(partition);
+            }
+        }
+    }
+
+    /**
+     * Write the traces of all the partitions in the order of their first log entry.
+     */
+    private void mergeTraces() throws IOException {
+        PriorityQueue<PartitionTraces> heads =
+                new PriorityQueue<>(PARTITIONS, new Comparator<PartitionTraces>() {
+                    public int compare(final PartitionTraces a, final PartitionTraces b) {
+                        return Long.compare(a.order, b.order);
+                    }
+                });
+        List<DataInputStream> ins = new ArrayList<>();
+
+        try {
+            for(int i = 0 ; i < PARTITIONS ; i++) {
+                DataInputStream in =
+                        new DataInputStream(new BufferedInputStream(new FileInputStream(partitionFiles[i]), 64 * 1024));
+                PartitionTraces head = new PartitionTraces(in);
+
+                ins.add(in);
+                if(head.next()) {
+                    heads.add(head);
+                }
+            }
+
+            while(!heads.isEmpty()) {
+                PartitionTraces head = heads.poll();
+
+                out.write(head.text, 0, head.text.length);
+                if(head.next()) {
+                    heads.add(head);
+                }
+            }
+        } finally {
+            for(DataInputStream in : ins) {
+                try {
+                    in.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+
+    private void spill(final String id, final long order, final LogEntry logEntry) throws IOException {
+        DataOutputStream partition  = partitions[(id.hashCode() & 0x7fffffff) % PARTITIONS];
+        Integer index               = sourceIndexes.get(logEntry.getSource());
+        byte[] payload              = logEntry.getPayload().getBytes(StandardCharsets.UTF_8);
+
+        partition.writeUTF(id);
+        partition.writeLong(order);
+        partition.writeInt((null == index) ? -1 : index);
+        partition.writeLong(logEntry.getRawTimeStamp());
+        partition.writeUTF(logEntry.getDisplayTimeStamp());
+        partition.writeInt(payload.length);
+        partition.write(payload);
+    }
+
+    private Map<String, List<LogEntry>> readPartition(final File file, final Map<String, Long> orders)
+            throws IOException {
+        Map<String, List<LogEntry>> partitionGroups = new LinkedHashMap<>();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            while(true) {
+                String id;
+
+                try {
+                    id = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                long order              = in.readLong();
+                int index               = in.readInt();
+                long rawTimeStamp       = in.readLong();
+                String displayTimeStamp = in.readUTF();
+                byte[] payload          = new byte[in.readInt()];
+
+                in.readFully(payload);
+
+                List<LogEntry> group = partitionGroups.get(id);
+                if(null == group) {
+                    group = new ArrayList<>();
+                    partitionGroups.put(id, group);
+                    orders.put(id, order);
+                }
+
+                group.add(new LogEntry(
+                        (index < 0) ? "" : sources.get(index),
+                        rawTimeStamp,
+                        displayTimeStamp,
+                        new String(payload, StandardCharsets.UTF_8)));
+            }
+        }
+
+        return partitionGroups;
+    }
+
+    /**
+     * The next trace of a partition's traces file.
+     */
+    private static class PartitionTraces {
+        private final DataInputStream in;
+        private long order;
+        private byte[] text;
+
+        PartitionTraces(final DataInputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return True if another trace was read; else false at the end of the file.
+         */
+        boolean next() throws IOException {
+            try {
+                order = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+
+            text = new byte[in.readInt()];
+            in.readFully(text);
+
+            return true;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.*;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.regex.Pattern;
 
 /**
  * Created by ppearce on 2016-05-17.
@@ -16,6 +17,9 @@ import java.util.*;
  */
 public class Utils {
     public static final String LINE_SEP = System.lineSeparator();
+    static final String NAME            = "LogViewer";
+    static final String VERSION         = "1.1";
+    public static final String STDIN    = "-";
 
     /**
      * Build a representation of a log entry.
@@ -41,45 +45,103 @@ public class Utils {
             final String startAt,
             final String endAt,
             final List<String> searchText) throws ParseException {
-        String displayTimeStamp = "0";
-        String payload = null;
-        LogEntry logEntry = null;
-        long startTs = 0;
-        long endTs = Long.MAX_VALUE;
 
-        ////////////////////////////////
-        // Extract the display timestamp
-        int patternLength   = sdf.toPattern().length();
+        return createLogEntry(
+                source,
+                data,
+                sdf,
+                rawTimeStamp,
+                startTimeStamp(startAt, sdf),
+                endTimeStamp(endAt, sdf),
+                searchText);
+    }
+
+    /**
+     * Build a representation of a log entry.
+     *
+     * @param source The source of the log data
+     * @param data The log entry's data (may contain multiple lines)
+     * @param sdf A Simple date formatter for the log entry's timestamp
+     * @param rawTimeStamp mS timestamp of this entry.
+     * @param startTs mS timestamp to start collecting log entries at.
+     * @param endTs mS timestamp to stop collecting log entries at.
+     * @param searchText A list of text string to match a lig entry against.
+     *
+     * @return The log entry; else null if it was filtered out.
+     */
+    protected static LogEntry createLogEntry(
+            final String source,
+            final String data,
+            final SimpleDateFormat sdf,
+            final long rawTimeStamp,
+            final long startTs,
+            final long endTs,
+            final List<String> searchText) {
+        LogEntry logEntry = null;
 
-        displayTimeStamp    = sdf.format(new Date(rawTimeStamp));
-        payload             = data.substring(patternLength);
+        if (rawTimeStamp >= startTs && rawTimeStamp <= endTs) {
+            ////////////////////////////////
+            // Extract the display timestamp
+            int patternLength   = sdf.toPattern().length();
+            String payload      = data.substring(patternLength);
 
-        ///////////////////////////////
-        // Build any time range filters
-        if (null != startAt && startAt.trim().length() > 0) {
-            Date dS = sdf.parse(startAt);
-            startTs = dS.getTime();
+            if(matchesSearchText(payload, searchText)) {
+                logEntry = new LogEntry(source, rawTimeStamp, sdf.format(new Date(rawTimeStamp)), payload);
+            }
         }
 
-        if (null != endAt && endAt.trim().length() > 0) {
-            Date dS = sdf.parse(endAt);
-            endTs = dS.getTime();
+        return logEntry;
+    }
+
+    /**
+     * Determine if a log entry's payload matches the text filters.
+     *
+     * @param payload The log entry's payload.
+     * @param searchText A list of text string to match a lig entry against, null or empty matches everything.
+     * @return true if any of the text strings is found in the payload.
+     */
+    protected static boolean matchesSearchText(final String payload, final List<String> searchText) {
+        if(null == searchText || searchText.size() < 1) {
+            return true;
         }
 
-        if (rawTimeStamp >= startTs && rawTimeStamp <= endTs) {
-            if(null != searchText && searchText.size() > 0) {
-                for(String text : searchText) {
-                    if(payload.contains(text))  {
-                        logEntry = new LogEntry(source, rawTimeStamp, displayTimeStamp, payload);
-                        break;
-                    }
-                }
-            } else {
-                logEntry = new LogEntry(source, rawTimeStamp, displayTimeStamp, payload);
+        for(String text : searchText) {
+            if(payload.contains(text))  {
+                return true;
             }
         }
 
-        return logEntry;
+        return false;
+    }
+
+    /**
+     * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+     *                null or empty implies no filtering
+     * @param sdf A Simple date formatter for the log entry's timestamp
+     * @return The mS timestamp to start collecting log entries at.
+     * @throws ParseException
+     */
+    protected static long startTimeStamp(final String startAt, final SimpleDateFormat sdf) throws ParseException {
+        if (null != startAt && startAt.trim().length() > 0) {
+            return sdf.parse(startAt).getTime();
+        }
+
+        return 0;
+    }
+
+    /**
+     * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+     *              null or empty implies no filtering.
+     * @param sdf A Simple date formatter for the log entry's timestamp
+     * @return The mS timestamp to stop collecting log entries at.
+     * @throws ParseException
+     */
+    protected static long endTimeStamp(final String endAt, final SimpleDateFormat sdf) throws ParseException {
+        if (null != endAt && endAt.trim().length() > 0) {
+            return sdf.parse(endAt).getTime();
+        }
+
+        return Long.MAX_VALUE;
     }
 
     /**
@@ -121,7 +183,7 @@ public class Utils {
         String pattern      = sdf.toPattern();
         int patternLength   = pattern.length();
 
-        if(null == line || line.length() < patternLength) {
+        if(null == line || line.length() < patternLength || !couldStartWithTimeStamp(line, pattern)) {
             return ts;
         }
 
@@ -135,6 +197,52 @@ public class Utils {
         return ts;
     }
 
+    /**
+     * Determine if a line could start with a timestamp, by the shape of the first field of the pattern, so lines that
+     * can't (e.g. the lines of a stack trace) aren't parsed, as a failed parse throws an exception. A numeric field has
+     * to start with a digit or a minus sign (after any blanks, which the parse skips), and a literal has to match.
+     * Other fields (e.g. month names) and quoted literals are not checked.
+     *
+     * @param line The line to check.
+     * @param pattern The date formatter pattern.
+     * @return false if the line can't start with a timestamp; else true if it might.
+     */
+    static boolean couldStartWithTimeStamp(final String line, final String pattern) {
+        if(pattern.isEmpty() || line.isEmpty()) {
+            return pattern.isEmpty();
+        }
+
+        char field = pattern.charAt(0);
+
+        if((field >= 'a' && field <= 'z') || (field >= 'A' && field <= 'Z')) {
+            int count = 1;
+
+            while(count < pattern.length() && field == pattern.charAt(count)) {
+                count++;
+            }
+
+            boolean numeric = "yYdDFwWHkKhmsSu".indexOf(field) >= 0 || (('M' == field || 'L' == field) && count < 3);
+
+            if(!numeric) {
+                return true;
+            }
+
+            int i = 0;
+
+            while(i < line.length() && (' ' == line.charAt(i) || '\t' == line.charAt(i))) {
+                i++;
+            }
+
+            return i < line.length() && (Character.isDigit(line.charAt(i)) || '-' == line.charAt(i));
+        }
+
+        if('\'' == field || Character.isWhitespace(field)) {
+            return true;
+        }
+
+        return field == line.charAt(0);
+    }
+
     /**
      * Build a representation of a set of log entries from a single source.
      *
@@ -168,6 +276,8 @@ public class Utils {
 
         sdf.setLenient(false);
 
+        long startTs                = startTimeStamp(startAt, sdf);
+        long endTs                  = endTimeStamp(endAt, sdf);
         int startingLogEntryIndex   = 0;
         int maxIndex                = lines.size() - 1;
 
@@ -227,8 +337,8 @@ public class Utils {
                         currentEntry.toString(),
                         sdf,
                         ts + timestampAdjustment,
-                        startAt,
-                        endAt,
+                        startTs,
+                        endTs,
                         searchText);
 
                 if(null != logEntry) {
@@ -265,47 +375,364 @@ public class Utils {
             final String endAt,
             final List<String> searchText,
             final int timestampAdjustment) throws FileNotFoundException, ParseException {
-        File file = new File(logFilePath);
-        List<LogEntry> logEntries   = null;
-        List<String> lines          = new ArrayList<String>();
+        List<LogEntry> logEntries   = new ArrayList<LogEntry>();
 
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNext()){
-                lines.add(scanner.nextLine());
+        try (LogEntryReader reader =
+                     LogEntryReader.open(
+                             logFilePath,
+                             timestampDateFormat,
+                             startAt,
+                             endAt,
+                             searchText,
+                             timestampAdjustment)) {
+            while (reader.hasNext()) {
+                logEntries.add(reader.next());
             }
+        }
+
+        return logEntries;
+    }
+
+    /**
+     * Build a representation of a set of log entries from a single file, only reading what its token or block index
+     * says could pass the filters (see openLogEntryReader).
+     *
+     * @param logFilePath The file containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+     *                null or empty implies no filtering
+     * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+     *              null or empty implies no filtering.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param timestampAdjustment A mS adjustment to the log entries timestamp.
+     * @param falsePositiveRate The false positive rate of the block index; else 0 to not use one.
+     * @param tokenIndex true to only read the log entries the token index (see TokenIndex) says could match.
+     * @param lineStore Where to share the continuation lines of the log entries; else null to not share them.
+     * @param fieldFilter The field conditions a log entry has to pass; else null to not filter by field.
+     *
+     * @return
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static List<LogEntry> createLogEntries(
+            final String logFilePath,
+            final String timestampDateFormat,
+            final String startAt,
+            final String endAt,
+            final List<String> searchText,
+            final int timestampAdjustment,
+            final double falsePositiveRate,
+            final boolean tokenIndex,
+            final LineStore lineStore,
+            final FieldFilter fieldFilter) throws IOException, ParseException {
+        return createLogEntries(
+                logFilePath,
+                timestampDateFormat,
+                startAt,
+                endAt,
+                searchText,
+                timestampAdjustment,
+                falsePositiveRate,
+                tokenIndex,
+                lineStore,
+                fieldFilter,
+                null);
+    }
+
+    /**
+     * Build a representation of a set of log entries from a single file, only reading what its token or block index
+     * says could pass the filters (see openLogEntryReader).
+     *
+     * @param logFilePath The file containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+     *                null or empty implies no filtering
+     * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+     *              null or empty implies no filtering.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param timestampAdjustment A mS adjustment to the log entries timestamp.
+     * @param falsePositiveRate The false positive rate of the block index; else 0 to not use one.
+     * @param tokenIndex true to only read the log entries the token index (see TokenIndex) says could match.
+     * @param lineStore Where to share the continuation lines of the log entries; else null to not share them.
+     * @param fieldFilter The field conditions a log entry has to pass; else null to not filter by field.
+     * @param entryLimits The most of a log entry to keep in memory; else null for no limit.
+     *
+     * @return
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static List<LogEntry> createLogEntries(
+            final String logFilePath,
+            final String timestampDateFormat,
+            final String startAt,
+            final String endAt,
+            final List<String> searchText,
+            final int timestampAdjustment,
+            final double falsePositiveRate,
+            final boolean tokenIndex,
+            final LineStore lineStore,
+            final FieldFilter fieldFilter,
+            final EntryLimits entryLimits) throws IOException, ParseException {
+        return readLogEntries(
+                openLogEntryReader(
+                        logFilePath,
+                        timestampDateFormat,
+                        startAt,
+                        endAt,
+                        searchText,
+                        timestampAdjustment,
+                        falsePositiveRate,
+                        tokenIndex),
+                lineStore,
+                fieldFilter,
+                entryLimits);
+    }
+
+    /**
+     * Read all the log entries of a reader, closing it.
+     */
+    private static List<LogEntry> readLogEntries(
+            final LogEntryReader logEntryReader,
+            final LineStore lineStore,
+            final FieldFilter fieldFilter,
+            final EntryLimits entryLimits) {
+        return readLogEntries(logEntryReader, lineStore, fieldFilter, entryLimits, null, 0);
+    }
+
+    /**
+     * Read all the log entries of a reader into memory, closing it, unless the planner finds the heap filling up
+     * first. The read is then abandoned and null returned, the caller has to drop whatever it holds of the log
+     * entries and stream them instead, the planner's mode is then MemoryPlanner.EXTERNAL_SORT.
+     *
+     * @param planner What watches the heap while the log entries are read; else null to never abandon the read.
+     * @param alreadyRead The number of log entries already read into memory, from other log files.
+     * @return The log entries; else null if the planner stopped the read as the heap was filling up.
+     */
+    private static List<LogEntry> readLogEntries(
+            final LogEntryReader logEntryReader,
+            final LineStore lineStore,
+            final FieldFilter fieldFilter,
+            final EntryLimits entryLimits,
+            final MemoryPlanner planner,
+            final long alreadyRead) {
+        List<LogEntry> logEntries   = new ArrayList<LogEntry>();
 
-            logEntries =
-                    createLogEntries(
-                            logFilePath,
-                            lines,
-                            timestampDateFormat,
-                            startAt,
-                            endAt,
-                            searchText,
-                            timestampAdjustment);
+        try (LogEntryReader reader = logEntryReader) {
+            reader.setLineStore(lineStore);
+            reader.setFieldFilter(fieldFilter);
+            reader.setEntryLimits(entryLimits);
+
+            while (reader.hasNext()) {
+                logEntries.add(reader.next());
+
+                if(null != planner && 0 == logEntries.size() % MemoryPlanner.CHECK_INTERVAL
+                        && planner.isUnderPressure(alreadyRead + logEntries.size())) {
+                    return null;
+                }
+            }
         }
 
         return logEntries;
     }
 
     /**
-     * Time sort the list of lists.
+     * Determine if a log file can only be read once, as it's written, i.e. stdin (-) or a named pipe (FIFO).
+     *
+     * @param logFilePath The log file.
+     * @return true if it's stdin or a named pipe; else false.
+     */
+    public static boolean isPipe(final String logFilePath) {
+        File file = new File(logFilePath);
+
+        return STDIN.equals(logFilePath) || (file.exists() && !file.isFile() && !file.isDirectory());
+    }
+
+    /**
+     * Open a reader on a log file, only reading the log entries that its token index (see TokenIndex), or the blocks
+     * of the file that its block index (see BlockIndex), says could pass the filters. A pipe (see isPipe) is read
+     * from start to end, the indexes are not used.
+     *
+     * @param logFilePath The file containing log entries.
+     * @param timestampDateFormat A Simple date formatter String for the log entry's timestamp
+     * @param startAt A String representation of the timestamp (matching the sdf) to start collecting log entries,
+     *                null or empty implies no filtering
+     * @param endAt A String representation of the timestamp (matching the sdf) to stop collecting log entries,
+     *              null or empty implies no filtering.
+     * @param searchText A list of text string to match a lig entry against.
+     * @param timestampAdjustment A mS adjustment to the log entries timestamp.
+     * @param falsePositiveRate The false positive rate of the block index; else 0 to not use one.
+     * @param tokenIndex true to only read the log entries the token index (see TokenIndex) says could match.
+     *
+     * @return A reader positioned before the first log entry.
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static LogEntryReader openLogEntryReader(
+            final String logFilePath,
+            final String timestampDateFormat,
+            final String startAt,
+            final String endAt,
+            final List<String> searchText,
+            final int timestampAdjustment,
+            final double falsePositiveRate,
+            final boolean tokenIndex) throws IOException, ParseException {
+        if(isPipe(logFilePath)) {
+            //////////////////////////////////////////////////////////
+            // Can only be read once, as it's written, without an index
+            InputStream in = STDIN.equals(logFilePath) ? System.in : new FileInputStream(logFilePath);
+
+            return new LogEntryReader(
+                    logFilePath,
+                    new LineReader(in),
+                    timestampDateFormat,
+                    startAt,
+                    endAt,
+                    searchText,
+                    timestampAdjustment);
+        }
+
+        if(tokenIndex) {
+            TokenIndex index = TokenIndex.load(logFilePath, timestampDateFormat);
+
+            if(null != index) {
+                return LogEntryReader.open(
+                        logFilePath,
+                        index.candidateRanges(searchText),
+                        timestampDateFormat,
+                        startAt,
+                        endAt,
+                        searchText,
+                        timestampAdjustment);
+            }
+
+            System.err.println("# Unable to save the token index [" + logFilePath + TokenIndex.INDEX_SUFFIX
+                    + "], reading the log file without it");
+        }
+
+        if(falsePositiveRate <= 0) {
+            return LogEntryReader.open(
+                    logFilePath,
+                    timestampDateFormat,
+                    startAt,
+                    endAt,
+                    searchText,
+                    timestampAdjustment);
+        }
+
+        SimpleDateFormat sdf    = new SimpleDateFormat(timestampDateFormat);
+        sdf.setLenient(false);
+
+        BlockIndex index        = BlockIndex.load(logFilePath, timestampDateFormat, falsePositiveRate);
+
+        return LogEntryReader.open(
+                logFilePath,
+                index.candidateRanges(
+                        startTimeStamp(startAt, sdf),
+                        endTimeStamp(endAt, sdf),
+                        timestampAdjustment,
+                        searchText),
+                timestampDateFormat,
+                startAt,
+                endAt,
+                searchText,
+                timestampAdjustment);
+    }
+
+    /**
+     * Open a reader on a log file (see openLogEntryReader), only reading what was appended since its checkpoint when
+     * there are checkpoints.
+     */
+    private static LogEntryReader openLogEntryReader(
+            final Checkpoints checkpoints,
+            final String logFilePath,
+            final String timestampDateFormat,
+            final String startAt,
+            final String endAt,
+            final List<String> searchText,
+            final int timestampAdjustment,
+            final double falsePositiveRate,
+            final boolean tokenIndex) throws IOException, ParseException {
+        if(null == checkpoints) {
+            return openLogEntryReader(
+                    logFilePath,
+                    timestampDateFormat,
+                    startAt,
+                    endAt,
+                    searchText,
+                    timestampAdjustment,
+                    falsePositiveRate,
+                    tokenIndex);
+        }
+
+        return LogEntryReader.open(
+                logFilePath,
+                Collections.singletonList(checkpoints.range(logFilePath, timestampDateFormat)),
+                timestampDateFormat,
+                startAt,
+                endAt,
+                searchText,
+                timestampAdjustment);
+    }
+
+    /**
+     * Time sort the list of lists, entries with the same timestamp stay in list and then list order. Large lists are
+     * sorted and merged on all the processors (see ParallelMerge).
      *
      * @param logs A list of log entry lists.
      * @return A list time sorted
      */
     public static List<LogEntry> timeSortLists(List<List<LogEntry>> logs) {
-        List<LogEntry> timeSortedLogEntries   = new ArrayList<>();
+        return new ParallelMerge(Runtime.getRuntime().availableProcessors()).timeSortLists(logs);
+    }
 
-        for(List<LogEntry> log : logs) {
-            timeSortedLogEntries.addAll(log);
-        }
+    /**
+     * Time merge time ordered sources, stopping as soon as the first count entries have been merged.
+     *
+     * @param sources Time ordered sources of log entries (in source order), no source is read further than needed.
+     * @param count The maximum number of entries to return.
+     * @return A list (time sorted) of up to count entries, the same as the start of timeSortLists would give.
+     */
+    public static List<LogEntry> headLogEntries(final List<? extends Iterator<LogEntry>> sources, final int count) {
+        List<LogEntry> timeSortedLogEntries = new ArrayList<>();
+        LogEntryMerger merger               = new LogEntryMerger(sources);
 
-        Collections.sort(timeSortedLogEntries);
+        while(timeSortedLogEntries.size() < count && merger.hasNext()) {
+            timeSortedLogEntries.add(merger.next());
+        }
 
         return timeSortedLogEntries;
     }
 
+    /**
+     * Time sort the last count entries of time ordered sources, only the last count entries of each source are kept
+     * while the sources are read.
+     *
+     * @param sources Time ordered sources of log entries (in source order).
+     * @param count The maximum number of entries to return.
+     * @return A list (time sorted) of up to count entries, the same as the end of timeSortLists would give.
+     */
+    public static List<LogEntry> tailLogEntries(final List<? extends Iterator<LogEntry>> sources, final int count) {
+        List<List<LogEntry>> logs = new ArrayList<>();
+
+        for(Iterator<LogEntry> source : sources) {
+            ArrayDeque<LogEntry> ring = new ArrayDeque<>(Math.min(count, 1024));
+
+            while(source.hasNext()) {
+                if(ring.size() == count) {
+                    ring.pollFirst();
+                }
+                ring.addLast(source.next());
+            }
+
+            logs.add(new ArrayList<>(ring));
+        }
+
+        List<LogEntry> timeSortedLogEntries = timeSortLists(logs);
+        int from                            = Math.max(0, timeSortedLogEntries.size() - count);
+
+        return new ArrayList<>(timeSortedLogEntries.subList(from, timeSortedLogEntries.size()));
+    }
+
     /**
      * Display a LogEntry list on stdout.
      *
@@ -336,85 +763,152 @@ public class Utils {
             final List<String> sources,
             final String label,
             PrintStream out) {
-        String source   = null;
+        emitList(logEntries, new TextEntryWriter(sources, out), label);
+    }
+
+    /**
+     * Emit a timesorted log entry List with the specified writer.
+     *
+     * @param logEntries A list of time sorted log entries.
+     * @param writer The writer of the output format.
+     * @param label Text to display at the top of the outpit
+     */
+    public static void emitList(
+            final List<LogEntry> logEntries,
+            final EntryWriter writer,
+            final String label) {
+        writer.begin(label);
+        writer.writeAll(logEntries);
+        writer.end();
+    }
+
+    /**
+     * Emit time sorted log entries with the specified writer as they are produced, without holding them all.
+     *
+     * @param timeSortedLogEntries The time sorted log entries.
+     * @param writer The writer of the output format.
+     * @param label Text to display at the top of the outpit
+     * @param head The number of log entries to emit from the start; else 0 for no limit.
+     * @param tail The number of log entries to emit from the end; else 0 for no limit.
+     */
+    public static void emitMerged(
+            final Iterator<LogEntry> timeSortedLogEntries,
+            final EntryWriter writer,
+            final String label,
+            final int head,
+            final int tail) {
+        ArrayDeque<LogEntry> last   = new ArrayDeque<>();
+        int written                 = 0;
+
+        writer.begin(label);
+
+        while((head < 1 || written < head) && timeSortedLogEntries.hasNext()) {
+            LogEntry logEntry = timeSortedLogEntries.next();
 
-        if(null != label && label.trim().length() > 0) {
-            out.println("# Label: " + label);
+            if(tail > 0) {
+                if(last.size() == tail) {
+                    last.pollFirst();
+                }
+                last.addLast(logEntry);
+            } else {
+                writer.write(logEntry);
+                written++;
+            }
         }
 
-        out.println("# Sources:");
+        for(LogEntry logEntry : last) {
+            writer.write(logEntry);
+        }
+
+        writer.end();
+    }
 
-        int i = 1;
-        for(String theSource : sources) {
-            out.println(String.format("# %2d %s", i, theSource));
-            i++;
+    /**
+     * Create the writer of an output format.
+     *
+     * @param outputFormat One of the Options.OUTPUT_ formats.
+     * @param sources A list of the sources that make up the time sorted log entries.
+     * @param out The stream to write to.
+     * @return The writer.
+     */
+    public static EntryWriter entryWriter(final String outputFormat, final List<String> sources, final PrintStream out) {
+        if(Options.OUTPUT_JSONL.equals(outputFormat)) {
+            return new JsonLinesEntryWriter(sources, out);
+        } else if(Options.OUTPUT_CSV.equals(outputFormat)) {
+            return new CsvEntryWriter(sources, out);
         }
-        out.println("#");
 
-        out.println("# Time sorted log entries:");
+        return new TextEntryWriter(sources, out);
+    }
 
-        int lastIndex   = -1;
-        long lastTs     = -1;
+    /**
+     * Parse the command line, emitting the banner when the output is text. Any notes about the arguments follow the
+     * banner, else (as they'd break a machine readable format) they are written to the notes stream.
+     *
+     * @param args The command line arguments.
+     * @param out The stream to write to.
+     * @param notes The stream to write the notes to when the output isn't text.
+     * @return The options.
+     */
+    protected static Options parseOptions(final String[] args, final PrintStream out, final PrintStream notes) {
+        ByteArrayOutputStream parseNotes    = new ByteArrayOutputStream();
+        PrintStream parseOut                = new PrintStream(parseNotes, true);
+        Options options;
 
-        for(LogEntry logEntry : logEntries) {
-            /////////////////////////////////////////////////////////////////////////////
-            // Depending on the source position, where in the line we display the payload
-            String dts  =   logEntry.getDisplayTimeStamp();
-            source      =   logEntry.getSource();
-            long rawTs  =   logEntry.getRawTimeStamp();
-            int index   =   sources.indexOf(source);
-            long diffTs =   -1;
-            String pad1 =   "";
-            String pad2 =   "";
+        try {
+            options = Options.parse(args, parseOut);
+        } catch (RuntimeException e) {
+            emitHeader(args, out);
+            out.print(parseNotes.toString());
+            throw e;
+        }
 
-            if(-1 == lastTs) {
-                diffTs = 0;
-            } else {
-                diffTs  = rawTs - lastTs;
-            }
-            lastTs = rawTs;
-
-            pad1 = String.format("%s%2d%9d %20s",
-                    (index != lastIndex ? "*" : "."),
-                    (index + 1),
-                    diffTs,
-                    dts);
-
-            pad2 = String.format("%s%2d%9s %-20s",
-                    ".",
-                    (index + 1),
-                    ".",
-                    ".");
-
-            lastIndex = index;
-
-            /////////////////////////////////////////////////////////////////
-            // Extract each line from the payload and display it with padding
-            boolean firstLine   = true;
-
-            StringTokenizer st = new StringTokenizer(logEntry.getPayload(), Utils.LINE_SEP);
-            while(st.hasMoreElements()) {
-                if(firstLine) {
-                    out.println(pad1 + st.nextToken());
-                    firstLine   = false;
-                } else {
-                    out.println(pad2 + st.nextToken());
-                }
-            }
+        parseOut.flush();
+
+        if(Options.OUTPUT_TEXT.equals(options.getOutputFormat())) {
+            emitHeader(args, out);
+            out.print(parseNotes.toString());
+        } else {
+            notes.print(parseNotes.toString());
         }
+
+        return options;
     }
 
     static void usage(final String timestampDateFormat) {
         System.err.println("");
         System.err.println("LogViewer: View multiple log files in a single time ascending order list.");
         System.err.println("");
-        System.err.println("Usage: [=t=TS] [=s=TS] [=e=TS] [=f=T [=f=T] ...] [=a=N,N...] logfile logfile ...");
+        System.err.println("Usage: [=t=TS] [=s=TS] [=e=TS] [=f=T [=f=T] ...] [=F=RULES] [=q=F=V,V [=q=F=V,V] ...] [=a=N,N...] [=h=N | =l=N] [=g=K] [=T=RE] [=S=N[,source|,MS]] [=M=K] [=Q=FILE] [=C=MS] [=n=N] [=x=R] [=I=on] [=d=N] [=B=BYTES] [=L=N] [=k=FILE] [=o=FMT] [=v=on] [=i=N | =P=N | =m=BYTES] logfile logfile ...");
         System.err.println("");
         System.err.println("   =t=TS   Set the log entry TimeStamp formatter to TS (default is '" + timestampDateFormat + "')");
         System.err.println("   =s=TS   Set the starting TimeStamp (TS) for filtering log entries.");
         System.err.println("   =e=TS   Set the ending TimeStamp (TS) for filtering log entries.");
         System.err.println("   =f=T    Set the text to find (case sensitive) for filtering log entries, can be multiple.");
+        System.err.println("   =F=RULES Define the fields after the timestamp, name:N is the Nth word, name:[] the text in [...]");
+        System.err.println("           (default is '" + FieldFilter.DEFAULT_FIELDS + "').");
+        System.err.println("   =q=F=V,V Only log entries whose field F is one of the values V, all =q= have to match.");
         System.err.println("   =a=N,.. Set the mS timestamp offset adjustment for the relevant log file's entries.");
+        System.err.println("   =h=N    Only output the first N (head) time sorted log entries.");
+        System.err.println("   =l=N    Only output the last N (tail) time sorted log entries.");
+        System.err.println("   =g=K    Report the K largest gaps between log entries (and delta percentiles) instead of the log entries.");
+        System.err.println("   =T=RE   Group the log entries by the trace id matched by RE (its first group, if any), writing each trace.");
+        System.err.println("   =M=K    Output the K most frequent message templates, with their counts in each log file, instead.");
+        System.err.println("   =Q=FILE Run each query (an output file and its =s= =e= =f= =F= =q= filters) in the file in one pass.");
+        System.err.println("   =S=N    Output a random sample of N log entries (N from each source with ,source or each MS mS with ,MS).");
+        System.err.println("   =C=MS   Output every log entry within MS mS of an =f= match, from all the log files.");
+        System.err.println("   =n=N    Output the N log entries before and after an =f= match, from all the log files.");
+        System.err.println("   =x=R    Only read the blocks of the log files that a sidecar index (false positive rate R) can't rule out.");
+        System.err.println("   =I=on   Only read the log entries that a token index (see TokenIndex) says could match the =f= text.");
+        System.err.println("   =d=N    Hold repeated continuation lines (e.g. stack traces) once, keeping up to N distinct lines (in memory runs only).");
+        System.err.println("   =B=BYTES Keep at most BYTES (K, M or G suffix allowed) of a log entry, marking where it was cut.");
+        System.err.println("   =L=N    Keep at most N lines of a log entry, marking where it was cut.");
+        System.err.println("   =k=FILE Only read what was appended to the log files since the last run, keeping checkpoints in FILE.");
+        System.err.println("   =o=FMT  Set the output format to text (the default), jsonl (JSON Lines) or csv.");
+        System.err.println("   =v=on   Write how the log entries are held (see MemoryPlanner) to stderr.");
+        System.err.println("   =i=N    Read all the log files at once (for slow storage), parsing them on N threads.");
+        System.err.println("   =P=N    Read, parse, filter, merge and write concurrently, queueing up to N batches between each.");
+        System.err.println("   =m=BYTES Sort using at most BYTES (K, M or G suffix allowed) of memory, spilling to temporary files.");
         System.err.println("");
         System.err.println("Notes:");
         System.err.println("");
@@ -426,6 +920,11 @@ public class Utils {
         System.err.println("If =s= and =e= are set to an empty value (or not specified), no filtering will be enabled for");
         System.err.println("that value, else they HAVE to match the TimeStamp format EXACTLY.");
         System.err.println("");
+        System.err.println("=h=, =l=, =C=, =n= and =P= expect the log entries in each log file to be in time ascending order.");
+        System.err.println("");
+        System.err.println("A logfile of - reads stdin, it and named pipes (FIFOs) are read as they are written, and are");
+        System.err.println("expected to be in time ascending order.");
+        System.err.println("");
 
         System.exit(1);
     }
@@ -535,121 +1034,507 @@ public class Utils {
     }
 
     /**
-     * For usage from the command line
+     * Convert the command line value of an output limit.
      *
-     * @param args
+     * @param name The name of the limit (for error reporting).
+     * @param limit The command line value.
+     * @return The limit; else 0 if not specified.
+     */
+    protected static int outputLimit(final String name, final String limit) {
+        if(null == limit || limit.trim().length() < 1) {
+            return 0;
+        }
+
+        int count;
+
+        try {
+            count = Integer.parseInt(limit.trim());
+        } catch(NumberFormatException e) {
+            throw new RuntimeException("Invalid " + name + " [" + limit + "]", e);
+        }
+
+        if(count < 1) {
+            throw new RuntimeException("Invalid " + name + " [" + limit + "], it has to be > 0");
+        }
+
+        return count;
+    }
+
+    /**
+     * Parse a size in bytes, optionally with a K, M or G suffix.
+     *
+     * @param name What the size is of, for the error message.
+     * @param bytes The size; null or empty if not set.
+     * @return The size in bytes; else 0 if not set.
+     * @throws RuntimeException if the size is invalid or not > 0.
+     */
+    protected static long byteCount(final String name, final String bytes) {
+        if(null == bytes || bytes.trim().length() < 1) {
+            return 0;
+        }
+
+        String value    = bytes.trim().toUpperCase();
+        long multiplier = 1;
+
+        if(value.endsWith("K")) {
+            multiplier = 1024L;
+        } else if(value.endsWith("M")) {
+            multiplier = 1024L * 1024;
+        } else if(value.endsWith("G")) {
+            multiplier = 1024L * 1024 * 1024;
+        }
+
+        if(multiplier > 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+
+        long count;
+
+        try {
+            count = Long.parseLong(value) * multiplier;
+        } catch(NumberFormatException e) {
+            throw new RuntimeException("Invalid " + name + " [" + bytes + "]", e);
+        }
+
+        if(count < 1) {
+            throw new RuntimeException("Invalid " + name + " [" + bytes + "], it has to be > 0");
+        }
+
+        return count;
+    }
+
+    /**
+     * Emit the banner that starts the output of every run.
+     *
+     * @param args The command line arguments of the run.
+     * @param out The stream to write to.
+     */
+    public static void emitHeader(final String[] args, final PrintStream out) {
+        out.println(String.format("# %s - v%s", NAME, VERSION));
+
+        out.print("# Cmd line: ");
+
+        for(String arg : args) {
+            out.print(arg + " ");
+        }
+        out.println();
+    }
+
+    /**
+     * Read, time sort and emit the log entries selected by the options.
+     *
+     * @param options Validated options, all the log files have to be accessible.
+     * @param out The stream to write to.
      * @throws IOException
      * @throws ParseException
      */
-    public static void main(final String[] args) throws FileNotFoundException, ParseException {
-        String timestampDateFormat                      = "yyyy-MM-dd HH:mm:ss,SSS";
-        String startAt                                  = null;
-        String endAt                                    = null;
-        String timestampAdjustments                     = null;
-        List<String> searchText                         = new ArrayList<>();
-        final String NAME                               = "LogViewer";
-        final String VERSION                            = "1.1";
+    public static void run(final Options options, final PrintStream out) throws IOException, ParseException {
+        MemoryPlanner planner = MemoryPlanner.plan(options);
 
-        System.out.println(String.format("# %s - v%s", NAME, VERSION));
+        if(options.isVerbose()) {
+            planner.emit(System.err);
+        }
 
-        System.out.print("# Cmd line: ");
+        run(options, planner, out);
+    }
 
-        for(String arg : args) {
-            System.out.print(arg + " ");
+    /**
+     * Read, time sort and emit the log entries selected by the options, holding them as planned.
+     *
+     * @param options Validated options, all the log files have to be accessible.
+     * @param planner How to hold the log entries.
+     * @param out The stream to write to.
+     * @throws IOException
+     * @throws ParseException
+     */
+    static void run(final Options options, final MemoryPlanner planner, final PrintStream out)
+            throws IOException, ParseException {
+        List<String> logFiles       = options.getLogFiles();
+        String timestampDateFormat  = options.getTimestampDateFormat();
+        String startAt              = options.getStartAt();
+        String endAt                = options.getEndAt();
+        List<String> searchText     = options.getSearchText();
+        int head                    = options.getHead();
+        int tail                    = options.getTail();
+        List<String> sources        = new ArrayList<>();
+        List<Integer>adjustments    = options.getTimestampAdjustments();
+        double indexRate            = options.getIndexFalsePositiveRate();
+        boolean tokenIndex          = options.isTokenIndex();
+        LineStore lineStore         = (options.getLineStoreLines() > 0) ? new LineStore(options.getLineStoreLines()) : null;
+        FieldFilter fieldFilter     = options.getFieldFilter();
+        EntryLimits entryLimits     = options.getEntryLimits();
+        Checkpoints checkpoints     = (null == options.getCheckpointFile()) ? null : Checkpoints.load(options.getCheckpointFile());
+        List<LogEntry> timeSortedLogEntries;
+        QueryBatch queryBatch       = options.getQueryBatch();
+
+        if(null != queryBatch) {
+            ///////////////////////////////////////////////////////////////////
+            // Only read what at least one of the queries could match, unless
+            // the command line narrows it already
+            if(null == startAt || startAt.trim().isEmpty()) {
+                startAt = queryBatch.getStartAt();
+            }
+
+            if(null == endAt || endAt.trim().isEmpty()) {
+                endAt = queryBatch.getEndAt();
+            }
+
+            if(null == searchText || searchText.isEmpty()) {
+                searchText = queryBatch.getSearchText();
+            }
         }
-        System.out.println();
 
-        if(args.length < 1) {
-            usage(timestampDateFormat);
-        }
-
-        List<String>logFiles                = new ArrayList<>();
-        String cmdLineStartAt               = null;
-        String cmdLineEndAt                 = null;
-        String cmdLineDateFormat            = null;
-        String cmdLineTimestampAdjustments  = null ;
-
-        for(String filePath : args) {
-            if (filePath.startsWith("=s=")) {
-                cmdLineStartAt = filePath.substring(3);
-            } else if (filePath.startsWith("=e=")) {
-                cmdLineEndAt = filePath.substring(3);
-            } else if(filePath.startsWith("=t=")) {
-                cmdLineDateFormat = filePath.substring(3);
-            } else if(filePath.startsWith("=a=")) {
-                cmdLineTimestampAdjustments = filePath.substring(3);
-            } else if(filePath.startsWith("=f=")) {
-                searchText.add(filePath.substring(3));
-            } else {
-                if(! logFiles.contains(filePath)) {
-                    logFiles.add(filePath);
-                } else {
-                    System.out.println("# Not processing duplicate file [" + filePath + "]");
+        if(options.getPipelineCapacity() > 0) {
+            ////////////////////////////////////////////////////
+            // Overlap reading, parsing, filtering and writing
+            Pipeline pipeline = new Pipeline(options.getPipelineCapacity());
+            pipeline.setFieldFilter(fieldFilter);
+            pipeline.setEntryLimits(entryLimits);
+
+            pipeline.run(
+                    logFiles,
+                    timestampDateFormat,
+                    startAt,
+                    endAt,
+                    searchText,
+                    adjustments,
+                    head,
+                    tail,
+                    entryWriter(options.getOutputFormat(), logFiles, out),
+                    System.err);
+
+            return;
+        }
+
+        if(options.getTemplates() > 0) {
+            //////////////////////////////////////////////////////////////////
+            // Mine the message shapes of each log file as it is read, the
+            // log files in parallel, they don't have to be merged
+            List<LogEntryReader> readers = new ArrayList<>();
+
+            try {
+                for(int i = 0 ; i < logFiles.size() ; i++) {
+                    LogEntryReader reader =
+                            openLogEntryReader(
+                                    checkpoints,
+                                    logFiles.get(i),
+                                    timestampDateFormat,
+                                    startAt,
+                                    endAt,
+                                    searchText,
+                                    adjustments.get(i),
+                                    indexRate,
+                                    tokenIndex);
+
+                    reader.setFieldFilter(fieldFilter);
+                    reader.setEntryLimits(entryLimits);
+                    readers.add(reader);
+                    sources.add(logFiles.get(i));
+                }
+
+                TemplateReport report = new TemplateReport(options.getTemplates(), sources, out);
+
+                report.mine(readers, Runtime.getRuntime().availableProcessors());
+                report.emit("");
+                saveCheckpoints(checkpoints);
+            } finally {
+                for(LogEntryReader reader : readers) {
+                    reader.close();
                 }
             }
+
+            return;
         }
 
-        /////////////////////////////////////////////
-        // Check that specified files can be accessed
-        boolean allFilesFound = true;
+        int contextMillis   = options.getContextMillis();
+        int contextEntries  = options.getContextEntries();
+        boolean context     = contextMillis > 0 || contextEntries > 0;
+        boolean piped       = false;
 
-        for(String logFile : logFiles) {
-            if(! new File(logFile).exists()) {
-                System.err.println("File [" + logFile + "] cannot be accessed.");
-                allFilesFound = false;
-            }
+        for(String logFilePath : logFiles) {
+            piped |= isPipe(logFilePath);
         }
 
-        if(!allFilesFound || logFiles.size() < 1) {
-            usage(timestampDateFormat);
+        Pattern tracePattern    = options.getTracePattern();
+        boolean sampling        = null != options.getSampler(null);
+
+        long sortMemory         = (options.getSortMemory() > 0) ? options.getSortMemory() : planner.getSortMemory();
+        boolean streaming       = sortMemory > 0 || context || piped || options.getGaps() > 0 || null != tracePattern
+                                    || sampling || null != queryBatch;
+        List<List<LogEntry>> logs   = null;
+
+        if(!streaming && 0 == head && 0 == tail && 0 == options.getIngestThreads()) {
+            ///////////////////////////////////////////////////////////////
+            // Read the log entries into memory, watching the heap as they
+            // are read in case the plan was wrong
+            logs        = new ArrayList<>();
+            long read   = 0;
+
+            for(int i = 0 ; i < logFiles.size() ; i++) {
+                String logFilePath      = logFiles.get(i);
+                int tsAdjustment    = 0 ;
+
+                if(i < adjustments.size()) {
+                    tsAdjustment = adjustments.get(i);
+                }
+
+                List<LogEntry> logEntries =
+                        readLogEntries(
+                                openLogEntryReader(
+                                        checkpoints,
+                                        logFilePath,
+                                        timestampDateFormat,
+                                        startAt,
+                                        endAt,
+                                        searchText,
+                                        tsAdjustment,
+                                        indexRate,
+                                        tokenIndex),
+                                lineStore,
+                                fieldFilter,
+                                entryLimits,
+                                planner,
+                                read);
+
+                if(null == logEntries) {
+                    ///////////////////////////////////////////////////////
+                    // The heap is filling up, drop what was read and merge
+                    // the log files with an external sort instead
+                    logs        = null;
+                    sortMemory  = planner.getSortMemory();
+                    streaming   = true;
+
+                    sources.clear();
+                    planner.emit(System.err);
+                    break;
+                }
+
+                read += logEntries.size();
+                logs.add(logEntries);
+                sources.add(logFilePath);
+            }
         }
 
-        // Override any value from those on the command line
-        if(null != cmdLineStartAt) {
-            startAt = cmdLineStartAt;
+        if(streaming) {
+            //////////////////////////////////////////////////////////////////////////
+            // Merge the log files as they are read, sorting each one within the
+            // memory budget (if set) and selecting the context around the matches.
+            // Pipes are never held in memory, they can be unbounded
+            ExternalSorter sorter           = null;
+            TraceGrouper traceGrouper       = null;
+            Sampler sampler                 = null;
+            List<LogEntryReader> readers    = new ArrayList<>();
+            List<String> entrySearchText    = context ? null : searchText;
+
+            try {
+                List<Iterator<LogEntry>> merging = new ArrayList<>();
+
+                if(sortMemory > 0) {
+                    sorter = new ExternalSorter(sortMemory);
+                    sorter.setFieldFilter(fieldFilter);
+                    sorter.setEntryLimits(entryLimits);
+                }
+
+                for(int i = 0 ; i < logFiles.size() ; i++) {
+                    String logFilePath = logFiles.get(i);
+
+                    if(null != sorter && !isPipe(logFilePath)) {
+                        merging.add(
+                                sorter.sort(
+                                        logFilePath,
+                                        timestampDateFormat,
+                                        startAt,
+                                        endAt,
+                                        entrySearchText,
+                                        adjustments.get(i)));
+                    } else {
+                        LogEntryReader reader =
+                                openLogEntryReader(
+                                        checkpoints,
+                                        logFilePath,
+                                        timestampDateFormat,
+                                        startAt,
+                                        endAt,
+                                        entrySearchText,
+                                        adjustments.get(i),
+                                        indexRate,
+                                        tokenIndex);
+
+                        reader.setFieldFilter(fieldFilter);
+                        reader.setEntryLimits(entryLimits);
+                        readers.add(reader);
+                        merging.add(reader);
+                    }
+
+                    sources.add(logFilePath);
+                }
+
+                Iterator<LogEntry> merged = new LogEntryMerger(merging);
+
+                if(context) {
+                    merged = new ContextFilter(merged, searchText, contextMillis, contextEntries);
+                }
+
+                EntryWriter writer;
+
+                if(null != tracePattern) {
+                    long traceBytes = (options.getSortMemory() > 0)
+                                        ? options.getSortMemory()
+                                        : TraceGrouper.DEFAULT_MAX_BYTES;
+
+                    writer = traceGrouper = new TraceGrouper(tracePattern, traceBytes, sources, out);
+                } else if(options.getGaps() > 0) {
+                    writer = new GapReport(options.getGaps(), sources, out);
+                } else if(null != queryBatch) {
+                    queryBatch.open(options.getOutputFormat(), sources);
+                    writer = queryBatch;
+                } else if(sampling) {
+                    writer = sampler = options.getSampler(entryWriter(options.getOutputFormat(), sources, out));
+                } else {
+                    writer = entryWriter(options.getOutputFormat(), sources, out);
+                }
+
+                emitMerged(merged, writer, "", head, tail);
+                saveCheckpoints(checkpoints);
+
+                if(null != sampler) {
+                    System.err.println("# " + sampler.statistics());
+                }
+
+                if(null != queryBatch) {
+                    queryBatch.emitSummary(out);
+                }
+
+                if(null != traceGrouper && traceGrouper.getSpilledBytes() > 0) {
+                    System.err.println("# Traces: " + traceGrouper.getSpilledBytes() + " bytes spilled to "
+                            + TraceGrouper.PARTITIONS + " partitions");
+                }
+
+                if(null != sorter && sorter.getSpilledRuns() > 0) {
+                    System.err.println("# External sort: " + sorter.getUnsortedSources() + " unsorted file(s), "
+                            + sorter.getSpilledRuns() + " run(s) spilled, " + sorter.getSpilledBytes() + " bytes"
+                            + (sorter.getMergePasses() > 0 ? ", " + sorter.getMergePasses() + " merge pass(es)" : ""));
+                }
+            } finally {
+                for(LogEntryReader reader : readers) {
+                    reader.close();
+                }
+
+                if(null != sorter) {
+                    sorter.close();
+                }
+
+                if(null != traceGrouper) {
+                    traceGrouper.close();
+                }
+            }
+
+            return;
         }
 
-        if(null != cmdLineEndAt) {
-            endAt = cmdLineEndAt;
+        if(head > 0 || tail > 0) {
+            //////////////////////////////////////////////////////////
+            // Stream the entries, only keeping what will be displayed
+            List<LogEntryReader> readers = new ArrayList<>();
+
+            try {
+                for(int i = 0 ; i < logFiles.size() ; i++) {
+                    String logFilePath      = logFiles.get(i);
+                    LogEntryReader reader   =
+                            openLogEntryReader(
+                                    checkpoints,
+                                    logFilePath,
+                                    timestampDateFormat,
+                                    startAt,
+                                    endAt,
+                                    searchText,
+                                    adjustments.get(i),
+                                    indexRate,
+                                    tokenIndex);
+
+                    reader.setFieldFilter(fieldFilter);
+                    reader.setEntryLimits(entryLimits);
+                    readers.add(reader);
+                    sources.add(logFilePath);
+                }
+
+                if(head > 0) {
+                    timeSortedLogEntries = headLogEntries(readers, head);
+                } else {
+                    timeSortedLogEntries = tailLogEntries(readers, tail);
+                }
+            } finally {
+                for(LogEntryReader reader : readers) {
+                    reader.close();
+                }
+            }
+        } else if(options.getIngestThreads() > 0) {
+            ////////////////////////////////////////////////////////////
+            // Overlap the reads of all the files, parse on a few threads
+            ConcurrentIngest ingest     = new ConcurrentIngest(options.getIngestThreads());
+            ingest.setLineStore(lineStore);
+            ingest.setFieldFilter(fieldFilter);
+            ingest.setEntryLimits(entryLimits);
+
+            logs = ingest.createLogEntries(logFiles, timestampDateFormat, startAt, endAt, searchText, adjustments);
+
+            sources.addAll(logFiles);
+
+            timeSortedLogEntries = Utils.timeSortLists(logs);
+        } else {
+            timeSortedLogEntries = Utils.timeSortLists(logs);
         }
 
-        if(null != cmdLineDateFormat) {
-            timestampDateFormat = cmdLineDateFormat;
+        emitList(timeSortedLogEntries, entryWriter(options.getOutputFormat(), sources, out), "");
+        saveCheckpoints(checkpoints);
+
+        if(null != lineStore) {
+            System.err.println("# " + lineStore.statistics());
         }
+    }
 
-        if(null != cmdLineTimestampAdjustments) {
-            timestampAdjustments = cmdLineTimestampAdjustments;
+    /**
+     * Save how far each log file has been read, once the run has written everything, and say so on stderr.
+     */
+    private static void saveCheckpoints(final Checkpoints checkpoints) throws IOException {
+        if(null != checkpoints) {
+            checkpoints.save();
+            checkpoints.emitNotes(System.err);
         }
+    }
 
-        validateFilterRanges(timestampDateFormat, startAt, endAt);
+    /**
+     * For usage from the command line
+     *
+     * @param args
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static void main(final String[] args) throws IOException, ParseException {
+        if(args.length < 1) {
+            emitHeader(args, System.out);
+            usage(Options.DEFAULT_TIMESTAMP_FORMAT);
+        }
 
-        List<List<LogEntry>> logs   = new ArrayList<>();
-        List<String> sources        = new ArrayList<>();
-        List<Integer>adjustments    = timestampAdjustments(logFiles.size(), timestampAdjustments);
+        Options options = parseOptions(args, System.out, System.err);
 
-        for(int i = 0 ; i < logFiles.size() ; i++) {
-            String logFilePath      = logFiles.get(i);
-            int tsAdjustment    = 0 ;
+        /////////////////////////////////////////////
+        // Check that specified files can be accessed
+        boolean allFilesFound = true;
 
-            if(i < adjustments.size()) {
-                tsAdjustment = adjustments.get(i);
+        for(String logFile : options.getLogFiles()) {
+            if(! new File(logFile).exists() && !STDIN.equals(logFile)) {
+                System.err.println("File [" + logFile + "] cannot be accessed.");
+                allFilesFound = false;
             }
+        }
 
-            List<LogEntry> logEntries =
-                    createLogEntries(
-                            logFilePath,
-                            timestampDateFormat,
-                            startAt,
-                            endAt,
-                            searchText,
-                            tsAdjustment);
-
-            logs.add(logEntries);
-            sources.add(logFilePath);
+        if(!allFilesFound || options.getLogFiles().size() < 1) {
+            usage(options.getTimestampDateFormat());
         }
 
-        List<LogEntry> timeSortedLogEntries = Utils.timeSortLists(logs);
+        options.validate();
 
-        Utils.displayList(timeSortedLogEntries, sources, "");
+        run(options, System.out);
     }
 }
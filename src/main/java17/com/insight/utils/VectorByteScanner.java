@@ -0,0 +1,36 @@
+package com.insight.utils;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Find the line terminators in a buffer of bytes a vector (e.g. 32 bytes with AVX2) at a time, see ByteScanner.
+ */
+class VectorByteScanner extends ByteScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    int indexOfLineEnd(final byte[] buffer, final int from, final int to) {
+        int i       = from;
+        int bound   = from + SPECIES.loopBound(to - from);
+
+        for( ; i < bound ; i += SPECIES.length()) {
+            ByteVector bytes        = ByteVector.fromArray(SPECIES, buffer, i);
+            VectorMask<Byte> ends   = bytes.eq((byte) '\n').or(bytes.eq((byte) '\r'));
+
+            if(ends.anyTrue()) {
+                return i + ends.firstTrue();
+            }
+        }
+
+        ////////////////////////////////
+        // The tail, shorter than a vector
+        return super.indexOfLineEnd(buffer, i, to);
+    }
+
+    @Override
+    boolean isVectorized() {
+        return true;
+    }
+}
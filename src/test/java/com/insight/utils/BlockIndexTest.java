@@ -0,0 +1,107 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class BlockIndexTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public BlockIndexTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( BlockIndexTest.class );
+    }
+
+    String TS1_FORMAT   = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    private File logFile(int entries) throws Exception {
+        return LogFixtures.logFile("Preamble", entries, new LogFixtures.Entries() {
+            public void write(final PrintStream out, final int i) {
+                out.println(String.format("2016-05-16 %02d:%02d:%02d,%03d INFO request req-%d handled",
+                        i / 3600 % 24, i / 60 % 60, i % 60, i % 1000, i));
+
+                if(0 == i % 10) {
+                    out.println("    at com.example.Handler.handle(Handler.java:" + i + ")");
+                }
+            }
+        });
+    }
+
+    public void testIndexedReadsMatchFullReads() throws Exception {
+        String logFile1 = logFile(20000).getPath();
+        String logFile2 = logFile(5000).getPath();
+
+        String[][] queries = {
+                { "=f=req-12345 " },
+                { "=f=req-17 ", "=f=Handler.java:4990)" },
+                { "=f=no such text" },
+                { "=f=re" },
+                { "=s=2016-05-16 02:00:00,000", "=e=2016-05-16 02:10:00,000" },
+                { "=s=2016-05-16 01:00:00,000", "=f=handled", "=h=5" },
+                { "=f=req-4242 ", "=C=1000" },
+        };
+
+        for(String[] query : queries) {
+            List<String> args = new ArrayList<>(Arrays.asList(query));
+            args.add(logFile1);
+            args.add(logFile2);
+
+            String expected = LogFixtures.runFromSources(args.toArray(new String[0]));
+
+            args.add(0, "=x=0.01");
+            assertEquals(Arrays.toString(query), expected, LogFixtures.runFromSources(args.toArray(new String[0])));
+        }
+    }
+
+    public void testBlocksAreSkipped() throws Exception {
+        File logFile        = logFile(20000);
+        BlockIndex index    = BlockIndex.load(logFile.getPath(), TS1_FORMAT, 4096, 0.01);
+
+        assertTrue(index.size() > 100);
+
+        List<long[]> ranges = index.candidateRanges(0, Long.MAX_VALUE, 0, Arrays.asList("req-12345 "));
+        assertTrue(index.getBlocksSelected() < 5);
+        assertFalse(ranges.isEmpty());
+
+        ranges = index.candidateRanges(0, Long.MAX_VALUE, 0, Arrays.asList("ab"));
+        assertEquals(1, ranges.size());
+        assertEquals(logFile.length(), ranges.get(0)[1]);
+
+        //////////////////////////////////////////////////
+        // Reused while the log file is unchanged, else rebuilt
+        File indexFile      = new File(logFile.getPath() + BlockIndex.INDEX_SUFFIX);
+        assertTrue(indexFile.isFile());
+        long indexLength    = indexFile.length();
+
+        assertEquals(index.size(), BlockIndex.load(logFile.getPath(), TS1_FORMAT, 4096, 0.01).size());
+
+        try (PrintStream out = new PrintStream(new FileOutputStream(logFile, true))) {
+            out.println("2016-05-17 00:00:00,000 INFO request req-appended handled");
+        }
+
+        index = BlockIndex.load(logFile.getPath(), TS1_FORMAT, 4096, 0.01);
+        index.candidateRanges(0, Long.MAX_VALUE, 0, Arrays.asList("req-appended"));
+        assertTrue(index.getBlocksSelected() >= 1);
+        assertTrue(indexFile.length() >= indexLength);
+    }
+}
@@ -0,0 +1,153 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+
+public class ByteScannerTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ByteScannerTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ByteScannerTest.class );
+    }
+
+    public void testScalar() {
+        ByteScanner scanner = new ByteScanner();
+        byte[] buffer       = "abc\r\ndef\nghi".getBytes();
+
+        assertEquals(3, scanner.indexOfLineEnd(buffer, 0, buffer.length));
+        assertEquals(4, scanner.indexOfLineEnd(buffer, 4, buffer.length));
+        assertEquals(8, scanner.indexOfLineEnd(buffer, 5, buffer.length));
+        assertEquals(-1, scanner.indexOfLineEnd(buffer, 9, buffer.length));
+        assertEquals(-1, scanner.indexOfLineEnd(buffer, 0, 3));
+    }
+
+    /**
+     * The vector scanner (only built on Java 17+, and only usable with the jdk.incubator.vector module) has to find the
+     * same line terminators as the scalar one. The classes directory isn't read as a multi-release jar, so it's loaded
+     * from the versioned directory of wherever ByteScanner was loaded from.
+     */
+    public void testVectorMatchesScalar() throws Exception {
+        File classes    = new File(ByteScanner.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        File versioned  = new File(classes, "META-INF/versions/17");
+
+        if(!versioned.isDirectory()) {
+            return;
+        }
+
+        /////////////////////////////////////////////////////////////////
+        // ByteScanner is package private, so both have to be loaded by
+        // the same class loader, and called reflectively from here
+        URL[] urls = { versioned.toURI().toURL(), classes.toURI().toURL() };
+
+        try (URLClassLoader loader = new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent())) {
+            Object vector;
+
+            try {
+                vector = construct(loader.loadClass("com.insight.utils.VectorByteScanner"));
+            } catch (LinkageError e) {
+                // The JVM wasn't started with the jdk.incubator.vector module
+                return;
+            }
+
+            Method indexOfLineEnd   = loader.loadClass("com.insight.utils.ByteScanner")
+                                            .getDeclaredMethod("indexOfLineEnd", byte[].class, int.class, int.class);
+            ByteScanner scalar      = new ByteScanner();
+            Random random           = new Random(44);
+            byte[] buffer           = new byte[4096];
+
+            indexOfLineEnd.setAccessible(true);
+
+            for(int round = 0 ; round < 200 ; round++) {
+                for(int i = 0 ; i < buffer.length ; i++) {
+                    int r = random.nextInt(round % 2 == 0 ? 300 : 4000);
+
+                    buffer[i] = (r < 2) ? (byte) (r == 0 ? '\n' : '\r') : (byte) (' ' + r % 200);
+                }
+
+                for(int from = 0 ; from < buffer.length ; from += 1 + random.nextInt(97)) {
+                    int to = from + random.nextInt(buffer.length - from + 1);
+
+                    assertEquals(scalar.indexOfLineEnd(buffer, from, to), indexOfLineEnd.invoke(vector, buffer, from, to));
+                }
+            }
+        }
+    }
+
+    private static Object construct(final Class<?> type) throws Exception {
+        Constructor<?> constructor = type.getDeclaredConstructor();
+
+        constructor.setAccessible(true);
+
+        return constructor.newInstance();
+    }
+
+    /**
+     * A line the precheck rules out must never parse as a timestamp.
+     */
+    public void testTimeStampPrecheck() {
+        String[] patterns = {
+                Options.DEFAULT_TIMESTAMP_FORMAT,
+                "[yyyy-MM-dd HH:mm:ss]",
+                "MMM dd HH:mm:ss",
+                "dd/MM/yyyy HH:mm:ss",
+                "'T'HH:mm:ss",
+        };
+        String[] lines = {
+                "2016-05-16 03:00:00,000 INFO one",
+                "  2016-05-16 03:00:00,000 INFO indented",
+                "\t2016-05-16 03:00:00,000 INFO tabbed",
+                "-2016-05-16 03:00:00,000 INFO negative",
+                "[2016-05-16 03:00:00] INFO bracketed",
+                "May 16 03:00:00 host app: syslog",
+                "16/05/2016 03:00:00 INFO european",
+                "T03:00:00 INFO quoted",
+                "\tat com.insight.utils.Utils.run(Utils.java:1)",
+                "Caused by: java.lang.IllegalStateException",
+                "    ... 12 more",
+                "  [2016-05-16 03:00:00] INFO indented bracket",
+                "",
+        };
+
+        for(String pattern : patterns) {
+            SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+            sdf.setLenient(false);
+
+            for(String line : lines) {
+                if(!Utils.couldStartWithTimeStamp(line, pattern)) {
+                    try {
+                        sdf.parse(line);
+                        fail("[" + line + "] parses with [" + pattern + "] but was ruled out");
+                    } catch (java.text.ParseException e) {}
+                }
+            }
+        }
+
+        assertFalse(Utils.couldStartWithTimeStamp("\tat com.insight.utils.Utils.run(Utils.java:1)", Options.DEFAULT_TIMESTAMP_FORMAT));
+        assertFalse(Utils.couldStartWithTimeStamp("2016-05-16 03:00:00] INFO", "[yyyy-MM-dd HH:mm:ss]"));
+        assertTrue(Utils.couldStartWithTimeStamp("  2016-05-16 03:00:00,000 INFO", Options.DEFAULT_TIMESTAMP_FORMAT));
+        assertTrue(Utils.couldStartWithTimeStamp("Caused by: x", "MMM dd HH:mm:ss"));
+    }
+}
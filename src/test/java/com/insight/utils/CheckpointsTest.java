@@ -0,0 +1,238 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+public class CheckpointsTest
+    extends TestCase
+{
+    private static final String TS1_FORMAT = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public CheckpointsTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( CheckpointsTest.class );
+    }
+
+    public void testResume() throws Exception {
+        File logFile        = LogFixtures.logFile();
+        File checkpointFile = File.createTempFile("checkpoint", ".lvck");
+
+        logFile.deleteOnExit();
+        checkpointFile.deleteOnExit();
+        checkpointFile.delete();
+
+        try {
+            append(logFile, "2016-05-16 03:00:00,000 INFO one\n  detail\n2016-05-16 03:00:01,000 INFO two\n");
+
+            //////////////////////////////////////////////////////////
+            // The last log entry is held back, it may not be finished
+            String first = run(checkpointFile, logFile);
+            assertTrue(first.contains("INFO one"));
+            assertTrue(first.contains("  detail"));
+            assertFalse(first.contains("INFO two"));
+
+            ////////////////////////////////////////////////////////
+            // Only what was appended, a partial line is left for later
+            append(logFile, "2016-05-16 03:00:02,000 INFO three\n2016-05-16 03:00:03,000 INFO fo");
+
+            String second = run(checkpointFile, logFile);
+            assertFalse(second.contains("INFO one"));
+            assertTrue(second.contains("INFO two"));
+            assertFalse(second.contains("INFO three"));
+            assertFalse(second.contains("INFO fo"));
+
+            append(logFile, "ur\n");
+
+            String third = run(checkpointFile, logFile);
+            assertFalse(third.contains("INFO two"));
+            assertTrue(third.contains("INFO three"));
+            assertFalse(third.contains("INFO four"));
+
+            assertEquals(0, entries(run(checkpointFile, logFile)));
+
+            ///////////////////////////////////////////////////////////////
+            // Lines added to the held back log entry are read along with it
+            append(logFile, "java.lang.IllegalStateException: boom\n\tat Foo.bar(Foo.java:1)\n");
+            assertEquals(0, entries(run(checkpointFile, logFile)));
+
+            append(logFile, "\tat Foo.baz(Foo.java:2)\n2016-05-16 03:00:04,000 INFO five\n");
+
+            String trace = run(checkpointFile, logFile);
+            assertEquals(1, entries(trace));
+            assertTrue(trace.contains("INFO four"));
+            assertTrue(trace.contains("IllegalStateException: boom"));
+            assertTrue(trace.contains("Foo.bar"));
+            assertTrue(trace.contains("Foo.baz"));
+
+            ////////////////////////////////////////////////
+            // Truncated (copytruncate), read from the start
+            Files.write(logFile.toPath(), "2016-05-16 04:00:00,000 INFO five\n2016-05-16 04:00:01,000 INFO six\n".getBytes());
+
+            String truncated = run(checkpointFile, logFile);
+            assertTrue(truncated.contains("INFO five"));
+            assertEquals(1, entries(truncated));
+
+            ////////////////////////////////////////////////////
+            // Rewritten past the checkpoint, read from the start
+            Files.write(logFile.toPath(),
+                    "2016-05-16 05:00:00,000 WARN six\n2016-05-16 05:00:01,000 INFO seven\n".getBytes());
+
+            assertEquals(1, entries(run(checkpointFile, logFile)));
+
+            ////////////////////////////////////////////////
+            // Rotated to a new file, read from the start
+            File rotated = new File(logFile.getPath() + ".1");
+            rotated.deleteOnExit();
+            assertTrue(logFile.renameTo(rotated));
+
+            append(logFile, "2016-05-16 05:00:00,000 WARN six\n2016-05-16 05:00:01,000 INFO seven\n"
+                    + "2016-05-16 05:00:02,000 INFO eight\n");
+
+            assertEquals(2, entries(run(checkpointFile, logFile)));
+            rotated.delete();
+        } finally {
+            logFile.delete();
+            checkpointFile.delete();
+        }
+    }
+
+    public void testRange() throws Exception {
+        File logFile        = LogFixtures.logFile();
+        File checkpointFile = File.createTempFile("checkpoint", ".lvck");
+
+        logFile.deleteOnExit();
+        checkpointFile.deleteOnExit();
+
+        try {
+            String one      = "2016-05-16 03:00:00,000 INFO one\n";
+            String two      = "2016-05-16 03:00:01,000 INFO two\n  detail\n";
+            String three    = "2016-05-16 03:00:02,000 INFO three\n";
+
+            append(logFile, one + two);
+            Files.write(checkpointFile.toPath(), "not a checkpoint".getBytes());
+
+            Checkpoints checkpoints = Checkpoints.load(checkpointFile.getPath());
+            long[] range            = checkpoints.range(logFile.getPath(), TS1_FORMAT);
+
+            assertEquals(0, range[0]);
+            assertEquals(one.length(), range[1]);
+
+            checkpoints.save();
+
+            append(logFile, three);
+
+            range = Checkpoints.load(checkpointFile.getPath()).range(logFile.getPath(), TS1_FORMAT);
+
+            assertEquals(one.length(), range[0]);
+            assertEquals(one.length() + two.length(), range[1]);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            checkpoints.emitNotes(new PrintStream(bytes, true));
+
+            assertTrue(bytes.toString().contains("unreadable"));
+            assertTrue(bytes.toString().contains(
+                    " new, reading 0 to " + one.length() + ", last log entry at 2016-05-16 03:00:00,000"));
+        } finally {
+            logFile.delete();
+            checkpointFile.delete();
+        }
+    }
+
+    public void testShrunkLogFiles() throws Exception {
+        File logFile        = LogFixtures.logFile();
+        File checkpointFile = File.createTempFile("checkpoint", ".lvck");
+
+        checkpointFile.deleteOnExit();
+        checkpointFile.delete();
+
+        try {
+            String one      = "2016-05-16 03:00:00,000 INFO one\n";
+            String two      = "2016-05-16 03:00:01,000 INFO two\n  detail\n";
+
+            append(logFile, one + two);
+
+            Checkpoints checkpoints = Checkpoints.load(checkpointFile.getPath());
+            checkpoints.range(logFile.getPath(), TS1_FORMAT);
+            checkpoints.save();
+
+            //////////////////////////////////////////////////////////////////
+            // Rewritten shorter, though still past the checkpoint and with
+            // the same bytes before it, so only its size shows the change
+            Files.write(logFile.toPath(), (one + "2016-05-16 03:00:01,000 INFO t\n").getBytes());
+
+            checkpoints     = Checkpoints.load(checkpointFile.getPath());
+            long[] range    = checkpoints.range(logFile.getPath(), TS1_FORMAT);
+
+            assertEquals(0, range[0]);
+            assertEquals(one.length(), range[1]);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            checkpoints.emitNotes(new PrintStream(bytes, true));
+
+            assertTrue(bytes.toString(), bytes.toString().contains(
+                    " truncated, the held back " + two.length() + " bytes of its last log entry were never read"));
+            assertTrue(bytes.toString().contains(" truncated, reading 0 to " + one.length()));
+        } finally {
+            logFile.delete();
+            checkpointFile.delete();
+        }
+    }
+
+    public void testInvalidOptions() {
+        String[][] invalid = {
+                { "=k=a.lvck", "=m=1M", "a.log" },
+                { "=k=a.lvck", "=P=4", "a.log" },
+                { "=k=a.lvck", "=I=on", "a.log" },
+                { "=k=a.lvck", Utils.STDIN },
+        };
+
+        for(String[] args : invalid) {
+            try {
+                Options.parse(args, System.err).validate();
+                fail("Expected " + String.join(" ", args) + " to be invalid");
+            } catch (RuntimeException e) {}
+        }
+    }
+
+    private static void append(final File logFile, final String data) throws Exception {
+        try (FileOutputStream out = new FileOutputStream(logFile, true)) {
+            out.write(data.getBytes());
+        }
+    }
+
+    private static String run(final File checkpointFile, final File logFile) throws Exception {
+        return LogFixtures.run("=k=" + checkpointFile.getPath(), logFile.getPath());
+    }
+
+    private static int entries(final String output) {
+        int count = 0;
+
+        for(String line : output.split("\n")) {
+            if(line.contains(" INFO ") || line.contains(" WARN ")) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
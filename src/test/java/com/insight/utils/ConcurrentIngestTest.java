@@ -0,0 +1,245 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentIngestTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ConcurrentIngestTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ConcurrentIngestTest.class );
+    }
+
+    String TS1_FORMAT   = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    public void testConcurrentIngestMatchesCreateLogEntries() throws Exception {
+        List<String> logFiles       = new ArrayList<>();
+        List<Integer> adjustments   = new ArrayList<>();
+        List<String> searchText     = Arrays.asList("WooHoo 1-", "continued");
+
+        for(int i = 0 ; i < 5 ; i++) {
+            logFiles.add(LogFixtures.logFile(i, 50 * i));
+            adjustments.add(i * 10);
+        }
+
+        ////////////////////////////////////////////////////////////////////
+        // Tiny chunks, and fewer parse threads than files, to stress both
+        ConcurrentIngest ingest     = new ConcurrentIngest(2, 7);
+        List<List<LogEntry>> logs   =
+                ingest.createLogEntries(logFiles, TS1_FORMAT, "2016-05-16 03:00:10,000", null, searchText, adjustments);
+
+        assertEquals(logFiles.size(), logs.size());
+
+        for(int i = 0 ; i < logFiles.size() ; i++) {
+            List<LogEntry> expected =
+                    Utils.createLogEntries(
+                            logFiles.get(i), TS1_FORMAT, "2016-05-16 03:00:10,000", null, searchText, adjustments.get(i));
+            List<LogEntry> actual   = logs.get(i);
+
+            assertEquals(expected.size(), actual.size());
+
+            for(int j = 0 ; j < expected.size() ; j++) {
+                assertEquals(expected.get(j).getSource(), actual.get(j).getSource());
+                assertEquals(expected.get(j).getRawTimeStamp(), actual.get(j).getRawTimeStamp());
+                assertEquals(expected.get(j).getPayload(), actual.get(j).getPayload());
+            }
+        }
+
+        logFiles.add("does-not-exist.log");
+        adjustments.add(0);
+
+        try {
+            ingest.createLogEntries(logFiles, TS1_FORMAT, null, null, null, adjustments);
+            fail("Should have thrown an exception");
+        } catch(IOException e) {}
+    }
+
+    public void testManyMoreLogFilesThanParseThreads() throws Exception {
+        final int files             = 100;
+        final int chunkSize         = 64;
+        final CountDownLatch ahead  = new CountDownLatch(files);
+        List<String> logFiles       = new ArrayList<>();
+        List<Integer> adjustments   = new ArrayList<>();
+
+        for(int i = 0 ; i < files ; i++) {
+            logFiles.add(LogFixtures.logFile(i, 40));
+            adjustments.add(0);
+        }
+
+        ////////////////////////////////////////////////////////////////////
+        // Every read past the read ahead of its log file waits until all the
+        // log files have got that far, so if parsing only took the chunks of
+        // as many log files as there are parse threads the reads would stall
+        ConcurrentIngest ingest = new ConcurrentIngest(2, chunkSize) {
+            @Override
+            InputStream open(final String logFilePath) throws IOException {
+                return new FilterInputStream(super.open(logFilePath)) {
+                    private long read       = 0;
+                    private boolean waited  = false;
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        if(!waited && read > (ConcurrentIngest.READ_AHEAD_CHUNKS + 2) * chunkSize) {
+                            waited = true;
+                            ahead.countDown();
+
+                            try {
+                                if(!ahead.await(30, TimeUnit.SECONDS)) {
+                                    throw new IOException("The reads stalled");
+                                }
+                            } catch (InterruptedException e) {
+                                throw new InterruptedIOException();
+                            }
+                        }
+
+                        int count = super.read(b, off, len);
+                        read += Math.max(0, count);
+
+                        return count;
+                    }
+                };
+            }
+        };
+
+        List<List<LogEntry>> logs = ingest.createLogEntries(logFiles, TS1_FORMAT, null, null, null, adjustments);
+
+        assertEquals(0, ahead.getCount());
+        assertEquals(files, logs.size());
+
+        for(int i = 0 ; i < files ; i++) {
+            List<LogEntry> expected = Utils.createLogEntries(logFiles.get(i), TS1_FORMAT, null, null, null, 0);
+
+            assertEquals(expected.size(), logs.get(i).size());
+
+            for(int j = 0 ; j < expected.size() ; j++) {
+                assertEquals(expected.get(j).getRawTimeStamp(), logs.get(i).get(j).getRawTimeStamp());
+                assertEquals(expected.get(j).getPayload(), logs.get(i).get(j).getPayload());
+            }
+        }
+    }
+
+    public void testCarriageReturnLineEnds() throws Exception {
+        for(final String lineEnd : Arrays.asList("\r", "\r\n")) {
+            File file = LogFixtures.logFile(null, 2000, new LogFixtures.Entries() {
+                public void write(final PrintStream out, final int i) {
+                    out.print(String.format("2016-05-16 03:%02d:%02d,000 WooHoo %d", i / 60 % 60, i % 60, i) + lineEnd);
+                    out.print("WooHoo continued " + i + lineEnd);
+                }
+            });
+
+            ConcurrentIngest ingest = new ConcurrentIngest(2, 61);
+            List<LogEntry> actual   =
+                    ingest.createLogEntries(
+                            Arrays.asList(file.getPath()), TS1_FORMAT, null, null, null, Arrays.asList(0)).get(0);
+            List<LogEntry> expected = Utils.createLogEntries(file.getPath(), TS1_FORMAT, null, null, null, 0);
+
+            assertEquals(2000, expected.size());
+            assertEquals(expected.size(), actual.size());
+
+            for(int j = 0 ; j < expected.size() ; j++) {
+                assertEquals(expected.get(j).getPayload(), actual.get(j).getPayload());
+            }
+
+            ////////////////////////////////////////////////////////
+            // Cut at every log entry, not held to the end of the file
+            assertTrue(ingest.getMostHeld() < 1024);
+        }
+    }
+
+    public void testLogEntriesOverTheEntryLimits() throws Exception {
+        final char[] longLine = new char[300000];
+        Arrays.fill(longLine, 'x');
+
+        File file = LogFixtures.logFile("Preamble " + new String(longLine), 40, new LogFixtures.Entries() {
+            public void write(final PrintStream out, final int i) {
+                String ts = String.format("2016-05-16 03:00:%02d,000 ", i);
+
+                if(5 == i) {
+                    ////////////////////////////////////////////////
+                    // Far more continuation lines than the limits
+                    out.println(ts + "WooHoo many lines");
+
+                    for(int j = 0 ; j < 200000 ; j++) {
+                        out.println("WooHoo continued " + j);
+                    }
+                } else if(10 == i) {
+                    out.println(ts + "WooHoo long line");
+                    out.println(longLine);
+                } else if(15 == i) {
+                    out.println(ts + new String(longLine));
+                    out.println("WooHoo continued");
+                } else if(39 == i) {
+                    out.print(ts + new String(longLine));
+                } else {
+                    out.println(ts + "WooHoo " + i);
+                    out.println("WooHoo continued " + i);
+                }
+            }
+        });
+
+        for(EntryLimits limits : Arrays.asList(new EntryLimits(1024, 0), new EntryLimits(0, 10),
+                                               new EntryLimits(4096, 50))) {
+            ConcurrentIngest ingest = new ConcurrentIngest(2, 4096);
+            ingest.setEntryLimits(limits);
+
+            List<LogEntry> actual   =
+                    ingest.createLogEntries(
+                            Arrays.asList(file.getPath()), TS1_FORMAT, null, null, null, Arrays.asList(0)).get(0);
+            List<LogEntry> expected = new ArrayList<>();
+
+            try (LogEntryReader reader =
+                         new LogEntryReader(
+                                 file.getPath(),
+                                 new LineReader(new FileInputStream(file), Charset.defaultCharset(), 0),
+                                 TS1_FORMAT, null, null, null, 0)) {
+                reader.setEntryLimits(limits);
+
+                while(reader.hasNext()) {
+                    expected.add(reader.next());
+                }
+            }
+
+            assertEquals(40, expected.size());
+            assertEquals(expected.size(), actual.size());
+
+            for(int j = 0 ; j < expected.size() ; j++) {
+                assertEquals(expected.get(j).getPayload(), actual.get(j).getPayload());
+            }
+
+            assertTrue(expected.get(5).getPayload().contains(EntryLimits.MARKER));
+
+            ////////////////////////////////////////////////////////////
+            // Only the long lines are held whole without a byte limit
+            assertTrue(ingest.getMostHeld() < ((0 == limits.getMaxBytes()) ? 400000 : 16384));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ContextFilterTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ContextFilterTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ContextFilterTest.class );
+    }
+
+    String TS1_FORMAT   = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    private List<LogEntry> logEntries(int count) throws Exception {
+        Random random       = new Random(count);
+        List<String> lines  = new ArrayList<>();
+        int ms              = 0;
+
+        for(int i = 0 ; i < count ; i++) {
+            ms += random.nextInt(700);
+            lines.add(String.format("2016-05-16 03:%02d:%02d,%03d %s %d", ms / 60000, ms / 1000 % 60, ms % 1000,
+                    (0 == random.nextInt(25)) ? "ERROR" : "INFO", i));
+        }
+
+        return Utils.createLogEntries("test", lines, TS1_FORMAT, null, 0);
+    }
+
+    private List<LogEntry> expected(List<LogEntry> logEntries, List<String> searchText, long ms, int entries) {
+        List<LogEntry> expected = new ArrayList<>();
+
+        for(int i = 0 ; i < logEntries.size() ; i++) {
+            for(int j = 0 ; j < logEntries.size() ; j++) {
+                LogEntry match = logEntries.get(j);
+
+                if(Utils.matchesSearchText(match.getPayload(), searchText)
+                        && ((ms > 0 && Math.abs(match.getRawTimeStamp() - logEntries.get(i).getRawTimeStamp()) <= ms)
+                                || Math.abs(i - j) <= entries)) {
+                    expected.add(logEntries.get(i));
+                    break;
+                }
+            }
+        }
+
+        return expected;
+    }
+
+    public void testContextMatchesBruteForce() throws Exception {
+        List<LogEntry> logEntries   = logEntries(2000);
+        List<String> searchText     = Arrays.asList("ERROR");
+        long[][] contexts           = { { 2000, 0 }, { 0, 3 }, { 500, 2 }, { 0, 1000 } };
+
+        for(long[] context : contexts) {
+            List<LogEntry> actual = new ArrayList<>();
+            ContextFilter filter  = new ContextFilter(logEntries.iterator(), searchText, context[0], (int) context[1]);
+
+            while(filter.hasNext()) {
+                actual.add(filter.next());
+            }
+
+            assertEquals(expected(logEntries, searchText, context[0], (int) context[1]), actual);
+        }
+    }
+
+    public void testContextAcrossLogFiles() throws Exception {
+        File file1  = LogFixtures.logFile(
+                "2016-05-16 03:00:00,000 one start",
+                "2016-05-16 03:00:05,000 one ERROR",
+                "2016-05-16 03:00:20,000 one end");
+        File file2  = LogFixtures.logFile(
+                "2016-05-16 03:00:02,000 two before",
+                "2016-05-16 03:00:06,000 two after",
+                "2016-05-16 03:00:09,000 two later");
+
+        String output = LogFixtures.run("=f=ERROR", "=C=3000", file1.getPath(), file2.getPath());
+        assertTrue(output.contains("two before"));
+        assertTrue(output.contains("one ERROR"));
+        assertTrue(output.contains("two after"));
+        assertFalse(output.contains("one start"));
+        assertFalse(output.contains("two later"));
+        assertFalse(output.contains("one end"));
+
+        try {
+            Options.parse(new String[] { "=C=3000", file1.getPath() }, System.out).validate();
+            fail("A context without text accepted");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("=f="));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class EntryLimitsTest
+    extends TestCase
+{
+    private static final String TS1_FORMAT = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public EntryLimitsTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( EntryLimitsTest.class );
+    }
+
+    public void testLineLimit() throws Exception {
+        StringBuilder log = new StringBuilder();
+
+        log.append("2016-05-16 03:00:00,000 ERROR runaway\n");
+        for(int i = 0 ; i < 1000 ; i++) {
+            log.append("continuation ").append(i).append('\n');
+        }
+        log.append("2016-05-16 03:00:01,000 INFO next\n");
+
+        List<LogEntry> logEntries = read(log.toString(), new EntryLimits(0, 3));
+
+        assertEquals(2, logEntries.size());
+
+        String[] lines = logEntries.get(0).getPayload().split(Utils.LINE_SEP);
+
+        assertEquals(4, lines.length);
+        assertEquals("continuation 1", lines[2]);
+        assertTrue(lines[3].startsWith(EntryLimits.MARKER + "998 lines, "));
+        assertTrue(lines[3].endsWith(" " + (log.length() - "2016-05-16 03:00:01,000 INFO next\n".length()) + " bytes in all]"));
+
+        assertEquals(" INFO next" + Utils.LINE_SEP, logEntries.get(1).getPayload());
+    }
+
+    public void testByteLimit() throws Exception {
+        StringBuilder binary = new StringBuilder();
+
+        for(int i = 0 ; i < 512 * 1024 ; i++) {
+            binary.append((char) ('!' + i % 90));
+        }
+
+        String log = "2016-05-16 03:00:00,000 INFO small\n"
+                + "2016-05-16 03:00:01,000 WARN dump " + binary + "\n"
+                + binary + "\n"
+                + "2016-05-16 03:00:02,000 INFO after\n";
+
+        List<LogEntry> logEntries = read(log, new EntryLimits(256, 0));
+
+        assertEquals(3, logEntries.size());
+        assertEquals(" INFO small" + Utils.LINE_SEP, logEntries.get(0).getPayload());
+        assertEquals(" INFO after" + Utils.LINE_SEP, logEntries.get(2).getPayload());
+
+        String[] lines = logEntries.get(1).getPayload().split(Utils.LINE_SEP);
+
+        assertEquals(2, lines.length);
+        assertEquals(256 - "2016-05-16 03:00:01,000".length(), lines[0].length());
+        assertTrue(lines[0].startsWith(" WARN dump !\"#"));
+        assertTrue(lines[1].startsWith(EntryLimits.MARKER + "1 lines, "));
+
+        ///////////////////////////////////////
+        // Nothing is cut without the limits
+        assertEquals(" WARN dump " + binary + Utils.LINE_SEP + binary + Utils.LINE_SEP, read(log, null).get(1).getPayload());
+    }
+
+    public void testInvalidLimits() {
+        assertNull(EntryLimits.of(0, 0));
+
+        try {
+            new EntryLimits(EntryLimits.MIN_BYTES - 1, 0);
+            fail("Expected too few entry bytes to be invalid");
+        } catch (RuntimeException e) {}
+
+        try {
+            Options.parse(new String[] { "=L=0", "a.log" }, System.err).validate();
+            fail("Expected 0 entry lines to be invalid");
+        } catch (RuntimeException e) {}
+    }
+
+    private List<LogEntry> read(final String log, final EntryLimits limits) throws Exception {
+        List<LogEntry> logEntries = new ArrayList<>();
+
+        try (LogEntryReader reader =
+                     new LogEntryReader(
+                             "test",
+                             new LineReader(new ByteArrayInputStream(log.getBytes(StandardCharsets.UTF_8))),
+                             TS1_FORMAT,
+                             null,
+                             null,
+                             null,
+                             0)) {
+            reader.setEntryLimits(limits);
+
+            while(reader.hasNext()) {
+                logEntries.add(reader.next());
+            }
+        }
+
+        return logEntries;
+    }
+}
@@ -0,0 +1,155 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class EntryWriterTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public EntryWriterTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( EntryWriterTest.class );
+    }
+
+    String TS1_FORMAT   = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    private List<LogEntry> logEntries() {
+        return Arrays.asList(
+                new LogEntry("a.log", 1000, "T1", " INFO say \"hi\", then\ttab" + Utils.LINE_SEP),
+                new LogEntry("b.log", 1250, "T2", " ERROR boom" + Utils.LINE_SEP + "\tat x" + Utils.LINE_SEP));
+    }
+
+    private String write(String format, List<LogEntry> logEntries) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out             = new PrintStream(bytes, true, "UTF-8");
+
+        Utils.emitList(logEntries, Utils.entryWriter(format, Arrays.asList("a.log", "b.log"), out), "");
+        out.flush();
+
+        return bytes.toString("UTF-8");
+    }
+
+    public void testJsonLines() throws Exception {
+        String output = write(Options.OUTPUT_JSONL, logEntries());
+
+        assertEquals(
+                "{\"source\":1,\"path\":\"a.log\",\"timestamp\":1000,\"time\":\"T1\",\"delta\":0,"
+                        + "\"payload\":\" INFO say \\\"hi\\\", then\\ttab\"}\n"
+                + "{\"source\":2,\"path\":\"b.log\",\"timestamp\":1250,\"time\":\"T2\",\"delta\":250,"
+                        + "\"payload\":\" ERROR boom" + jsonLineSep() + "\\tat x\"}\n",
+                output);
+    }
+
+    public void testCsv() throws Exception {
+        String output = write(Options.OUTPUT_CSV, logEntries());
+
+        assertEquals(
+                "source,path,timestamp,time,delta,payload\r\n"
+                + "1,a.log,1000,T1,0,\" INFO say \"\"hi\"\", then\ttab\"\r\n"
+                + "2,b.log,1250,T2,250,\" ERROR boom" + Utils.LINE_SEP + "\tat x\"\r\n",
+                output);
+    }
+
+    public void testTextOutputIsUnchanged() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out             = new PrintStream(bytes, true);
+
+        Utils.emitList(logEntries(), Arrays.asList("a.log", "b.log"), "", out);
+
+        assertEquals(bytes.toString(), write(Options.OUTPUT_TEXT, logEntries()));
+    }
+
+    /**
+     * The text formatted in parallel batches has to be the same bytes as one log entry at a time, including the source
+     * markers and deltas across the batch boundaries.
+     */
+    public void testParallelTextIsUnchanged() throws Exception {
+        Random random               = new Random(50);
+        List<String> sources        = Arrays.asList("a.log", "b.log", "c.log");
+        List<LogEntry> logEntries   = new ArrayList<>();
+        long ts                     = 0;
+
+        for(int i = 0 ; i < 5000 ; i++) {
+            String source   = (i % 97 == 0) ? "unknown.log" : sources.get(random.nextInt(random.nextBoolean() ? 1 : 3));
+            String payload  = " INFO entry " + i + Utils.LINE_SEP
+                                + ((i % 5 == 0) ? "\tat line " + i + Utils.LINE_SEP : "");
+
+            ts += random.nextInt(3);
+            logEntries.add(new LogEntry(source, ts, "" + ts, payload));
+        }
+
+        for(int batchSize : new int[] { 1, 7, 64, 5000, 6000 }) {
+            ByteArrayOutputStream oneAtATime    = new ByteArrayOutputStream();
+            ByteArrayOutputStream parallel      = new ByteArrayOutputStream();
+            TextEntryWriter writer              = new TextEntryWriter(sources, new PrintStream(oneAtATime, true));
+            TextEntryWriter batched             = new TextEntryWriter(sources, new PrintStream(parallel, true));
+
+            ////////////////////////////////////////////////////////////
+            // Split in two, so the second list carries on from the first
+            for(LogEntry logEntry : logEntries) {
+                writer.write(logEntry);
+            }
+
+            batched.writeAll(logEntries.subList(0, 1234), 4, batchSize, 1);
+            batched.writeAll(logEntries.subList(1234, logEntries.size()), 3, batchSize, 1);
+
+            assertTrue(Arrays.equals(oneAtATime.toByteArray(), parallel.toByteArray()));
+        }
+    }
+
+    public void testMachineFormatsKeepNotesOffTheOutput() throws Exception {
+        File file = LogFixtures.logFile("2016-05-16 03:00:00,000 INFO one", "2016-05-16 03:00:01,000 INFO two");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream notes = new ByteArrayOutputStream();
+        PrintStream out             = new PrintStream(bytes, true);
+        String[] args               = { "=o=jsonl", file.getPath(), file.getPath() };
+
+        Options options = Utils.parseOptions(args, out, new PrintStream(notes, true));
+        options.validate();
+        Utils.run(options, out);
+        out.flush();
+
+        String[] lines = bytes.toString().split("\n");
+
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"source\":1,"));
+        assertTrue(lines[1].contains("\"payload\":\" INFO two\""));
+        assertTrue(notes.toString().contains("Not processing duplicate file"));
+    }
+
+    public void testInvalidFormat() {
+        try {
+            Options.parse(new String[] { "=o=xml", "a.log" }, new PrintStream(new ByteArrayOutputStream())).validate();
+            fail("Expected an invalid output format");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("xml"));
+        }
+    }
+
+    private static String jsonLineSep() {
+        return Utils.LINE_SEP.replace("\r", "\\r").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,166 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class ExternalSorterTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ExternalSorterTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ExternalSorterTest.class );
+    }
+
+    String TS1_FORMAT   = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    public void testExternalSortMatchesTimeSortLists() throws Exception {
+        List<String> logFiles = new ArrayList<>();
+
+        logFiles.add(LogFixtures.shuffledLogFile(1, 1000));
+        logFiles.add(LogFixtures.logFile(2, 1000));
+        logFiles.add(LogFixtures.shuffledLogFile(3, 10));
+
+        String[][] queries = {
+                { },
+                { "=f=WooHoo 1-", "=f=continued 2-" },
+                { "=s=2016-05-16 03:00:05,000", "=e=2016-05-16 03:02:12,000", "=a=0,500,-500" },
+                { "=l=25" },
+        };
+
+        for(String[] query : queries) {
+            List<String> args = new ArrayList<>();
+
+            for(String arg : query) {
+                args.add(arg);
+            }
+            args.addAll(logFiles);
+
+            String expected = LogFixtures.run(args.toArray(new String[0]));
+
+            args.add(0, "=m=4K");
+            String actual   = LogFixtures.run(args.toArray(new String[0]));
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    public void testSpilledRunsAreRemoved() throws Exception {
+        String unsorted = LogFixtures.shuffledLogFile(1, 1000);
+        String sorted   = LogFixtures.logFile(2, 1000);
+        File tempDir    = new File(System.getProperty("java.io.tmpdir"), "sorter-" + System.nanoTime());
+        assertTrue(tempDir.mkdir());
+        tempDir.deleteOnExit();
+
+        List<LogEntry> expected = Utils.createLogEntries(unsorted, TS1_FORMAT, null, null, null, 0);
+        List<List<LogEntry>> logs = new ArrayList<>();
+        logs.add(expected);
+        expected = Utils.timeSortLists(logs);
+
+        try (ExternalSorter sorter = new ExternalSorter(8 * 1024, tempDir)) {
+            Iterator<LogEntry> iterator = sorter.sort(sorted, TS1_FORMAT, null, null, null, 0);
+            int count = 0;
+            while(iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+            assertEquals(1000, count);
+            assertEquals(0, sorter.getSpilledRuns());
+
+            iterator = sorter.sort(unsorted, TS1_FORMAT, null, null, null, 0);
+            assertTrue(sorter.getSpilledRuns() > 1);
+            assertEquals(1, sorter.getUnsortedSources());
+
+            //////////////////////////////////////////////////////////////
+            // The runs merged into longer runs are removed straight away
+            assertTrue(sorter.getMergePasses() > 0);
+            assertTrue(tempDir.list().length <= 2);
+
+            for(LogEntry logEntry : expected) {
+                assertTrue(iterator.hasNext());
+                assertEquals(logEntry.toString(), iterator.next().toString());
+            }
+            assertFalse(iterator.hasNext());
+        }
+
+        assertEquals(0, tempDir.list().length);
+        tempDir.delete();
+    }
+
+    public void testManyRunsAreMergedWithinTheFanIn() throws Exception {
+        String unsorted = LogFixtures.shuffledLogFile(1, 5000);
+        String sorted   = LogFixtures.logFile(2, 2500);
+
+        for(long maxBytes : new long[] { 4 * 1024, 32 * 1024, 4L * ExternalSorter.RUN_BUFFER_BYTES }) {
+            try (ExternalSorter sorter = new ExternalSorter(maxBytes)) {
+                List<List<LogEntry>> logs = new ArrayList<>();
+                logs.add(Utils.createLogEntries(unsorted, TS1_FORMAT, null, null, null, 0));
+                List<LogEntry> expected = Utils.timeSortLists(logs);
+
+                Iterator<LogEntry> iterator = sorter.sort(unsorted, TS1_FORMAT, null, null, null, 0);
+                assertTrue(sorter.getMergePasses() > 0);
+                assertTrue(sorter.getRunBufferBytes() <= Math.max(2 * ExternalSorter.RUN_BUFFER_BYTES, maxBytes / 2));
+
+                for(LogEntry logEntry : expected) {
+                    assertTrue(iterator.hasNext());
+                    assertEquals(logEntry.toString(), iterator.next().toString());
+                }
+                assertFalse(iterator.hasNext());
+
+                ////////////////////////////////////////////////////////////
+                // A log file in time order is read back as a single run
+                int passes  = sorter.getMergePasses();
+                int spilled = sorter.getSpilledRuns();
+                long before = sorter.getRunBufferBytes();
+
+                iterator = sorter.sort(sorted, TS1_FORMAT, null, null, null, 0);
+                assertEquals(passes, sorter.getMergePasses());
+                assertEquals(spilled, sorter.getSpilledRuns());
+                assertTrue(sorter.getRunBufferBytes() <= before + ExternalSorter.RUN_BUFFER_BYTES);
+
+                int count = 0;
+                while(iterator.hasNext()) {
+                    iterator.next();
+                    count++;
+                }
+                assertEquals(2500, count);
+            }
+        }
+    }
+
+    public void testInvalidSortMemory() throws Exception {
+        try {
+            Options.parse(new String[] { "=m=lots", "x.log" }, System.out).getSortMemory();
+            fail("Invalid sort memory accepted");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("sort memory"));
+        }
+
+        assertEquals(2L * 1024 * 1024, Options.parse(new String[] { "=m=2M" }, System.out).getSortMemory());
+
+        try {
+            Options.parse(new String[] { "=m=1M", "=i=2" }, System.out).validate();
+            fail("Sort memory and ingest threads accepted");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Only one of"));
+        }
+    }
+}
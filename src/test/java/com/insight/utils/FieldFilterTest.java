@@ -0,0 +1,95 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class FieldFilterTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public FieldFilterTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( FieldFilterTest.class );
+    }
+
+    public void testDefaultFields() {
+        String data = "2016-05-16 03:00:00,000 WARN  [main-1] com.x.Service - an ERROR in [the] message" + Utils.LINE_SEP
+                + "ERROR on the next line" + Utils.LINE_SEP;
+        int from    = "2016-05-16 03:00:00,000".length();
+
+        assertTrue(FieldFilter.parse(null, Arrays.asList("level=ERROR,WARN")).matches(data, from));
+        assertFalse(FieldFilter.parse(null, Arrays.asList("level=ERROR")).matches(data, from));
+        assertFalse(FieldFilter.parse(null, Arrays.asList("level=WAR")).matches(data, from));
+        assertTrue(FieldFilter.parse(null, Arrays.asList("thread=main-1")).matches(data, from));
+        assertTrue(FieldFilter.parse(null, Arrays.asList("logger=com.x.Service", "level=WARN")).matches(data, from));
+        assertFalse(FieldFilter.parse(null, Arrays.asList("logger=com.x.Service", "level=INFO")).matches(data, from));
+        assertNull(FieldFilter.parse(null, Collections.<String>emptyList()));
+    }
+
+    public void testCustomFields() {
+        FieldFilter filter = FieldFilter.parse("pid:1,level:<>", Arrays.asList("pid=42", "level=E"));
+
+        assertTrue(filter.matches(" 42 <E> boom", 0));
+        assertFalse(filter.matches(" 42 <W> boom <E>", 0));
+        assertFalse(filter.matches(" 42" + Utils.LINE_SEP + "<E>", 0));
+        assertFalse(filter.matches(" 42 <E", 0));
+        assertTrue(filter.matches(new LogEntry("a.log", 0, "T", " 42 <E> boom")));
+
+        String[][] invalid = {
+                { "level", "level=ERROR" },
+                { "level:0", "level=ERROR" },
+                { "level:[]]", "level=ERROR" },
+                { null, "lvl=ERROR" },
+                { null, "level=" },
+        };
+
+        for(String[] definitions : invalid) {
+            try {
+                FieldFilter.parse(definitions[0], Arrays.asList(definitions[1]));
+                fail("Expected [" + definitions[0] + "] [" + definitions[1] + "] to be invalid");
+            } catch (RuntimeException e) {}
+        }
+    }
+
+    public void testLevelFilterOnlyMatchesTheLevel() throws Exception {
+        File file = LogFixtures.logFile(null, 300, new LogFixtures.Entries() {
+            public void write(final PrintStream out, final int i) {
+                String level = (0 == i % 3) ? "ERROR" : "INFO";
+
+                out.println(String.format("2016-05-16 03:%02d:%02d,000 %s [t-%d] com.x.C%d - request %d ERROR=0",
+                        i / 60, i % 60, level, i % 4, i % 2, i));
+            }
+        });
+
+        String byText   = LogFixtures.runFromSources("=f= ERROR [", file.getPath());
+
+        for(String[] mode : new String[][] { {}, { "=h=1000" }, { "=m=1M" }, { "=i=2" }, { "=P=4" } }) {
+            String[] args = Arrays.copyOf(mode, mode.length + 2);
+            args[mode.length]       = "=q=level=ERROR";
+            args[mode.length + 1]   = file.getPath();
+
+            assertEquals(Arrays.toString(mode), byText, LogFixtures.runFromSources(args));
+        }
+
+        assertEquals(LogFixtures.runFromSources("=f= ERROR [t-1] com.x.C1", file.getPath()),
+                LogFixtures.runFromSources("=q=level=ERROR", "=q=thread=t-1", "=q=logger=com.x.C1", file.getPath()));
+    }
+}
@@ -0,0 +1,111 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class GapReportTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public GapReportTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( GapReportTest.class );
+    }
+
+    public void testTopGaps() {
+        Random random               = new Random(11);
+        List<LogEntry> logEntries   = new ArrayList<>();
+        List<Long> allGaps          = new ArrayList<>();
+        List<Long> sourceGaps       = new ArrayList<>();
+        long ts                     = 1000;
+        long lastOfA                = -1;
+
+        for(int i = 0 ; i < 5000 ; i++) {
+            long gap        = random.nextInt(1000) + ((0 == i % 997) ? 100000 + i : 0);
+            String source   = random.nextBoolean() ? "a.log" : "b.log";
+
+            ts += gap;
+
+            if(i > 0) {
+                allGaps.add(gap);
+            }
+            if("a.log".equals(source)) {
+                if(lastOfA >= 0) {
+                    sourceGaps.add(ts - lastOfA);
+                }
+                lastOfA = ts;
+            }
+
+            logEntries.add(new LogEntry(source, ts, "T" + i, " entry " + i + Utils.LINE_SEP));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out             = new PrintStream(bytes, true);
+
+        Utils.emitList(logEntries, new GapReport(3, Arrays.asList("a.log", "b.log"), out), "");
+
+        String report = bytes.toString();
+
+        Collections.sort(allGaps, Collections.reverseOrder());
+        Collections.sort(sourceGaps, Collections.reverseOrder());
+
+        String all = report.substring(report.indexOf("# Top 3 gaps:"), report.indexOf("# Top 3 gaps in"));
+        for(int rank = 1 ; rank <= 3 ; rank++) {
+            assertTrue(all, all.contains("# " + rank + ": " + allGaps.get(rank - 1) + " mS"));
+        }
+        assertFalse(all.contains("# 4: "));
+
+        String a = report.substring(report.indexOf("# Top 3 gaps in  1 a.log:"), report.indexOf("# Top 3 gaps in  2"));
+        assertTrue(a, a.contains("# 1: " + sourceGaps.get(0) + " mS"));
+
+        // The entries either side of the largest gap are shown
+        int largest = all.indexOf("# 1: ");
+        String after = all.substring(largest).split(Utils.LINE_SEP)[2];
+        assertTrue(after, after.matches("[*.] [ 12]{2} +" + allGaps.get(0) + " +T[0-9]+ entry [0-9]+"));
+    }
+
+    public void testHistogramPercentiles() {
+        Random random               = new Random(5);
+        GapReport.Histogram histogram = new GapReport.Histogram();
+        List<Long> deltas           = new ArrayList<>();
+
+        for(int i = 0 ; i < 100000 ; i++) {
+            long delta = (long) Math.abs(random.nextGaussian() * 2000) + ((0 == i % 1000) ? 1000000 : 0);
+
+            deltas.add(delta);
+            histogram.record(delta);
+        }
+
+        Collections.sort(deltas);
+
+        for(double fraction : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+            long exact      = deltas.get((int) Math.ceil(fraction * deltas.size()) - 1);
+            long estimate   = histogram.percentile(fraction);
+
+            assertTrue(fraction + " " + exact + " " + estimate, estimate <= exact && estimate >= exact * 0.98);
+        }
+
+        assertEquals(deltas.get(deltas.size() - 1).longValue(), histogram.percentile(1.0));
+    }
+}
@@ -0,0 +1,146 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LineStoreTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public LineStoreTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( LineStoreTest.class );
+    }
+
+    String TS1_FORMAT   = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    private String logFile(final int number, int entries) throws Exception {
+        return LogFixtures.logFile(null, entries, new LogFixtures.Entries() {
+            public void write(final PrintStream out, final int i) {
+                out.println(String.format("2016-05-16 03:%02d:%02d,%03d ERROR %d-%d failed", i / 60 % 60, i % 60, number, number, i));
+                out.println("java.lang.IllegalStateException: boom");
+
+                for(int frame = 0 ; frame < 40 ; frame++) {
+                    out.println("    at com.example.Layer" + (frame + i % 3) + ".call(Layer.java:" + frame + ")");
+                }
+
+                if(0 == i % 5) {
+                    out.println("");
+                }
+            }
+        }).getPath();
+    }
+
+    public void testSharedLinesGiveTheSameOutput() throws Exception {
+        String logFile1 = logFile(1, 500);
+        String logFile2 = logFile(2, 300);
+
+        String[][] queries = {
+                { },
+                { "=f=Layer41" },
+                { "=i=2" },
+        };
+
+        for(String[] query : queries) {
+            List<String> args = new ArrayList<>(Arrays.asList(query));
+            args.add(logFile1);
+            args.add(logFile2);
+
+            String expected = LogFixtures.runFromSources(args.toArray(new String[0]));
+
+            args.add(0, "=d=1000");
+            assertEquals(Arrays.toString(query), expected, LogFixtures.runFromSources(args.toArray(new String[0])));
+        }
+    }
+
+    public void testStreamedRunsAreRejected() throws Exception {
+        String[] streamed = { "=P=16", "=m=1M", "=C=100", "=h=10", "=l=10", "=M=10", "=g=1000", "=T=id=(\\d+)", "=S=10" };
+
+        for(String option : streamed) {
+            try {
+                Options.parse(new String[] { "=d=1000", "=f=Layer", option, "x.log" }, System.out).validate();
+                fail("=d= accepted with " + option);
+            } catch (RuntimeException e) {
+                assertTrue(option, e.getMessage().contains("=d="));
+            }
+        }
+
+        try {
+            Options.parse(new String[] { "=d=1000", "-" }, System.out).validate();
+            fail("=d= accepted with a pipe");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("=d="));
+        }
+
+        Options.parse(new String[] { "=d=1000", "=i=2", "x.log" }, System.out).validate();
+    }
+
+    public void testRepeatedLinesAreHeldOnce() throws Exception {
+        String logFile          = logFile(1, 600);
+        LineStore lineStore     = new LineStore(1000);
+        List<LogEntry> plain    = Utils.createLogEntries(logFile, TS1_FORMAT, null, null, null, 0);
+        List<LogEntry> shared   = Utils.createLogEntries(logFile, TS1_FORMAT, null, null, null, 0, 0, false, lineStore, null);
+        long plainSize          = 0;
+        long sharedSize         = 0;
+
+        assertEquals(plain.size(), shared.size());
+
+        for(int i = 0 ; i < plain.size() ; i++) {
+            assertEquals(plain.get(i).getPayload(), shared.get(i).getPayload());
+            assertEquals(plain.get(i).toString(), shared.get(i).toString());
+
+            plainSize   += plain.get(i).getEstimatedSize();
+            sharedSize  += shared.get(i).getEstimatedSize();
+        }
+
+        ///////////////////////////////////////////////////////////
+        // Only 3 distinct stack traces, each with or without a gap
+        assertSame(shared.get(0).getSharedLines(), shared.get(30).getSharedLines());
+        assertNotSame(shared.get(0).getSharedLines(), shared.get(1).getSharedLines());
+        assertTrue(lineStore.getDedupRatio() > 100);
+        assertTrue(sharedSize * 10 < plainSize);
+
+        ////////////////////////////////////////////////
+        // A small store still shares, just not as much
+        LineStore small = new LineStore(10);
+        List<LogEntry> bounded = Utils.createLogEntries(logFile, TS1_FORMAT, null, null, null, 0, 0, false, small, null);
+
+        for(int i = 0 ; i < plain.size() ; i++) {
+            assertEquals(plain.get(i).getPayload(), bounded.get(i).getPayload());
+        }
+        assertTrue(small.getDedupRatio() < lineStore.getDedupRatio());
+    }
+
+    public void testContains() throws Exception {
+        LineStore lineStore = new LineStore(10);
+        String sep          = Utils.LINE_SEP;
+        LogEntry logEntry   = lineStore.share(new LogEntry("s", 1, "d", " first" + sep + "second" + sep + "third" + sep));
+
+        assertNotNull(logEntry.getSharedLines());
+        assertTrue(logEntry.contains("first"));
+        assertTrue(logEntry.contains("third"));
+        assertTrue(logEntry.contains("second" + sep + "th"));
+        assertFalse(logEntry.contains("fourth"));
+
+        LogEntry single     = new LogEntry("s", 1, "d", " only" + sep);
+        assertSame(single, lineStore.share(single));
+    }
+}
@@ -0,0 +1,159 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class LogEntryStreamTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public LogEntryStreamTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( LogEntryStreamTest.class );
+    }
+
+    String TS1_FORMAT   = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    private List<LogEntry> expected(List<String> logFiles, String startAt, String endAt, List<String> searchText,
+                                    List<Integer> adjustments) throws Exception {
+        List<List<LogEntry>> logs = new ArrayList<>();
+
+        for(int i = 0 ; i < logFiles.size() ; i++) {
+            logs.add(Utils.createLogEntries(logFiles.get(i), TS1_FORMAT, startAt, endAt, searchText, adjustments.get(i)));
+        }
+
+        return Utils.timeSortLists(logs);
+    }
+
+    private static List<String> payloads(List<LogEntry> logEntries) {
+        List<String> payloads = new ArrayList<>();
+
+        for(LogEntry logEntry : logEntries) {
+            payloads.add(logEntry.getSource() + " " + logEntry.getRawTimeStamp() + " " + logEntry.getPayload());
+        }
+
+        return payloads;
+    }
+
+    public void testSequentialStreamMatchesTimeSort() throws Exception {
+        List<String> logFiles       = Arrays.asList(LogFixtures.logFile(1, 3000), LogFixtures.logFile(2, 2000), LogFixtures.logFile(3, 10));
+        List<Integer> adjustments   = Arrays.asList(0, 500, -20);
+
+        try (Stream<LogEntry> logEntries = LogEntryStream.builder()
+                .logFiles(logFiles)
+                .timestampFormat(TS1_FORMAT)
+                .timestampAdjustments(adjustments)
+                .stream()) {
+            assertEquals(
+                    payloads(expected(logFiles, null, null, null, adjustments)),
+                    payloads(logEntries.collect(Collectors.<LogEntry>toList())));
+        }
+
+        try (Stream<LogEntry> logEntries = LogEntryStream.builder()
+                .logFiles(logFiles)
+                .startAt("2016-05-16 03:10:00,000")
+                .endAt("2016-05-16 03:20:00,000")
+                .searchText("continued")
+                .timestampAdjustments(adjustments)
+                .stream()) {
+            List<LogEntry> selected = expected(logFiles, "2016-05-16 03:10:00,000", "2016-05-16 03:20:00,000",
+                    Arrays.asList("continued"), adjustments);
+
+            assertFalse(selected.isEmpty());
+            assertEquals(payloads(selected), payloads(logEntries.collect(Collectors.<LogEntry>toList())));
+        }
+    }
+
+    public void testSplitsByTimeRange() throws Exception {
+        List<String> logFiles = Arrays.asList(LogFixtures.logFile(1, 3000), LogFixtures.logFile(2, 2000));
+
+        Spliterator<LogEntry> second = LogEntryStream.builder().logFiles(logFiles).minSplitBytes(1024).spliterator();
+        long size                    = second.estimateSize();
+        Spliterator<LogEntry> first  = second.trySplit();
+
+        assertNotNull(first);
+        assertTrue(first.estimateSize() > 0 && second.estimateSize() > 0);
+        assertTrue(first.estimateSize() + second.estimateSize() <= size);
+        assertTrue(0 != (first.characteristics() & Spliterator.ORDERED));
+        assertTrue(0 == (first.characteristics() & Spliterator.SIZED));
+
+        final List<LogEntry> split = new ArrayList<>();
+        first.forEachRemaining(split::add);
+        long lastOfFirst = split.get(split.size() - 1).getRawTimeStamp();
+        second.forEachRemaining(split::add);
+
+        assertEquals(payloads(expected(logFiles, null, null, null, Arrays.asList(0, 0))), payloads(split));
+        assertTrue(lastOfFirst < split.get(split.size() - 1).getRawTimeStamp());
+    }
+
+    public void testExhaustedSplitsCloseTheirLogFiles() throws Exception {
+        List<String> logFiles               = Arrays.asList(LogFixtures.logFile(1, 3000), LogFixtures.logFile(2, 2000));
+        List<AutoCloseable> openReaders     = new ArrayList<>();
+
+        Spliterator<LogEntry> second =
+                LogEntryStream.builder().logFiles(logFiles).minSplitBytes(1024).spliterator(openReaders);
+        Spliterator<LogEntry> first  = second.trySplit();
+
+        assertTrue(first.tryAdvance(logEntry -> {}));
+        assertTrue(second.tryAdvance(logEntry -> {}));
+        assertEquals(4, openReaders.size());
+
+        first.forEachRemaining(logEntry -> {});
+        assertEquals(2, openReaders.size());
+
+        second.forEachRemaining(logEntry -> {});
+        assertTrue(openReaders.isEmpty());
+    }
+
+    public void testParallelStreamKeepsTheOrder() throws Exception {
+        List<String> logFiles = Arrays.asList(LogFixtures.logFile(1, 3000), LogFixtures.logFile(2, 2000), LogFixtures.logFile(3, 1500));
+
+        try (Stream<LogEntry> logEntries = LogEntryStream.builder()
+                .logFiles(logFiles)
+                .searchText("continued")
+                .minSplitBytes(4096)
+                .parallel(true)
+                .stream()) {
+            assertTrue(logEntries.isParallel());
+            assertEquals(
+                    payloads(expected(logFiles, null, null, Arrays.asList("continued"), Arrays.asList(0, 0, 0))),
+                    payloads(logEntries.collect(Collectors.<LogEntry>toList())));
+        }
+    }
+
+    public void testInvalidArguments() throws Exception {
+        try {
+            LogEntryStream.builder().stream();
+            fail("Expected no log files");
+        } catch (RuntimeException e) {
+            assertEquals("No log files specified", e.getMessage());
+        }
+
+        try {
+            LogEntryStream.builder().logFiles("no-such.log").stream();
+            fail("Expected a missing log file");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("no-such.log"));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.insight.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * The log files and runs shared by the tests.
+ */
+class LogFixtures {
+    /**
+     * Writes the lines of a log entry.
+     */
+    interface Entries {
+        void write(PrintStream out, int i);
+    }
+
+    private LogFixtures() {
+    }
+
+    /**
+     * A log file of entries in time order, some with a continuation line, after a line that isn't a log entry.
+     *
+     * @param number Which log file, it's in every log entry and in the mS of their timestamps.
+     * @param entries The number of log entries.
+     * @return The path of the log file, deleted on exit.
+     * @throws IOException
+     */
+    static String logFile(final int number, final int entries) throws IOException {
+        return logFile("Preamble " + number, entries, new Entries() {
+            public void write(final PrintStream out, final int i) {
+                out.println(String.format("2016-05-16 03:%02d:%02d,%03d WooHoo %d-%d",
+                        i / 60 % 60, i % 60, number % 1000, number, i));
+
+                if(0 == i % 3) {
+                    out.println("WooHoo continued " + number + "-" + i);
+                }
+            }
+        }).getPath();
+    }
+
+    /**
+     * A log file like logFile(number, entries) but out of time order, with only a few distinct timestamps (so the order
+     * of equal timestamps gets tested too).
+     *
+     * @param number Which log file, it's in every log entry, in the mS of their timestamps and seeds their order.
+     * @param entries The number of log entries.
+     * @return The path of the log file, deleted on exit.
+     * @throws IOException
+     */
+    static String shuffledLogFile(final int number, final int entries) throws IOException {
+        final Random random = new Random(number);
+
+        return logFile("Preamble " + number, entries, new Entries() {
+            public void write(final PrintStream out, final int i) {
+                out.println(String.format("2016-05-16 03:00:%02d,%03d WooHoo %d-%d",
+                        random.nextInt(20), number % 1000, number, i));
+
+                if(0 == i % 3) {
+                    out.println("WooHoo continued " + number + "-" + i);
+                }
+            }
+        }).getPath();
+    }
+
+    /**
+     * A log file of the given lines.
+     *
+     * @param lines The lines of the log file.
+     * @return The log file, deleted on exit.
+     * @throws IOException
+     */
+    static File logFile(final String... lines) throws IOException {
+        return logFile(null, lines.length, new Entries() {
+            public void write(final PrintStream out, final int i) {
+                out.println(lines[i]);
+            }
+        });
+    }
+
+    /**
+     * A log file (and any index of it) deleted on exit.
+     *
+     * @param preamble A line before the log entries; else null for none.
+     * @param entries The number of log entries.
+     * @param lines Writes each log entry.
+     * @return The log file.
+     * @throws IOException
+     */
+    static File logFile(final String preamble, final int entries, final Entries lines) throws IOException {
+        File file = File.createTempFile("logviewer", ".log");
+
+        file.deleteOnExit();
+        new File(file.getPath() + BlockIndex.INDEX_SUFFIX).deleteOnExit();
+        new File(file.getPath() + TokenIndex.INDEX_SUFFIX).deleteOnExit();
+
+        try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
+            if(null != preamble) {
+                out.println(preamble);
+            }
+
+            for(int i = 0 ; i < entries ; i++) {
+                lines.write(out, i);
+            }
+        }
+
+        return file;
+    }
+
+    /**
+     * Run LogViewer as from the command line.
+     *
+     * @return Everything written to stdout.
+     * @throws Exception
+     */
+    static String run(final String... args) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out             = new PrintStream(bytes);
+
+        Options options = Options.parse(args, out);
+        options.validate();
+        Utils.run(options, out);
+        out.flush();
+
+        return bytes.toString();
+    }
+
+    /**
+     * Run LogViewer with a memory plan.
+     *
+     * @param options Validated options.
+     * @return Everything written to stdout.
+     * @throws Exception
+     */
+    static String run(final Options options, final MemoryPlanner planner) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out             = new PrintStream(bytes);
+
+        Utils.run(options, planner, out);
+        out.flush();
+
+        return bytes.toString();
+    }
+
+    /**
+     * Run LogViewer as from the command line.
+     *
+     * @return What was written to stdout from the sources on, the banner before them shows the command line.
+     * @throws Exception
+     */
+    static String runFromSources(final String... args) throws Exception {
+        String output = run(args);
+
+        return output.substring(output.indexOf("# Sources:"));
+    }
+}
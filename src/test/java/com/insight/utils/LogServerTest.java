@@ -0,0 +1,201 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+
+public class LogServerTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public LogServerTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( LogServerTest.class );
+    }
+
+    String TS1_FORMAT                   = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    private void append(File file, String... lines) throws Exception {
+        try (PrintStream out = new PrintStream(new FileOutputStream(file, true))) {
+            for(String line : lines) {
+                out.println(line);
+            }
+        }
+    }
+
+    /**
+     * @return The output of the command line, with its header as the query server writes one too.
+     */
+    private String cmdLine(String... args) throws Exception {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+        Utils.emitHeader(args, new PrintStream(header, true));
+
+        return header.toString() + LogFixtures.run(args);
+    }
+
+    private String query(int port, String... args) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        LogClient.query(port, args, bytes);
+
+        return bytes.toString();
+    }
+
+    public void testQueriesMatchTheCommandLine() throws Exception {
+        File first  = LogFixtures.logFile(
+                "2016-05-16 03:34:56,789 WooHoo 1a",
+                "WooHoo 1a1",
+                "2016-05-16 09:34:56,789 ERROR WooHoo 1b");
+        File second = LogFixtures.logFile(
+                "2016-05-16 06:34:56,789 ERROR WooHoo 2a",
+                "2016-05-16 12:34:56,789 WooHoo 2b");
+
+        LogServer server    = new LogServer(60000);
+        int port            = server.start(0);
+
+        try {
+            String[][] queries = {
+                    { first.getPath(), second.getPath() },
+                    { "=f=ERROR", first.getPath(), second.getPath() },
+                    { "=s=2016-05-16 06:34:56,789", "=e=2016-05-16 09:34:56,789", first.getPath(), second.getPath() },
+                    { "=a=10800000,0", "=h=2", first.getPath(), second.getPath() },
+                    { "=l=1", first.getPath(), second.getPath() },
+            };
+
+            for(String[] args : queries) {
+                assertEquals(cmdLine(args), query(port, args));
+            }
+
+            ///////////////////////////////////////////////////
+            // Growth of a log file is picked up by the queries
+            append(first, "WooHoo 1b1", "2016-05-16 15:34:56,789 WooHoo 1c");
+
+            String[] args = { first.getPath(), second.getPath() };
+            String reply  = query(port, args);
+
+            assertEquals(cmdLine(args), reply);
+            assertTrue(reply.contains("WooHoo 1b1"));
+            assertTrue(reply.contains("WooHoo 1c"));
+
+            assertTrue(query(port, "=s=bad", first.getPath()).contains("# Error: "));
+        } finally {
+            server.stop();
+        }
+    }
+
+    public void testRotatedLogFilesAreReadAgain() throws Exception {
+        File file       = LogFixtures.logFile("2016-05-16 03:34:56,789 WooHoo 1a", "2016-05-16 09:34:56,789 WooHoo 1b");
+        LogIndex index  = new LogIndex(file.getPath(), TS1_FORMAT);
+
+        assertTrue(index.refresh());
+        assertEquals(2, index.size());
+
+        //////////////////////////////////////////////////////////////
+        // Rotated, a new log file already longer than the old one
+        File rotated = new File(file.getPath() + ".1");
+        rotated.deleteOnExit();
+        assertTrue(file.renameTo(rotated));
+
+        append(file,
+                "2016-05-16 10:34:56,789 WooHoo 2a",
+                "2016-05-16 11:34:56,789 WooHoo 2b",
+                "2016-05-16 12:34:56,789 WooHoo 2c");
+
+        assertTrue(index.refresh());
+        assertEquals(3, index.size());
+        assertTrue(index.select(0, Long.MAX_VALUE, null, 0).get(0).toString().contains("WooHoo 2a"));
+
+        //////////////////////////////////////////////////////////
+        // Rewritten in place (e.g. copytruncate), and longer again
+        new FileOutputStream(file).close();
+        append(file,
+                "2016-05-16 13:34:56,789 WooHoo 3a",
+                "2016-05-16 14:34:56,789 WooHoo 3b",
+                "2016-05-16 15:34:56,789 WooHoo 3c",
+                "2016-05-16 16:34:56,789 WooHoo 3d");
+
+        assertTrue(index.refresh());
+        assertEquals(4, index.size());
+        assertTrue(index.select(0, Long.MAX_VALUE, null, 0).get(0).toString().contains("WooHoo 3a"));
+    }
+
+    public void testUnsupportedOptionsAreRejected() throws Exception {
+        File first = LogFixtures.logFile(
+                "2016-05-16 03:34:56,789 WooHoo 1a",
+                "2016-05-16 09:34:56,789 ERROR WooHoo 1b");
+
+        LogServer server    = new LogServer(60000);
+        int port            = server.start(0);
+
+        try {
+            String[] options = { "=C=1000", "=n=2", "=g=5", "=T=(id=\\d+)", "=S=5", "=M=5", "=m=1000000", "=i=2",
+                                 "=P=4", "=d=100", "=k=checkpoints", "=B=1000", "=L=10", "=x=0.01", "=I=on" };
+
+            for(String option : options) {
+                String reply = query(port, "=f=ERROR", option, first.getPath());
+
+                assertTrue(option, reply.contains("# Error: The query server doesn't support " + option.substring(0, 3)));
+                assertFalse(option, reply.contains("WooHoo"));
+            }
+
+            assertTrue(query(port, "=f=ERROR", "=o=csv", first.getPath()).contains("WooHoo 1b"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    public void testLogFilesInMemoryAreBounded() throws Exception {
+        File first  = LogFixtures.logFile("2016-05-16 03:34:56,789 WooHoo 1a", "2016-05-16 09:34:56,789 WooHoo 1b");
+        File second = LogFixtures.logFile("2016-05-16 06:34:56,789 WooHoo 2a");
+        File third  = LogFixtures.logFile("2016-05-16 07:34:56,789 WooHoo 3a");
+
+        LogServer server    = new LogServer(60000, 0, 1);
+        int port            = server.start(0);
+
+        try {
+            /////////////////////////////////////////////////////////////////
+            // Only the log file being queried fits, the others are dropped
+            // and loaded again when they are queried again
+            assertEquals(cmdLine(first.getPath()), query(port, first.getPath()));
+            assertEquals(1, server.getIndexCount());
+
+            assertEquals(cmdLine(second.getPath()), query(port, second.getPath()));
+            assertEquals(1, server.getIndexCount());
+
+            assertEquals(cmdLine(first.getPath(), third.getPath()), query(port, first.getPath(), third.getPath()));
+            assertEquals(1, server.getIndexCount());
+
+            assertEquals(cmdLine(first.getPath()), query(port, first.getPath()));
+        } finally {
+            server.stop();
+        }
+
+        server  = new LogServer(60000, 0, 1024 * 1024);
+        port    = server.start(0);
+
+        try {
+            query(port, first.getPath(), second.getPath(), third.getPath());
+            assertEquals(3, server.getIndexCount());
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+public class MemoryPlannerTest
+    extends TestCase
+{
+    private static final long MB = 1024L * 1024;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public MemoryPlannerTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( MemoryPlannerTest.class );
+    }
+
+    public void testPlan() throws Exception {
+        File logFile = logFile(1000);
+
+        try {
+            String path = logFile.getPath();
+
+            assertEquals(MemoryPlanner.IN_MEMORY, plan(1024 * MB, path).getMode());
+            assertEquals(0, plan(1024 * MB, path).getSortMemory());
+
+            MemoryPlanner tight = plan(logFile.length(), path);
+            assertEquals(MemoryPlanner.EXTERNAL_SORT, tight.getMode());
+            assertEquals(MemoryPlanner.MIN_SORT_MEMORY, tight.getSortMemory());
+
+            assertEquals(MemoryPlanner.STREAMING, plan(logFile.length(), "=h=10", path).getMode());
+            assertEquals(MemoryPlanner.STREAMING, plan(logFile.length(), "=g=3", path).getMode());
+            assertEquals(MemoryPlanner.AS_REQUESTED, plan(logFile.length(), "=m=1M", path).getMode());
+            assertEquals(MemoryPlanner.AS_REQUESTED, plan(logFile.length(), "=i=2", path).getMode());
+            assertEquals(0, plan(logFile.length(), "=i=2", path).getSortMemory());
+
+            //////////////////////////////////////////////////////////
+            // The query file isn't read to plan, only its name counts
+            Options queries = Options.parse(new String[] { "=Q=no-such-queries.txt", path }, System.err);
+            assertEquals(MemoryPlanner.STREAMING, MemoryPlanner.plan(queries, logFile.length(), 0).getMode());
+
+            assertTrue(Options.parse(new String[] { "=v=on", path }, System.err).isVerbose());
+            assertFalse(Options.parse(new String[] { path }, System.err).isVerbose());
+
+            try {
+                Options.parse(new String[] { "=v=loud", path }, System.err).validate();
+                fail("Invalid verbose accepted");
+            } catch(RuntimeException e) {}
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            tight.emit(new PrintStream(bytes, true));
+            assertTrue(bytes.toString().startsWith("# Memory plan: external sort within 16 MB, the log entries don't fit"));
+        } finally {
+            logFile.delete();
+        }
+    }
+
+    /**
+     * A run whose heap fills up while reading into memory merges the log files with an external sort instead, giving the
+     * same output.
+     */
+    public void testPressure() throws Exception {
+        File logFile = logFile(3 * MemoryPlanner.CHECK_INTERVAL);
+
+        try {
+            Options options = Options.parse(new String[] { logFile.getPath() }, System.err);
+            options.validate();
+
+            MemoryPlanner roomy         = new MemoryPlanner(MemoryPlanner.IN_MEMORY, 1024 * MB, 0, 512 * MB, "test");
+            MemoryPlanner pressured     = new MemoryPlanner(MemoryPlanner.IN_MEMORY, 1024 * MB, 0, 512 * MB, "test") {
+                long usedHeap(final boolean collect) {
+                    return 1000 * MB;
+                }
+            };
+
+            String expected = LogFixtures.run(options, roomy);
+            String actual   = LogFixtures.run(options, pressured);
+
+            assertEquals(MemoryPlanner.EXTERNAL_SORT, pressured.getMode());
+            assertEquals(MemoryPlanner.IN_MEMORY, roomy.getMode());
+            assertEquals(expected, actual);
+            assertTrue(actual.contains("message " + (3 * MemoryPlanner.CHECK_INTERVAL - 1)));
+        } finally {
+            logFile.delete();
+        }
+    }
+
+    private static MemoryPlanner plan(final long maxHeap, final String... args) {
+        Options options = Options.parse(args, System.err);
+        options.validate();
+
+        return MemoryPlanner.plan(options, maxHeap, 0);
+    }
+
+    /**
+     * @return A log file, mostly in time order.
+     */
+    private static File logFile(final int entries) throws Exception {
+        return LogFixtures.logFile(null, entries, new LogFixtures.Entries() {
+            public void write(final PrintStream out, final int i) {
+                int second = (i % 100 == 0) ? i / 10 : i;
+
+                out.println(String.format("2016-05-16 %02d:%02d:%02d,000 INFO message %d",
+                        second / 3600, (second / 60) % 60, second % 60, i));
+            }
+        });
+    }
+}
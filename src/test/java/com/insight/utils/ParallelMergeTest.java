@@ -0,0 +1,100 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class ParallelMergeTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ParallelMergeTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ParallelMergeTest.class );
+    }
+
+    /**
+     * The same entries in the same order as the single threaded sort, including the order of equal timestamps.
+     */
+    public void testSameAsSequential() {
+        Random random = new Random(48);
+
+        for(int round = 0 ; round < 50 ; round++) {
+            List<List<LogEntry>> logs   = new ArrayList<>();
+            int sources                 = 1 + random.nextInt(6);
+            int range                   = 1 + random.nextInt(round % 3 == 0 ? 5 : 5000);
+
+            for(int s = 0 ; s < sources ; s++) {
+                List<LogEntry> log  = new ArrayList<>();
+                int size            = (s == 1) ? 0 : random.nextInt(3000);
+                long ts             = random.nextInt(range);
+
+                for(int i = 0 ; i < size ; i++) {
+                    ////////////////////////////////////////////////////
+                    // Mostly in time order, some sources out of order
+                    ts = (s % 3 == 2) ? random.nextInt(range) : ts + (random.nextInt(4) == 0 ? 1 : 0);
+
+                    log.add(new LogEntry("s" + s, ts, "" + ts, " INFO " + s + "/" + i + Utils.LINE_SEP));
+                }
+                logs.add(log);
+            }
+
+            assertSameOrder(ParallelMerge.sequential(logs), new ParallelMerge(1 + random.nextInt(8), 1).timeSortLists(logs));
+        }
+    }
+
+    public void testSmallAndEmpty() {
+        List<List<LogEntry>> logs = new ArrayList<>();
+
+        assertTrue(new ParallelMerge(4, 1).timeSortLists(logs).isEmpty());
+
+        logs.add(Collections.<LogEntry>emptyList());
+        logs.add(Arrays.asList(new LogEntry("a", 5, "5", " A"), new LogEntry("a", 5, "5", " B")));
+        logs.add(Arrays.asList(new LogEntry("b", 5, "5", " C")));
+
+        assertSameOrder(ParallelMerge.sequential(logs), new ParallelMerge(4, 1).timeSortLists(logs));
+        assertSameOrder(ParallelMerge.sequential(logs), Utils.timeSortLists(logs));
+    }
+
+    public void testSplitters() {
+        List<LogEntry> log = new ArrayList<>();
+
+        for(int i = 0 ; i < 1000 ; i++) {
+            log.add(new LogEntry("a", i / 10, "", ""));
+        }
+
+        long[] splitters = ParallelMerge.splitters(Collections.singletonList(log), 4);
+
+        assertEquals(3, splitters.length);
+        assertTrue(splitters[0] < splitters[1] && splitters[1] < splitters[2]);
+        assertEquals(250, ParallelMerge.lowerBound(log, 25, 0));
+        assertEquals(1000, ParallelMerge.lowerBound(log, 100, 0));
+        assertEquals(0, ParallelMerge.splitters(Collections.singletonList(log.subList(0, 10)), 4).length);
+    }
+
+    private static void assertSameOrder(final List<LogEntry> expected, final List<LogEntry> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for(int i = 0 ; i < expected.size() ; i++) {
+            assertSame(expected.get(i), actual.get(i));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+public class PipeSourceTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PipeSourceTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( PipeSourceTest.class );
+    }
+
+    private String run(String... args) throws Exception {
+        String output = LogFixtures.run(args);
+
+        // Drop the banner and the sources, they show the file names
+        return output.substring(output.indexOf(Utils.LINE_SEP + ". ") + 1);
+    }
+
+    public void testStdinMergesWithFiles() throws Exception {
+        String logFile1 = LogFixtures.logFile(1, 500);
+        String logFile2 = LogFixtures.logFile(2, 300);
+        InputStream in  = System.in;
+
+        String expected = run(logFile1, logFile2);
+
+        try {
+            System.setIn(new ByteArrayInputStream(Files.readAllBytes(new File(logFile1).toPath())));
+
+            assertEquals(expected, run("-", logFile2));
+
+            System.setIn(new ByteArrayInputStream(Files.readAllBytes(new File(logFile1).toPath())));
+
+            assertEquals(run("=l=7", logFile1, logFile2), run("=l=7", "-", logFile2));
+        } finally {
+            System.setIn(in);
+        }
+    }
+
+    public void testStdinIsAPipe() {
+        assertTrue(Utils.isPipe("-"));
+        assertFalse(Utils.isPipe(System.getProperty("java.io.tmpdir")));
+
+        try {
+            Options.parse(new String[] { "=P=4", "-" }, new PrintStream(new ByteArrayOutputStream())).validate();
+            fail("Expected stdin to be refused by the pipeline");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("stdin"));
+        }
+    }
+}
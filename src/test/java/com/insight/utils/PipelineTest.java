@@ -0,0 +1,79 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PipelineTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PipelineTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( PipelineTest.class );
+    }
+
+    String TS1_FORMAT   = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    public void testPipelineMatchesTimeSortLists() throws Exception {
+        List<String> logFiles = new ArrayList<>();
+
+        for(int i = 0 ; i < 4 ; i++) {
+            logFiles.add(LogFixtures.logFile(i, 1000 * i));
+        }
+
+        String[][] queries = {
+                { },
+                { "=f=WooHoo 2-", "=f=continued 1-" },
+                { "=s=2016-05-16 03:01:00,000", "=e=2016-05-16 03:02:00,000", "=a=0,500,0,-500" },
+                { "=h=700" },
+                { "=l=5" },
+        };
+
+        for(String[] query : queries) {
+            List<String> args = new ArrayList<>(Arrays.asList(query));
+            args.addAll(logFiles);
+
+            String expected = LogFixtures.run(args.toArray(new String[args.size()]));
+
+            // Small rings so that the stages have to wait for each other
+            args.add(0, "=P=2");
+
+            String actual   = LogFixtures.run(args.toArray(new String[args.size()]));
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    public void testPipelineReportsFailures() throws Exception {
+        List<String> logFiles = new ArrayList<>();
+        logFiles.add(LogFixtures.logFile(1, 10));
+        logFiles.add(new File(System.getProperty("java.io.tmpdir")).getPath());
+
+        try {
+            new Pipeline(2).run(logFiles, TS1_FORMAT, null, null, null, Arrays.asList(0, 0), 0, 0,
+                    new PrintStream(new ByteArrayOutputStream()), new PrintStream(new ByteArrayOutputStream()));
+            fail("Should have thrown an exception");
+        } catch(IOException e) {}
+    }
+}
@@ -0,0 +1,184 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+public class QueryBatchTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public QueryBatchTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( QueryBatchTest.class );
+    }
+
+    /**
+     * Each query's results have to be those of a run with just its filters.
+     */
+    public void testSameAsSeparateRuns() throws Exception {
+        File directory  = Files.createTempDirectory("queries").toFile();
+        File log1       = logFile(0);
+        File log2       = logFile(1);
+        File queries    = new File(directory, "queries.txt");
+        File errors     = new File(directory, "errors.txt");
+        File window     = new File(directory, "window.txt");
+        File fields     = new File(directory, "fields.txt");
+
+        Files.write(queries.toPath(), (
+                "# A runbook\n"
+                + "\n"
+                + errors.getPath() + " =f=ERROR\n"
+                + "'" + window.getPath() + "' '=s=2016-05-16 03:02:00,000' \"=e=2016-05-16 03:04:00,000\" =f=WARN =f=INFO\n"
+                + fields.getPath() + " =q=thread=t-1,t-3\n").getBytes());
+
+        try {
+            String batch = LogFixtures.run("=F=thread:[]", "=Q=" + queries.getPath(), log1.getPath(), log2.getPath());
+
+            assertTrue(batch.contains("# Query " + errors.getPath() + ": 200 log entries"));
+            assertEquals(entries(LogFixtures.run("=f=ERROR", log1.getPath(), log2.getPath())), entries(read(errors)));
+            assertEquals(entries(LogFixtures.run("=s=2016-05-16 03:02:00,000", "=e=2016-05-16 03:04:00,000",
+                    "=f=WARN", "=f=INFO", log1.getPath(), log2.getPath())), entries(read(window)));
+            assertEquals(entries(LogFixtures.run("=F=thread:[]", "=q=thread=t-1,t-3", log1.getPath(), log2.getPath())),
+                    entries(read(fields)));
+            assertTrue(read(fields).contains("[t-3]"));
+            assertTrue(read(fields).contains("# Label: " + fields.getPath()));
+        } finally {
+            for(File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    public void testInvalidQueries() throws Exception {
+        File queries = File.createTempFile("queries", ".txt");
+        queries.deleteOnExit();
+
+        String[] invalid = {
+                "",
+                "# nothing\n",
+                "=f=ERROR\n",
+                "a.txt =h=10\n",
+                "a.txt '=f=ERROR\n",
+                "a.txt =f=ERROR\na.txt =f=WARN\n",
+                "a.txt =s=yesterday\n",
+        };
+
+        try {
+            for(String content : invalid) {
+                Files.write(queries.toPath(), content.getBytes());
+
+                try {
+                    QueryBatch.load(queries.getPath(), Options.DEFAULT_TIMESTAMP_FORMAT, null);
+                    fail("Expected [" + content + "] to be invalid");
+                } catch (RuntimeException e) {}
+            }
+
+            Files.write(queries.toPath(), "a.txt =f=ERROR\n".getBytes());
+
+            try {
+                Options.parse(new String[] { "=Q=" + queries.getPath(), "=g=5", "a.log" }, System.err).validate();
+                fail("Expected =Q= with =g= to be invalid");
+            } catch (RuntimeException e) {}
+        } finally {
+            queries.delete();
+        }
+    }
+
+    public void testLogFilesAreNotOverwritten() throws Exception {
+        File directory  = Files.createTempDirectory("queries").toFile();
+        File log        = LogFixtures.logFile("2016-05-16 03:00:00,000 ERROR message");
+        File queries    = new File(directory, "queries.txt");
+        File errors     = new File(directory, "errors.txt");
+        String content  = read(log);
+
+        try {
+            /////////////////////////////////////////////////
+            // The same log file, by another path to it
+            Files.write(queries.toPath(), (errors.getPath() + " =f=ERROR\n"
+                    + new File(new File(log.getParentFile(), ".."), log.getParentFile().getName() + "/" + log.getName())
+                    .getPath() + " =f=INFO\n").getBytes());
+
+            try {
+                LogFixtures.run("=Q=" + queries.getPath(), log.getPath());
+                fail("A query overwrote its log file");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("overwrite a log file"));
+            }
+
+            assertEquals(content, read(log));
+            assertFalse(errors.exists());
+
+            ///////////////////////////////////////////////////////////
+            // A results file that can't be opened, after one that can
+            Files.write(queries.toPath(), (errors.getPath() + " =f=ERROR\n"
+                    + new File(directory, "missing/b.txt").getPath() + " =f=INFO\n").getBytes());
+
+            try {
+                LogFixtures.run("=Q=" + queries.getPath(), log.getPath());
+                fail("A results file in a missing directory was opened");
+            } catch (IOException e) {}
+
+            assertTrue(errors.delete());
+        } finally {
+            for(File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * @param first 0 or 1, the first of the 600 log entries to take every other one from.
+     * @return A log file in time order.
+     */
+    private static File logFile(final int first) throws Exception {
+        final String[] levels = { "INFO", "WARN", "ERROR" };
+
+        return LogFixtures.logFile(null, 300, new LogFixtures.Entries() {
+            public void write(final PrintStream out, final int j) {
+                int i = 2 * j + first;
+
+                out.println(String.format("2016-05-16 03:%02d:%02d,%03d %s [t-%d] message %d",
+                        i / 60, i % 60, i, levels[i % 3], i % 4, i));
+            }
+        });
+    }
+
+    private static String read(final File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * @return The log entries written, without the description of the sources.
+     */
+    private static String entries(final String output) {
+        StringBuilder sb = new StringBuilder();
+
+        for(String line : output.split("\n")) {
+            if(!line.startsWith("#")) {
+                sb.append(line).append("\n");
+            }
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ResultCacheTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ResultCacheTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ResultCacheTest.class );
+    }
+
+    String SOURCE       = "inline1";
+    String TS1_FORMAT   = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    private List<LogEntry> logEntries(long... timestamps) {
+        List<LogEntry> logEntries = new ArrayList<>();
+
+        for(long ts : timestamps) {
+            logEntries.add(new LogEntry(SOURCE, ts, "" + ts, " WooHoo " + ts + Utils.LINE_SEP));
+        }
+
+        return logEntries;
+    }
+
+    public void testNarrowerTimeRangesAreAnsweredFromWiderOnes() {
+        ResultCache cache       = new ResultCache(ResultCache.DEFAULT_MAX_BYTES);
+        ResultCache.Key key     = ResultCache.key(SOURCE, 100, 1, TS1_FORMAT, 0, Arrays.asList("A", "B"));
+
+        assertNull(cache.get(key, 10, 50));
+
+        cache.put(key, 10, 50, logEntries(10, 20, 30, 30, 40, 50));
+
+        List<LogEntry> logEntries = cache.get(key, 20, 30);
+        assertEquals(3, logEntries.size());
+        assertEquals(20, logEntries.get(0).getRawTimeStamp());
+        assertEquals(30, logEntries.get(2).getRawTimeStamp());
+
+        assertEquals(0, cache.get(key, 41, 49).size());
+        assertEquals(6, cache.get(key, 10, 50).size());
+
+        ////////////////////////////////////////////////////////
+        // The order of the text filters doesn't matter
+        ResultCache.Key sameKey = ResultCache.key(SOURCE, 100, 1, TS1_FORMAT, 0, Arrays.asList("B", "A"));
+        assertEquals(1, cache.get(sameKey, 40, 40).size());
+
+        ////////////////////////////////////////////////////////
+        // Wider than anything cached, or a changed file, misses
+        assertNull(cache.get(key, 0, 50));
+        assertNull(cache.get(ResultCache.key(SOURCE, 200, 1, TS1_FORMAT, 0, Arrays.asList("A", "B")), 20, 30));
+        assertNull(cache.get(ResultCache.key(SOURCE, 100, 1, TS1_FORMAT, 5, Arrays.asList("A", "B")), 20, 30));
+
+        ////////////////////////////////////////////////////////
+        // Out of order results are narrowed by scanning them
+        ResultCache.Key unordered = ResultCache.key(SOURCE, 100, 2, TS1_FORMAT, 0, null);
+        cache.put(unordered, 0, 100, logEntries(30, 10, 20, 40));
+
+        logEntries = cache.get(unordered, 15, 35);
+        assertEquals(2, logEntries.size());
+        assertEquals(30, logEntries.get(0).getRawTimeStamp());
+        assertEquals(20, logEntries.get(1).getRawTimeStamp());
+    }
+
+    public void testLeastRecentlyUsedResultsAreEvicted() {
+        List<LogEntry> logEntries   = logEntries(10, 20, 30);
+        ResultCache cache           = new ResultCache(1024);
+
+        ResultCache.Key first   = ResultCache.key("first", 100, 1, TS1_FORMAT, 0, null);
+        ResultCache.Key second  = ResultCache.key("second", 100, 1, TS1_FORMAT, 0, null);
+        ResultCache.Key third   = ResultCache.key("third", 100, 1, TS1_FORMAT, 0, null);
+
+        cache.put(first, 0, 100, logEntries);
+        cache.put(second, 0, 100, logEntries);
+        assertEquals(2, cache.size());
+
+        // Use first, so second is the least recently used
+        assertNotNull(cache.get(first, 0, 100));
+
+        cache.put(third, 0, 100, logEntries);
+
+        assertTrue(cache.getUsedBytes() <= 1024);
+        assertTrue(cache.getEvictions() > 0);
+        assertNull(cache.get(second, 0, 100));
+        assertNotNull(cache.get(third, 0, 100));
+
+        ////////////////////////////////////////////////////////
+        // A result bigger than the cache is never cached
+        ResultCache tiny = new ResultCache(16);
+        tiny.put(first, 0, 100, logEntries);
+        assertEquals(0, tiny.size());
+    }
+}
@@ -0,0 +1,173 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SamplerTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public SamplerTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( SamplerTest.class );
+    }
+
+    public void testSampleIsInTimeOrder() {
+        Collector collector = new Collector();
+        Sampler sampler     = new Sampler(10, false, 0, collector, Sampler.DEFAULT_SEED);
+
+        write(sampler, 100000, 2, 1000);
+
+        assertEquals(10, collector.logEntries.size());
+        assertEquals("label", collector.label);
+        assertTrue(collector.ended);
+        assertTrue(sampler.statistics().startsWith("Sample: 10 of 200000 log entries"));
+
+        for(int i = 1 ; i < collector.logEntries.size() ; i++) {
+            assertTrue(collector.logEntries.get(i - 1).getRawTimeStamp() <= collector.logEntries.get(i).getRawTimeStamp());
+        }
+
+        //////////////////////////////////////////
+        // The same log entries, the same sample
+        Collector again = new Collector();
+        write(new Sampler(10, false, 0, again, Sampler.DEFAULT_SEED), 100000, 2, 1000);
+
+        assertEquals(collector.logEntries.toString(), again.logEntries.toString());
+    }
+
+    public void testStrata() {
+        Collector bySource = new Collector();
+        write(new Sampler(5, true, 0, bySource, Sampler.DEFAULT_SEED), 1000, 3, 10);
+
+        assertEquals(15, bySource.logEntries.size());
+        assertEquals(Arrays.asList(5, 5, 5), new ArrayList<>(counts(bySource, 0).values()));
+
+        ////////////////////////////////////////////////////////
+        // 1000 entries 10mS apart, 1 second strata: 10 strata,
+        // the last one holding fewer than the sample size
+        Collector byTime = new Collector();
+        Sampler sampler = new Sampler(50, false, 1000, byTime, Sampler.DEFAULT_SEED);
+        write(sampler, 1050, 1, 10);
+
+        Map<Object, Integer> counts = counts(byTime, 1000);
+        assertEquals(11, counts.size());
+        assertEquals(Integer.valueOf(50), counts.get(0L));
+        assertEquals(Integer.valueOf(50), counts.get(10L));
+        assertTrue(sampler.statistics().endsWith("11 strata"));
+    }
+
+    /**
+     * Each log entry has to be equally likely to be sampled.
+     */
+    public void testUniform() {
+        int[] hits = new int[10];
+
+        for(long seed = 0 ; seed < 2000 ; seed++) {
+            Collector collector = new Collector();
+            write(new Sampler(10, false, 0, collector, seed), 1000, 1, 1);
+
+            for(LogEntry logEntry : collector.logEntries) {
+                hits[(int) (logEntry.getRawTimeStamp() / 100)]++;
+            }
+        }
+
+        //////////////////////////////////////////////
+        // 2000 samples of 10, 2000 hits per decile
+        for(int hit : hits) {
+            assertTrue("" + Arrays.toString(hits), hit > 1800 && hit < 2200);
+        }
+    }
+
+    public void testParse() {
+        assertNull(Sampler.parse(null, null));
+        assertNotNull(Sampler.parse("10", null));
+        assertNotNull(Sampler.parse("10,source", null));
+        assertNotNull(Sampler.parse("10,3600000", null));
+
+        String[] invalid = { "0", "x", "10,", "10,host", "10,0", "10,-5" };
+
+        for(String sample : invalid) {
+            try {
+                Sampler.parse(sample, null);
+                fail("Expected [" + sample + "] to be invalid");
+            } catch (RuntimeException e) {}
+        }
+
+        String[][] options = {
+                { "=S=10", "=h=5", "a.log" },
+                { "=S=10", "=g=5", "a.log" },
+                { "=S=10", "=P=4", "a.log" },
+        };
+
+        for(String[] args : options) {
+            try {
+                Options.parse(args, System.err).validate();
+                fail("Expected " + String.join(" ", args) + " to be invalid");
+            } catch (RuntimeException e) {}
+        }
+    }
+
+    /**
+     * Write log entries from each source, interleaved in time order.
+     */
+    private static void write(final Sampler sampler, final int perSource, final int sources, final long step) {
+        sampler.begin("label");
+
+        for(int i = 0 ; i < perSource ; i++) {
+            for(int source = 1 ; source <= sources ; source++) {
+                sampler.write(new LogEntry(source + ".log", i * step, "" + i * step, " INFO entry " + i + Utils.LINE_SEP));
+            }
+        }
+
+        sampler.end();
+    }
+
+    private static Map<Object, Integer> counts(final Collector collector, final long stratumMillis) {
+        Map<Object, Integer> counts = new HashMap<>();
+
+        for(LogEntry logEntry : collector.logEntries) {
+            Object key = (stratumMillis > 0) ? logEntry.getRawTimeStamp() / stratumMillis : logEntry.getSource();
+
+            counts.merge(key, 1, Integer::sum);
+        }
+
+        return counts;
+    }
+
+    private static class Collector implements EntryWriter {
+        private final List<LogEntry> logEntries = new ArrayList<>();
+        private String label;
+        private boolean ended;
+
+        public void begin(final String label) {
+            this.label = label;
+        }
+
+        public void write(final LogEntry logEntry) {
+            logEntries.add(logEntry);
+        }
+
+        public void end() {
+            ended = true;
+        }
+    }
+}
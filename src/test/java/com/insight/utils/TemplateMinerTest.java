@@ -0,0 +1,126 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+public class TemplateMinerTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public TemplateMinerTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( TemplateMinerTest.class );
+    }
+
+    public void testMasking() {
+        assertEquals(Arrays.asList("took", "<*>ms", "from", "<*>", "id", "<*>", "ptr", "<*>", "Svc0", "req-<*>"),
+                Arrays.asList(TemplateMiner.tokenize(
+                        " took 12ms from 10.0.0.1 id 3f2a9c1e-77aa-4bd2-9f00-12ab34cd56ef ptr 0x7ffe Svc0 req-42")));
+        assertEquals(0, TemplateMiner.tokenize("   ").length);
+    }
+
+    public void testClustering() {
+        TemplateMiner miner = new TemplateMiner(2);
+
+        miner.add(entry("a.log", 1000, " INFO user alice logged in from 10.0.0.1"), 0);
+        miner.add(entry("a.log", 2000, " INFO user bob logged in from 10.0.0.2"), 0);
+        miner.add(entry("b.log", 1500, " INFO user carol logged in from 10.0.0.3" + Utils.LINE_SEP + "\tdetail"), 1);
+        miner.add(entry("b.log", 2500, " ERROR disk full on /var"), 1);
+
+        List<TemplateMiner.Template> templates = miner.getTemplates();
+
+        assertEquals(2, templates.size());
+        assertEquals("INFO user <*> logged in from <*>", templates.get(0).getText());
+        assertEquals(2, templates.get(0).getOccurrences(0).getCount());
+        assertEquals(1, templates.get(0).getOccurrences(1).getCount());
+        assertEquals("1000", templates.get(0).getTotal().getFirstTimeStamp());
+        assertEquals("2000", templates.get(0).getTotal().getLastTimeStamp());
+        assertEquals("ERROR disk full on /var", templates.get(1).getText());
+    }
+
+    /**
+     * Mining the sources in parallel has to give the same report as mining them in turn.
+     */
+    public void testReport() {
+        List<String> sources        = Arrays.asList("a.log", "b.log", "c.log");
+        List<List<LogEntry>> logs   = new ArrayList<>();
+        String[] levels             = { "INFO", "WARN", "ERROR" };
+
+        for(int s = 0 ; s < sources.size() ; s++) {
+            List<LogEntry> logEntries = new ArrayList<>();
+
+            for(int i = 0 ; i < 3000 ; i++) {
+                String payload = (i % 10 == 0)
+                        ? " " + levels[s] + " connection " + i + " closed by peer"
+                        : " INFO [thread-" + (i % 7) + "] request req-" + i + " took " + (i % 997) + "ms";
+
+                logEntries.add(entry(sources.get(s), i * 10L + s, payload));
+            }
+            logs.add(logEntries);
+        }
+
+        String parallel = report(sources, logs, 3);
+
+        assertEquals(report(sources, logs, 1), parallel);
+        assertTrue(parallel.contains("# Top 2 of 4 templates, from 9000 log entries:"));
+        assertTrue(parallel.contains("# 1: 8100 log entries, 10 to 29992" + Utils.LINE_SEP
+                + "INFO [thread-<*>] request req-<*> took <*>ms"));
+        assertTrue(parallel.contains("#  2       2700 11 to 29991"));
+    }
+
+    public void testInvalidOptions() {
+        String[][] invalid = {
+                { "=M=0", "a.log" },
+                { "=M=5", "=g=5", "a.log" },
+                { "=M=5", "=i=2", "a.log" },
+                { "=M=5", "=h=10", "a.log" },
+                { "=M=5", "=o=csv", "a.log" },
+        };
+
+        for(String[] args : invalid) {
+            try {
+                Options.parse(args, System.err).validate();
+                fail("Expected " + String.join(" ", args) + " to be invalid");
+            } catch (RuntimeException e) {}
+        }
+    }
+
+    private static String report(final List<String> sources, final List<List<LogEntry>> logs, final int threads) {
+        ByteArrayOutputStream bytes     = new ByteArrayOutputStream();
+        TemplateReport report           = new TemplateReport(2, sources, new PrintStream(bytes, true));
+        List<Iterator<LogEntry>> iters  = new ArrayList<>();
+
+        for(List<LogEntry> logEntries : logs) {
+            iters.add(logEntries.iterator());
+        }
+
+        report.mine(iters, threads);
+        report.emit("");
+
+        return bytes.toString();
+    }
+
+    private static LogEntry entry(final String source, final long ts, final String payload) {
+        return new LogEntry(source, ts, "" + ts, payload + Utils.LINE_SEP);
+    }
+}
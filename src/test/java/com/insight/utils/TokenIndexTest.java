@@ -0,0 +1,165 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TokenIndexTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public TokenIndexTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( TokenIndexTest.class );
+    }
+
+    String TS1_FORMAT   = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    private File logFile(int entries) throws Exception {
+        return LogFixtures.logFile("Preamble", entries, new LogFixtures.Entries() {
+            public void write(final PrintStream out, final int i) {
+                out.println(String.format("2016-05-16 %02d:%02d:%02d,%03d INFO request req-%d handled by worker%d",
+                        i / 3600 % 24, i / 60 % 60, i % 60, i % 1000, i, i % 7));
+
+                if(0 == i % 10) {
+                    out.println("    at com.example.Handler.handle(Handler.java:" + i + ") -- retry");
+                }
+            }
+        });
+    }
+
+    public void testIndexedSearchesMatchFullReads() throws Exception {
+        String logFile1 = logFile(20000).getPath();
+        String logFile2 = logFile(3000).getPath();
+
+        String[][] queries = {
+                { "=f=req-12345 " },
+                { "=f=eq-1234" },
+                { "=f=12345 hand", "=f=Handler.java:2990)" },
+                { "=f=worker3", "=s=2016-05-16 01:00:00,000" },
+                { "=f=no such text" },
+                { "=f=--" },
+                { "=f=ker6", "=l=7" },
+                { "=f=req-777 ", "=n=2" },
+        };
+
+        for(String[] query : queries) {
+            List<String> args = new ArrayList<>(Arrays.asList(query));
+            args.add(logFile1);
+            args.add(logFile2);
+
+            String expected = LogFixtures.runFromSources(args.toArray(new String[0]));
+
+            args.add(0, "=I=on");
+            assertEquals(Arrays.toString(query), expected, LogFixtures.runFromSources(args.toArray(new String[0])));
+        }
+    }
+
+    public void testOnlyMatchingEntriesAreRead() throws Exception {
+        File logFile        = logFile(20000);
+        TokenIndex index    = TokenIndex.load(logFile.getPath(), TS1_FORMAT);
+
+        assertEquals(20000, index.size());
+
+        List<long[]> ranges = index.candidateRanges(Arrays.asList("req-12345 "));
+        assertEquals(1, ranges.size());
+
+        // req-123, req-1230..req-1239 and req-12300..req-12399, plus entries where 123 starts another token
+        ranges = index.candidateRanges(Arrays.asList("req-123"));
+        assertTrue(ranges.size() >= 3);
+        assertTrue(ranges.size() < 50);
+
+        ranges = index.candidateRanges(Arrays.asList("no such"));
+        assertEquals(0, ranges.size());
+
+        ranges = index.candidateRanges(Arrays.asList("--"));
+        assertEquals(1, ranges.size());
+        assertEquals(logFile.length(), ranges.get(0)[1]);
+
+        //////////////////////////////////////////
+        // Reused while the log file is unchanged
+        File indexFile = new File(logFile.getPath() + TokenIndex.INDEX_SUFFIX);
+        long modified  = indexFile.lastModified();
+
+        Thread.sleep(20);
+        assertEquals(20000, TokenIndex.load(logFile.getPath(), TS1_FORMAT).size());
+        assertEquals(modified, indexFile.lastModified());
+    }
+
+    public void testUnsavedIndexesFallBackToAFullRead() throws Exception {
+        String logFile = logFile(3000).getPath();
+
+        ///////////////////////////////////////////////////////////////
+        // The sidecar can't be written (a directory that isn't empty,
+        // as a read only directory doesn't stop root)
+        File blocker = new File(logFile + TokenIndex.INDEX_SUFFIX);
+        File inside  = new File(blocker, "keep");
+        assertTrue(blocker.mkdir());
+        assertTrue(inside.createNewFile());
+        inside.deleteOnExit();
+
+        assertNull(TokenIndex.load(logFile, TS1_FORMAT));
+        assertEquals(LogFixtures.runFromSources("=f=req-1234", logFile),
+                     LogFixtures.runFromSources("=I=on", "=f=req-1234", logFile));
+        assertTrue(blocker.isDirectory());
+    }
+
+    public void testDictionaryLookupsMatchAScan() throws Exception {
+        TokenIndex index    = TokenIndex.load(logFile(5000).getPath(), TS1_FORMAT);
+        String[] lookups    = { "req", "eq", "123", "4999", "orker", "worker6", "andle", "Handler", "x", "zzz", "qre" };
+
+        for(String token : lookups) {
+            for(int where = 0 ; where < 3 ; where++) {
+                boolean atStart = where != 1;
+                boolean atEnd   = where != 0;
+                List<Integer> expected = new ArrayList<>();
+
+                for(int t = 0 ; t < index.getTokenCount() ; t++) {
+                    String candidate = index.getToken(t);
+
+                    if(atStart && atEnd ? candidate.contains(token)
+                            : atStart ? candidate.endsWith(token) : candidate.startsWith(token)) {
+                        expected.add(t);
+                    }
+                }
+
+                List<Integer> actual = new ArrayList<>();
+                for(int t : index.matchingTokens(token, atStart, atEnd)) {
+                    actual.add(t);
+                }
+
+                assertEquals(token + " " + atStart + " " + atEnd, expected, actual);
+            }
+        }
+    }
+
+    public void testTokenSpans() throws Exception {
+        List<int[]> spans = TokenIndex.tokenSpans("-ab c1-d ");
+
+        assertEquals(3, spans.size());
+        assertEquals(1, spans.get(0)[0]);
+        assertEquals(3, spans.get(0)[1]);
+        assertEquals(4, spans.get(1)[0]);
+        assertEquals(6, spans.get(1)[1]);
+        assertEquals(7, spans.get(2)[0]);
+        assertEquals(8, spans.get(2)[1]);
+    }
+}
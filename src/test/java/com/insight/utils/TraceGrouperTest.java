@@ -0,0 +1,128 @@
+package com.insight.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+public class TraceGrouperTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public TraceGrouperTest(String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( TraceGrouperTest.class );
+    }
+
+    String TS1_FORMAT   = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    private List<LogEntry> logEntries() {
+        List<LogEntry> logEntries = new ArrayList<>();
+
+        for(int i = 0 ; i < 3000 ; i++) {
+            String source = "server" + (i % 3) + ".log";
+
+            logEntries.add(new LogEntry(source, 1000L + i * 10, "T" + i,
+                    " INFO hop " + i + ((0 == i % 7) ? " no id" : " trace=" + (i * 31 % 97)) + Utils.LINE_SEP));
+        }
+
+        return logEntries;
+    }
+
+    /**
+     * @return The text of each trace, by its id, in the order they were written.
+     */
+    private Map<String, String> traces(final long maxBytes, final File tempDirectory) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out             = new PrintStream(bytes, true);
+        List<String> sources        = Arrays.asList("server0.log", "server1.log", "server2.log");
+        TraceGrouper grouper        = new TraceGrouper(Pattern.compile("trace=([0-9]+)"), maxBytes, sources, out, tempDirectory);
+
+        Utils.emitList(logEntries(), grouper, "");
+
+        String output               = bytes.toString();
+        String totals               = "# 97 traces, " + (3000 - 3000 / 7 - 1) + " log entries";
+        Map<String, String> traces  = new LinkedHashMap<>();
+
+        assertTrue(output.endsWith(totals + Utils.LINE_SEP));
+
+        String[] blocks = output.substring(0, output.indexOf(totals)).split("# Trace ");
+
+        for(int i = 1 ; i < blocks.length ; i++) {
+            traces.put(blocks[i].substring(0, blocks[i].indexOf(':')), blocks[i]);
+        }
+
+        return traces;
+    }
+
+    public void testSpilledTracesMatchInMemory() throws Exception {
+        File tempDirectory  = new File(System.getProperty("java.io.tmpdir"), "traces" + System.nanoTime());
+        tempDirectory.mkdirs();
+        tempDirectory.deleteOnExit();
+
+        Map<String, String> inMemory    = traces(TraceGrouper.DEFAULT_MAX_BYTES, tempDirectory);
+        Map<String, String> spilled     = traces(16 * 1024, tempDirectory);
+
+        assertEquals(97, inMemory.size());
+        assertEquals(inMemory.keySet(), spilled.keySet());
+
+        //////////////////////////////////////////////////////////////
+        // Both in the order of their first log entry, trace=i*31%97
+        List<String> firstSeen = new ArrayList<>();
+        for(LogEntry logEntry : logEntries()) {
+            String id = logEntry.getPayload().replaceAll("(?s).*trace=([0-9]+).*", "$1");
+
+            if(!id.equals(logEntry.getPayload()) && !firstSeen.contains(id)) {
+                firstSeen.add(id);
+            }
+        }
+        assertEquals(firstSeen, new ArrayList<>(inMemory.keySet()));
+        assertEquals(firstSeen, new ArrayList<>(spilled.keySet()));
+
+        for(String id : inMemory.keySet()) {
+            assertEquals(inMemory.get(id), spilled.get(id));
+        }
+
+        // The partitions are deleted
+        assertEquals(0, tempDirectory.list().length);
+
+        String trace = inMemory.get("0");
+        assertTrue(trace, trace.startsWith("0: 26 log entries, 28130 mS, 3 sources"));
+        assertTrue(trace, trace.contains("* 3      970                 T194 INFO hop 194 trace=0"));
+    }
+
+    public void testTraceModeMatchesTextSearch() throws Exception {
+        File file = LogFixtures.logFile(null, 200, new LogFixtures.Entries() {
+            public void write(final PrintStream out, final int i) {
+                out.println(String.format("2016-05-16 03:%02d:%02d,000 INFO request req-%d hop %d",
+                        i / 60, i % 60, i % 5, i));
+            }
+        });
+
+        String output = LogFixtures.run("=T=request (req-[0-9]+)", file.getPath());
+
+        assertTrue(output.contains("# Trace req-3: 40 log entries, 195000 mS, 1 sources"));
+        assertTrue(output.contains("# 5 traces, 200 log entries"));
+    }
+}
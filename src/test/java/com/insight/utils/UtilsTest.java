@@ -6,11 +6,11 @@ import junit.framework.TestSuite;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 public class UtilsTest
@@ -585,4 +585,102 @@ public class UtilsTest
         } catch(RuntimeException e) {}
 
     }
+
+    public void testHeadAndTailLogEntries() throws ParseException {
+        List<String> linesFirst     = new ArrayList<String>() ;
+        List<String> linesSecond    = new ArrayList<String>() ;
+
+        linesFirst.add(TS1_WITH_SENTINALS + " WooHoo 1a");
+        linesFirst.add(TS3_WITH_SENTINALS + " WooHoo 1b");
+        linesFirst.add(TS5_WITH_SENTINALS + " WooHoo 1c");
+
+        linesSecond.add(TS2_WITH_SENTINALS + " WooHoo 2a");
+        linesSecond.add(TS3_WITH_SENTINALS + " WooHoo 2b");
+        linesSecond.add(TS6_WITH_SENTINALS + " WooHoo 2c");
+
+        List<List<LogEntry>> logs   = new ArrayList<>();
+        logs.add(Utils.createLogEntries(SOURCE, linesFirst, TS1_FORMAT_WITH_SENTINALS, searchText, tsAdjustment));
+        logs.add(Utils.createLogEntries(SOURCE2, linesSecond, TS1_FORMAT_WITH_SENTINALS, searchText, tsAdjustment));
+
+        List<LogEntry> all          = Utils.timeSortLists(logs);
+        assertEquals(6, all.size());
+
+        for(int count = 1 ; count <= 7 ; count++) {
+            List<Iterator<LogEntry>> sources = new ArrayList<>();
+            sources.add(logs.get(0).iterator());
+            sources.add(logs.get(1).iterator());
+
+            List<LogEntry> head = Utils.headLogEntries(sources, count);
+            assertEquals(all.subList(0, Math.min(count, all.size())), head);
+
+            sources.clear();
+            sources.add(logs.get(0).iterator());
+            sources.add(logs.get(1).iterator());
+
+            List<LogEntry> tail = Utils.tailLogEntries(sources, count);
+            assertEquals(all.subList(Math.max(0, all.size() - count), all.size()), tail);
+        }
+
+        ///////////////////////////////////////////////
+        // Equal timestamps come out in source order
+        List<Iterator<LogEntry>> sources = new ArrayList<>();
+        sources.add(logs.get(0).iterator());
+        sources.add(logs.get(1).iterator());
+
+        List<LogEntry> head = Utils.headLogEntries(sources, 4);
+        assertEquals(" WooHoo 1b" + Utils.LINE_SEP, head.get(2).getPayload());
+        assertEquals(" WooHoo 2b" + Utils.LINE_SEP, head.get(3).getPayload());
+
+        try {
+            Utils.outputLimit("head", "0");
+            fail("Should have thrown an exception");
+        } catch(RuntimeException e) {}
+
+        assertEquals(0, Utils.outputLimit("head", null));
+        assertEquals(10, Utils.outputLimit("head", "10"));
+
+        //////////////////////////////////////////////////////////
+        // Head and tail read the log files themselves, not with =i=
+        for(String limit : new String[] { "=h=10", "=l=10" }) {
+            try {
+                Options.parse(new String[] { limit, "=i=2", "x.log" }, System.out).validate();
+                fail("Ingest threads accepted with " + limit);
+            } catch(RuntimeException e) {
+                assertTrue(e.getMessage().contains("head or tail"));
+            }
+        }
+    }
+
+    public void testLogEntryReaderMatchesCreateLogEntries() throws Exception {
+        final List<String> lines    = new ArrayList<String>() ;
+
+        lines.add(" WooHoo 0");
+        lines.add(TS1_WITH_SENTINALS + " WooHoo 1a");
+        lines.add("WooHoo 1b");
+        lines.add(TS2_WITH_SENTINALS + " WooHoo 2a");
+        lines.add(TS3_WITH_SENTINALS + " WooHoo 3a");
+        lines.add("");
+        lines.add("WooHoo 3c");
+
+        File file = LogFixtures.logFile(null, lines.size(), new LogFixtures.Entries() {
+            public void write(final PrintStream out, final int i) {
+                // Mix up the line terminators
+                out.print(lines.get(i) + (0 == i % 2 ? "\n" : "\r\n"));
+            }
+        });
+
+        List<LogEntry> expected =
+                Utils.createLogEntries(SOURCE, lines, TS1_FORMAT_WITH_SENTINALS, TS2_WITH_SENTINALS, null, searchText, 1);
+        List<LogEntry> actual   =
+                Utils.createLogEntries(file.getPath(), TS1_FORMAT_WITH_SENTINALS, TS2_WITH_SENTINALS, null, searchText, 1);
+
+        assertEquals(2, expected.size());
+        assertEquals(expected.size(), actual.size());
+
+        for(int i = 0 ; i < expected.size() ; i++) {
+            assertEquals(expected.get(i).getRawTimeStamp(), actual.get(i).getRawTimeStamp());
+            assertEquals(expected.get(i).getDisplayTimeStamp(), actual.get(i).getDisplayTimeStamp());
+            assertEquals(expected.get(i).getPayload(), actual.get(i).getPayload());
+        }
+    }
 }